@@ -0,0 +1,190 @@
+/*
+ * Copyright (C) 2012-2016 Opher Shachar
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ciju.ipp;
+
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Date;
+import java.util.Locale;
+import javax.print.attribute.ResolutionSyntax;
+import org.ciju.ipp.IppEncoding.GroupTag;
+import org.ciju.ipp.IppEncoding.ValueTag;
+import org.ciju.ipp.attribute.GenericAttribute;
+import org.ciju.ipp.attribute.GenericValue;
+import org.ciju.ipp.attribute.ResolutionValue;
+import org.ciju.ipp.attribute.TextValue;
+
+/**
+ * Builds the IPP messages the benchmarks encode and decode. Responses share
+ * the wire format of requests, so they are built as requests whose
+ * operation-id is the <tt>successful-ok</tt> status-code.
+ *
+ * @author Opher Shachar
+ */
+final class BenchCorpus {
+
+    private BenchCorpus() {}
+
+    /** An IPP message with any number of attribute groups */
+    static final class Message extends IppRequest {
+        Message(short code, Locale locale) {
+            super(code, 1, locale, GroupTag.END);
+        }
+
+        Message group(GroupTag gt) {
+            newAttributeGroup(gt);
+            return this;
+        }
+
+        Message add(String name, ValueTag vt, Object... values) {
+            GenericAttribute ga = new GenericAttribute(name, values.length);
+            for (Object value : values)
+                ga.add(new GenericValue(vt, value));
+            addAttribute(ga);
+            return this;
+        }
+    }
+
+    /**
+     * Returns the encoded message, as a response if its code is
+     * <tt>successful-ok</tt>.
+     */
+    static ByteBuffer encode(IppRequest msg) {
+        ByteBuffer bb = IppTransport.encodeRequest(msg, null);
+        ByteBuffer copy = ByteBuffer.allocate(bb.remaining());
+        copy.put(bb).flip();
+        return copy;
+    }
+
+    /** A Get-Printer-Attributes response of a printer with many capabilities */
+    static Message printerAttributes() {
+        Message m = new Message((short) 0, Locale.US);
+        m.group(GroupTag.PRINTER);
+        m.add("printer-uri-supported", ValueTag.URI,
+                URI.create("ipp://printserver.example.com:631/printers/lobby"),
+                URI.create("ipps://printserver.example.com:631/printers/lobby"));
+        m.add("uri-security-supported", ValueTag.KEYWORD, "none", "tls");
+        m.add("uri-authentication-supported", ValueTag.KEYWORD, "requesting-user-name", "basic");
+        m.add("printer-name", ValueTag.NAME_WITHOUT_LANGUAGE, "lobby");
+        m.add("printer-location", ValueTag.TEXT_WITHOUT_LANGUAGE, "Building 2, ground floor, next to the elevators");
+        m.add("printer-info", ValueTag.TEXT_WITHOUT_LANGUAGE, "Lobby color laser");
+        m.add("printer-make-and-model", ValueTag.TEXT_WITHOUT_LANGUAGE, "Example ColorLaser 9000 Series PS");
+        m.add("printer-state", ValueTag.ENUM, 3);
+        m.add("printer-state-reasons", ValueTag.KEYWORD, "none");
+        m.add("printer-is-accepting-jobs", ValueTag.BOOLEAN, Boolean.TRUE);
+        m.add("queued-job-count", ValueTag.INTEGER, 7);
+        m.add("printer-up-time", ValueTag.INTEGER, 123456);
+        m.add("printer-current-time", ValueTag.DATE_TIME, new Date());
+        m.add("ipp-versions-supported", ValueTag.KEYWORD, "1.0", "1.1", "2.0");
+        Object[] ops = new Object[40];
+        for (int i = 0; i < ops.length; i++)
+            ops[i] = i + 2;
+        m.add("operations-supported", ValueTag.ENUM, ops);
+        m.add("charset-supported", ValueTag.CHARSET, "utf-8", "us-ascii", "iso-8859-1");
+        m.add("document-format-supported", ValueTag.MIME_MEDIA_TYPE,
+                "application/octet-stream", "application/pdf", "application/postscript",
+                "application/vnd.cups-raster", "image/jpeg", "image/png", "image/pwg-raster",
+                "image/urf", "text/plain");
+        m.add("copies-supported", ValueTag.RANGE_OF_INTEGER, new int[] { 1, 9999 });
+        m.add("job-k-octets-supported", ValueTag.RANGE_OF_INTEGER, new int[] { 0, 2147483647 });
+        m.add("printer-resolution-supported", ValueTag.RESOLUTION,
+                new ResolutionValue(300, 300, ResolutionSyntax.DPI),
+                new ResolutionValue(600, 600, ResolutionSyntax.DPI),
+                new ResolutionValue(1200, 1200, ResolutionSyntax.DPI));
+        Object[] media = new Object[200];
+        for (int i = 0; i < media.length; i++)
+            media[i] = "custom_media-" + i + "_" + (100 + i) + "x" + (150 + i) + "mm";
+        m.add("media-supported", ValueTag.KEYWORD, media);
+        m.add("media-ready", ValueTag.KEYWORD, "iso_a4_210x297mm", "na_letter_8.5x11in");
+        Object[] finishings = new Object[30];
+        for (int i = 0; i < finishings.length; i++)
+            finishings[i] = i + 3;
+        m.add("finishings-supported", ValueTag.ENUM, finishings);
+        for (int i = 0; i < 150; i++)
+            m.add("x-vendor-option-" + i + "-supported", ValueTag.KEYWORD,
+                    "value-a", "value-b", "value-c", "value-d");
+        return m;
+    }
+
+    /** A Get-Jobs response of the given number of jobs */
+    static Message jobs(int count) {
+        Message m = new Message((short) 0, Locale.US);
+        long now = System.currentTimeMillis();
+        for (int i = 1; i <= count; i++) {
+            m.group(GroupTag.JOB);
+            m.add("job-id", ValueTag.INTEGER, i);
+            m.add("job-uri", ValueTag.URI, URI.create("ipp://printserver.example.com:631/jobs/" + i));
+            m.add("job-printer-uri", ValueTag.URI, URI.create("ipp://printserver.example.com:631/printers/lobby"));
+            m.add("job-name", ValueTag.NAME_WITHOUT_LANGUAGE, "Quarterly report " + i + ".pdf");
+            m.add("job-originating-user-name", ValueTag.NAME_WITHOUT_LANGUAGE, "user" + (i % 50));
+            m.add("job-state", ValueTag.ENUM, 9);
+            m.add("job-state-reasons", ValueTag.KEYWORD, "job-completed-successfully");
+            m.add("job-k-octets", ValueTag.INTEGER, 100 + i % 1000);
+            m.add("time-at-creation", ValueTag.INTEGER, (int) (now / 1000) - i * 60);
+            m.add("date-time-at-creation", ValueTag.DATE_TIME, new Date(now - i * 60000L));
+            m.add("date-time-at-completed", ValueTag.DATE_TIME, new Date(now - i * 60000L + 5000));
+        }
+        return m;
+    }
+
+    /** A Get-Jobs response of 1,000 jobs with localized names and messages */
+    static Message localized() {
+        Locale he = new Locale("he", "IL");
+        Locale ja = new Locale("ja", "JP");
+        Message m = new Message((short) 0, he);
+        for (int i = 1; i <= 1000; i++) {
+            m.group(GroupTag.JOB);
+            m.add("job-id", ValueTag.INTEGER, i);
+            m.add("job-name", ValueTag.NAME_WITH_LANGUAGE,
+                    new TextValue("דוח רבעוני " + i, he));
+            m.add("job-originating-user-name", ValueTag.NAME_WITH_LANGUAGE,
+                    new TextValue("山田太郎" + (i % 50), ja));
+            m.add("job-printer-state-message", ValueTag.TEXT_WITH_LANGUAGE,
+                    new TextValue("המדפסת מוכנה להדפסה", he));
+            m.add("job-state-message", ValueTag.TEXT_WITH_LANGUAGE,
+                    new TextValue("印刷が完了しました。用紙をお取りください。", ja));
+        }
+        return m;
+    }
+
+    /** A <tt>WritableByteChannel</tt> discarding whatever is written to it */
+    static final class NullChannel implements WritableByteChannel {
+        public int write(ByteBuffer src) {
+            int n = src.remaining();
+            src.position(src.limit());
+            return n;
+        }
+
+        public boolean isOpen() {
+            return true;
+        }
+
+        public void close() {}
+    }
+
+    /** An <tt>OutputStream</tt> discarding whatever is written to it */
+    static final class NullOutputStream extends OutputStream {
+        @Override
+        public void write(int b) {}
+
+        @Override
+        public void write(byte[] b, int off, int len) {}
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2012-2016 Opher Shachar
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ciju.ipp;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Decoding throughput of IPP responses. Run with <tt>-prof gc</tt> (the
+ * <tt>bench</tt> target does) to get the bytes allocated per operation.
+ *
+ * @author Opher Shachar
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DecodeBenchmark {
+
+    @Param({ "printer-attributes", "jobs-1k", "jobs-10k", "localized" })
+    public String corpus;
+
+    @Param({ "false", "true" })
+    public boolean lazy;
+
+    private byte[] response;
+    private ByteBuffer buffer;
+
+    @Setup
+    public void setUp() {
+        BenchCorpus.Message m;
+        if (corpus.equals("printer-attributes"))
+            m = BenchCorpus.printerAttributes();
+        else if (corpus.equals("jobs-1k"))
+            m = BenchCorpus.jobs(1000);
+        else if (corpus.equals("jobs-10k"))
+            m = BenchCorpus.jobs(10000);
+        else if (corpus.equals("localized"))
+            m = BenchCorpus.localized();
+        else
+            throw new IllegalArgumentException(corpus);
+        buffer = BenchCorpus.encode(m);
+        response = new byte[buffer.remaining()];
+        buffer.duplicate().get(response);
+        IppResponse.setDefaultLazyDecoding(lazy);
+    }
+
+    /** As an HTTP connection would, from a stream of known length */
+    @Benchmark
+    public IppResponse<IppObject> stream() throws IOException {
+        return IppTransport.processResponse(new ByteArrayInputStream(response), response.length);
+    }
+
+    /** As an HTTP connection would, from a chunked stream */
+    @Benchmark
+    public IppResponse<IppObject> streamUnknownLength() throws IOException {
+        return IppTransport.processResponse(new ByteArrayInputStream(response), -1);
+    }
+
+    /** Straight from a buffer holding the response */
+    @Benchmark
+    public IppResponse<IppObject> buffer() throws IOException {
+        return IppTransport.processResponse(buffer, (IppObject) null);
+    }
+
+    /** Pull-parse the response looking at every value */
+    @Benchmark
+    public int pull() throws IOException {
+        IppReader r = new IppReader(buffer);
+        int n = 0;
+        while (r.next() != IppReader.Event.END)
+            if (r.getEvent() == IppReader.Event.VALUE)
+                n += r.getValue().hashCode();
+        return n;
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2012-2016 Opher Shachar
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ciju.ipp;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import javax.print.DocFlavor;
+import javax.print.SimpleDoc;
+import javax.print.attribute.HashDocAttributeSet;
+import org.ciju.ipp.IppEncoding.GroupTag;
+import org.ciju.ipp.IppEncoding.OpCode;
+import org.ciju.ipp.IppEncoding.ValueTag;
+import org.ciju.ipp.attribute.GenericAttribute;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Encoding throughput of Print-Job requests with documents of 1KB to 100MB,
+ * and of attribute heavy messages, each with a state of its own so only the
+ * former are run per document size. Run with <tt>-prof gc</tt> (the
+ * <tt>bench</tt> target does) to get the bytes allocated per operation.
+ *
+ * @author Opher Shachar
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx1g")
+public class EncodeBenchmark {
+
+    @State(Scope.Thread)
+    public static class PrintJob {
+        @Param({ "1024", "1048576", "104857600" })
+        public int docSize;
+
+        private IppRequest printJob;
+        private final BenchCorpus.NullChannel channel = new BenchCorpus.NullChannel();
+        private final BenchCorpus.NullOutputStream stream = new BenchCorpus.NullOutputStream();
+
+        @Setup
+        public void setUp() throws Exception {
+            byte[] doc = new byte[docSize];
+            new Random(docSize).nextBytes(doc);
+            printJob = newPrintJob(doc);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Jobs {
+        private IppRequest jobs;
+
+        @Setup
+        public void setUp() throws Exception {
+            jobs = BenchCorpus.jobs(1000);
+        }
+    }
+
+    private static IppRequest newPrintJob(byte[] doc) throws Exception {
+        IppRequest req = new IppRequest(OpCode.PRINT_JOB, 1, Locale.US, GroupTag.JOB);
+        req.addOperationAttribute(new GenericAttribute("printer-uri",
+                URI.create("ipp://printserver.example.com:631/printers/lobby"), ValueTag.URI));
+        req.addOperationAttribute(new GenericAttribute("requesting-user-name", "user1",
+                ValueTag.NAME_WITHOUT_LANGUAGE));
+        req.addOperationAttribute(new GenericAttribute("job-name", "Quarterly report.pdf",
+                ValueTag.NAME_WITHOUT_LANGUAGE));
+        req.addAttribute(new GenericAttribute("copies", (Object) Integer.valueOf(2), ValueTag.INTEGER));
+        req.addAttribute(new GenericAttribute("sides", "two-sided-long-edge", ValueTag.KEYWORD));
+        req.addAttribute(new GenericAttribute("media", "iso_a4_210x297mm", ValueTag.KEYWORD));
+        req.setDoc(new SimpleDoc(doc, DocFlavor.BYTE_ARRAY.PDF, new HashDocAttributeSet()));
+        return req;
+    }
+
+    /** Print-Job written to a stream, as through an HTTP connection */
+    @Benchmark
+    public void printJobStream(PrintJob s) throws IOException {
+        IppTransport.writeRequest(s.stream, s.printJob);
+    }
+
+    /** Print-Job written to a channel, the head gathered with the document */
+    @Benchmark
+    public void printJobChannel(PrintJob s) throws IOException {
+        IppTransport.writeRequest(s.channel, s.printJob);
+    }
+
+    /** The header and attribute groups of a 1,000 jobs message */
+    @Benchmark
+    public ByteBuffer attributes(Jobs s) {
+        return IppTransport.encodeRequest(s.jobs, null);
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2012-2016 Opher Shachar
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ciju.client;
+
+import java.io.IOException;
+import java.net.PasswordAuthentication;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import org.ciju.client.ipp.BlockingCalls;
+import org.ciju.client.ipp.IppConnection;
+import org.ciju.ipp.AttributeFilter;
+import org.ciju.ipp.IppException;
+import org.ciju.ipp.IppObject;
+import org.ciju.ipp.IppObjectFactory;
+import org.ciju.ipp.IppRequest;
+import org.ciju.ipp.IppResponse;
+
+/**
+ * A connection of a library that has no asynchronous transport, whose
+ * <tt>getContentAsync</tt> methods make the blocking call on the executor
+ * of the print server the connection is to.
+ *
+ * @author Opher Shachar
+ */
+/* package */ final class BlockingConnection implements IppConnection {
+
+    private final IppConnection conn;
+    private final Executor executor;
+
+    BlockingConnection(IppConnection conn, Executor executor) {
+        this.conn = conn;
+        this.executor = executor;
+    }
+
+    public IppConnection setIppRequest(IppRequest request) {
+        conn.setIppRequest(request);
+        return this;
+    }
+
+    public IppRequest getIppRequest() {
+        return conn.getIppRequest();
+    }
+
+    public IppConnection setPasswordAuthentication(PasswordAuthentication authn) {
+        conn.setPasswordAuthentication(authn);
+        return this;
+    }
+
+    public IppConnection setAttributeFilter(AttributeFilter filter) {
+        conn.setAttributeFilter(filter);
+        return this;
+    }
+
+    public <T extends IppObject> IppResponse<T> getContent(T obj) throws IOException, IppException {
+        return conn.getContent(obj);
+    }
+
+    public <T extends IppObject> List<T> getContent(IppObjectFactory<T> fact) throws IOException, IppException {
+        return conn.getContent(fact);
+    }
+
+    @Override
+    public <T extends IppObject> CompletableFuture<IppResponse<T>> getContentAsync(final T obj) {
+        if (getIppRequest() == null)
+            throw new IllegalStateException(PrintServer.resourceStrings.getString("IPP REQUEST WAS NOT SET."));
+        return BlockingCalls.submit(executor, new Callable<IppResponse<T>>() {
+            public IppResponse<T> call() throws IOException, IppException {
+                return conn.getContent(obj);
+            }
+        });
+    }
+
+    @Override
+    public <T extends IppObject> CompletableFuture<List<T>> getContentAsync(final IppObjectFactory<T> fact) {
+        if (fact == null)
+            throw new NullPointerException();
+        if (getIppRequest() == null)
+            throw new IllegalStateException(PrintServer.resourceStrings.getString("IPP REQUEST WAS NOT SET."));
+        return BlockingCalls.submit(executor, new Callable<List<T>>() {
+            public List<T> call() throws IOException, IppException {
+                return conn.getContent(fact);
+            }
+        });
+    }
+}
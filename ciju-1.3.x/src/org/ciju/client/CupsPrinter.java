@@ -23,6 +23,7 @@ import java.net.URISyntaxException;
 import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
 import java.util.logging.Level;
 import javax.print.Doc;
 import javax.print.attribute.standard.RequestingUserName;
@@ -35,6 +36,8 @@ import org.ciju.ipp.IppEncoding;
 import org.ciju.ipp.IppException;
 import org.ciju.ipp.IppObject;
 import org.ciju.ipp.IppObjectFactory;
+import org.ciju.ipp.IppRequest;
+import org.ciju.ipp.IppRequestTemplate;
 import org.ciju.ipp.IppResponse;
 
 /**
@@ -59,15 +62,19 @@ public class CupsPrinter extends IppPrinter {
         return conn.getContent((IppObject) null);
     }
 
-    private CupsRequest createRequest(CupsEncoding.OpCode opCode, IppEncoding.GroupTag gTag) {
-        CupsRequest req = new CupsRequest(opCode, gTag);
-        req.addOperationAttribute(getPrinterUri());
-        req.addOperationAttribute(new RequestingUserName(prtsrv.getUserName(), req.getLocale()));
-        return req;
+    private IppRequest createRequest(CupsEncoding.OpCode opCode, IppEncoding.GroupTag gTag) {
+        IppRequestTemplate tmpl = getTemplate(opCode);
+        if (tmpl == null) {
+            CupsRequest req = new CupsRequest(opCode, IppEncoding.GroupTag.END);
+            req.addOperationAttribute(getPrinterUri());
+            req.addOperationAttribute(new RequestingUserName(prtsrv.getUserName(), req.getLocale()));
+            tmpl = putTemplate(opCode, req);
+        }
+        return tmpl.newRequest(gTag);
     }
 
     @Override
-    protected IppConnection getConnection() throws IOException {
+    protected URI getConnectionUri() {
         URI uri = getPrinterUri().getURI();
         try {
             // create a relative uri
@@ -76,7 +83,7 @@ public class CupsPrinter extends IppPrinter {
             // cannot happen
             logger.log(Level.SEVERE, null, ex);
         }
-        return prtsrv.getConnection(uri);
+        return uri;
     }
 
     // Stub for some unique CUPS Printer methods...
@@ -94,11 +101,22 @@ public class CupsPrinter extends IppPrinter {
      * @throws IppException if the returned status-code doesn't indicate <i>success</i>.
      */
     public Doc getPPD() throws IOException, IppException {
-        CupsRequest req = createRequest(CupsEncoding.OpCode.CUPS_GET_PPD, IppEncoding.GroupTag.END);
+        IppRequest req = createRequest(CupsEncoding.OpCode.CUPS_GET_PPD, IppEncoding.GroupTag.END);
         IppConnection conn = getConnection().setIppRequest(req);
         return getContent(conn).getDoc();
     }
 
+    /**
+     * Like {@link #getPPD()} without waiting for the server.
+     * @return a future of the PPD file for this printer, completing
+     *      exceptionally with the <tt>IOException</tt> or <tt>IppException</tt>
+     *      that <code>getPPD</code> would have thrown.
+     */
+    public CompletableFuture<Doc> getPPDAsync() {
+        IppRequest req = createRequest(CupsEncoding.OpCode.CUPS_GET_PPD, IppEncoding.GroupTag.END);
+        return getContentAsync(req).thenApply(r -> r.getDoc());
+    }
+
     /**
      * The CUPS-Set-Default operation (0x400A) sets the default printer destination for all
      * clients when a resource name of "/printers" is specified.
@@ -107,10 +125,21 @@ public class CupsPrinter extends IppPrinter {
      * @throws IppException if the returned status-code doesn't indicate <i>success</i>.
      */
     public void setAsDefault() throws IOException, IppException {
-        CupsRequest req = createRequest(CupsEncoding.OpCode.CUPS_SET_DEFAULT, IppEncoding.GroupTag.END);
+        IppRequest req = createRequest(CupsEncoding.OpCode.CUPS_SET_DEFAULT, IppEncoding.GroupTag.END);
         IppConnection conn = getConnection().setIppRequest(req);
         getContent(conn);
     }
+
+    /**
+     * Like {@link #setAsDefault()} without waiting for the server.
+     * @return a future completing once the printer is the default, or
+     *      exceptionally with the <tt>IOException</tt> or <tt>IppException</tt>
+     *      that <code>setAsDefault</code> would have thrown.
+     */
+    public CompletableFuture<Void> setAsDefaultAsync() {
+        IppRequest req = createRequest(CupsEncoding.OpCode.CUPS_SET_DEFAULT, IppEncoding.GroupTag.END);
+        return getContentAsync(req).thenApply(r -> (Void) null);
+    }
     
     public void rejectJobs() {
         throw new UnsupportedOperationException("Not implemented yet.");
@@ -21,6 +21,9 @@ import java.io.IOException;
 import java.net.PasswordAuthentication;
 import java.net.Proxy;
 import java.net.URI;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.logging.Level;
 import javax.print.DocFlavor;
 import javax.print.MultiDocPrintService;
@@ -32,6 +35,8 @@ import org.ciju.ipp.CupsEncoding;
 import org.ciju.ipp.CupsRequest;
 import org.ciju.ipp.IppEncoding;
 import org.ciju.ipp.IppException;
+import org.ciju.ipp.IppRequest;
+import org.ciju.ipp.IppRequestTemplate;
 import org.ciju.ipp.IppResponse;
 import org.ciju.ipp.attribute.GenericAttribute;
 
@@ -45,15 +50,25 @@ public class CupsServer extends PrintServer {
 //        logger = Logger.getLogger(name.substring(0, name.lastIndexOf('.')));
 //    }
 
+    /* Requests to this server are created from templates, per operation */
+    private final ConcurrentMap<CupsEncoding.OpCode, IppRequestTemplate> templates =
+            new ConcurrentHashMap<CupsEncoding.OpCode, IppRequestTemplate>();
+
     public CupsServer(URI uri, Proxy proxy, PasswordAuthentication authn) {
         super(uri, proxy, authn);
     }
 
-    private CupsRequest createRequest(CupsEncoding.OpCode opCode, IppEncoding.GroupTag gTag) {
-        CupsRequest req = new CupsRequest(opCode, gTag);
-        req.addOperationAttribute(new GenericAttribute("printer-uri", getUri(), IppEncoding.ValueTag.URI));
-        req.addOperationAttribute(new RequestingUserName(getUserName(), req.getLocale()));
-        return req;
+    private IppRequest createRequest(CupsEncoding.OpCode opCode, IppEncoding.GroupTag gTag) {
+        IppRequestTemplate tmpl = templates.get(opCode);
+        if (tmpl == null) {
+            CupsRequest req = new CupsRequest(opCode, IppEncoding.GroupTag.END);
+            req.addOperationAttribute(new GenericAttribute("printer-uri", getRequestUri(), IppEncoding.ValueTag.URI));
+            req.addOperationAttribute(new RequestingUserName(getUserName(), req.getLocale()));
+            IppRequestTemplate prev = templates.putIfAbsent(opCode, tmpl = new IppRequestTemplate(req));
+            if (prev != null)
+                tmpl = prev;
+        }
+        return tmpl.newRequest(gTag);
     }
 
     @Override
@@ -74,7 +89,7 @@ public class CupsServer extends PrintServer {
     @Override
     public PrintService getDefaultPrintService() {
         try {
-            CupsRequest req = createRequest(CupsEncoding.OpCode.CUPS_GET_DEFAULT, IppEncoding.GroupTag.END);
+            IppRequest req = createRequest(CupsEncoding.OpCode.CUPS_GET_DEFAULT, IppEncoding.GroupTag.END);
             IppConnection conn = getConnection().setIppRequest(req);
             CupsPrinter prt = new CupsPrinter(this);
             IppResponse<CupsPrinter> resp = conn.getContent(prt);
@@ -87,4 +102,21 @@ public class CupsServer extends PrintServer {
         return null;
     }
 
+    /**
+     * Gets the server's default printer with a CUPS-Get-Default operation,
+     * without waiting for the server.
+     * @return a future of the default printer, completing exceptionally
+     *      with the <tt>IOException</tt> or <tt>IppException</tt> that failed
+     *      the operation.
+     */
+    public CompletableFuture<CupsPrinter> getDefaultPrintServiceAsync() {
+        IppRequest req = createRequest(CupsEncoding.OpCode.CUPS_GET_DEFAULT, IppEncoding.GroupTag.END);
+        try {
+            IppConnection conn = getAsyncConnection().setIppRequest(req);
+            return conn.getContentAsync(new CupsPrinter(this)).thenApply(r -> r.getObject());
+        } catch (IOException ex) {
+            return CompletableFuture.failedFuture(ex);
+        }
+    }
+
 }
@@ -24,6 +24,9 @@ import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.ListIterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.logging.Level;
 import javax.print.DocFlavor;
@@ -52,6 +55,7 @@ import org.ciju.ipp.IppException;
 import org.ciju.ipp.IppObject;
 import org.ciju.ipp.IppObjectFactory;
 import org.ciju.ipp.IppRequest;
+import org.ciju.ipp.IppRequestTemplate;
 import org.ciju.ipp.IppResponse;
 
 /**
@@ -64,6 +68,9 @@ public class IppPrinter extends IppObject implements PrintService, MultiDocPrint
        listners registering but many more events fireing */
     private final CopyOnWriteArrayList<PrintServiceAttributeListener> psall;
     private final PrintServer prtsrv;
+    /* Requests to this printer are created from templates, per operation */
+    private final ConcurrentMap<Object, IppRequestTemplate> templates =
+            new ConcurrentHashMap<Object, IppRequestTemplate>();
 
     protected IppPrinter(PrintServer prtsrv, URI uri) {
         if (uri == null)
@@ -91,11 +98,45 @@ public class IppPrinter extends IppObject implements PrintService, MultiDocPrint
         return conn.getContent((IppObject) null);
     }
 
+    protected CompletableFuture<IppResponse<IppObject>> getContentAsync(IppRequest req) {
+        try {
+            return getAsyncConnection().setIppRequest(req).getContentAsync((IppObject) null);
+        } catch (IOException ex) {
+            return CompletableFuture.failedFuture(ex);
+        }
+    }
+
     private IppRequest createRequest(IppEncoding.OpCode opCode, IppEncoding.GroupTag gTag) {
-        IppRequest req = new IppRequest(opCode, gTag);
-        req.addOperationAttribute(getPrinterUri());
-        req.addOperationAttribute(new RequestingUserName(prtsrv.getUserName(), req.getLocale()));
-        return req;
+        IppRequestTemplate tmpl = getTemplate(opCode);
+        if (tmpl == null) {
+            IppRequest req = new IppRequest(opCode, IppEncoding.GroupTag.END);
+            req.addOperationAttribute(getPrinterUri());
+            req.addOperationAttribute(new RequestingUserName(prtsrv.getUserName(), req.getLocale()));
+            tmpl = putTemplate(opCode, req);
+        }
+        return tmpl.newRequest(gTag);
+    }
+
+    /**
+     * Get the cached request template of the given operation.
+     * @param opCode the operation code
+     * @return the template or <tt>null</tt> if none was cached.
+     */
+    /* package */ IppRequestTemplate getTemplate(Object opCode) {
+        return templates.get(opCode);
+    }
+
+    /**
+     * Cache a template of the given request for its operation, unless one
+     * was cached concurrently.
+     * @param opCode the operation code
+     * @param req a request with this printer's fixed operation attributes
+     * @return the cached template
+     */
+    /* package */ IppRequestTemplate putTemplate(Object opCode, IppRequest req) {
+        IppRequestTemplate tmpl = new IppRequestTemplate(req);
+        IppRequestTemplate prev = templates.putIfAbsent(opCode, tmpl);
+        return prev != null ? prev : tmpl;
     }
 
     public Collection<? extends IppJob> getJobs() {
@@ -121,6 +162,18 @@ public class IppPrinter extends IppObject implements PrintService, MultiDocPrint
     }
     
     protected IppConnection getConnection() throws IOException {
+        return prtsrv.getConnection(getConnectionUri());
+    }
+
+    protected IppConnection getAsyncConnection() throws IOException {
+        return prtsrv.getAsyncConnection(getConnectionUri());
+    }
+
+    /**
+     * Get the URI of this printer to connect to, relative if it is on
+     * the print server.
+     */
+    protected URI getConnectionUri() {
         URI uri = getPrinterUri().getURI();
         try {
             if (uri.isAbsolute() && uri.getAuthority().equals("localhost"))
@@ -130,7 +183,7 @@ public class IppPrinter extends IppObject implements PrintService, MultiDocPrint
             // cannot happen
             logger.log(Level.SEVERE, null, ex);
         }
-        return prtsrv.getConnection(uri);
+        return uri;
     }
 
     public String getName() {
@@ -225,6 +278,8 @@ public class IppPrinter extends IppObject implements PrintService, MultiDocPrint
     }
 
     protected boolean addAttribute(Attribute a) {
+        if (a instanceof PrinterURI)
+            templates.clear();  // templates hold the old printer-uri
         return psas.add(a);
     }
 
@@ -250,6 +305,17 @@ public class IppPrinter extends IppObject implements PrintService, MultiDocPrint
         IppConnection conn = getConnection().setIppRequest(req);
         getContent(conn);
     }
+
+    /**
+     * Like {@link #disable()} without waiting for the server.
+     * @return a future completing once the printer is disabled, or
+     *      exceptionally with the <tt>IOException</tt> or <tt>IppException</tt>
+     *      that <code>disable</code> would have thrown.
+     */
+    public CompletableFuture<Void> disableAsync() {
+        IppRequest req = createRequest(IppEncoding.OpCode.DISABLE_PRINTER, IppEncoding.GroupTag.END);
+        return getContentAsync(req).thenApply(r -> (Void) null);
+    }
     
 // </editor-fold>
 }
@@ -17,14 +17,22 @@
 
 package org.ciju.client;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.net.PasswordAuthentication;
 import java.net.Proxy;
 import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
 import java.util.List;
+import java.util.Locale;
 import java.util.ResourceBundle;
+import java.util.concurrent.ExecutorService;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.print.DocFlavor;
@@ -35,19 +43,28 @@ import javax.print.attribute.AttributeSet;
 import javax.print.event.PrintEvent;
 import org.ciju.client.event.EventDispatcher;
 import org.ciju.client.impl.apache.ApacheConnection;
+import org.ciju.client.impl.http.HttpClientConnection;
 import org.ciju.client.impl.ipp.Handler;
+import org.ciju.client.impl.nio.NioConnection;
+import org.ciju.client.ipp.BlockingCalls;
 import org.ciju.client.ipp.IppConnection;
 
 /**
  *
  * @author Opher Shachar
  */
-public class PrintServer extends PrintServiceLookup {
+public class PrintServer extends PrintServiceLookup implements Closeable {
 
+    @SuppressWarnings("removal")
     private final SecurityManager sm;
     private final URI uri;
     private final Proxy proxy;
     private final PasswordAuthentication authn;
+    private final Path socket;              // of a local server, or null
+    private ApacheConnection.Pool pool;     // the connections kept alive to the server
+    private HttpClient httpClient;          // likewise for the JDK HttpClient
+    private NioConnection.Pipeline pipeline;    // and the connection requests are pipelined on
+    private ExecutorService executor;       // of the asynchronous calls of blocking connections
 
     // Logging facilities
     private static final String packageName;
@@ -61,14 +78,12 @@ public class PrintServer extends PrintServiceLookup {
 
     // Register the IPP ContentHandler and URLStreamHandler
     private static final String REGISTER_HANDLERS = packageName + ".RegisterHandlers";
-    private static final boolean hndlrs;
-    static {
-        hndlrs = AccessController.doPrivileged(new PrivilegedAction<Boolean>() {
-            public Boolean run() {
-                return registerHandlers();
-            }
-        });
-    }
+    @SuppressWarnings("removal")
+    private static final boolean hndlrs = AccessController.doPrivileged(new PrivilegedAction<Boolean>() {
+        public Boolean run() {
+            return registerHandlers();
+        }
+    });
     
     private static boolean registerHandlers() {
         try {
@@ -119,6 +134,7 @@ public class PrintServer extends PrintServiceLookup {
         eventDispatcher.enqueuePrintEvent(event, listeners);
     }
 
+    @SuppressWarnings("removal")
     protected PrintServer(URI uri, Proxy proxy, PasswordAuthentication authn) {
         if (!uri.getScheme().equalsIgnoreCase("ipp") && 
             !uri.getScheme().equalsIgnoreCase("ipps"))
@@ -127,6 +143,19 @@ public class PrintServer extends PrintServiceLookup {
         this.uri = uri;
         this.proxy = proxy;
         this.authn = authn;
+        this.socket = getSocketPath(uri);
+    }
+
+    /**
+     * Returns the path of the Unix domain socket the URI is of, given as its
+     * percent-encoded authority (e.g. <tt>ipp://%2Frun%2Fcups%2Fcups.sock/</tt>),
+     * or <tt>null</tt> if the URI is of a host.
+     */
+    private static Path getSocketPath(URI uri) {
+        String auth = uri.getAuthority();
+        if (uri.getHost() != null || auth == null || !auth.startsWith("/"))
+            return null;
+        return Paths.get(auth);
     }
 
     private enum Type { CUPS, DEFAULT }
@@ -169,6 +198,25 @@ public class PrintServer extends PrintServiceLookup {
         }
     }
 
+    /**
+     * Create an instance of a {@link PrintServer} listening on a Unix domain
+     * socket, as a local CUPS server does on <tt>/run/cups/cups.sock</tt>.
+     * The connections to it are {@link NioConnection}S, whatever the
+     * configured connection library.
+     * <p>
+     * The URI of the server has the socket's path, percent-encoded, as its
+     * authority (e.g. <tt>ipp://%2Frun%2Fcups%2Fcups.sock/</tt>). A server
+     * created by {@link #create(URI, Proxy)} with such a URI is the same.
+     * 
+     * @param socket the path of the server's socket.
+     * @param authn the username/password to use for authentication. May be null.
+     * @return a <tt>PrintServer</tt> instance.
+     */
+    public static PrintServer create(Path socket, PasswordAuthentication authn) {
+        String path = URLEncoder.encode(socket.toAbsolutePath().toString(), StandardCharsets.UTF_8);
+        return create(URI.create("ipp://" + path.replace("+", "%20") + "/"), null, authn);
+    }
+
     /**
      * Get the value of uri
      *
@@ -178,6 +226,19 @@ public class PrintServer extends PrintServiceLookup {
         return uri;
     }
 
+    /**
+     * Get the URI of this server to give in requests. That of a server on a
+     * Unix domain socket has <tt>localhost</tt> as its host.
+     *
+     * @return the URI identifying this server to itself.
+     */
+    protected URI getRequestUri() {
+        if (socket == null)
+            return uri;
+        return URI.create("ipp://localhost" + uri.getRawPath());
+    }
+
+    @SuppressWarnings("removal")
     protected String getUserName() {
         if (authn != null)
             return authn.getUserName();
@@ -190,40 +251,151 @@ public class PrintServer extends PrintServiceLookup {
     }
 
     protected IppConnection getConnection() throws IOException {
-        return getConnection(uri, proxy, authn);
+        return getConnection(uri);
     }
 
     protected IppConnection getConnection(URI prtUri) throws IOException {
+        return openConnection(connectionUri(prtUri), getConnLib(uri));
+    }
+
+    protected IppConnection getAsyncConnection() throws IOException {
+        return getAsyncConnection(uri);
+    }
+
+    /**
+     * Get a connection for a request whose response is awaited without
+     * blocking. The connections of the JDK HttpClient and of the NIO library
+     * await it without holding a thread, so those of the JDK HttpClient are
+     * preferred unless a connection library was configured. The blocking
+     * calls of the others are made on this server's few threads.
+     *
+     * @param prtUri the URI of the printer (or other object) the request is for.
+     * @return a connection to this server.
+     * @throws IOException if failed to create a connection.
+     */
+    protected IppConnection getAsyncConnection(URI prtUri) throws IOException {
+        URI u = connectionUri(prtUri);
+        ConnLib lib = getConnLib(uri);
+        if (lib == ConnLib.APACHE || lib == ConnLib.URLC) {
+            if (!connLibConfigured) {
+                try {
+                    return openConnection(u, ConnLib.HTTPC);
+                } catch (NoClassDefFoundError e) {
+                    // The java.net.http module is not available.
+                }
+            }
+            return new BlockingConnection(openConnection(u, lib), getExecutor());
+        }
+        return openConnection(u, lib);
+    }
+
+    private URI connectionUri(URI prtUri) {
         if (!prtUri.isAbsolute() && prtUri.getAuthority() == null)
             // Only use given uri for connection if it points to this server
-            return getConnection(uri.resolve(prtUri), proxy, authn);
+            return uri.resolve(prtUri);
         // Otherwise, connect to this server ignoring printer-uri 
-        return getConnection(uri, proxy, authn);
+        return uri;
+    }
+
+    /* The connections of this server share a pool, created on first use */
+    private synchronized ApacheConnection.Pool getPool() {
+        if (pool == null)
+            pool = new ApacheConnection.Pool();
+        return pool;
+    }
+
+    /* The connections of this server share a client, created on first use */
+    private synchronized HttpClient getHttpClient() {
+        if (httpClient == null)
+            httpClient = HttpClientConnection.newClient(proxy);
+        return httpClient;
+    }
+
+    /* The requests to this server are pipelined on one connection */
+    private synchronized NioConnection.Pipeline getPipeline() {
+        if (pipeline == null)
+            pipeline = socket != null ?
+                    new NioConnection.Pipeline(socket) : new NioConnection.Pipeline(uri, proxy);
+        return pipeline;
+    }
+
+    /* The blocking calls of asynchronous requests run on these few threads */
+    private synchronized ExecutorService getExecutor() {
+        if (executor == null)
+            executor = BlockingCalls.newExecutor("ipp-server");
+        return executor;
+    }
+
+    /**
+     * Releases the threads and connections kept for this server. Requests
+     * awaited without blocking that were not yet sent fail.
+     */
+    public synchronized void close() throws IOException {
+        if (executor != null)
+            executor.shutdown();
+        if (pipeline != null)
+            pipeline.close();
+        executor = null;
+        pipeline = null;
+        httpClient = null;
+        if (pool != null) {
+            ApacheConnection.Pool p = pool;
+            pool = null;
+            p.close();
+        }
     }
 
-    private enum ConnLib { URLC, APACHE }
+    /**
+     * The connection library to use, one of <tt>APACHE</tt> (the Apache
+     * HttpClient), <tt>HTTPC</tt> (the JDK HttpClient) or <tt>URLC</tt> (the
+     * JDK HttpURLConnection). By default the first available in that order.
+     * <tt>NIO</tt> (requests pipelined on a <tt>SocketChannel</tt>, without
+     * TLS) is only used if so configured, and then not for <tt>ipps</tt>
+     * servers, which are connected to with the first available of
+     * <tt>HTTPC</tt>, <tt>APACHE</tt> and <tt>URLC</tt>.
+     */
+    private static final String CONNECTION_LIBRARY = packageName + ".ConnectionLibrary";
+
+    private enum ConnLib { URLC, APACHE, HTTPC, NIO }
     private static ConnLib connLib;
-    private static IppConnection getConnection(URI uri, Proxy proxy, PasswordAuthentication authn) throws IOException {
-        IppConnection conn;
-        
+    private static ConnLib tlsConnLib;                  // in place of NIO for ipps servers
+    private static volatile boolean connLibConfigured;  // by CONNECTION_LIBRARY
+
+    private ConnLib getConnLib(URI uri) throws IOException {
+        if (socket != null)
+            // only NioConnection can connect to a Unix domain socket
+            return ConnLib.NIO;
         if (connLib == null) {
             // This is the first connection to be requested. Decide on a connection library.
             synchronized (PrintServer.class) {
                 /* FWIW: The Double-checked locking pattern here is safe as connLib is an enum. */
-                if (connLib == null) {
-                    try {
-                        conn = new ApacheConnection(uri, proxy);
-                        connLib = ConnLib.APACHE;
-                    } catch (NoClassDefFoundError e) {
-                        // Apache http client is not available.
-                        connLib = ConnLib.URLC;
-                    }
-                }
+                if (connLib == null)
+                    connLib = selectConnLib(uri);
             }
         }
-        switch (connLib) {
+        if (connLib == ConnLib.NIO && uri.getScheme().equalsIgnoreCase("ipps")) {
+            // NioConnection has no TLS
+            synchronized (PrintServer.class) {
+                if (tlsConnLib == null)
+                    tlsConnLib = selectTlsConnLib(uri);
+                return tlsConnLib;
+            }
+        }
+        return connLib;
+    }
+
+    private IppConnection openConnection(URI uri, ConnLib lib) throws IOException {
+        IppConnection conn;
+        
+        switch (lib) {
             case APACHE:
-                conn = new ApacheConnection(uri, proxy);
+                conn = new ApacheConnection(getPool(), uri, proxy);
+                break;
+            case HTTPC:
+                conn = new HttpClientConnection(getHttpClient(), uri);
+                break;
+            case NIO:
+                conn = new NioConnection(getPipeline(), uri);
                 break;
             case URLC:
                 conn = Handler.openConnection(uri, proxy);
@@ -238,6 +410,45 @@ public class PrintServer extends PrintServiceLookup {
         return conn;
     }
 
+    private ConnLib selectConnLib(URI uri) throws IOException {
+        String lib = System.getProperty(CONNECTION_LIBRARY);
+        if (lib != null) {
+            ConnLib l = ConnLib.valueOf(lib.toUpperCase(Locale.ENGLISH));
+            connLibConfigured = true;
+            return l;
+        }
+        try {
+            new ApacheConnection(getPool(), uri, proxy);
+            return ConnLib.APACHE;
+        } catch (NoClassDefFoundError e) {
+            // Apache http client is not available.
+        }
+        try {
+            getHttpClient();
+            return ConnLib.HTTPC;
+        } catch (NoClassDefFoundError e) {
+            // The java.net.http module is not available.
+        }
+        return ConnLib.URLC;
+    }
+
+    /* Select the library to use instead of NIO for TLS, preferring an asynchronous one */
+    private ConnLib selectTlsConnLib(URI uri) throws IOException {
+        try {
+            getHttpClient();
+            return ConnLib.HTTPC;
+        } catch (NoClassDefFoundError e) {
+            // The java.net.http module is not available.
+        }
+        try {
+            new ApacheConnection(getPool(), uri, proxy);
+            return ConnLib.APACHE;
+        } catch (NoClassDefFoundError e) {
+            // Apache http client is not available.
+        }
+        return ConnLib.URLC;
+    }
+
     @Override
     public PrintService[] getPrintServices(DocFlavor flavor, AttributeSet attributes) {
         if (sm != null)
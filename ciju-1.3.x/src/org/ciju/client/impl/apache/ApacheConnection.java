@@ -17,41 +17,432 @@
 
 package org.ciju.client.impl.apache;
 
+import java.io.Closeable;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
 import java.net.PasswordAuthentication;
 import java.net.Proxy;
+import java.net.ProxySelector;
 import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
 import java.util.List;
-import org.ciju.ipp.IppObjectFactory;
+import java.util.Map;
+import java.util.ResourceBundle;
+import java.util.WeakHashMap;
+import java.util.concurrent.TimeUnit;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.protocol.HttpContext;
+import org.ciju.client.impl.Base64Coder;
 import org.ciju.client.ipp.IppConnection;
+import org.ciju.ipp.AttributeFilter;
+import org.ciju.ipp.IppCodec;
+import org.ciju.ipp.IppEncoding;
+import org.ciju.ipp.IppEncoding.StatusCode;
+import org.ciju.ipp.IppException;
+import org.ciju.ipp.IppMultiObject;
 import org.ciju.ipp.IppObject;
+import org.ciju.ipp.IppObjectFactory;
 import org.ciju.ipp.IppRequest;
 import org.ciju.ipp.IppResponse;
+import org.ciju.ipp.attribute.GenericValue;
 
 
+/**
+ * Implementation of an IPP connection over the Apache HttpClient. Like
+ * {@link org.ciju.client.impl.ipp.IppURLConnectionImpl} an instance sends a
+ * single IPP request, but the HTTP connection it's sent on is taken from a
+ * {@link Pool} shared by the <tt>ApacheConnection</tt>S to a print server.
+ * IPP requests thus reuse the TCP (and TLS) connections kept alive by earlier
+ * ones.
+ *
+ * @author Opher Shachar
+ */
 public class ApacheConnection implements IppConnection {
 
+    /* package */ static final ResourceBundle resourceStrings = ResourceBundle.getBundle("org/ciju/ResourceStrings");
+
+    private final Pool pool;
+    private final HttpPost post;
+    private IppRequest ipp;
+    private AttributeFilter filter;
+    private boolean sent;
+
+    /**
+     * Creates a connection from the {@linkplain Pool#getDefault() default}
+     * pool.
+     *
+     * @see #ApacheConnection(Pool, URI, Proxy)
+     */
     public ApacheConnection(URI uri, Proxy proxy) throws IOException {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+        this(Pool.getDefault(), uri, proxy);
+    }
+
+    /**
+     * Creates a connection from the given pool.
+     *
+     * @param pool the pool of connections to take the HTTP connection from.
+     * @param uri the <tt>ipp</tt> or <tt>ipps</tt> URI to post the request to.
+     * @param proxy the {@linkplain Proxy} through which to connect,
+     *      {@linkplain Proxy#NO_PROXY} for direct connection or <code>null</code>
+     *      to use the system's default {@linkplain ProxySelector} settings.
+     * @throws IllegalArgumentException if the scheme of <tt>uri</tt> is not
+     *      one of <strong>ipp ipps http https</strong> or if <tt>proxy</tt> is
+     *      not an HTTP proxy.
+     * @throws IOException if failed to create a connection.
+     */
+    public ApacheConnection(Pool pool, URI uri, Proxy proxy) throws IOException {
+        this.pool = pool;
+        URI hu = toHttpUri(uri);
+        post = new HttpPost(hu);
+        HttpHost proxyHost = toHttpHost(hu, proxy);
+        if (proxyHost != null)
+            post.setConfig(RequestConfig.custom().setProxy(proxyHost).build());
+    }
+
+    private static URI toHttpUri(URI u) {
+        String scheme = u.getScheme();
+        if (scheme.equalsIgnoreCase("ipp"))
+            scheme = "http";
+        else if (scheme.equalsIgnoreCase("ipps"))
+            scheme = "https";
+        else if (scheme.equalsIgnoreCase("http") || scheme.equalsIgnoreCase("https"))
+            return u;
+        else
+            throw new IllegalArgumentException(resourceStrings.getString("THE SCHEME MAY ONLY BE IPP OR IPPS."));
+        int port = u.getPort() == -1 ? IppEncoding.PORT : u.getPort();
+        try {
+            return new URI(scheme, u.getUserInfo(), u.getHost(), port, u.getPath(),
+                    u.getQuery(), u.getFragment());
+        } catch (URISyntaxException ex) {
+            throw new IllegalArgumentException(ex);
+        }
+    }
+
+    private static HttpHost toHttpHost(URI hu, Proxy p) {
+        if (p == null) {
+            ProxySelector ps = ProxySelector.getDefault();
+            List<Proxy> l = ps != null ? ps.select(hu) : null;
+            if (l == null || l.isEmpty())
+                return null;
+            p = l.get(0);
+        }
+        switch (p.type()) {
+            case DIRECT:
+                return null;
+            case HTTP:
+                InetSocketAddress addr = (InetSocketAddress) p.address();
+                return new HttpHost(addr.getHostName(), addr.getPort());
+            default:
+                throw new IllegalArgumentException(resourceStrings.getString("ONLY HTTP PROXIES ARE SUPPORTED."));
+        }
     }
 
     public IppConnection setIppRequest(IppRequest request) {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+        if (sent)
+            throw new IllegalStateException(resourceStrings.getString("ALREADY CONNECTED"));
+        if (request == null)
+            throw new NullPointerException();
+        ipp = request;
+        post.setHeader("Accept-Language", GenericValue.getNaturalLanguage(ipp.getLocale()));
+        return this;
     }
 
     public IppRequest getIppRequest() {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+        return ipp;
     }
 
-    public <T extends IppObject> IppResponse<T> getContent(T obj) throws IOException {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+    /**
+     * {@inheritDoc}
+     * <p>Like {@link org.ciju.client.impl.ipp.IppURLConnectionImpl} the
+     * credentials are sent preemptively with <tt>Basic</tt> authentication.
+     * @throws NullPointerException if <tt>authn</tt> is <code>null</code>.
+     */
+    public IppConnection setPasswordAuthentication(PasswordAuthentication authn) {
+        if (sent)
+            throw new IllegalStateException(resourceStrings.getString("ALREADY CONNECTED"));
+        StringBuilder auths = new StringBuilder(authn.getUserName())
+                .append(':').append(authn.getPassword());
+        post.setHeader("Authorization", "Basic " + Base64Coder.encodeString(auths.toString()));
+        return this;
     }
 
-    public <T extends IppObject> List<T> getContent(IppObjectFactory<T> fact) throws IOException {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+    public IppConnection setAttributeFilter(AttributeFilter filter) {
+        this.filter = filter;
+        return this;
     }
 
-    public IppConnection setPasswordAuthentication(PasswordAuthentication authn) {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+    /**
+     * @see IppConnection#getContent(IppObject)
+     */
+    public <T extends IppObject> IppResponse<T> getContent(T obj) throws IOException, IppException {
+        return checkResponse(execute(new IppResponseHandler<T>(obj, filter)));
+    }
+
+    /**
+     * @see IppConnection#getContent(IppObjectFactory)
+     */
+    public <T extends IppObject> List<T> getContent(IppObjectFactory<T> fact) throws IOException, IppException {
+        final List<T> list = new ArrayList<T>();
+        final IppMultiObject<T> imo = new IppMultiObject<T>(list, fact);
+        checkResponse(execute(new IppResponseHandler<IppMultiObject<T>>(imo, filter)));
+        /* ignore the returned IppResponse */
+        return list;
+    }
+
+    /**
+     * Sends the request and decodes the response, after which the HTTP
+     * connection is back in the pool.
+     */
+    private <T extends IppObject> IppResponse<T> execute(IppResponseHandler<T> handler) throws IOException {
+        if (ipp == null)
+            throw new IllegalStateException(resourceStrings.getString("IPP REQUEST WAS NOT SET."));
+        if (sent)
+            throw new IllegalStateException(resourceStrings.getString("ALREADY CONNECTED"));
+        sent = true;
+        post.setEntity(new IppRequestEntity(ipp));
+        return pool.client.execute(post, handler);
+    }
+
+    /**
+     * Check the response for it's status code and if it's an error throw {@link IppException}.
+     * @param resp the {@linkplain IppResponse} argument.
+     * @return the <tt>resp</tt> parameter (if an exception was not thrown).
+     */
+    private <T extends IppObject> IppResponse<T> checkResponse(IppResponse<T> resp) throws IppException {
+        if (resp.getResponseCode() >= StatusCode.INFORMATIONAL.getValue())
+            throw new IppException(resp, ipp);
+        return resp;
+    }
+
+    /**
+     * The request streamed by the encoder, of a known <tt>Content-Length</tt>
+     * unless the document's length isn't known, in which case it's chunked.
+     */
+    private static class IppRequestEntity extends AbstractHttpEntity {
+        private final IppRequest ipp;
+        private final long length;
+
+        IppRequestEntity(IppRequest ipp) throws IOException {
+            this.ipp = ipp;
+            IppCodec codec = IppCodec.acquire();
+            try {
+                length = codec.getContentLength(ipp);
+            } finally {
+                IppCodec.release(codec);
+            }
+            setContentType("application/ipp");
+            setChunked(length < 0);
+        }
+
+        public boolean isRepeatable() {
+            return false;
+        }
+
+        public long getContentLength() {
+            return length;
+        }
+
+        public InputStream getContent() {
+            throw new UnsupportedOperationException();
+        }
+
+        public void writeTo(OutputStream os) throws IOException {
+            IppCodec codec = IppCodec.acquire();
+            try {
+                codec.writeRequest(os, ipp);
+            } finally {
+                IppCodec.release(codec);
+            }
+        }
+
+        public boolean isStreaming() {
+            return false;
+        }
+    }
+
+    /**
+     * The HTTP connections to print servers, shared by the
+     * <tt>ApacheConnection</tt>S created with it. A pool holds at most a
+     * number of connections in total and per route (the server and proxy
+     * connected through). Connections are kept alive for the idle timeout,
+     * or for less if the server says so in its <tt>Keep-Alive</tt> header,
+     * and connections idle for longer are closed in the background.
+     * <p>
+     * The defaults are taken from the system properties
+     * <tt>org.ciju.client.impl.apache.MaxConnections</tt> (20),
+     * <tt>org.ciju.client.impl.apache.MaxConnectionsPerRoute</tt> (10) and
+     * <tt>org.ciju.client.impl.apache.IdleTimeout</tt> (20 seconds, less
+     * than the 30 seconds CUPS keeps an idle connection).
+     */
+    public static final class Pool implements Closeable {
+        private static final String PREFIX;
+        static {
+            String name = ApacheConnection.class.getName();
+            PREFIX = name.substring(0, name.lastIndexOf('.') + 1);
+        }
+        private static final int MAX_TOTAL = getInteger("MaxConnections", 20);
+        private static final int MAX_PER_ROUTE = getInteger("MaxConnectionsPerRoute", 10);
+        private static final int IDLE_TIMEOUT = getInteger("IdleTimeout", 20);
+        // connections idle longer than this are checked before being reused
+        private static final int VALIDATE_AFTER = 2000;
+        // the interval between sweeps for idle connections
+        private static final long EVICT_INTERVAL = 5000;
+
+        private static int getInteger(String name, int def) {
+            return Integer.getInteger(PREFIX + name, def);
+        }
+
+        private final PoolingHttpClientConnectionManager cm;
+        private final CloseableHttpClient client;
+        private final long idleTimeout;
+
+        /** Creates a pool with the default limits and idle timeout */
+        public Pool() {
+            this(MAX_TOTAL, MAX_PER_ROUTE, IDLE_TIMEOUT);
+        }
+
+        /**
+         * @param maxTotal the most connections in the pool.
+         * @param maxPerRoute the most connections per route.
+         * @param idleTimeout the seconds a connection is kept alive idle.
+         */
+        public Pool(int maxTotal, int maxPerRoute, int idleTimeout) {
+            this.idleTimeout = TimeUnit.SECONDS.toMillis(idleTimeout);
+            // use the system's SSL settings as HttpsURLConnection does
+            cm = new PoolingHttpClientConnectionManager(RegistryBuilder.<ConnectionSocketFactory>create()
+                    .register("http", PlainConnectionSocketFactory.getSocketFactory())
+                    .register("https", SSLConnectionSocketFactory.getSystemSocketFactory())
+                    .build());
+            cm.setMaxTotal(maxTotal);
+            cm.setDefaultMaxPerRoute(maxPerRoute);
+            cm.setValidateAfterInactivity(VALIDATE_AFTER);
+            client = HttpClients.custom()
+                    .setConnectionManager(cm)
+                    .setKeepAliveStrategy(new ConnectionKeepAliveStrategy() {
+                        public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+                            long d = DefaultConnectionKeepAliveStrategy.INSTANCE
+                                    .getKeepAliveDuration(response, context);
+                            return d > 0 && d < Pool.this.idleTimeout ? d : Pool.this.idleTimeout;
+                        }
+                    })
+                    .build();
+            register(this);
+        }
+
+        private static Pool defaultPool;
+
+        /**
+         * @return the pool shared by the connections not created with a pool
+         *      of their own.
+         */
+        public static synchronized Pool getDefault() {
+            if (defaultPool == null)
+                defaultPool = new Pool();
+            return defaultPool;
+        }
+
+        /**
+         * Sets the most connections to the server of <tt>uri</tt>, when
+         * connected to directly.
+         *
+         * @param uri the URI of the server.
+         * @param max the most connections.
+         */
+        public void setMaxPerRoute(URI uri, int max) {
+            setMaxPerRoute(uri, Proxy.NO_PROXY, max);
+        }
+
+        /**
+         * Sets the most connections to the server of <tt>uri</tt>, when
+         * connected to through <tt>proxy</tt>.
+         *
+         * @param uri the URI of the server.
+         * @param proxy the proxy as given to the connections, <code>null</code>
+         *      for the system's default {@linkplain ProxySelector} settings.
+         * @param max the most connections.
+         */
+        public void setMaxPerRoute(URI uri, Proxy proxy, int max) {
+            cm.setMaxPerRoute(toHttpRoute(toHttpUri(uri), proxy), max);
+        }
+
+        /* The route the client's DefaultRoutePlanner takes for a request to hu */
+        private static HttpRoute toHttpRoute(URI hu, Proxy proxy) {
+            boolean secure = hu.getScheme().equalsIgnoreCase("https");
+            int port = hu.getPort() != -1 ? hu.getPort() : secure ? 443 : 80;
+            HttpHost target = new HttpHost(hu.getHost(), port, hu.getScheme());
+            HttpHost proxyHost = toHttpHost(hu, proxy);
+            if (proxyHost == null)
+                return new HttpRoute(target, null, secure);
+            return new HttpRoute(target, null, proxyHost, secure);
+        }
+
+        /**
+         * Closes the connections of this pool, which may not be used again.
+         * The evictor thread ends once no pool is left open.
+         */
+        public void close() throws IOException {
+            synchronized (Pool.class) {
+                pools.remove(this);
+                if (defaultPool == this)
+                    defaultPool = null;
+            }
+            client.close();
+        }
+
+        private void evict() {
+            cm.closeExpiredConnections();
+            cm.closeIdleConnections(idleTimeout, TimeUnit.MILLISECONDS);
+        }
+
+        // Idle connections evictor thread, sweeping the pools weakly held
+        private static final Map<Pool, Object> pools = new WeakHashMap<Pool, Object>();
+        private static Thread evictorThread = null;
+
+        private static synchronized void register(Pool pool) {
+            pools.put(pool, null);
+            if (evictorThread == null) {
+                evictorThread = new Thread(new Runnable() {
+                    public void run() {
+                        while (true) {
+                            try {
+                                Thread.sleep(EVICT_INTERVAL);
+                            } catch (InterruptedException ex) {
+                                return;
+                            }
+                            Pool[] ps;
+                            synchronized (Pool.class) {
+                                if (pools.isEmpty()) {
+                                    // all closed or collected; register starts another
+                                    evictorThread = null;
+                                    return;
+                                }
+                                ps = pools.keySet().toArray(new Pool[pools.size()]);
+                            }
+                            for (Pool p : ps)
+                                p.evict();
+                        }
+                    }
+                }, "IPP idle connections evictor");
+                evictorThread.setDaemon(true);
+                evictorThread.start();
+            }
+        }
     }
 }
@@ -18,24 +18,67 @@
 package org.ciju.client.impl.apache;
 
 import java.io.IOException;
+import java.net.UnknownServiceException;
+import java.text.MessageFormat;
+import java.util.Locale;
+import org.apache.http.Header;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
+import org.apache.http.StatusLine;
 import org.apache.http.client.ClientProtocolException;
+import org.apache.http.client.HttpResponseException;
 import org.apache.http.client.ResponseHandler;
+import org.apache.http.util.EntityUtils;
+import static org.ciju.client.impl.apache.ApacheConnection.resourceStrings;
+import org.ciju.ipp.AttributeFilter;
 import org.ciju.ipp.IppTransport;
 import org.ciju.ipp.IppObject;
 import org.ciju.ipp.IppResponse;
 
 
 /**
- * This class is part of the Apache HttpClient supporting classes.
+ * This class is part of the Apache HttpClient supporting classes. It decodes
+ * the IPP response of a successful HTTP response, populating the given
+ * object, and fails any other HTTP response with
+ * {@link HttpResponseException}.
  * @author Opher
  */
-public class IppResponseHandler implements ResponseHandler<IppResponse<IppObject>> {
+public class IppResponseHandler<T extends IppObject> implements ResponseHandler<IppResponse<T>> {
 
-    public IppResponse<IppObject> handleResponse(HttpResponse response) throws ClientProtocolException, IOException {
+    private final T obj;
+    private final AttributeFilter filter;
+
+    /**
+     * Creates a handler returning the response as is.
+     */
+    public IppResponseHandler() {
+        this(null, null);
+    }
+
+    /**
+     * @param obj the object to populate from the response. Can be
+     *      <code>null</code>.
+     * @param filter the attributes wanted or <code>null</code> to decode all.
+     */
+    public IppResponseHandler(T obj, AttributeFilter filter) {
+        this.obj = obj;
+        this.filter = filter;
+    }
+
+    public IppResponse<T> handleResponse(HttpResponse response) throws ClientProtocolException, IOException {
+        final StatusLine status = response.getStatusLine();
         final HttpEntity entity = response.getEntity();
-        return IppTransport.processResponse(entity.getContent(), entity.getContentLength());
+        if (status.getStatusCode() >= 300) {
+            EntityUtils.consume(entity);
+            throw new HttpResponseException(status.getStatusCode(), status.getReasonPhrase());
+        }
+        if (entity == null)
+            throw new ClientProtocolException(resourceStrings.getString("THE RESPONSE HAS NO CONTENT."));
+        Header ct = entity.getContentType();
+        if (ct != null && !ct.getValue().toLowerCase(Locale.ENGLISH).startsWith("application/ipp"))
+            throw new UnknownServiceException(MessageFormat.format(
+                    resourceStrings.getString("UNEXPECTED CONTENT-TYPE {0}."), ct.getValue()));
+        return IppTransport.processResponse(entity.getContent(), entity.getContentLength(), obj, filter);
     }
 
 }
@@ -0,0 +1,296 @@
+/*
+ * Copyright (C) 2012-2016 Opher Shachar
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ciju.client.impl.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
+import java.net.PasswordAuthentication;
+import java.net.Proxy;
+import java.net.ProxySelector;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ResourceBundle;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.ciju.client.impl.Base64Coder;
+import org.ciju.client.ipp.BlockingCalls;
+import org.ciju.client.ipp.IppConnection;
+import org.ciju.ipp.AttributeFilter;
+import org.ciju.ipp.IppEncoding;
+import org.ciju.ipp.IppEncoding.StatusCode;
+import org.ciju.ipp.IppException;
+import org.ciju.ipp.IppMultiObject;
+import org.ciju.ipp.IppObject;
+import org.ciju.ipp.IppObjectFactory;
+import org.ciju.ipp.IppRequest;
+import org.ciju.ipp.IppResponse;
+import org.ciju.ipp.attribute.GenericValue;
+
+
+/**
+ * Implementation of an IPP connection over the JDK {@link HttpClient}. Like
+ * {@link org.ciju.client.impl.ipp.IppURLConnectionImpl} an instance sends a
+ * single IPP request, on a client that's best shared by the connections to a
+ * print server (see {@link #newClient(Proxy)}) so they reuse the HTTP
+ * connections it keeps alive.
+ * <p>
+ * The request is streamed from the encoder by an {@link IppBodyPublisher}
+ * and the response decoded from the stream of its body, as it arrives, by
+ * the thread waiting for it or, for asynchronous calls, by a thread of the
+ * client's executor. The reads of a document given as a stream likewise
+ * block a thread of the client, for as long as the stream does.
+ *
+ * @author Opher Shachar
+ */
+public class HttpClientConnection implements IppConnection {
+
+    /* package */ static final ResourceBundle resourceStrings = ResourceBundle.getBundle("org/ciju/ResourceStrings");
+
+    private final HttpClient client;
+    private final HttpRequest.Builder builder;
+    private IppRequest ipp;
+    private AttributeFilter filter;
+    private boolean sent;
+
+    /**
+     * @param client the client to send the request with.
+     * @param uri the <tt>ipp</tt> or <tt>ipps</tt> URI to post the request to.
+     * @throws IllegalArgumentException if the scheme of <tt>uri</tt> is not
+     *      one of <strong>ipp ipps http https</strong>.
+     */
+    public HttpClientConnection(HttpClient client, URI uri) {
+        this.client = client;
+        this.builder = HttpRequest.newBuilder(toHttpUri(uri))
+                .header("Content-Type", "application/ipp");
+    }
+
+    /**
+     * Creates a client for the connections to a print server.
+     *
+     * @param proxy the {@linkplain Proxy} through which to connect,
+     *      {@linkplain Proxy#NO_PROXY} for direct connection or <code>null</code>
+     *      to use the system's default {@linkplain ProxySelector} settings.
+     * @return a new client speaking HTTP/1.1, as IPP servers do, with an
+     *      executor of daemon threads the asynchronous calls decode on.
+     * @throws IllegalArgumentException if <tt>proxy</tt> is not an HTTP proxy.
+     */
+    public static HttpClient newClient(Proxy proxy) {
+        HttpClient.Builder b = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .followRedirects(HttpClient.Redirect.NEVER)
+                .executor(Executors.newCachedThreadPool(new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger();
+
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, "ipp-httpclient-" + count.incrementAndGet());
+                        t.setDaemon(true);
+                        return t;
+                    }
+                }));
+        if (proxy == null) {
+            ProxySelector ps = ProxySelector.getDefault();
+            if (ps != null)
+                b.proxy(ps);
+        }
+        else if (proxy.type() == Proxy.Type.HTTP)
+            b.proxy(ProxySelector.of((InetSocketAddress) proxy.address()));
+        else if (proxy.type() != Proxy.Type.DIRECT)
+            throw new IllegalArgumentException(resourceStrings.getString("ONLY HTTP PROXIES ARE SUPPORTED."));
+        return b.build();
+    }
+
+    private static URI toHttpUri(URI u) {
+        String scheme = u.getScheme();
+        if (scheme.equalsIgnoreCase("ipp"))
+            scheme = "http";
+        else if (scheme.equalsIgnoreCase("ipps"))
+            scheme = "https";
+        else if (scheme.equalsIgnoreCase("http") || scheme.equalsIgnoreCase("https"))
+            return u;
+        else
+            throw new IllegalArgumentException(resourceStrings.getString("THE SCHEME MAY ONLY BE IPP OR IPPS."));
+        int port = u.getPort() == -1 ? IppEncoding.PORT : u.getPort();
+        try {
+            return new URI(scheme, u.getUserInfo(), u.getHost(), port, u.getPath(),
+                    u.getQuery(), u.getFragment());
+        } catch (URISyntaxException ex) {
+            throw new IllegalArgumentException(ex);
+        }
+    }
+
+    public IppConnection setIppRequest(IppRequest request) {
+        if (sent)
+            throw new IllegalStateException(resourceStrings.getString("ALREADY CONNECTED"));
+        if (request == null)
+            throw new NullPointerException();
+        ipp = request;
+        builder.setHeader("Accept-Language", GenericValue.getNaturalLanguage(ipp.getLocale()));
+        return this;
+    }
+
+    public IppRequest getIppRequest() {
+        return ipp;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>Like {@link org.ciju.client.impl.ipp.IppURLConnectionImpl} the
+     * credentials are sent preemptively with <tt>Basic</tt> authentication.
+     * @throws NullPointerException if <tt>authn</tt> is <code>null</code>.
+     */
+    public IppConnection setPasswordAuthentication(PasswordAuthentication authn) {
+        if (sent)
+            throw new IllegalStateException(resourceStrings.getString("ALREADY CONNECTED"));
+        StringBuilder auths = new StringBuilder(authn.getUserName())
+                .append(':').append(authn.getPassword());
+        builder.setHeader("Authorization", "Basic " + Base64Coder.encodeString(auths.toString()));
+        return this;
+    }
+
+    public IppConnection setAttributeFilter(AttributeFilter filter) {
+        this.filter = filter;
+        return this;
+    }
+
+    /**
+     * @see IppConnection#getContent(IppObject)
+     */
+    public <T extends IppObject> IppResponse<T> getContent(T obj) throws IOException, IppException {
+        return checkResponse(IppBodySubscriber.decode(await(sendAsync()), obj, filter));
+    }
+
+    /**
+     * @see IppConnection#getContent(IppObjectFactory)
+     */
+    public <T extends IppObject> List<T> getContent(IppObjectFactory<T> fact) throws IOException, IppException {
+        final List<T> list = new ArrayList<T>();
+        final IppMultiObject<T> imo = new IppMultiObject<T>(list, fact);
+        checkResponse(IppBodySubscriber.decode(await(sendAsync()), imo, filter));
+        /* ignore the returned IppResponse */
+        return list;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>No thread is held while waiting for the server to reply, the
+     * response is then decoded as it arrives by a thread of the client's
+     * executor, or if it has none of the executor of {@link BlockingCalls}.
+     */
+    @Override
+    public <T extends IppObject> CompletableFuture<IppResponse<T>> getContentAsync(final T obj) {
+        final CompletableFuture<IppResponse<T>> f = new CompletableFuture<IppResponse<T>>();
+        CompletableFuture<HttpResponse<InputStream>> rf;
+        try {
+            rf = sendAsync();
+        } catch (IOException ex) {
+            return CompletableFuture.failedFuture(ex);
+        }
+        rf.whenComplete((r, t) -> {
+            if (t != null) {
+                f.completeExceptionally(t instanceof CompletionException && t.getCause() != null ? t.getCause() : t);
+                return;
+            }
+            Callable<IppResponse<T>> decode = new Callable<IppResponse<T>>() {
+                public IppResponse<T> call() throws IOException, IppException {
+                    return checkResponse(IppBodySubscriber.decode(r, obj, filter));
+                }
+            };
+            Executor e = client.executor().orElse(null);
+            (e != null ? BlockingCalls.submit(e, decode) : BlockingCalls.submit(decode)).whenComplete((v, x) -> {
+                if (x != null)
+                    f.completeExceptionally(x);
+                else
+                    f.complete(v);
+            });
+        });
+        return f;
+    }
+
+    /**
+     * {@inheritDoc}
+     * @see #getContentAsync(IppObject)
+     */
+    @Override
+    public <T extends IppObject> CompletableFuture<List<T>> getContentAsync(IppObjectFactory<T> fact) {
+        final List<T> list = new ArrayList<T>();
+        final IppMultiObject<T> imo = new IppMultiObject<T>(list, fact);
+        /* ignore the returned IppResponse */
+        return getContentAsync(imo).thenApply(r -> list);
+    }
+
+    /**
+     * Sends the request, the future completing once the response's headers
+     * arrive, with the stream of its body.
+     */
+    private CompletableFuture<HttpResponse<InputStream>> sendAsync() throws IOException {
+        if (ipp == null)
+            throw new IllegalStateException(resourceStrings.getString("IPP REQUEST WAS NOT SET."));
+        if (sent)
+            throw new IllegalStateException(resourceStrings.getString("ALREADY CONNECTED"));
+        sent = true;
+        HttpRequest req = builder.POST(new IppBodyPublisher(ipp)).build();
+        return client.sendAsync(req, IppBodySubscriber.handler());
+    }
+
+    /**
+     * Waits for the response, throwing what failed it as is rather than
+     * wrapped as {@link HttpClient#send} does.
+     */
+    private static <R> R await(CompletableFuture<R> f) throws IOException {
+        try {
+            return f.get();
+        } catch (ExecutionException ex) {
+            Throwable t = ex.getCause();
+            if (t instanceof IOException)
+                throw (IOException) t;
+            if (t instanceof RuntimeException)
+                throw (RuntimeException) t;
+            if (t instanceof Error)
+                throw (Error) t;
+            throw new IOException(t);
+        } catch (InterruptedException ex) {
+            f.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+    }
+
+    /**
+     * Check the response for it's status code and if it's an error throw {@link IppException}.
+     * @param resp the {@linkplain IppResponse} argument.
+     * @return the <tt>resp</tt> parameter (if an exception was not thrown).
+     */
+    private <T extends IppObject> IppResponse<T> checkResponse(IppResponse<T> resp) throws IppException {
+        if (resp.getResponseCode() >= StatusCode.INFORMATIONAL.getValue())
+            throw new IppException(resp, ipp);
+        return resp;
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright (C) 2012-2016 Opher Shachar
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ciju.client.impl.http;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ByteArrayOutputStream;
+import java.net.http.HttpRequest.BodyPublisher;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import static org.ciju.client.impl.http.HttpClientConnection.resourceStrings;
+import javax.print.Doc;
+import org.ciju.ipp.IppCodec;
+import org.ciju.ipp.IppRequest;
+
+/**
+ * Publishes an IPP request as the body of an HTTP request: the head encoded
+ * by {@link IppCodec} followed by the document's data as it's read, one
+ * buffer per unit of demand. The document is only read, and never whole,
+ * as the client asks for more of the body: a document stream is read on the
+ * thread of the client that asks, which blocks while the stream does. A
+ * document stream can only be sent once, later subscribers fail with an
+ * <tt>IOException</tt>; a document in memory is sent again to each.
+ * <p>
+ * A document of text, which has to be encoded in its charset, is encoded
+ * with the head when the publisher is created.
+ *
+ * @author Opher Shachar
+ */
+/* package */ class IppBodyPublisher implements BodyPublisher {
+    private static final int CHUNK = 64 * 1024;
+
+    private final ByteBuffer head;
+    private final Object data;          // byte[], ByteBuffer, InputStream or null
+    private final long length;
+    private final AtomicBoolean subscribed = new AtomicBoolean();
+
+    IppBodyPublisher(IppRequest ipp) throws IOException {
+        Doc doc = ipp.getDoc();
+        Object o = doc == null ? null : doc.getPrintData();
+        InputStream is = null;
+        if (o != null && !(o instanceof byte[]) && !(o instanceof ByteBuffer))
+            is = doc.getStreamForBytes();
+        IppCodec codec = IppCodec.acquire();
+        try {
+            if (doc == null || o instanceof byte[] || o instanceof ByteBuffer || is != null) {
+                // copy the head out of the codec's buffer
+                ByteBuffer h = codec.encodeRequest(ipp);
+                head = ByteBuffer.allocate(h.remaining()).put(h);
+                head.flip();
+                if (o instanceof byte[]) {
+                    data = o;
+                    length = head.limit() + ((byte[]) o).length;
+                }
+                else if (o instanceof ByteBuffer) {
+                    data = ((ByteBuffer) o).duplicate();
+                    length = head.limit() + ((ByteBuffer) data).remaining();
+                }
+                else if (is instanceof FileInputStream) {
+                    data = is;
+                    length = head.limit() + Math.max(((FileInputStream) is).getChannel().size()
+                            - ((FileInputStream) is).getChannel().position(), 0);
+                }
+                else {
+                    data = is;
+                    length = is == null ? head.limit() : -1;
+                }
+            }
+            else {
+                ByteArrayOutputStream bos = new ByteArrayOutputStream(CHUNK);
+                codec.writeRequest(bos, ipp);
+                head = ByteBuffer.wrap(bos.toByteArray());
+                data = null;
+                length = head.limit();
+            }
+        } finally {
+            IppCodec.release(codec);
+        }
+    }
+
+    public long contentLength() {
+        return length;
+    }
+
+    public void subscribe(Flow.Subscriber<? super ByteBuffer> subscriber) {
+        if (data instanceof InputStream && subscribed.getAndSet(true)) {
+            // the stream was consumed, or is being, by an earlier subscriber
+            subscriber.onSubscribe(new Flow.Subscription() {
+                public void request(long n) {}
+                public void cancel() {}
+            });
+            subscriber.onError(new IOException(
+                    resourceStrings.getString("THE DOCUMENT STREAM CAN ONLY BE SENT ONCE.")));
+            return;
+        }
+        subscriber.onSubscribe(new BodySubscription(subscriber));
+    }
+
+    private class BodySubscription implements Flow.Subscription {
+        private final Flow.Subscriber<? super ByteBuffer> subscriber;
+        private long demand;
+        private boolean emitting;
+        private boolean done;
+        private boolean headSent;
+        private boolean dataSent;
+        private ReadableByteChannel in;
+
+        BodySubscription(Flow.Subscriber<? super ByteBuffer> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        public void request(long n) {
+            if (n <= 0) {
+                cancel();
+                subscriber.onError(new IllegalArgumentException("non-positive request: " + n));
+                return;
+            }
+            synchronized (this) {
+                demand += n;
+                if (demand < 0)
+                    demand = Long.MAX_VALUE;
+                if (emitting)
+                    return;         // a request() up the stack is emitting
+                emitting = true;
+            }
+            try {
+                while (true) {
+                    synchronized (this) {
+                        if (done || demand == 0) {
+                            emitting = false;
+                            return;
+                        }
+                        demand--;
+                    }
+                    ByteBuffer next = next();
+                    if (next == null) {
+                        cancel();
+                        subscriber.onComplete();
+                        return;
+                    }
+                    subscriber.onNext(next);
+                }
+            } catch (IOException ex) {
+                cancel();
+                subscriber.onError(ex);
+            }
+        }
+
+        /** Returns the next buffer of the body or null at its end */
+        private ByteBuffer next() throws IOException {
+            if (!headSent) {
+                headSent = true;
+                return head.duplicate();
+            }
+            if (data instanceof InputStream) {
+                if (in == null)
+                    in = data instanceof FileInputStream ?
+                            ((FileInputStream) data).getChannel() : Channels.newChannel((InputStream) data);
+                // a new buffer each time, the client may hold on to it
+                ByteBuffer chunk = ByteBuffer.allocate(CHUNK);
+                while (chunk.hasRemaining() && in.read(chunk) >= 0)
+                    ;
+                chunk.flip();
+                return chunk.hasRemaining() ? chunk : null;
+            }
+            if (data != null && !dataSent) {
+                dataSent = true;
+                return data instanceof byte[] ?
+                        ByteBuffer.wrap((byte[]) data) : ((ByteBuffer) data).duplicate();
+            }
+            return null;
+        }
+
+        public void cancel() {
+            synchronized (this) {
+                done = true;
+            }
+            if (data instanceof InputStream)
+                try {
+                    ((InputStream) data).close();
+                } catch (IOException ex) { /* irrelevant */ }
+        }
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2012-2016 Opher Shachar
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ciju.client.impl.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.UnknownServiceException;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandler;
+import java.net.http.HttpResponse.BodySubscriber;
+import java.net.http.HttpResponse.BodySubscribers;
+import java.net.http.HttpResponse.ResponseInfo;
+import java.nio.ByteBuffer;
+import java.text.MessageFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+import static org.ciju.client.impl.http.HttpClientConnection.resourceStrings;
+import org.ciju.ipp.AttributeFilter;
+import org.ciju.ipp.IppObject;
+import org.ciju.ipp.IppResponse;
+import org.ciju.ipp.IppTransport;
+
+/**
+ * Receives the body of an HTTP response to an IPP request. The body of a
+ * successful response of <tt>application/ipp</tt> content is handed over as
+ * an <tt>InputStream</tt>, read by the decoder as the body arrives, so only
+ * the few buffers not yet read are held and a document in the response is
+ * spooled as {@link IppResponse#setDefaultDocMemoryThreshold(int)} says.
+ * The body of any other response is drained, so the connection can be
+ * reused, and then failed.
+ *
+ * @author Opher Shachar
+ */
+/* package */ class IppBodySubscriber implements BodySubscriber<InputStream> {
+    private final IOException failure;  // fails the body once drained
+    private final CompletableFuture<InputStream> body = new CompletableFuture<InputStream>();
+
+    private IppBodySubscriber(IOException failure) {
+        this.failure = failure;
+    }
+
+    /**
+     * Returns the handler of HTTP responses to IPP requests, which fails any
+     * but a successful response of <tt>application/ipp</tt> content.
+     */
+    static BodyHandler<InputStream> handler() {
+        return new BodyHandler<InputStream>() {
+            public BodySubscriber<InputStream> apply(ResponseInfo info) {
+                if (info.statusCode() >= 300)
+                    return new IppBodySubscriber(new IOException(MessageFormat.format(
+                            resourceStrings.getString("THE SERVER REPLIED WITH HTTP STATUS {0}."),
+                            info.statusCode())));
+                Optional<String> ct = info.headers().firstValue("Content-Type");
+                if (ct.isPresent() && !ct.get().toLowerCase(Locale.ENGLISH).startsWith("application/ipp"))
+                    return new IppBodySubscriber(new UnknownServiceException(MessageFormat.format(
+                            resourceStrings.getString("UNEXPECTED CONTENT-TYPE {0}."), ct.get())));
+                return BodySubscribers.ofInputStream();
+            }
+        };
+    }
+
+    /**
+     * Decodes the IPP response from the body of an HTTP response of the
+     * {@link #handler() handler}, blocking until it's read. The body is
+     * closed once decoded or failed.
+     *
+     * @param obj the object to populate from the response. Can be
+     *      <code>null</code>.
+     * @param filter the attributes wanted or <code>null</code> to decode all.
+     */
+    static <T extends IppObject> IppResponse<T> decode(HttpResponse<InputStream> r, T obj, AttributeFilter filter)
+            throws IOException {
+        long len = r.headers().firstValueAsLong("Content-Length").orElse(-1);
+        InputStream is = r.body();
+        try {
+            return IppTransport.processResponse(is, len, obj, filter);
+        } finally {
+            is.close();
+        }
+    }
+
+    public CompletionStage<InputStream> getBody() {
+        return body;
+    }
+
+    public void onSubscribe(Flow.Subscription subscription) {
+        subscription.request(Long.MAX_VALUE);
+    }
+
+    public void onNext(List<ByteBuffer> items) {
+        // drain the body so the connection can be reused
+    }
+
+    public void onError(Throwable throwable) {
+        body.completeExceptionally(throwable);
+    }
+
+    public void onComplete() {
+        body.completeExceptionally(failure);
+    }
+}
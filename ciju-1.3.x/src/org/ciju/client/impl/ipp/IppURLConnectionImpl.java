@@ -28,6 +28,8 @@ import java.util.Map;
 import org.ciju.client.impl.Base64Coder;
 import static org.ciju.client.impl.ipp.Handler.resourceStrings;
 import org.ciju.client.ipp.IppConnection;
+import org.ciju.ipp.AttributeFilter;
+import org.ciju.ipp.IppCodec;
 import org.ciju.ipp.IppEncoding.StatusCode;
 import org.ciju.ipp.IppException;
 import org.ciju.ipp.IppMultiObject;
@@ -59,7 +61,9 @@ import org.ciju.ipp.attribute.GenericValue;
     private final Handler handler;
     private final HttpURLConnection huc;
     private IppRequest ipp;
+    private AttributeFilter filter;
     private boolean sent;
+    private boolean streamingModeSet;
 
     /**
      * Constructor for the IppURLConnectionImpl class. To make a direct connection
@@ -184,8 +188,22 @@ import org.ciju.ipp.attribute.GenericValue;
         if (ipp == null)
             throw new IllegalStateException(resourceStrings.getString("IPP REQUEST WAS NOT SET."));
         if (!sent) { // IPP Resquest not sent
-            OutputStream os = huc.getOutputStream();
-            IppTransport.writeRequest(os, ipp);
+            IppCodec codec = IppCodec.acquire();
+            try {
+                if (!streamingModeSet) {
+                    // stream the request rather than have it buffered to
+                    // compute its Content-Length
+                    long len = codec.getContentLength(ipp);
+                    if (len >= 0)
+                        huc.setFixedLengthStreamingMode(len);
+                    else
+                        huc.setChunkedStreamingMode(0);     // default chunk length
+                }
+                OutputStream os = huc.getOutputStream();
+                codec.writeRequest(os, ipp);
+            } finally {
+                IppCodec.release(codec);
+            }
             sent = true;
         }
     }
@@ -218,6 +236,11 @@ import org.ciju.ipp.attribute.GenericValue;
         return this;
     }
 
+    public IppConnection setAttributeFilter(AttributeFilter filter) {
+        this.filter = filter;
+        return this;
+    }
+
     @Override
     public OutputStream getOutputStream() throws IOException {
         throw new UnsupportedOperationException(resourceStrings.getString("USE SETIPPREQUEST(...) TO SEND IPP REQUEST."));
@@ -235,7 +258,7 @@ import org.ciju.ipp.attribute.GenericValue;
      * @see IppConnection#getContent(IppObject)
      */
     public <T extends IppObject> IppResponse<T> getContent(T obj) throws IOException, IppException {
-        IppResponse<T> resp = IppTransport.processResponse(getInputStream(), getContentLength(), obj);
+        IppResponse<T> resp = IppTransport.processResponse(getInputStream(), getContentLength(), obj, filter);
         return checkResponse(resp);
     }
 
@@ -245,7 +268,7 @@ import org.ciju.ipp.attribute.GenericValue;
     public <T extends IppObject> List<T> getContent(IppObjectFactory<T> fact) throws IOException, IppException {
         final List<T> list = new ArrayList<T>();
         final IppMultiObject<T> imo = new IppMultiObject<T>(list, fact);
-        IppResponse<IppMultiObject<T>> resp = IppTransport.processResponse(getInputStream(), getContentLength(), imo);
+        IppResponse<IppMultiObject<T>> resp = IppTransport.processResponse(getInputStream(), getContentLength(), imo, filter);
         checkResponse(resp);
         /* ignore the returned IppResponse */
         return list;
@@ -395,11 +418,19 @@ import org.ciju.ipp.attribute.GenericValue;
     @Override
     public void setFixedLengthStreamingMode(int contentLength) {
         huc.setFixedLengthStreamingMode(contentLength);
+        streamingModeSet = true;
+    }
+
+    @Override
+    public void setFixedLengthStreamingMode(long contentLength) {
+        huc.setFixedLengthStreamingMode(contentLength);
+        streamingModeSet = true;
     }
 
     @Override
     public void setChunkedStreamingMode(int chunklen) {
         huc.setChunkedStreamingMode(chunklen);
+        streamingModeSet = true;
     }
 
     @Override
@@ -0,0 +1,378 @@
+/*
+ * Copyright (C) 2012-2016 Opher Shachar
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ciju.client.impl.nio;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.UnknownServiceException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.text.MessageFormat;
+import java.util.ArrayDeque;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import static org.ciju.client.impl.nio.NioConnection.resourceStrings;
+import org.ciju.ipp.AttributeFilter;
+import org.ciju.ipp.IppCodec;
+import org.ciju.ipp.IppObject;
+import org.ciju.ipp.IppResponse;
+
+/**
+ * A persistent HTTP/1.1 connection on which requests are pipelined: they're
+ * written one after the other without waiting for the responses, which a
+ * thread of the link reads and decodes as they arrive.
+ * <p>
+ * HTTP/1.1 has the responses sent in the order of the requests, so each is
+ * matched to the oldest pending exchange. Its IPP request-id must be that
+ * of the exchange, otherwise the link can't be trusted and is closed.
+ * <p>
+ * Once closed, by either side or by a failure, all pending exchanges fail
+ * and a new link is needed.
+ * <p>
+ * A response body is read into a buffer grown as the body arrives, whatever
+ * its <tt>Content-Length</tt> says, up to
+ * <tt>org.ciju.client.impl.nio.MaxResponseLength</tt> bytes (64MiB by
+ * default). A longer body fails the link.
+ *
+ * @author Opher Shachar
+ */
+/* package */ class HttpLink implements Runnable {
+    private static final Logger logger = Logger.getLogger(HttpLink.class.getName());
+    private static final int RECEIVE_CAPACITY = 16 * 1024;
+    private static final int MAX_BODY = Math.max(RECEIVE_CAPACITY,
+            Integer.getInteger(HttpLink.class.getPackage().getName() + ".MaxResponseLength", 64 << 20));
+
+    private final SocketChannel ch;
+    private final ArrayDeque<Exchange<?>> pending = new ArrayDeque<Exchange<?>>();
+    private final ByteBuffer in = ByteBuffer.allocateDirect(RECEIVE_CAPACITY);
+    private final StringBuilder line = new StringBuilder(80);
+    private IOException closed;     // why the link was closed
+
+    /** An IPP request written on the link that awaits its response */
+    /* package */ static final class Exchange<T extends IppObject> {
+        final int requestId;
+        final T obj;
+        final AttributeFilter filter;
+        final CompletableFuture<IppResponse<T>> future = new CompletableFuture<IppResponse<T>>();
+
+        Exchange(int requestId, T obj, AttributeFilter filter) {
+            this.requestId = requestId;
+            this.obj = obj;
+            this.filter = filter;
+        }
+
+        void decode(ByteBuffer body) throws IOException {
+            IppCodec codec = IppCodec.acquire();
+            try {
+                codec.setAttributeFilter(filter);
+                future.complete(codec.processResponse(body, obj));
+            } finally {
+                IppCodec.release(codec);
+            }
+        }
+    }
+
+    HttpLink(SocketChannel ch) {
+        this.ch = ch;
+        in.flip();
+    }
+
+    /* package */ SocketChannel channel() {
+        return ch;
+    }
+
+    /**
+     * Adds an exchange whose request is about to be written. Exchanges must
+     * be added in the order their requests are written.
+     * @throws IOException if the link is closed.
+     */
+    /* package */ synchronized void add(Exchange<?> ex) throws IOException {
+        if (closed != null)
+            throw closed;
+        pending.add(ex);
+    }
+
+    /* package */ synchronized boolean isClosed() {
+        return closed != null;
+    }
+
+    /**
+     * Closes the link failing the pending exchanges with the given exception.
+     */
+    /* package */ void close(IOException cause) {
+        Exchange<?>[] failed;
+        synchronized (this) {
+            if (closed != null)
+                return;
+            closed = cause;
+            failed = pending.toArray(new Exchange<?>[pending.size()]);
+            pending.clear();
+        }
+        try {
+            ch.close();
+        } catch (IOException ex) {
+            logger.log(Level.FINE, resourceStrings.getString("SUPPRESSING EXCEPTION"), ex);
+        }
+        for (Exchange<?> ex : failed)
+            ex.future.completeExceptionally(cause);
+    }
+
+    /** Reads responses until the link is closed */
+    public void run() {
+        try {
+            while (readResponse())
+                ;
+            close(new EOFException(resourceStrings.getString("THE CONNECTION WAS CLOSED BY THE SERVER.")));
+        } catch (IOException ex) {
+            close(ex);
+        } catch (RuntimeException ex) {
+            close(new IOException(ex));
+        }
+    }
+
+    /**
+     * Reads the next response and completes its exchange.
+     * @return <tt>false</tt> if the link is to be closed.
+     */
+    private boolean readResponse() throws IOException {
+        String status = readLine();
+        if (status == null)
+            return false;
+        int code = parseStatus(status);
+        long length = -1;
+        boolean chunked = false, keepAlive = !status.startsWith("HTTP/1.0");
+        String contentType = null;
+        for (String h = readLine(); h != null && h.length() > 0; h = readLine()) {
+            int i = h.indexOf(':');
+            if (i <= 0)
+                throw malformed(h);
+            String name = h.substring(0, i).trim().toLowerCase(Locale.ENGLISH);
+            String value = h.substring(i + 1).trim();
+            if (name.equals("content-length"))
+                try {
+                    length = Long.parseLong(value);
+                } catch (NumberFormatException e) {
+                    throw malformed(h);
+                }
+            else if (name.equals("transfer-encoding"))
+                chunked = value.toLowerCase(Locale.ENGLISH).endsWith("chunked");
+            else if (name.equals("content-type"))
+                contentType = value;
+            else if (name.equals("connection"))
+                keepAlive = !value.equalsIgnoreCase("close");
+        }
+        if (code < 200)
+            return true;    // an interim response, e.g. 100 Continue
+        ByteBuffer body = chunked ? readChunked() :
+                length >= 0 ? readBody(length) : readToEnd();
+        if (!chunked && length < 0)
+            keepAlive = false;
+        Exchange<?> ex;
+        synchronized (this) {
+            ex = pending.poll();
+        }
+        if (ex == null)
+            throw malformed(status);    // a response nobody asked for
+        if (code >= 300)
+            ex.future.completeExceptionally(new IOException(MessageFormat.format(
+                    resourceStrings.getString("THE SERVER REPLIED WITH HTTP STATUS {0}."), code)));
+        else if (contentType == null || !contentType.toLowerCase(Locale.ENGLISH).startsWith("application/ipp"))
+            ex.future.completeExceptionally(new UnknownServiceException(MessageFormat.format(
+                    resourceStrings.getString("UNEXPECTED CONTENT-TYPE {0}."), contentType)));
+        else if (body.remaining() < 8)
+            ex.future.completeExceptionally(new IOException(resourceStrings.getString("THE RESPONSE HAS NO CONTENT.")));
+        else if (body.getInt(4) != ex.requestId) {
+            IOException ioex = new IOException(MessageFormat.format(
+                    resourceStrings.getString("THE RESPONSE IS TO REQUEST-ID {0} NOT {1}."),
+                    body.getInt(4), ex.requestId));
+            ex.future.completeExceptionally(ioex);
+            throw ioex;
+        }
+        else
+            try {
+                ex.decode(body);
+            } catch (IOException e) {
+                ex.future.completeExceptionally(e);
+            } catch (RuntimeException e) {
+                ex.future.completeExceptionally(e);
+            }
+        return keepAlive;
+    }
+
+    private static int parseStatus(String status) throws IOException {
+        // HTTP/1.1 200 OK
+        int i = status.indexOf(' ');
+        if (!status.startsWith("HTTP/") || i < 0 || status.length() < i + 4)
+            throw malformed(status);
+        try {
+            return Integer.parseInt(status.substring(i + 1, i + 4));
+        } catch (NumberFormatException e) {
+            throw malformed(status);
+        }
+    }
+
+    private static IOException malformed(String s) {
+        return new IOException(MessageFormat.format(resourceStrings.getString("MALFORMED HTTP RESPONSE: {0}"), s));
+    }
+
+    /** Fill the receive buffer, returning <tt>false</tt> at end-of-stream */
+    private boolean fill() throws IOException {
+        in.compact();
+        try {
+            return ch.read(in) >= 0;
+        } finally {
+            in.flip();
+        }
+    }
+
+    /**
+     * Reads a line of the response head, without its CRLF.
+     * @return the line or <tt>null</tt> if the stream ended before any of it.
+     */
+    private String readLine() throws IOException {
+        line.setLength(0);
+        while (true) {
+            while (in.hasRemaining()) {
+                char c = (char) (in.get() & 0xff);
+                if (c == '\n') {
+                    int n = line.length();
+                    if (n > 0 && line.charAt(n - 1) == '\r')
+                        line.setLength(n - 1);
+                    return line.toString();
+                }
+                if (line.length() == RECEIVE_CAPACITY)
+                    throw malformed(line.substring(0, 80));
+                line.append(c);
+            }
+            if (!fill()) {
+                if (line.length() == 0)
+                    return null;
+                throw new EOFException(resourceStrings.getString("THE CONNECTION WAS CLOSED BY THE SERVER."));
+            }
+        }
+    }
+
+    /**
+     * Reads a body of known length into a buffer of its own. The length is
+     * only trusted as far as the bytes that arrive, the buffer is grown as
+     * they do.
+     */
+    private ByteBuffer readBody(long length) throws IOException {
+        if (length > MAX_BODY)
+            throw tooLarge();
+        ByteBuffer body = receive(ByteBuffer.allocate((int) Math.min(length, RECEIVE_CAPACITY)), length);
+        body.flip();
+        return body;
+    }
+
+    /**
+     * Moves <tt>n</tt> bytes of the response into <tt>body</tt>, grown as
+     * they arrive.
+     * @return the buffer holding the bytes, <tt>body</tt> or a larger copy.
+     */
+    private ByteBuffer receive(ByteBuffer body, long n) throws IOException {
+        while (n > 0) {
+            int k = (int) Math.min(n, Math.max(body.remaining(), RECEIVE_CAPACITY));
+            body = ensureRemaining(body, k);
+            transfer(body, k);
+            n -= k;
+        }
+        return body;
+    }
+
+    private static IOException tooLarge() {
+        return new IOException(MessageFormat.format(
+                resourceStrings.getString("THE RESPONSE IS LARGER THAN {0} BYTES."), MAX_BODY));
+    }
+
+    /** Move <tt>n</tt> bytes of the response into <tt>body</tt> */
+    private void transfer(ByteBuffer body, int n) throws IOException {
+        int end = body.position() + n;
+        if (in.hasRemaining()) {
+            ByteBuffer src = in.duplicate();
+            src.limit(src.position() + Math.min(n, src.remaining()));
+            body.put(src);
+            in.position(src.position());
+        }
+        if (body.position() == end)
+            return;
+        // read the rest straight into the body
+        int limit = body.limit();
+        body.limit(end);
+        try {
+            while (body.hasRemaining())
+                if (ch.read(body) < 0)
+                    throw new EOFException(resourceStrings.getString("THE CONNECTION WAS CLOSED BY THE SERVER."));
+        } finally {
+            body.limit(limit);
+        }
+    }
+
+    private ByteBuffer readChunked() throws IOException {
+        ByteBuffer body = ByteBuffer.allocate(RECEIVE_CAPACITY);
+        while (true) {
+            String s = readLine();
+            if (s == null)
+                throw new EOFException(resourceStrings.getString("THE CONNECTION WAS CLOSED BY THE SERVER."));
+            int i = s.indexOf(';');
+            int size;
+            try {
+                size = Integer.parseInt((i < 0 ? s : s.substring(0, i)).trim(), 16);
+            } catch (NumberFormatException e) {
+                throw malformed(s);
+            }
+            if (size < 0)
+                throw malformed(s);
+            if (size == 0)
+                break;
+            body = receive(body, size);
+            if (!"".equals(readLine()))
+                throw malformed(s);
+        }
+        // skip any trailer
+        for (String s = readLine(); s != null && s.length() > 0; s = readLine())
+            ;
+        body.flip();
+        return body;
+    }
+
+    /** Reads a body delimited by the server closing the connection */
+    private ByteBuffer readToEnd() throws IOException {
+        ByteBuffer body = ByteBuffer.allocate(RECEIVE_CAPACITY);
+        do {
+            body = ensureRemaining(body, in.remaining());
+            body.put(in);
+        } while (fill());
+        body.flip();
+        return body;
+    }
+
+    /** Grows the buffer, doubling it, to have room for <tt>n</tt> more bytes */
+    private static ByteBuffer ensureRemaining(ByteBuffer bb, int n) throws IOException {
+        if (bb.remaining() >= n)
+            return bb;
+        long need = (long) bb.position() + n;
+        if (need > MAX_BODY)
+            throw tooLarge();
+        ByteBuffer b2 = ByteBuffer.allocate((int) Math.min(Math.max(bb.capacity() * 2L, need), MAX_BODY));
+        bb.flip();
+        return b2.put(bb);
+    }
+}
@@ -0,0 +1,562 @@
+/*
+ * Copyright (C) 2012-2016 Opher Shachar
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ciju.client.impl.nio;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
+import java.net.PasswordAuthentication;
+import java.net.Proxy;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.net.URI;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ResourceBundle;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.print.Doc;
+import org.ciju.client.impl.Base64Coder;
+import org.ciju.client.ipp.BlockingCalls;
+import org.ciju.client.ipp.IppConnection;
+import org.ciju.ipp.AttributeFilter;
+import org.ciju.ipp.IppCodec;
+import org.ciju.ipp.IppEncoding;
+import org.ciju.ipp.IppEncoding.StatusCode;
+import org.ciju.ipp.IppException;
+import org.ciju.ipp.IppMultiObject;
+import org.ciju.ipp.IppObject;
+import org.ciju.ipp.IppObjectFactory;
+import org.ciju.ipp.IppRequest;
+import org.ciju.ipp.IppResponse;
+import org.ciju.ipp.attribute.GenericValue;
+
+
+/**
+ * Implementation of an IPP connection on a {@link SocketChannel}, speaking
+ * just enough HTTP/1.1 to <tt>POST</tt> <tt>application/ipp</tt> requests.
+ * Like {@link org.ciju.client.impl.ipp.IppURLConnectionImpl} an instance
+ * sends a single IPP request, but on the persistent connection of a
+ * {@link Pipeline} shared by the <tt>NioConnection</tt>S to a print server.
+ * A request is written as soon as it's sent, without waiting for the
+ * responses to earlier ones, so many requests can be in flight on one
+ * socket.
+ * <p>
+ * Each request is written with a request-id allocated by the pipeline, the
+ * one the <tt>IppRequest</tt> was created with is not used. TLS is not
+ * supported, so only <tt>ipp</tt> and <tt>http</tt> URIs are.
+ * <p>
+ * The pipeline's connection can also be to a Unix domain socket, as of a
+ * local CUPS server (e.g. <tt>/run/cups/cups.sock</tt>).
+ *
+ * @author Opher Shachar
+ */
+public class NioConnection implements IppConnection {
+
+    /* package */ static final ResourceBundle resourceStrings = ResourceBundle.getBundle("org/ciju/ResourceStrings");
+
+    private final Pipeline pipeline;
+    private final String target;
+    private String acceptLanguage;
+    private String authorization;
+    private IppRequest ipp;
+    private AttributeFilter filter;
+    private boolean sent;
+
+    /**
+     * @param pipeline the pipeline to send the request on.
+     * @param uri the URI to post the request to, of the pipeline's server.
+     */
+    public NioConnection(Pipeline pipeline, URI uri) {
+        this.pipeline = pipeline;
+        this.target = pipeline.target(uri);
+    }
+
+    public IppConnection setIppRequest(IppRequest request) {
+        if (sent)
+            throw new IllegalStateException(resourceStrings.getString("ALREADY CONNECTED"));
+        if (request == null)
+            throw new NullPointerException();
+        ipp = request;
+        acceptLanguage = GenericValue.getNaturalLanguage(ipp.getLocale());
+        return this;
+    }
+
+    public IppRequest getIppRequest() {
+        return ipp;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>Like {@link org.ciju.client.impl.ipp.IppURLConnectionImpl} the
+     * credentials are sent preemptively with <tt>Basic</tt> authentication.
+     * @throws NullPointerException if <tt>authn</tt> is <code>null</code>.
+     */
+    public IppConnection setPasswordAuthentication(PasswordAuthentication authn) {
+        if (sent)
+            throw new IllegalStateException(resourceStrings.getString("ALREADY CONNECTED"));
+        StringBuilder auths = new StringBuilder(authn.getUserName())
+                .append(':').append(authn.getPassword());
+        authorization = "Basic " + Base64Coder.encodeString(auths.toString());
+        return this;
+    }
+
+    public IppConnection setAttributeFilter(AttributeFilter filter) {
+        this.filter = filter;
+        return this;
+    }
+
+    /**
+     * @see IppConnection#getContent(IppObject)
+     */
+    public <T extends IppObject> IppResponse<T> getContent(T obj) throws IOException, IppException {
+        return checkResponse(await(send(obj)));
+    }
+
+    /**
+     * @see IppConnection#getContent(IppObjectFactory)
+     */
+    public <T extends IppObject> List<T> getContent(IppObjectFactory<T> fact) throws IOException, IppException {
+        final List<T> list = new ArrayList<T>();
+        final IppMultiObject<T> imo = new IppMultiObject<T>(list, fact);
+        checkResponse(await(send(imo)));
+        /* ignore the returned IppResponse */
+        return list;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>The request is written by the pipeline's writer thread, the
+     * response read and decoded by the thread of the pipeline's connection,
+     * so this method returns without connecting to the server. The future is
+     * completed on one of the few threads of the pipeline, so its dependent
+     * stages may block, even on another request to the server, without
+     * holding up the responses read after this one.
+     */
+    @Override
+    public <T extends IppObject> CompletableFuture<IppResponse<T>> getContentAsync(T obj) {
+        final CompletableFuture<IppResponse<T>> f = new CompletableFuture<IppResponse<T>>();
+        send(obj).whenCompleteAsync((r, t) -> {
+            if (t != null)
+                f.completeExceptionally(t);
+            else
+                try {
+                    f.complete(checkResponse(r));
+                } catch (IppException ex) {
+                    f.completeExceptionally(ex);
+                }
+        }, pipeline.executor());
+        return f;
+    }
+
+    /**
+     * {@inheritDoc}
+     * @see #getContentAsync(IppObject)
+     */
+    @Override
+    public <T extends IppObject> CompletableFuture<List<T>> getContentAsync(IppObjectFactory<T> fact) {
+        final List<T> list = new ArrayList<T>();
+        final IppMultiObject<T> imo = new IppMultiObject<T>(list, fact);
+        /* ignore the returned IppResponse */
+        return getContentAsync(imo).thenApply(r -> list);
+    }
+
+    private <T extends IppObject> CompletableFuture<IppResponse<T>> send(T obj) {
+        if (ipp == null)
+            throw new IllegalStateException(resourceStrings.getString("IPP REQUEST WAS NOT SET."));
+        if (sent)
+            throw new IllegalStateException(resourceStrings.getString("ALREADY CONNECTED"));
+        sent = true;
+        StringBuilder headers = new StringBuilder(128);
+        if (acceptLanguage != null)
+            headers.append("Accept-Language: ").append(acceptLanguage).append("\r\n");
+        if (authorization != null)
+            headers.append("Authorization: ").append(authorization).append("\r\n");
+        return pipeline.send(target, headers, ipp, obj, filter);
+    }
+
+    /**
+     * Waits for the response, throwing what failed it as is. The future is
+     * completed by the thread of the pipeline's connection, so waiting on it
+     * doesn't depend on the pipeline's executor.
+     */
+    private static <T extends IppObject> IppResponse<T> await(CompletableFuture<IppResponse<T>> f) throws IOException {
+        try {
+            return f.get();
+        } catch (ExecutionException ex) {
+            Throwable t = ex.getCause();
+            if (t instanceof IOException)
+                throw (IOException) t;
+            if (t instanceof RuntimeException)
+                throw (RuntimeException) t;
+            if (t instanceof Error)
+                throw (Error) t;
+            throw new IOException(t);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+    }
+
+    /**
+     * Check the response for it's status code and if it's an error throw {@link IppException}.
+     * @param resp the {@linkplain IppResponse} argument.
+     * @return the <tt>resp</tt> parameter (if an exception was not thrown).
+     */
+    private <T extends IppObject> IppResponse<T> checkResponse(IppResponse<T> resp) throws IppException {
+        if (resp.getResponseCode() >= StatusCode.INFORMATIONAL.getValue())
+            throw new IppException(resp, ipp);
+        return resp;
+    }
+
+    /**
+     * A persistent HTTP/1.1 connection to a print server on which the
+     * requests of {@link NioConnection}S are pipelined. It's opened on first
+     * use and again whenever it was closed, by the server or by a failure.
+     * A failure fails the requests in flight; they're not sent again, as not
+     * all IPP operations can be safely repeated.
+     * <p>
+     * The pipeline also allocates the request-ids of the requests sent on it,
+     * so the responses read from the connection can be checked to be those
+     * of the requests in flight.
+     * <p>
+     * The requests are written, and the connection opened, by a single
+     * writer thread in the order they're sent, so senders don't wait for
+     * one another's documents to be written. The futures of
+     * {@link NioConnection#getContentAsync(IppObject)} are completed on the
+     * pipeline's executor of at most <tt>org.ciju.client.ipp.BlockingThreads</tt>
+     * threads, rather than on the thread reading the connection.
+     */
+    public static final class Pipeline implements Closeable {
+        private static final int HEAD_CAPACITY = 8 * 1024;
+        private static final int CHUNK = 64 * 1024;
+        private static final byte[] CRLF = { '\r', '\n' };
+        private static final byte[] LAST_CHUNK = { '0', '\r', '\n', '\r', '\n' };
+
+        private final String host;
+        private final int port;
+        private final InetSocketAddress proxy;  // null if direct
+        private final UnixDomainSocketAddress socket;   // null if over TCP
+        private final AtomicInteger nextRequestId = new AtomicInteger(1);
+        private final Executor executor;    // completes the futures of async calls
+        private final Executor writer;      // connects and writes the requests
+        private HttpLink link;
+        private boolean closed;
+        // buffers of the request being written, confined to the writer
+        private ByteBuffer httpHead = ByteBuffer.allocateDirect(1024);
+        private ByteBuffer head = ByteBuffer.allocateDirect(HEAD_CAPACITY);
+        private ByteBuffer chunk;
+
+        /**
+         * @param uri the <tt>ipp</tt> or <tt>http</tt> URI of the print server.
+         * @param proxy the HTTP {@linkplain Proxy} through which to connect or
+         *      <code>null</code> or {@linkplain Proxy#NO_PROXY} to connect
+         *      directly.
+         * @throws IllegalArgumentException if the scheme of <tt>uri</tt> is
+         *      neither <tt>ipp</tt> nor <tt>http</tt>, or <tt>proxy</tt> is
+         *      not an HTTP proxy.
+         */
+        public Pipeline(URI uri, Proxy proxy) {
+            String scheme = uri.getScheme();
+            int defaultPort;
+            if (scheme.equalsIgnoreCase("ipp"))
+                defaultPort = IppEncoding.PORT;
+            else if (scheme.equalsIgnoreCase("http"))
+                defaultPort = 80;
+            else
+                throw new IllegalArgumentException(resourceStrings.getString("THE SCHEME MAY ONLY BE IPP OR HTTP."));
+            host = uri.getHost();
+            port = uri.getPort() == -1 ? defaultPort : uri.getPort();
+            if (proxy == null || proxy.type() == Proxy.Type.DIRECT)
+                this.proxy = null;
+            else if (proxy.type() == Proxy.Type.HTTP)
+                this.proxy = (InetSocketAddress) proxy.address();
+            else
+                throw new IllegalArgumentException(resourceStrings.getString("ONLY HTTP PROXIES ARE SUPPORTED."));
+            socket = null;
+            executor = BlockingCalls.newExecutor("ipp-pipeline-" + authority() + "-callback");
+            writer = BlockingCalls.newExecutor("ipp-pipeline-" + authority() + "-writer", 1);
+        }
+
+        /**
+         * Creates a pipeline to a server listening on a Unix domain socket.
+         * Its requests are sent with <tt>localhost</tt> as their host, as
+         * CUPS expects of local clients.
+         *
+         * @param socket the path of the server's socket.
+         */
+        public Pipeline(Path socket) {
+            host = "localhost";
+            port = 80;
+            proxy = null;
+            this.socket = UnixDomainSocketAddress.of(socket);
+            executor = BlockingCalls.newExecutor("ipp-pipeline-" + authority() + "-callback");
+            writer = BlockingCalls.newExecutor("ipp-pipeline-" + authority() + "-writer", 1);
+        }
+
+        /**
+         * Allocates the next request-id, in the range 1 to 2^31-1, of the
+         * requests sent on this pipeline.
+         * @return a request-id not used by any of the requests in flight.
+         */
+        public int nextRequestId() {
+            int id;
+            do {
+                id = nextRequestId.getAndIncrement() & Integer.MAX_VALUE;
+            } while (id == 0);
+            return id;
+        }
+
+        /**
+         * The executor the futures of asynchronous calls are completed on.
+         * Its threads are let go when idle, so it's never shut down, and
+         * futures failed by {@link #close()} are still completed.
+         */
+        /* package */ Executor executor() {
+            return executor;
+        }
+
+        /** Returns the request-target to post to the given URI */
+        /* package */ String target(URI uri) {
+            String path = uri.getRawPath();
+            StringBuilder sb = new StringBuilder(64);
+            if (proxy != null)
+                sb.append("http://").append(authority());
+            sb.append(path == null || path.length() == 0 ? "/" : path);
+            if (uri.getRawQuery() != null)
+                sb.append('?').append(uri.getRawQuery());
+            return sb.toString();
+        }
+
+        private String authority() {
+            String h = host.indexOf(':') >= 0 && !host.startsWith("[") ? "[" + host + "]" : host;
+            return port == 80 ? h : h + ":" + port;
+        }
+
+        /**
+         * Queues an IPP request to be written on the connection by the
+         * writer thread, which opens it if needed.
+         * @return a future completing with the decoded response.
+         */
+        /* package */ <T extends IppObject> CompletableFuture<IppResponse<T>> send(final String target,
+                final CharSequence headers, final IppRequest ipp, T obj, AttributeFilter filter) {
+            final HttpLink.Exchange<T> ex = new HttpLink.Exchange<T>(nextRequestId(), obj, filter);
+            writer.execute(new Runnable() {
+                public void run() {
+                    write(target, headers, ipp, ex);
+                }
+            });
+            return ex.future;
+        }
+
+        /** Writes the request of the exchange, on the writer thread */
+        private void write(String target, CharSequence headers, IppRequest ipp, HttpLink.Exchange<?> ex) {
+            HttpLink l;
+            try {
+                l = link();
+                try {
+                    l.add(ex);
+                } catch (IOException e) {
+                    // closed by the server since, try a new connection
+                    l = link();
+                    l.add(ex);
+                }
+            } catch (IOException e) {
+                ex.future.completeExceptionally(e);
+                return;
+            } catch (RuntimeException e) {
+                ex.future.completeExceptionally(e);
+                return;
+            }
+            try {
+                write(l.channel(), target, headers, ipp, ex.requestId);
+            } catch (IOException e) {
+                l.close(e);     // fails this exchange and those before it
+            } catch (RuntimeException e) {
+                l.close(new IOException(e));
+            }
+        }
+
+        /** Returns the open link, connecting a new one if needed */
+        private synchronized HttpLink link() throws IOException {
+            if (closed)
+                throw new ClosedChannelException();
+            if (link != null && !link.isClosed())
+                return link;
+            link = null;
+            SocketChannel ch = socket != null ?
+                    SocketChannel.open(StandardProtocolFamily.UNIX) : SocketChannel.open();
+            try {
+                SocketAddress remote = socket;
+                if (remote == null) {
+                    ch.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                    remote = proxy != null ? proxy : new InetSocketAddress(host, port);
+                }
+                ch.connect(remote);
+            } catch (IOException | RuntimeException e) {
+                ch.close();
+                throw e;
+            }
+            link = new HttpLink(ch);
+            Thread t = new Thread(link, "ipp-pipeline-" + authority());
+            t.setDaemon(true);
+            t.start();
+            return link;
+        }
+
+        private void write(SocketChannel ch, String target, CharSequence headers, IppRequest ipp, int requestId) throws IOException {
+            Doc doc = ipp.getDoc();
+            Object o = doc == null ? null : doc.getPrintData();
+            ByteBuffer data = null;
+            InputStream is = null;
+            ByteBuffer ippHead;
+            // this would be substituted by Java7 try-with-resources
+            try {
+                if (o instanceof byte[])
+                    data = ByteBuffer.wrap((byte[]) o);
+                else if (o instanceof ByteBuffer)
+                    data = ((ByteBuffer) o).duplicate();
+                else if (o != null)
+                    is = doc.getStreamForBytes();
+                IppCodec codec = IppCodec.acquire();
+                try {
+                    if (o != null && data == null && is == null) {
+                        // a document of text is encoded in its charset by the codec
+                        ByteArrayOutputStream bos = new ByteArrayOutputStream(CHUNK);
+                        codec.writeRequest(bos, ipp);
+                        ippHead = ByteBuffer.wrap(bos.toByteArray());
+                    }
+                    else
+                        ippHead = head = codec.encodeRequest(ipp, head);
+                } finally {
+                    IppCodec.release(codec);
+                }
+                // the request-id follows the version-number and operation-id
+                ippHead.putInt(4, requestId);
+
+                if (is == null) {
+                    long length = ippHead.remaining() + (data == null ? 0 : data.remaining());
+                    writeFully(ch, httpHead(target, headers, length), ippHead,
+                            data == null ? ByteBuffer.allocate(0) : data);
+                }
+                else if (is instanceof FileInputStream) {
+                    FileChannel fc = ((FileInputStream) is).getChannel();
+                    long pos = fc.position(), end = fc.size();
+                    writeFully(ch, httpHead(target, headers, ippHead.remaining() + Math.max(end - pos, 0)), ippHead);
+                    while (pos < end) {
+                        long n = fc.transferTo(pos, end - pos, ch);
+                        if (n == 0) {
+                            // no progress (the file shrunk?), copy the rest as it's read
+                            if (chunk == null)
+                                chunk = ByteBuffer.allocateDirect(CHUNK);
+                            chunk.clear().limit((int) Math.min(CHUNK, end - pos));
+                            if (fc.read(chunk, pos) < 0)
+                                // the length was sent, the connection is of no use
+                                throw new EOFException(MessageFormat.format(
+                                        resourceStrings.getString("THE DOCUMENT FILE ENDED {0} BYTES SHORT."), end - pos));
+                            chunk.flip();
+                            n = chunk.remaining();
+                            writeFully(ch, chunk);
+                        }
+                        pos += n;
+                    }
+                }
+                else {
+                    writeFully(ch, httpHead(target, headers, -1));
+                    writeChunk(ch, ippHead);
+                    if (chunk == null)
+                        chunk = ByteBuffer.allocateDirect(CHUNK);
+                    ReadableByteChannel rc = Channels.newChannel(is);
+                    boolean eof = false;
+                    while (!eof) {
+                        chunk.clear();
+                        while (chunk.hasRemaining() && !(eof = rc.read(chunk) < 0))
+                            ;
+                        chunk.flip();
+                        if (chunk.hasRemaining())
+                            writeChunk(ch, chunk);
+                    }
+                    writeFully(ch, ByteBuffer.wrap(LAST_CHUNK));
+                }
+            } finally {
+                if (is != null)
+                    is.close();
+            }
+        }
+
+        /** Encode the HTTP request line and headers into a direct buffer */
+        private ByteBuffer httpHead(String target, CharSequence headers, long length) {
+            StringBuilder sb = new StringBuilder(256)
+                    .append("POST ").append(target).append(" HTTP/1.1\r\n")
+                    .append("Host: ").append(authority()).append("\r\n")
+                    .append("Content-Type: application/ipp\r\n")
+                    .append(headers);
+            if (length < 0)
+                sb.append("Transfer-Encoding: chunked\r\n");
+            else
+                sb.append("Content-Length: ").append(length).append("\r\n");
+            sb.append("\r\n");
+            byte[] b = sb.toString().getBytes(StandardCharsets.ISO_8859_1);
+            if (b.length > httpHead.capacity())
+                httpHead = ByteBuffer.allocateDirect(b.length);
+            httpHead.clear();
+            httpHead.put(b).flip();
+            return httpHead;
+        }
+
+        private static void writeChunk(SocketChannel ch, ByteBuffer bb) throws IOException {
+            byte[] size = (Integer.toHexString(bb.remaining()) + "\r\n").getBytes(StandardCharsets.ISO_8859_1);
+            writeFully(ch, ByteBuffer.wrap(size), bb, ByteBuffer.wrap(CRLF));
+        }
+
+        private static void writeFully(SocketChannel ch, ByteBuffer... bufs) throws IOException {
+            for (ByteBuffer bb : bufs)
+                while (bb.hasRemaining())
+                    ch.write(bufs);
+        }
+
+        /**
+         * Closes the connection, failing the requests in flight. Requests
+         * can't be sent on a closed pipeline.
+         */
+        public synchronized void close() {
+            closed = true;
+            if (link != null)
+                link.close(new ClosedChannelException());
+            link = null;
+        }
+    }
+}
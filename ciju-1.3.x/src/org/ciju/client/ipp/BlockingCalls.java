@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2012-2016 Opher Shachar
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ciju.client.ipp;
+
+import java.util.ResourceBundle;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the blocking calls of connections that have no asynchronous
+ * transport, for the default <tt>getContentAsync</tt> methods of
+ * {@link IppConnection} and for print servers configured to use such
+ * connections.
+ * <p>
+ * The calls are run on at most <tt>org.ciju.client.ipp.BlockingThreads</tt>
+ * (4 by default) daemon threads, the others queued until a thread is free.
+ * The threads are let go after a minute idle.
+ *
+ * @author Opher Shachar
+ */
+public final class BlockingCalls {
+
+    /* package */ static final ResourceBundle resourceStrings = ResourceBundle.getBundle("org/ciju/ResourceStrings");
+
+    private static final String BLOCKING_THREADS = BlockingCalls.class.getPackage().getName() + ".BlockingThreads";
+    private static final int THREADS = Math.max(1, Integer.getInteger(BLOCKING_THREADS, 4));
+
+    private static final ExecutorService executor = newExecutor("ipp-connection");
+
+    private BlockingCalls() {}
+
+    /**
+     * Creates an executor for blocking calls, of at most
+     * <tt>org.ciju.client.ipp.BlockingThreads</tt> daemon threads. It is
+     * for the caller to shut it down.
+     *
+     * @param name the prefix of the names of its threads.
+     * @return a new executor.
+     */
+    public static ExecutorService newExecutor(String name) {
+        return newExecutor(name, THREADS);
+    }
+
+    /**
+     * Creates an executor of at most the given number of daemon threads,
+     * let go after a minute idle. It is for the caller to shut it down.
+     *
+     * @param name the prefix of the names of its threads.
+     * @param threads the number of threads.
+     * @return a new executor.
+     */
+    public static ExecutorService newExecutor(final String name, int threads) {
+        ThreadPoolExecutor e = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, name + "-" + count.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        e.allowCoreThreadTimeOut(true);
+        return e;
+    }
+
+    /**
+     * Runs the call on the shared executor.
+     *
+     * @see #submit(Executor, Callable)
+     */
+    public static <R> CompletableFuture<R> submit(Callable<R> call) {
+        return submit(executor, call);
+    }
+
+    /**
+     * Runs the call on the given executor, the future completing with its
+     * result or exceptionally with whatever it threw, unwrapped.
+     *
+     * @throws java.util.concurrent.RejectedExecutionException if the
+     *      executor was shut down.
+     */
+    public static <R> CompletableFuture<R> submit(Executor executor, final Callable<R> call) {
+        final CompletableFuture<R> f = new CompletableFuture<R>();
+        executor.execute(new Runnable() {
+            public void run() {
+                try {
+                    f.complete(call.call());
+                } catch (Throwable t) {
+                    f.completeExceptionally(t);
+                }
+            }
+        });
+        return f;
+    }
+}
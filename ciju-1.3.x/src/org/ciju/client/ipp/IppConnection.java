@@ -20,6 +20,9 @@ package org.ciju.client.ipp;
 import java.io.IOException;
 import java.net.PasswordAuthentication;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import org.ciju.ipp.AttributeFilter;
 import org.ciju.ipp.IppException;
 import org.ciju.ipp.IppObjectFactory;
 import org.ciju.ipp.IppRequest;
@@ -30,8 +33,9 @@ import org.ciju.ipp.IppResponse;
 /**
  * Definition of the interface for an IPP connection consumed by 
  * <a href="{@docRoot}/org/ciju/client/package-summary.html">org.ciju.client</a>.* classes.
- * We provide two implementations of this interface. One extends {@link java.net.HttpURLConnection} 
- * and the other wraps an {@link org.apache.http.client.HttpClient Apache Client} class.
+ * We provide three implementations of this interface. One extends {@link java.net.HttpURLConnection},
+ * another wraps an {@link org.apache.http.client.HttpClient Apache Client} class and the
+ * third is over the JDK {@link java.net.http.HttpClient}.
  *
  * @author	Opher
  */
@@ -65,6 +69,18 @@ public interface IppConnection {
      * handling of authentication.
      */
     IppConnection setPasswordAuthentication(PasswordAuthentication authn);
+
+    /**
+     * Sets the attributes to decode of the response. Attributes not wanted
+     * are skipped as the response is read, whatever the server sent.
+     * <p>The default implementation ignores the filter, all attributes of
+     * the response being decoded, which is what the filter only saves.
+     * @param filter the attributes wanted or <code>null</code> to decode all.
+     * @return this object (allows for builder pattern).
+     */
+    default IppConnection setAttributeFilter(AttributeFilter filter) {
+        return this;
+    }
     
     /**
      * Retrieves the response for the {@link IppRequest} sent on this connection.
@@ -98,5 +114,55 @@ public interface IppConnection {
      *      successfully decoded due to something other than <tt>IOException</tt>.
      */
     <T extends IppObject> List<T> getContent(IppObjectFactory<T> fact) throws IOException, IppException;
-    
+
+    /**
+     * Sends the {@link IppRequest} set on this connection without waiting for
+     * the response. The future completes with what {@link #getContent(IppObject)}
+     * would have returned, or exceptionally with what it would have thrown.
+     * <p>The calling thread neither connects to the server nor writes the
+     * request, so the request and its document may still be read after this
+     * method returns; neither should be changed until the future completes.
+     * <p>The default implementation calls <code>getContent</code> on one of
+     * the few threads {@link BlockingCalls} keeps. Connections over an asynchronous transport override it to
+     * not hold a thread while waiting for the server.
+     * @param <T> The class of an {@linkplain IppObject} or a descendant thereof.
+     * @param obj The object (a subclass of <code>IppObject</code>) to use as the response.
+     *      Can be <code>null</code>.
+     * @return a future of the {@linkplain IppResponse} fetched, holding the given object.
+     * @throws IllegalStateException if no request was set or it was already sent.
+     */
+    default <T extends IppObject> CompletableFuture<IppResponse<T>> getContentAsync(final T obj) {
+        if (getIppRequest() == null)
+            throw new IllegalStateException(BlockingCalls.resourceStrings.getString("IPP REQUEST WAS NOT SET."));
+        return BlockingCalls.submit(new Callable<IppResponse<T>>() {
+            public IppResponse<T> call() throws IOException, IppException {
+                return getContent(obj);
+            }
+        });
+    }
+
+    /**
+     * Sends the {@link IppRequest} set on this connection without waiting for
+     * the response. The future completes with what {@link #getContent(IppObjectFactory)}
+     * would have returned, or exceptionally with what it would have thrown.
+     * @param <T> The class of an {@linkplain IppObject} or a descendant thereof.
+     * @param fact A factory class capable of {@link IppObjectFactory#create(org.ciju.ipp.IppEncoding.GroupTag)
+     *      creating} instances to populate from the response.
+     * @return a future of the {@linkplain List} of <code>IppObject</code>S fetched.
+     * @throws IllegalStateException if no request was set or it was already sent.
+     * @throws NullPointerException if <tt>fact</tt> is null.
+     * @see #getContentAsync(IppObject)
+     */
+    default <T extends IppObject> CompletableFuture<List<T>> getContentAsync(final IppObjectFactory<T> fact) {
+        if (fact == null)
+            throw new NullPointerException();
+        if (getIppRequest() == null)
+            throw new IllegalStateException(BlockingCalls.resourceStrings.getString("IPP REQUEST WAS NOT SET."));
+        return BlockingCalls.submit(new Callable<List<T>>() {
+            public List<T> call() throws IOException, IppException {
+                return getContent(fact);
+            }
+        });
+    }
+
 }
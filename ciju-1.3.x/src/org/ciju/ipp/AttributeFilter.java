@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2012-2016 Opher Shachar
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ciju.ipp;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import org.ciju.ipp.IppEncoding.GroupTag;
+
+/**
+ * The attributes wanted of a response, by attribute group. Servers often
+ * return more attributes than were asked for in <tt>requested-attributes</tt>.
+ * With a filter the attributes not wanted are skipped as the response is
+ * decoded, by their length, and no <tt>String</tt> or value is ever created
+ * for them:
+ * <pre>
+ *  AttributeFilter filter = new AttributeFilter()
+ *          .include(GroupTag.JOB, "job-id", "job-state");
+ * </pre>
+ * Groups for which no attribute was included are not filtered. The
+ * <tt>attributes-charset</tt> and <tt>attributes-natural-language</tt>
+ * operation attributes are always decoded.
+ * <p>
+ * A filter may be shared by threads decoding responses once it's set up,
+ * but must not be modified while in use.
+ *
+ * @author Opher Shachar
+ * @see IppCodec#setAttributeFilter(AttributeFilter)
+ * @see IppReader#setAttributeFilter(AttributeFilter)
+ */
+public final class AttributeFilter {
+
+    private final Map<GroupTag, Set<String>> names = new EnumMap<GroupTag, Set<String>>(GroupTag.class);
+    private final Map<GroupTag, NameTable> tables = new EnumMap<GroupTag, NameTable>(GroupTag.class);
+
+    /**
+     * Adds the given attributes to those wanted of the given group.
+     *
+     * @param gt the attribute group.
+     * @param attributeNames the names of the attributes wanted.
+     * @return this filter.
+     * @throws IllegalArgumentException if <tt>gt</tt> is
+     *      {@link GroupTag#END END} or {@link GroupTag#RESERVED RESERVED}.
+     * @throws NullPointerException if any name is <tt>null</tt>.
+     */
+    public AttributeFilter include(GroupTag gt, String... attributeNames) {
+        if (gt == GroupTag.END || gt == GroupTag.RESERVED)
+            throw new IllegalArgumentException(gt.toString());
+        Set<String> set = names.get(gt);
+        if (set == null)
+            names.put(gt, set = new LinkedHashSet<String>());
+        for (String name : attributeNames) {
+            if (name == null)
+                throw new NullPointerException();
+            set.add(name);
+        }
+        // the table never grows past half full, see NameTable
+        NameTable table = new NameTable(set.size() * 2);
+        for (String name : set)
+            table.add(name);
+        tables.put(gt, table);
+        return this;
+    }
+
+    /**
+     * @param gt the attribute group.
+     * @return the names of the attributes wanted of the given group or
+     *      <tt>null</tt> if the group is not filtered.
+     */
+    public Set<String> getIncluded(GroupTag gt) {
+        Set<String> set = names.get(gt);
+        return set == null ? null : Collections.unmodifiableSet(set);
+    }
+
+    /**
+     * @return the table of the names wanted of the given group or
+     *      <tt>null</tt> if the group is not filtered.
+     */
+    /* package */ NameTable getTable(GroupTag gt) {
+        return tables.get(gt);
+    }
+}
@@ -28,6 +28,7 @@ import org.ciju.ipp.IppEncoding.GroupTag;
 import org.ciju.ipp.IppEncoding.ValueTag;
 import static org.ciju.ipp.IppTransport.resourceStrings;
 import org.ciju.ipp.attribute.AttributeGroup;
+import org.ciju.ipp.attribute.GenericAttribute;
 import static org.ciju.ipp.attribute.GenericValue.deduceValueTag;
 
 /**
@@ -62,7 +63,11 @@ abstract class BaseIppObject extends IppObject {
             if (attributeGroup.groupTag() == groupTag) {
                 Attribute attribute = attributeGroup.get(name);
                 if (attribute != null) {
-                    ValueTag dvt = deduceValueTag(attribute, getLocale());
+                    // the value-tag of a generic attribute is that of its values
+                    Object o = attribute instanceof GenericAttribute &&
+                            !((GenericAttribute) attribute).isEmpty() ?
+                            ((GenericAttribute) attribute).get(0) : attribute;
+                    ValueTag dvt = deduceValueTag(o, getLocale());
                     if (dvt == valueTag ||
                         (valueTag == ValueTag.NAME && 
                             (dvt == ValueTag.NAME_WITHOUT_LANGUAGE ||
@@ -0,0 +1,308 @@
+/*
+ * Copyright (C) 2012-2016 Opher Shachar
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ciju.ipp;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import org.ciju.ipp.IppTransport.IppTransportDecoder;
+import org.ciju.ipp.IppTransport.IppTransportEncoder;
+
+/**
+ * Encodes IPP requests and decodes IPP responses reusing its buffers, charset
+ * coders and reader between messages.
+ * <p>
+ * An <tt>IppCodec</tt> is not thread-safe. A connection implementation may
+ * keep one per connection or per thread, or borrow one from a shared bounded
+ * pool with {@link #acquire()} and return it with {@link #release(IppCodec)}.
+ * The static methods of {@link IppTransport} do the latter.
+ *
+ * @author Opher Shachar
+ */
+public final class IppCodec {
+
+    /** Maximum number of idle codecs kept in the pool */
+    private static final int POOL_SIZE = 16;
+    private static final BlockingQueue<IppCodec> pool = new ArrayBlockingQueue<IppCodec>(POOL_SIZE);
+
+    /**
+     * Takes a codec from the pool, or creates one if the pool is empty.
+     *
+     * @return a codec for the exclusive use of the caller until released.
+     */
+    public static IppCodec acquire() {
+        IppCodec codec = pool.poll();
+        return codec != null ? codec : new IppCodec();
+    }
+
+    /**
+     * Returns a codec to the pool. The codec is discarded if the pool is full.
+     * The codec must not be used by the caller after it was released.
+     *
+     * @param codec the codec to return.
+     */
+    public static void release(IppCodec codec) {
+        codec.sized = null;
+        codec.filter = null;
+        pool.offer(codec);
+    }
+
+    private final IppTransportEncoder encoder = new IppTransportEncoder();
+    private IppReader reader;
+    private byte[] chunk;
+    private IppRequest sized;       // the request last encoded by getContentLength()
+    private ByteBuffer sizedHead;
+    private AttributeFilter filter;
+
+    /**
+     * Sets the attributes to decode of the responses this codec processes
+     * next. A released codec has no filter.
+     *
+     * @param filter the attributes wanted or <tt>null</tt> to decode all.
+     */
+    public void setAttributeFilter(AttributeFilter filter) {
+        this.filter = filter;
+    }
+
+    /**
+     * Returns the exact number of bytes {@link #writeRequest(OutputStream, IppRequest)
+     * writeRequest} would write for the given request: its encoded header and
+     * attribute groups and the length of its document, if it's known in
+     * advance. That is if the document is a <tt>byte[]</tt>, a
+     * <tt>ByteBuffer</tt> or a <tt>FileInputStream</tt>.
+     * <p>
+     * The encoded request is kept, so if the request is written next by this
+     * codec it is not encoded again. It must not be modified in between.
+     *
+     * @param ipp the IPP request
+     * @return the length of the request or <tt>-1</tt> if it's not known.
+     * @throws IOException if the length of a file could not be determined.
+     */
+    public long getContentLength(IppRequest ipp) throws IOException {
+        IppTransportEncoder t = encoder.reset(ipp, null);
+        try {
+            sizedHead = t.encodeRequest();
+            sized = ipp;
+            long len = t.getDocLength();
+            return len < 0 ? -1 : sizedHead.limit() + len;
+        } finally {
+            t.clear();
+        }
+    }
+
+    /** Return the head of <tt>ipp</tt> encoded by the (reset) encoder */
+    private ByteBuffer encodeHead(IppRequest ipp) {
+        ByteBuffer head = ipp == sized ? sizedHead : encoder.encodeRequest();
+        sized = null;
+        return head;
+    }
+
+    /**
+     * Writes an IPP request to the given {@link OutputStream}, which is closed
+     * once the request is written.
+     *
+     * @param os the <tt>OutputStream</tt> to write the request to.
+     * @param ipp the IPP request
+     * @throws IOException
+     * @see IppTransport#writeRequest(OutputStream, IppRequest)
+     */
+    public void writeRequest(OutputStream os, IppRequest ipp) throws IOException {
+        IppTransportEncoder t = encoder.reset(ipp, null);
+        t.ios[0] = os;
+        // this would be substituted by Java7 try-with-resources
+        IOException ioex = null;
+        try {
+            ByteBuffer head = encodeHead(ipp);
+            os.write(head.array(), head.arrayOffset(), head.limit());
+            t.writeDocument(os);
+        } catch (IOException ex) {
+            ioex = ex;
+        } finally {
+            ioex = IppTransport.close(t.ios, ioex);
+            t.clear();
+            if (ioex != null)
+                throw ioex;
+        }
+    }
+
+    /**
+     * Writes an IPP request to the given {@link WritableByteChannel}. The
+     * channel is <em>not</em> closed.
+     *
+     * @param ch the <tt>WritableByteChannel</tt> to write the request to.
+     * @param ipp the IPP request
+     * @throws IOException
+     * @see IppTransport#writeRequest(WritableByteChannel, IppRequest)
+     */
+    public void writeRequest(WritableByteChannel ch, IppRequest ipp) throws IOException {
+        IppTransportEncoder t = encoder.reset(ipp, null);
+        // this would be substituted by Java7 try-with-resources
+        IOException ioex = null;
+        try {
+            t.writeDocument(ch, encodeHead(ipp));
+        } catch (IOException ex) {
+            ioex = ex;
+        } finally {
+            ioex = IppTransport.close(t.ios, ioex);
+            t.clear();
+            if (ioex != null)
+                throw ioex;
+        }
+    }
+
+    /**
+     * Encodes the header and attribute groups of an IPP request into this
+     * codec's own buffer.
+     *
+     * @param ipp the IPP request
+     * @return the buffer holding the encoded request, flipped and ready to be
+     *      read. It is only valid until this codec is used again.
+     */
+    public ByteBuffer encodeRequest(IppRequest ipp) {
+        return encodeRequest(ipp, null);
+    }
+
+    /**
+     * Encodes the header and attribute groups of an IPP request into the given
+     * buffer.
+     *
+     * @param ipp the IPP request
+     * @param bb the buffer to encode into.
+     * @return the buffer holding the encoded request, flipped and ready to be read.
+     * @see IppTransport#encodeRequest(IppRequest, ByteBuffer)
+     */
+    public ByteBuffer encodeRequest(IppRequest ipp, ByteBuffer bb) {
+        sized = null;
+        try {
+            return encoder.reset(ipp, bb).encodeRequest();
+        } finally {
+            encoder.clear();
+        }
+    }
+
+    /**
+     * Decodes an IPP response.
+     *
+     * @param is the <tt>InputStream</tt> to read the response from. It is
+     *      closed once the response is read.
+     * @param contentLength
+     * @return an {@link IppResponse} object from the response.
+     * @throws IOException
+     */
+    public IppResponse<IppObject> processResponse(InputStream is, long contentLength)
+            throws IOException {
+        return processResponse(is, contentLength, null);
+    }
+
+    /**
+     * Decodes an IPP response.
+     *
+     * @param is the <tt>InputStream</tt> to read the response from. It is
+     *      closed once the response is read.
+     * @param contentLength
+     * @param obj
+     * @param <T>
+     * @return an {@link IppResponse} object encompassing the given <tt>obj</tt>.
+     * @throws IOException
+     * @see IppTransport#processResponse(InputStream, long, IppObject)
+     */
+    public <T extends IppObject> IppResponse<T> processResponse(InputStream is, long contentLength, T obj)
+            throws IOException {
+        return processResponse(is, null, null, contentLength, obj);
+    }
+
+    /**
+     * Decodes an IPP response.
+     *
+     * @param ch the blocking <tt>ReadableByteChannel</tt> to read the response
+     *      from. It is closed once the response is read.
+     * @param contentLength the length of the response or <tt>-1</tt> if not known.
+     * @param obj
+     * @param <T>
+     * @return an {@link IppResponse} object encompassing the given <tt>obj</tt>.
+     * @throws IOException
+     * @see IppTransport#processResponse(ReadableByteChannel, long, IppObject)
+     */
+    public <T extends IppObject> IppResponse<T> processResponse(ReadableByteChannel ch, long contentLength, T obj)
+            throws IOException {
+        return processResponse(null, ch, null, contentLength, obj);
+    }
+
+    /**
+     * Decodes an IPP response held in a buffer, heap or direct, from its
+     * position to its limit. The buffer's position is not changed.
+     * <p>
+     * If the response is decoded lazily (see
+     * {@link IppResponse#setDefaultLazyDecoding(boolean)}) its values are
+     * decoded from the buffer, so its content must not be modified.
+     *
+     * @param bb the buffer holding the response.
+     * @param obj
+     * @param <T>
+     * @return an {@link IppResponse} object encompassing the given <tt>obj</tt>.
+     * @throws IOException if the response is malformed.
+     * @see IppTransport#processResponse(ByteBuffer, IppObject)
+     */
+    public <T extends IppObject> IppResponse<T> processResponse(ByteBuffer bb, T obj)
+            throws IOException {
+        return processResponse(null, null, bb, -1, obj);
+    }
+
+    /** Decode a response from one of <tt>is</tt>, <tt>ch</tt> or <tt>bb</tt> */
+    private <T extends IppObject> IppResponse<T> processResponse(InputStream is,
+            ReadableByteChannel ch, ByteBuffer bb, long contentLength, T obj)
+            throws IOException {
+        // values decoded lazily, and indexed responses, refer to their
+        // reader so it can't be reused
+        boolean lazy = IppResponse.defaultLazyDecoding ||
+                IppResponse.defaultIndexing && obj == null;
+        IppReader rdr;
+        if (lazy)
+            rdr = new IppReader();
+        else {
+            if (reader == null)
+                reader = new IppReader();
+            rdr = reader;
+        }
+        rdr.setAttributeFilter(filter);
+        if (chunk == null)
+            chunk = new byte[IppTransportEncoder.DOC_CHUNK];
+        IppTransportDecoder<T> t = new IppTransportDecoder<T>(is, ch, bb, contentLength, rdr, lazy, chunk);
+        IppResponse<T> ir = null;
+        // this would be substituted by Java7 try-with-resources
+        IOException ioex = null;
+        try {
+            ir = t.processResponse(obj);
+        } catch (IOException ex) {
+            ioex = ex;
+        } finally {
+            ioex = IppTransport.close(t.ios, ioex);
+            if (rdr == reader)
+                rdr.clear();
+            if (ioex != null)
+                throw ioex;
+        }
+        assert ir != null;
+        return ir;
+    }
+}
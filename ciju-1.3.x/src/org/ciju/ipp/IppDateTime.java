@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2012-2016 Opher Shachar
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ciju.ipp;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Converts between the 11 octets <tt>DateAndTime</tt> of RFC 2579, used by
+ * the IPP <tt>dateTime</tt> syntax, and milliseconds since the epoch.
+ * <pre>
+ *  octets  contents                range
+ *  1-2     year                    0..65536 (network byte order)
+ *  3       month                   1..12
+ *  4       day                     1..31
+ *  5       hour                    0..23
+ *  6       minutes                 0..59
+ *  7       seconds                 0..60
+ *  8       deci-seconds            0..9
+ *  9       direction from UTC      '+' / '-'
+ *  10      hours from UTC          0..13
+ *  11      minutes from UTC        0..59
+ * </pre>
+ * The conversion is done arithmetically in the proleptic Gregorian calendar,
+ * with no <tt>Calendar</tt> or <tt>TimeZone</tt> objects.
+ *
+ * @author Opher Shachar
+ */
+public final class IppDateTime {
+
+    /** The length of an encoded <tt>dateTime</tt> value */
+    public static final int LENGTH = 11;
+
+    private static final long MILLIS_PER_DAY = 24 * 60 * 60 * 1000L;
+
+    private IppDateTime() {}
+
+    /**
+     * Decodes the <tt>dateTime</tt> value at <tt>b</tt>'s <tt>off</tt>.
+     *
+     * @param b the buffer holding the value.
+     * @param off the offset of the value in <tt>b</tt>.
+     * @return the milliseconds since the epoch.
+     */
+    public static long decode(ByteBuffer b, int off) {
+        int year = b.getShort(off) & 0xffff;
+        long days = daysFromCivil(year, b.get(off + 2), b.get(off + 3));
+        long millis = days * MILLIS_PER_DAY
+                + b.get(off + 4) * 3600000L
+                + b.get(off + 5) * 60000L
+                + b.get(off + 6) * 1000L
+                + b.get(off + 7) * 100L;
+        // local time is UTC plus the offset
+        int offset = (b.get(off + 9) * 60 + b.get(off + 10)) * 60000;
+        return b.get(off + 8) == '-' ? millis + offset : millis - offset;
+    }
+
+    /**
+     * Encodes <tt>millis</tt> at <tt>b</tt>'s position as local time at the
+     * given offset from UTC, which is rounded to whole minutes.
+     *
+     * @param b the buffer to put the value in. It must have at least
+     *      {@link #LENGTH} bytes remaining.
+     * @param millis the milliseconds since the epoch.
+     * @param offset the offset from UTC in milliseconds.
+     */
+    public static void encode(ByteBuffer b, long millis, int offset) {
+        int minoff = offset / 60000;
+        long local = millis + minoff * 60000L;
+        long days = floorDiv(local, MILLIS_PER_DAY);
+        int ms = (int) (local - days * MILLIS_PER_DAY);
+        // days to civil, see daysFromCivil()
+        days += 719468;
+        long era = floorDiv(days, 146097);
+        int doe = (int) (days - era * 146097);
+        int yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+        int doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        int mp = (5 * doy + 2) / 153;
+        int day = doy - (153 * mp + 2) / 5 + 1;
+        int month = mp < 10 ? mp + 3 : mp - 9;
+        int year = (int) (yoe + era * 400) + (month <= 2 ? 1 : 0);
+        b.putShort((short) year);
+        b.put((byte) month);
+        b.put((byte) day);
+        b.put((byte) (ms / 3600000));
+        b.put((byte) (ms / 60000 % 60));
+        b.put((byte) (ms / 1000 % 60));
+        b.put((byte) (ms / 100 % 10));
+        if (minoff < 0) {
+            b.put((byte) '-');
+            minoff = -minoff;
+        } else
+            b.put((byte) '+');
+        b.put((byte) (minoff / 60));
+        b.put((byte) (minoff % 60));
+    }
+
+    /**
+     * Returns the days since the epoch of the given date.
+     * See <a href="http://howardhinnant.github.io/date_algorithms.html">
+     * chrono-Compatible Low-Level Date Algorithms</a>.
+     */
+    private static long daysFromCivil(int year, int month, int day) {
+        if (month <= 2)
+            year--;
+        long era = floorDiv(year, 400);
+        int yoe = (int) (year - era * 400);                             // [0, 399]
+        int doy = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;  // [0, 365]
+        int doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;                // [0, 146096]
+        return era * 146097 + doe - 719468;
+    }
+
+    private static long floorDiv(long x, long y) {
+        long q = x / y;
+        return (x % y != 0 && (x ^ y) < 0) ? q - 1 : q;
+    }
+}
@@ -113,7 +113,8 @@ public class IppException extends PrintException implements AttributeException,
 
     private DocFlavor[] populate_ufs(IppRequest req) {
         DocFlavor[] ufs = null;
-        for (Attribute attr : uvs)
+        // the response need not have an unsupported-attributes group
+        for (Attribute attr : uvs != null ? uvs : new Attribute[0])
             if (attr.getName().equals("document-format"))
                 if (attr instanceof GenericAttribute) {
                     GenericAttribute ga = (GenericAttribute) attr;
@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) 2012-2016 Opher Shachar
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ciju.ipp;
+
+import org.ciju.ipp.IppEncoding.GroupTag;
+
+/**
+ * Where the attribute groups, and the attributes in them, of a retained
+ * response are. Groups are numbered in order from <tt>0</tt>, the first
+ * group after the operation attributes. A group spans from the octet after
+ * its tag to the tag of the next group, an attribute from its value-tag.
+ * <p>
+ * Attributes are looked up by name and group tag, across the whole response,
+ * in an open-addressing table: one probe finds the entry of the first group
+ * of the tag that has the attribute, and the entries of the later groups
+ * follow it in a chain. Names are the canonical strings returned by
+ * {@link IppReader#getName()}.
+ *
+ * @author Opher Shachar
+ */
+/* package */ final class IppIndex {
+
+    private int groups;
+    private GroupTag[] tags = new GroupTag[8];
+    private int[] starts = new int[8];
+    private int[] ends = new int[8];
+
+    // the entries, in the order the attributes were added
+    private int entries;
+    private String[] names = new String[32];
+    private GroupTag[] tagOf = new GroupTag[32];
+    private int[] groupOf = new int[32];
+    private int[] offsets = new int[32];
+    private int[] next = new int[32];   // the entry of a later group, or -1
+    private int[] last = new int[32];   // of the chain headed by the entry
+
+    // the table of chain heads, holding an entry's number plus one
+    private int mask = 63;
+    private int[] table = new int[64];
+    private int heads;
+
+    /** A group begins with its tag at <tt>off</tt> */
+    void beginGroup(GroupTag gt, int off) {
+        if (groups == tags.length) {
+            int n = groups * 2;
+            GroupTag[] t = new GroupTag[n];
+            int[] s = new int[n], e = new int[n];
+            System.arraycopy(tags, 0, t, 0, groups);
+            System.arraycopy(starts, 0, s, 0, groups);
+            System.arraycopy(ends, 0, e, 0, groups);
+            tags = t;
+            starts = s;
+            ends = e;
+        }
+        tags[groups] = gt;
+        starts[groups] = off + 1;
+        ends[groups] = -1;
+        groups++;
+    }
+
+    /** The current group, if any, ends with the tag at <tt>off</tt> */
+    void endGroup(int off) {
+        if (groups > 0 && ends[groups - 1] < 0)
+            ends[groups - 1] = off;
+    }
+
+    /**
+     * An attribute of the current group begins at <tt>off</tt>. Only the
+     * first attribute of a name in a group is indexed.
+     */
+    void addAttribute(String name, int off) {
+        int g = groups - 1;
+        GroupTag gt = tags[g];
+        int i = slot(name, gt);
+        int head = table[i] - 1;
+        if (head >= 0 && groupOf[last[head]] == g)
+            return;
+        if (entries == names.length)
+            growEntries();
+        int e = entries++;
+        names[e] = name;
+        tagOf[e] = gt;
+        groupOf[e] = g;
+        offsets[e] = off;
+        next[e] = -1;
+        last[e] = e;
+        if (head >= 0) {
+            next[last[head]] = e;
+            last[head] = e;
+        }
+        else {
+            table[i] = e + 1;
+            if (++heads > (mask + 1) / 2)
+                growTable();
+        }
+    }
+
+    /* The slot of the chain of name and gt, or the free slot it would take */
+    private int slot(String name, GroupTag gt) {
+        int i = hash(name, gt) & mask;
+        for (int e; (e = table[i] - 1) >= 0; i = (i + 1) & mask)
+            if (tagOf[e] == gt && names[e].equals(name))
+                break;
+        return i;
+    }
+
+    private void growEntries() {
+        int n = entries * 2;
+        String[] nm = new String[n];
+        GroupTag[] t = new GroupTag[n];
+        int[] g = new int[n], o = new int[n], nx = new int[n], l = new int[n];
+        System.arraycopy(names, 0, nm, 0, entries);
+        System.arraycopy(tagOf, 0, t, 0, entries);
+        System.arraycopy(groupOf, 0, g, 0, entries);
+        System.arraycopy(offsets, 0, o, 0, entries);
+        System.arraycopy(next, 0, nx, 0, entries);
+        System.arraycopy(last, 0, l, 0, entries);
+        names = nm;
+        tagOf = t;
+        groupOf = g;
+        offsets = o;
+        next = nx;
+        last = l;
+    }
+
+    private void growTable() {
+        int[] old = table;
+        mask = mask * 2 + 1;
+        table = new int[mask + 1];
+        for (int h : old)
+            if (h > 0) {
+                int i = hash(names[h - 1], tagOf[h - 1]) & mask;
+                while (table[i] != 0)
+                    i = (i + 1) & mask;
+                table[i] = h;
+            }
+    }
+
+    /**
+     * @return the entry of the named attribute in the first group tagged
+     *      <tt>gt</tt> that has it, or <tt>-1</tt> if there's no such
+     *      attribute.
+     */
+    int find(String name, GroupTag gt) {
+        return table[slot(name, gt)] - 1;
+    }
+
+    /**
+     * @return the entry of the same attribute in the next group that has it,
+     *      or <tt>-1</tt> if there's none.
+     */
+    int next(int e) {
+        return next[e];
+    }
+
+    /** @return the group of entry <tt>e</tt> */
+    int getGroup(int e) {
+        return groupOf[e];
+    }
+
+    /** @return the offset of the attribute of entry <tt>e</tt> */
+    int getOffset(int e) {
+        return offsets[e];
+    }
+
+    int getGroupCount() {
+        return groups;
+    }
+
+    GroupTag getGroupTag(int g) {
+        return tags[g];
+    }
+
+    int getStart(int g) {
+        return starts[g];
+    }
+
+    int getEnd(int g) {
+        return ends[g];
+    }
+
+    private static int hash(String name, GroupTag gt) {
+        int h = name.hashCode() * 31 + gt.ordinal();
+        return h ^ (h >>> 16);
+    }
+}
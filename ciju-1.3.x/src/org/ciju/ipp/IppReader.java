@@ -0,0 +1,1258 @@
+/*
+ * Copyright (C) 2012-2016 Opher Shachar
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ciju.ipp;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.text.MessageFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.NoSuchElementException;
+import java.util.logging.Level;
+import javax.print.attribute.ResolutionSyntax;
+import org.ciju.ipp.IppEncoding.GroupTag;
+import org.ciju.ipp.IppEncoding.StatusCode;
+import org.ciju.ipp.IppEncoding.ValueTag;
+import org.ciju.ipp.IppObject.Conformity;
+import org.ciju.ipp.attribute.AttributeGroup;
+import org.ciju.ipp.attribute.GenericAttribute;
+import org.ciju.ipp.attribute.GenericValue;
+import org.ciju.ipp.attribute.ResolutionValue;
+import org.ciju.ipp.attribute.TextValue;
+import static org.ciju.ipp.IppTransport.logger;
+import static org.ciju.ipp.IppTransport.resourceStrings;
+
+/**
+ * A pull-parser over an IPP response.
+ * <p>
+ * Rather than building the whole attribute graph of an {@link IppResponse}
+ * the reader lets the caller step through the response one event at a time:
+ * <pre>
+ *  IppReader r = new IppReader(in, contentLength);
+ *  try {
+ *      while (r.next() != IppReader.Event.END) {
+ *          if (r.getEvent() == IppReader.Event.VALUE &amp;&amp; r.getName().equals("job-id"))
+ *              process(r.getInt());
+ *      }
+ *  } finally {
+ *      r.close();
+ *  }
+ * </pre>
+ * The response header and the <tt>attributes-charset</tt> and
+ * <tt>attributes-natural-language</tt> operation attributes are read when the
+ * reader is created. The same {@link IppObject.Conformity Conformity} checks
+ * applied by {@link IppTransport#processResponse(InputStream, long, IppObject)}
+ * are applied as the response is read.
+ * <p>
+ * The response may also be read from a {@link ReadableByteChannel}, or parsed
+ * where it is in a {@link ByteBuffer}, heap or direct (e.g. mapped from a
+ * capture file).
+ * <p>
+ * When the length of the response is known it's read into memory at once,
+ * up to 16MiB, and parsed from there. Otherwise the reader holds no more than
+ * one attribute value at a time so a response of any size is read in
+ * constant memory. The raw bytes of the current value are only valid until
+ * the next call to {@link #next()}.
+ * <p>
+ * With an {@link AttributeFilter} the attributes not wanted are skipped
+ * without being decoded.
+ *
+ * @author Opher Shachar
+ */
+public class IppReader implements Closeable {
+
+    /** The events reported by {@link IppReader#next()} */
+    public enum Event {
+        /** An attribute group begins, see {@link IppReader#getGroupTag()} */
+        GROUP,
+        /** An attribute begins, see {@link IppReader#getName()} */
+        ATTRIBUTE,
+        /** A value of the current attribute, see {@link IppReader#getValue()} */
+        VALUE,
+        /** The end-of-attributes-tag was read */
+        END
+    }
+
+    private static final int BUFFER_SIZE = 8192;
+    /** The largest response, or part of it, read at once when its length is known */
+    private static final int MAX_BULK_READ = 16 << 20;
+    /** The largest buffer a reused reader keeps */
+    private static final int MAX_KEPT_BUFFER = 64 << 10;
+    private static final int NAME_TABLE_SIZE = 64;
+
+    private InputStream in;
+    private ReadableByteChannel ch;
+    private boolean wrapped;        // buf is a slice of a buffer holding the whole response
+    private ByteBuffer own;         // this reader's buffer while wrapping another
+    private ByteBuffer buf;
+    private ByteBuffer view;        // a duplicate of buf used for decoding strings
+    private CharBuffer cb;
+    private final CharsetDecoder usa;
+    private CharsetDecoder csd;
+    private boolean csdAscii;       // csd decodes US-ASCII bytes as is
+    private IppResponse<IppObject> response;
+    private boolean retain;         // keep the whole response in buf
+    private NameTable names;        // non-standard names seen in the current response
+    private AttributeFilter filter;
+    private NameTable wanted;       // names wanted of the current group, if filtered
+    private boolean skipping;       // the current attribute is filtered out
+
+    // the current state
+    private Event event;
+    private int eventOff;           // where the encoding of the current event begins
+    private GroupTag groupTag;
+    private String name;
+    private int tag;                // the value-tag octet of a pending value
+    private ValueTag valueTag;
+    private int valueOff, valueLen;
+    private int langOff, langLen;   // for TEXT/NAME_WITH_LANGUAGE
+
+    /**
+     * Creates a reader over an IPP response.
+     *
+     * @param in the <tt>InputStream</tt> to read the response from.
+     * @param contentLength the length of the response if known, in which case
+     *      it's read at once, or <tt>-1</tt>.
+     * @throws IOException if an I/O error occurs or the response doesn't begin
+     *      with the required operation attributes.
+     */
+    public IppReader(InputStream in, long contentLength) throws IOException {
+        this();
+        init(in, null, null, null, false, contentLength);
+    }
+
+    /**
+     * Creates a reader over an IPP response.
+     *
+     * @param ch the blocking <tt>ReadableByteChannel</tt> to read the response
+     *      from.
+     * @param contentLength the length of the response if known, in which case
+     *      it's read at once, or <tt>-1</tt>.
+     * @throws IOException if an I/O error occurs or the response doesn't begin
+     *      with the required operation attributes.
+     */
+    public IppReader(ReadableByteChannel ch, long contentLength) throws IOException {
+        this();
+        init(null, ch, null, null, false, contentLength);
+    }
+
+    /**
+     * Creates a reader over an IPP response held in a buffer, from its
+     * position to its limit. The response is parsed where it is, so the
+     * buffer's content must not be modified while the reader is in use. The
+     * buffer's position is not changed.
+     *
+     * @param bb the buffer holding the response.
+     * @throws IOException if the response doesn't begin with the required
+     *      operation attributes.
+     */
+    public IppReader(ByteBuffer bb) throws IOException {
+        this();
+        init(null, null, bb, null, false, -1);
+    }
+
+    /* package */ IppReader() {
+        setBuffer(ByteBuffer.allocate(BUFFER_SIZE));
+        usa = Charset.forName("US-ASCII").newDecoder();
+    }
+
+    /**
+     * Start reading a new response, reusing this reader's buffers and decoders.
+     * The response is read from exactly one of <tt>in</tt>, <tt>ch</tt> or
+     * <tt>bb</tt>. A reader that retained a response must not be reused as its
+     * values refer to it.
+     */
+    /* package */ void init(InputStream in, ReadableByteChannel ch, ByteBuffer bb,
+            IppObject obj, boolean lazy, long contentLength) throws IOException {
+        assert !retain : "values of the last response still refer to this reader";
+        this.in = in;
+        this.ch = ch;
+        wrapped = bb != null;
+        if (wrapped) {
+            // parse the response where it is
+            if (own == null)
+                own = buf;
+            setBuffer(bb.slice());
+        }
+        else {
+            buf.clear();
+            buf.limit(0);
+        }
+        event = null;
+        if (names != null)
+            names.clear();
+        groupTag = GroupTag.OPERATION;
+        wanted = filter != null ? filter.getTable(groupTag) : null;
+        skipping = false;
+        name = null;
+        valueTag = null;
+
+        // read the whole response in one go, if its length is known
+        if (!wrapped && contentLength > 0) {
+            int n = (int) Math.min(contentLength, MAX_BULK_READ);
+            if (n > buf.capacity()) {
+                setBuffer(ByteBuffer.allocate(n));
+                buf.limit(0);
+            }
+            fill(0, n);
+        }
+        // read response header
+        require(8);
+        response = new IppResponse<IppObject>(buf.getShort() /* version */,
+                                              buf.getShort() /* status */,
+                                              buf.getInt() /* request id */, obj);
+        retain = lazy && (response.lazyDecoding || response.indexing);
+        CodingErrorAction action = response.conformity != Conformity.STRICT ?
+                CodingErrorAction.REPLACE : CodingErrorAction.REPORT;
+        usa.onMalformedInput(action)
+           .onUnmappableCharacter(action);
+        // read operational attribures
+        readOperationHead();
+    }
+
+    /** Drop the references to the last response once done with it */
+    /* package */ void clear() {
+        in = null;
+        ch = null;
+        response = null;
+        filter = null;
+        wanted = null;
+        if (names != null)
+            names.clear();      // names are interned per response
+        if (own != null) {
+            setBuffer(own);
+            own = null;
+        }
+        if (buf.capacity() > MAX_KEPT_BUFFER)
+            setBuffer(ByteBuffer.allocate(BUFFER_SIZE));
+    }
+
+    /**
+     * Advances to the next event of the response.
+     *
+     * @return the new current event.
+     * @throws IOException if an I/O error occurs or the response is malformed.
+     * @throws NoSuchElementException if the {@link Event#END END} event has
+     *      already been reported.
+     */
+    public Event next() throws IOException {
+        if (event == Event.END)
+            throw new NoSuchElementException();
+        if (event == Event.ATTRIBUTE)
+            // the first value of the current attribute is pending
+            return readValue();
+
+        for (;;) {
+            // read either a group-tag or an attribute (name+value)
+            require(1);
+            eventOff = buf.position();
+            int b = buf.get() & 0xFF;
+            if (b < ValueTag.UNSUPPORTED.getValue()) {
+                // seen a group tag
+                groupTag = validateGroupTag(b);
+                wanted = filter != null ? filter.getTable(groupTag) : null;
+                skipping = false;
+                name = null;
+                valueTag = null;
+                return event = groupTag == GroupTag.END ? Event.END : Event.GROUP;
+            }
+            // attribute up ahead
+            tag = b;
+            require(2);
+            int len = buf.getShort();
+            if (len > 0) {
+                // read new attribute's name
+                validateConformity(len);
+                if (wanted != null) {
+                    require(len);
+                    String str = wanted.lookup(buf, buf.position(), len);
+                    buf.position(buf.position() + len);
+                    skipping = str == null;
+                    if (skipping) {
+                        name = null;
+                        skipValue();
+                        continue;
+                    }
+                    name = str;
+                }
+                else
+                    name = readName(len);
+                valueTag = null;
+                return event = Event.ATTRIBUTE;
+            }
+            else if (len < 0)
+                throw new IppFailedException(MessageFormat.format(resourceStrings.getString("PRINT SERVER BROKEN: NEW ATTRIBUTE HAS NEGATIVE-LENGTH ({0}) NAME!"), len),
+                        response);
+            else /* len == 0 */ if (skipping) {
+                // an additional value, or collection member, of a filtered out attribute
+                skipValue();
+                continue;
+            }
+            else if (name == null)
+                throw new IppFailedException(resourceStrings.getString("PRINT SERVER BROKEN: NEW ATTRIBUTE HAS ZERO-LENGTH NAME!"),
+                        response);
+            // an additional value of the current attribute
+            return readValue();
+        }
+    }
+
+    /**
+     * Sets the attributes to decode of the rest of the response. Attributes
+     * not wanted are skipped and not reported.
+     *
+     * @param filter the attributes wanted or <tt>null</tt> to decode all.
+     */
+    public void setAttributeFilter(AttributeFilter filter) {
+        this.filter = filter;
+        wanted = filter != null ? filter.getTable(groupTag) : null;
+    }
+
+    /**
+     * @return the filter set with {@link #setAttributeFilter(AttributeFilter)}
+     *      or <tt>null</tt>.
+     */
+    public AttributeFilter getAttributeFilter() {
+        return filter;
+    }
+
+    /**
+     * @return the current event, or <tt>null</tt> if {@link #next()} was not
+     *      called yet.
+     */
+    public Event getEvent() {
+        return event;
+    }
+
+    /**
+     * @return the tag of the current attribute group.
+     */
+    public GroupTag getGroupTag() {
+        return groupTag;
+    }
+
+    /**
+     * @return the name of the current attribute, or <tt>null</tt> if positioned
+     *      on a group tag.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the value-tag of the current value.
+     * @throws IllegalStateException if not positioned on a value.
+     */
+    public ValueTag getValueTag() {
+        checkValue();
+        return valueTag;
+    }
+
+    /**
+     * @return the length in bytes of the current value.
+     * @throws IllegalStateException if not positioned on a value.
+     */
+    public int getValueLength() {
+        checkValue();
+        return valueLen;
+    }
+
+    //<editor-fold defaultstate="collapsed" desc="typed value getters">
+    /**
+     * @return the current value of syntax <tt>integer</tt> or <tt>enum</tt>.
+     * @throws IllegalStateException if the value has a different syntax.
+     */
+    public int getInt() {
+        checkValue(ValueTag.INTEGER, ValueTag.ENUM);
+        return buf.getInt(valueOff);
+    }
+
+    /**
+     * @return the current value of syntax <tt>boolean</tt>.
+     * @throws IllegalStateException if the value has a different syntax.
+     */
+    public boolean getBoolean() {
+        checkValue(ValueTag.BOOLEAN, null);
+        return buf.get(valueOff) != 0;
+    }
+
+    /**
+     * @return the current value of syntax <tt>rangeOfInteger</tt> as a two
+     *      element array of lower and upper bounds.
+     * @throws IllegalStateException if the value has a different syntax.
+     */
+    public int[] getRange() {
+        checkValue(ValueTag.RANGE_OF_INTEGER, null);
+        return new int[] { buf.getInt(valueOff), buf.getInt(valueOff + 4) };
+    }
+
+    /**
+     * @return the current value of syntax <tt>resolution</tt>.
+     * @throws IllegalStateException if the value has a different syntax.
+     */
+    public ResolutionSyntax getResolution() {
+        checkValue(ValueTag.RESOLUTION, null);
+        return decodeResolution(buf, valueOff);
+    }
+
+    /**
+     * @return the current value of syntax <tt>dateTime</tt>.
+     * @throws IllegalStateException if the value has a different syntax.
+     */
+    public Date getDate() {
+        return new Date(getDateTime());
+    }
+
+    /**
+     * @return the current value of syntax <tt>dateTime</tt> in milliseconds
+     *      since the epoch.
+     * @throws IllegalStateException if the value has a different syntax.
+     */
+    public long getDateTime() {
+        checkValue(ValueTag.DATE_TIME, null);
+        return IppDateTime.decode(buf, valueOff);
+    }
+
+    /**
+     * Returns the current character-string value. For <tt>textWithLanguage</tt>
+     * and <tt>nameWithLanguage</tt> values only the text part is returned (see
+     * {@link #getLocale()}).
+     *
+     * @return the current value of a character-string syntax.
+     * @throws IllegalStateException if the value is not a character-string.
+     * @throws CharacterCodingException if the value could not be decoded in
+     *      {@link IppObject.Conformity#STRICT STRICT} conformity.
+     */
+    public String getString() throws CharacterCodingException {
+        checkValue();
+        return decodeString(buf, valueTag, valueOff, valueLen);
+    }
+
+    /**
+     * @return the natural language of the current <tt>text</tt> or <tt>name</tt>
+     *      value. This is the response's natural language unless the value
+     *      is <tt>textWithLanguage</tt> or <tt>nameWithLanguage</tt>.
+     * @throws IllegalStateException if the value is not a <tt>text</tt> or
+     *      <tt>name</tt>.
+     * @throws IppFailedException if the value's natural language is invalid in
+     *      {@link IppObject.Conformity#STRICT STRICT} conformity.
+     */
+    public Locale getLocale() throws CharacterCodingException {
+        checkValue();
+        return decodeLocale(buf, valueTag, langOff, langLen);
+    }
+
+    /**
+     * @return the current value of syntax <tt>uri</tt>.
+     * @throws IllegalStateException if the value has a different syntax.
+     * @throws IppFailedException if the value is not a valid URI.
+     */
+    public URI getURI() throws CharacterCodingException {
+        checkValue(ValueTag.URI, null);
+        return decodeURI(buf, valueOff, valueLen);
+    }
+
+    /**
+     * @return a copy of the raw bytes of the current value.
+     * @throws IllegalStateException if not positioned on a value.
+     */
+    public byte[] getBytes() {
+        checkValue();
+        return decodeBytes(buf, valueOff, valueLen);
+    }
+
+    /**
+     * Returns the current value as the same object type held by a
+     * {@link org.ciju.ipp.attribute.GenericValue GenericValue} decoded by
+     * {@link IppTransport#processResponse(InputStream, long, IppObject)}.
+     *
+     * @return the current value, <tt>null</tt> for out-of-band values.
+     * @throws IllegalStateException if not positioned on a value.
+     * @throws CharacterCodingException if the value could not be decoded in
+     *      {@link IppObject.Conformity#STRICT STRICT} conformity.
+     */
+    public Object getValue() throws CharacterCodingException {
+        checkValue();
+        return decodeValue(buf, valueTag, valueOff, valueLen, langOff, langLen);
+    }
+    //</editor-fold>
+
+    //<editor-fold defaultstate="collapsed" desc="value decoding methods">
+    /**
+     * Creates a {@link GenericValue} for the current value. If the reader
+     * retains the response (see {@link IppResponse#setDefaultLazyDecoding(boolean)})
+     * values that would require an object to be decoded are returned undecoded,
+     * to be decoded on first use.
+     */
+    /* package */ GenericValue newGenericValue() throws CharacterCodingException {
+        checkValue();
+        if (retain)
+            switch (valueTag) {
+                case OCTET_STRING:
+                case RESERVED:
+                case DATE_TIME:
+                case RESOLUTION:
+                case TEXT_WITH_LANGUAGE:
+                case NAME_WITH_LANGUAGE:
+                case TEXT_WITHOUT_LANGUAGE:
+                case NAME_WITHOUT_LANGUAGE:
+                case KEYWORD:
+                case URI:
+                case URI_SCHEME:
+                case CHARSET:
+                case NATURAL_LANGUAGE:
+                case MIME_MEDIA_TYPE:
+                case MEMBER_ATTR_NAME:
+                    return new LazyValue(this, valueTag, buf, valueOff, valueLen, langOff, langLen);
+            }
+        return new GenericValue(valueTag, getValue());
+    }
+
+    /**
+     * Adds the current value to <tt>ga</tt>, unboxed if it's an integer,
+     * enum, boolean or range.
+     *
+     * @see GenericAttribute#getPackedValueTag()
+     */
+    /* package */ void addValue(GenericAttribute ga) throws CharacterCodingException {
+        checkValue();
+        switch (valueTag) {
+            case INTEGER:
+            case ENUM:
+                ga.add(valueTag, buf.getInt(valueOff));
+                break;
+            case BOOLEAN:
+                ga.add(valueTag, buf.get(valueOff) != 0);
+                break;
+            case RANGE_OF_INTEGER:
+                ga.add(valueTag, buf.getInt(valueOff), buf.getInt(valueOff + 4));
+                break;
+            default:
+                ga.add(newGenericValue());
+        }
+    }
+
+    /* package */ Object decodeValue(ByteBuffer b, ValueTag vt, int off, int len,
+            int langOff, int langLen) throws CharacterCodingException {
+        switch (vt) {
+            case UNSUPPORTED:
+            case UNKNOWN:
+            case NO_VALUE:
+            case NOT_SETTABLE:
+            case DELETE_ATTRIBUTE:
+            case ADMIN_DEFINE:          // the above out-of-band values
+                break;                  // have zero-length
+            case INTEGER:
+            case ENUM:
+                return b.getInt(off);
+            case BOOLEAN:
+                return b.get(off) != 0;
+            case OCTET_STRING:
+            case RESERVED:              // treat value as opaque data
+                return decodeBytes(b, off, len);
+            case DATE_TIME:
+                return new Date(IppDateTime.decode(b, off));
+            case RESOLUTION:
+                return decodeResolution(b, off);
+            case RANGE_OF_INTEGER:
+                return new int[] { b.getInt(off), b.getInt(off + 4) };
+            case TEXT_WITH_LANGUAGE:
+            case NAME_WITH_LANGUAGE:
+            case TEXT_WITHOUT_LANGUAGE:
+            case NAME_WITHOUT_LANGUAGE:
+                Locale loc = decodeLocale(b, vt, langOff, langLen);
+                return new TextValue(decodeString(b, vt, off, len), loc);
+            case BEGIN_COLLECTION:
+            case END_COLLECTION:
+                if (len == 0)
+                    break;
+                return decode(b, off, len, usa);
+            case KEYWORD:
+            case URI_SCHEME:
+            case CHARSET:
+            case NATURAL_LANGUAGE:
+            case MIME_MEDIA_TYPE:
+            case MEMBER_ATTR_NAME:
+                return decodeString(b, vt, off, len);
+            case URI:
+                return decodeURI(b, off, len);
+            case TEXT:
+            case NAME:  // TEXT, NAME could never be (here for completeness)
+            default:
+                throw new AssertionError(MessageFormat.format(
+                        resourceStrings.getString("PLEASE REPORT TO THE DEVELOPER: THIS VALUETAG {0} HAS BEEN OVERLOOKED!"), vt));
+        }
+        return null;
+    }
+
+    private String decodeString(ByteBuffer b, ValueTag vt, int off, int len) throws CharacterCodingException {
+        switch (vt) {
+            case TEXT_WITH_LANGUAGE:
+            case NAME_WITH_LANGUAGE:
+            case TEXT_WITHOUT_LANGUAGE:
+            case NAME_WITHOUT_LANGUAGE:
+                return decode(b, off, len, csd);
+            case KEYWORD:
+            case URI:
+            case URI_SCHEME:
+            case CHARSET:
+            case NATURAL_LANGUAGE:
+            case MIME_MEDIA_TYPE:
+            case MEMBER_ATTR_NAME:
+                return decode(b, off, len, usa);
+            default:
+                throw notApplicable();
+        }
+    }
+
+    private Locale decodeLocale(ByteBuffer b, ValueTag vt, int langOff, int langLen) throws CharacterCodingException {
+        switch (vt) {
+            case TEXT_WITH_LANGUAGE:
+            case NAME_WITH_LANGUAGE:
+                return parseNaturalLanguage(decode(b, langOff, langLen, usa));
+            case TEXT_WITHOUT_LANGUAGE:
+            case NAME_WITHOUT_LANGUAGE:
+                return response.getLocale();
+            default:
+                throw notApplicable();
+        }
+    }
+
+    private URI decodeURI(ByteBuffer b, int off, int len) throws CharacterCodingException {
+        try {
+            return new URI(decode(b, off, len, usa));
+        }
+        catch (URISyntaxException ex) {
+            IppFailedException ife = new IppFailedException(response);
+            ife.initCause(ex);
+            throw ife;
+        }
+    }
+
+    private static ResolutionSyntax decodeResolution(ByteBuffer b, int off) {
+        return new ResolutionValue(b.getInt(off), b.getInt(off + 4),
+                b.get(off + 8) == 3 ? ResolutionSyntax.DPI : ResolutionSyntax.DPCM);
+    }
+
+    private byte[] decodeBytes(ByteBuffer b, int off, int len) {
+        ByteBuffer in = b == buf ? view : b.duplicate();
+        byte[] ba = new byte[len];
+        in.limit(off + len).position(off);
+        in.get(ba);
+        return ba;
+    }
+    //</editor-fold>
+
+    //<editor-fold defaultstate="collapsed" desc="response header getters">
+    public short getVersion() {
+        return response.getVersion();
+    }
+
+    public short getResponseCode() {
+        return response.getResponseCode();
+    }
+
+    public StatusCode getStatusCode() {
+        return response.getStatusCode();
+    }
+
+    public int getRequestId() {
+        return response.getRequestId();
+    }
+
+    /**
+     * @return the response's <tt>attributes-charset</tt>.
+     */
+    public Charset getCharset() {
+        return csd.charset();
+    }
+
+    /**
+     * @return the response's <tt>attributes-natural-language</tt>.
+     */
+    public Locale getResponseLocale() {
+        return response.getLocale();
+    }
+    //</editor-fold>
+
+    /**
+     * Returns the document following the response's attributes, if any. This
+     * may only be called once the {@link Event#END END} event was reported.
+     *
+     * @return an <tt>InputStream</tt> over the response's document.
+     * @throws IllegalStateException if not positioned at the end of attributes.
+     */
+    public InputStream getDocumentStream() {
+        if (event != Event.END)
+            throw new IllegalStateException();
+        InputStream rest = ch != null ? Channels.newInputStream(ch) : in;
+        if (rest != null && !buf.hasRemaining())
+            return rest;
+        InputStream head = new SpoolBuffer.BufferInputStream(buf.slice());
+        buf.position(buf.limit());
+        return rest != null ? new SequenceInputStream(head, rest) : head;
+    }
+
+    /**
+     * Closes the underlying <tt>InputStream</tt> or channel, if any.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    public void close() throws IOException {
+        if (in != null)
+            in.close();
+        if (ch != null)
+            ch.close();
+    }
+
+    /* package */ IppResponse<IppObject> getResponse() {
+        return response;
+    }
+
+    /** Is the whole response kept in this reader's buffer */
+    /* package */ boolean isRetaining() {
+        return retain;
+    }
+
+    /**
+     * @return the offset in the retained response of the group-tag or
+     *      value-tag starting the current group or attribute.
+     */
+    /* package */ int getEventOffset() {
+        return eventOff;
+    }
+
+    //<editor-fold defaultstate="collapsed" desc="on-demand decoding methods">
+    /**
+     * Returns the value-tag of the attribute at <tt>off</tt> in the retained
+     * response, see {@link IppIndex}.
+     */
+    /* package */ synchronized ValueTag getValueTag(int off) {
+        try {
+            return ValueTag.valueOf(buf.get(off));
+        }
+        catch (IllegalArgumentException ignore) {
+            return ValueTag.RESERVED;
+        }
+    }
+
+    /**
+     * Decodes the attributes of a group of the retained response, once the
+     * response was read.
+     *
+     * @param gt the group's tag.
+     * @param off the offset of the group's first attribute.
+     * @param end the offset of the tag of the next group.
+     */
+    /* package */ synchronized AttributeGroup decodeGroup(GroupTag gt, int off, int end) throws IOException {
+        int lim = buf.limit();
+        // this would be substituted by Java7 try-with-resources
+        try {
+            seek(gt, off, end);
+            AttributeGroup ag = new AttributeGroup(gt);
+            GenericAttribute curr = null;
+            for (Event ev; (ev = next()) != Event.GROUP && ev != Event.END; )
+                if (ev == Event.ATTRIBUTE) {
+                    if (curr != null)
+                        ag.add(curr);
+                    curr = new GenericAttribute(name);
+                }
+                else
+                    addValue(curr);
+            if (curr != null)
+                ag.add(curr);
+            return ag;
+        } finally {
+            buf.limit(lim);
+        }
+    }
+
+    /**
+     * Decodes the attribute at <tt>off</tt> of the retained response, once
+     * the response was read.
+     *
+     * @param gt the tag of the attribute's group.
+     * @param off the offset of the attribute.
+     * @param end the offset of the tag of the next group.
+     */
+    /* package */ synchronized GenericAttribute decodeAttribute(GroupTag gt, int off, int end) throws IOException {
+        int lim = buf.limit();
+        // this would be substituted by Java7 try-with-resources
+        try {
+            seek(gt, off, end);
+            if (next() != Event.ATTRIBUTE)
+                return null;
+            GenericAttribute ga = new GenericAttribute(name);
+            while (next() == Event.VALUE)
+                addValue(ga);
+            return ga;
+        } finally {
+            buf.limit(lim);
+        }
+    }
+
+    /**
+     * Read the retained response from <tt>off</tt> up to and including the
+     * group-tag at <tt>end</tt>. The caller restores the buffer's limit, as
+     * the values of the response are decoded from anywhere in the buffer.
+     */
+    private void seek(GroupTag gt, int off, int end) {
+        assert retain;
+        wrapped = true;     // nothing more is read
+        buf.limit(end + 1).position(off);
+        event = null;
+        groupTag = gt;
+        wanted = filter != null ? filter.getTable(gt) : null;
+        skipping = false;
+        name = null;
+        valueTag = null;
+    }
+    //</editor-fold>
+
+    //<editor-fold defaultstate="collapsed" desc="buffer read methods">
+    private void setBuffer(ByteBuffer bb) {
+        buf = bb;
+        view = bb.duplicate();
+    }
+
+    /**
+     * Ensure at least <tt>n</tt> bytes are available in the buffer. Unless
+     * retaining the response the bytes before the buffer's position are
+     * discarded to make room.
+     */
+    private void require(int n) throws IOException {
+        if (buf.remaining() >= n)
+            return;
+        if (wrapped)
+            // there's no more to the response
+            throw new EOFException();
+        int pos = buf.position();
+        if (!retain) {
+            if (n > buf.capacity()) {
+                ByteBuffer bb = ByteBuffer.allocate(Math.max(n, buf.capacity() * 2));
+                bb.put(buf);
+                bb.flip();
+                setBuffer(bb);
+            }
+            else {
+                buf.compact();
+                buf.flip();
+            }
+            pos = 0;
+        }
+        else if (buf.capacity() - pos < n) {
+            // keep all read bytes at their offsets, values may refer to them
+            ByteBuffer bb = ByteBuffer.allocate(Math.max(pos + n, buf.capacity() * 2));
+            buf.rewind();
+            bb.put(buf);
+            bb.flip();
+            bb.position(pos);
+            setBuffer(bb);
+        }
+        if (!fill(pos, n))
+            throw new EOFException();
+    }
+
+    /**
+     * Read into the buffer past its limit until it holds <tt>n</tt> bytes
+     * from <tt>pos</tt> or the stream ends. The buffer is left positioned at
+     * <tt>pos</tt>.
+     *
+     * @return <tt>false</tt> if the stream ended.
+     */
+    private boolean fill(int pos, int n) throws IOException {
+        int lim = buf.limit();
+        buf.limit(buf.capacity());
+        buf.position(lim);
+        boolean eof = false;
+        while (!eof && buf.position() - pos < n) {
+            int r;
+            if (ch != null)
+                r = ch.read(buf);       // advances the position
+            else {
+                r = in.read(buf.array(), buf.arrayOffset() + buf.position(), buf.remaining());
+                if (r > 0)
+                    buf.position(buf.position() + r);
+            }
+            eof = r < 0;
+        }
+        buf.limit(buf.position());
+        buf.position(pos);
+        return !eof;
+    }
+
+    /** Decode a string of the given length at the buffer's position and skip it */
+    private String readString(int len, CharsetDecoder cd) throws CharacterCodingException {
+        String s = decode(buf, buf.position(), len, cd);
+        buf.position(buf.position() + len);
+        return s;
+    }
+
+    /** Decode a string of the given length at <tt>b</tt>'s <tt>off</tt> */
+    private String decode(ByteBuffer b, int off, int len, CharsetDecoder cd) throws CharacterCodingException {
+        int n = (int) (len * cd.maxCharsPerByte()) + 1;
+        if (cb == null || cb.capacity() < n)
+            cb = CharBuffer.allocate(Math.max(n, ValueTag.TEXT_WITHOUT_LANGUAGE.MAX));
+
+        // fast path: US-ASCII bytes decode to the same chars in an ASCII based charset
+        if (cd == usa || csdAscii && cd == csd) {
+            char[] ca = cb.array();
+            int i = 0;
+            if (b.hasArray()) {
+                byte[] ba = b.array();
+                int base = b.arrayOffset() + off;
+                for (byte c; i < len && (c = ba[base + i]) >= 0; i++)
+                    ca[i] = (char) c;
+            }
+            else
+                for (byte c; i < len && (c = b.get(off + i)) >= 0; i++)
+                    ca[i] = (char) c;
+            if (i == len)
+                return new String(ca, 0, len);
+        }
+
+        cb.clear();
+        ByteBuffer in = b == buf ? view : b.duplicate();
+        in.limit(off + len).position(off);
+        cd.reset();
+        CoderResult cr = cd.decode(in, cb, true);
+        if (cr.isUnderflow())
+            cr = cd.flush(cb);
+        if (!cr.isUnderflow())
+            cr.throwException();
+        cb.flip();
+        return cb.toString();
+    }
+    //</editor-fold>
+
+    /**
+     * The picture of the encoding of a value is:
+     * ---------------------
+     * |   value-length    |   2 bytes
+     * ---------------------
+     * |          value    |   v bytes
+     * ---------------------
+     */
+    private Event readValue() throws IOException {
+        require(2);
+        int len = buf.getShort();
+        valueTag = validateConformity(tag, len);
+        require(len);
+        valueOff = buf.position();
+        valueLen = len;
+        buf.position(valueOff + len);
+        if (valueTag == ValueTag.TEXT_WITH_LANGUAGE || valueTag == ValueTag.NAME_WITH_LANGUAGE) {
+            // validate the structure of the value up front
+            int len1 = len < 2 ? -1 : buf.getShort(valueOff);
+            int len2 = len1 < 0 || len < len1 + 4 ? -1 : buf.getShort(valueOff + len1 + 2);
+            if (len1 < 0 || len2 < 0 || len != len1 + len2 + 4) // 4 == 2x length fields
+                throw new IppFailedException(MessageFormat.format(
+                        resourceStrings.getString("PRINT SERVER BROKEN: VALUE-TYPE, {0}, HAS LENGTH, {1}, THAT DOESN'T CORRESPOND TO THE SUM OF IT'S PARTS, {2}!"),
+                        valueTag, len, Math.max(len1, 0) + Math.max(len2, 0) + 4), response);
+            validateConformity(ValueTag.NATURAL_LANGUAGE, len1);
+            validateConformity(valueTag == ValueTag.NAME_WITH_LANGUAGE?
+                    ValueTag.NAME_WITHOUT_LANGUAGE : ValueTag.TEXT_WITHOUT_LANGUAGE,
+                    len2);
+            langOff = valueOff + 2;
+            langLen = len1;
+            valueOff += len1 + 4;
+            valueLen = len2;
+        }
+        return event = Event.VALUE;
+    }
+
+    /** Skip a value of a filtered out attribute by its length */
+    private void skipValue() throws IOException {
+        require(2);
+        int len = buf.getShort();
+        if (len < 0)
+            throw new IppFailedException(MessageFormat.format(resourceStrings.getString("PRINT SERVER BROKEN: ATTRIBUTE HAS NEGATIVE-LENGTH ({0}) VALUE!"), len),
+                    response);
+        require(len);
+        buf.position(buf.position() + len);
+    }
+
+    private void readOperationHead() throws IOException {
+        int b, len;
+        String str;
+
+        // Read operational attributes group tag
+        require(1);
+        b = buf.get() & 0xFF;
+        if (GroupTag.valueOf(b) != GroupTag.OPERATION)
+            throw new IppFailedException(resourceStrings.getString("PRINT SERVER BROKEN: RESPONSE DOES NOT BEGIN WITH OPERATION GROUP TAG!"),
+                    response);
+
+        // Read charset attribute
+        require(3);
+        b = buf.get();  //CHARSET
+        len = buf.getShort();   //18
+        if (ValueTag.valueOf(b) != ValueTag.CHARSET || len != 18 ||
+                !readName(len).equals("attributes-charset"))
+            throw new IppFailedException(resourceStrings.getString("PRINT SERVER BROKEN: FIRST ATTRIBUTE IS NOT CHARSET!"),
+                    response);
+        str = readString(readShort());
+        response.addOperationAttribute(new GenericAttribute("attributes-charset", str, ValueTag.CHARSET));
+        // Initialize the charset decoder, unless the last response had the same charset
+        Charset cs = Charset.forName(str);
+        if (csd == null || !csd.charset().equals(cs)) {
+            csd = cs.newDecoder();
+            csdAscii = isAsciiBased(cs);
+        }
+        csd.onMalformedInput(usa.malformedInputAction())
+           .onUnmappableCharacter(usa.unmappableCharacterAction());
+
+        // Read natural language attribute
+        require(3);
+        b = buf.get();  //NATURAL_LANGUAGE
+        len = buf.getShort();   //27
+        if (ValueTag.valueOf(b) != ValueTag.NATURAL_LANGUAGE || len != 27 ||
+                !readName(len).equals("attributes-natural-language"))
+            throw new IppFailedException(resourceStrings.getString("PRINT SERVER BROKEN: SECOND ATTRIBUTE IS NOT LANGUAGE!"),
+                    response);
+        str = readString(readShort());
+        response.addOperationAttribute(new GenericAttribute("attributes-natural-language", str, ValueTag.NATURAL_LANGUAGE));
+        response.setLocale(parseNaturalLanguage(str));
+    }
+
+    /** Is <tt>cs</tt> a superset of US-ASCII using the same single-byte encoding */
+    private static boolean isAsciiBased(Charset cs) {
+        String name = cs.name();
+        return name.equals("UTF-8") || name.equals("US-ASCII") ||
+               name.startsWith("ISO-8859-") || name.startsWith("windows-125");
+    }
+
+    private int readShort() throws IOException {
+        require(2);
+        return buf.getShort();
+    }
+
+    private String readString(int len) throws IOException {
+        if (len < 0)
+            throw new EOFException();
+        require(len);
+        return readString(len, usa);
+    }
+
+    /**
+     * Read an attribute name. Names are looked up by their bytes in the
+     * standard names table and then in a table of the names already seen in
+     * this response, so a name is decoded only the first time it is seen.
+     */
+    private String readName(int len) throws IOException {
+        if (len < 0)
+            throw new EOFException();
+        require(len);
+        int off = buf.position();
+        String str = NameTable.STANDARD.lookup(buf, off, len);
+        if (str == null) {
+            if (names == null)
+                names = new NameTable(NAME_TABLE_SIZE);
+            str = names.lookup(buf, off, len);
+            if (str == null) {
+                str = decode(buf, off, len, usa);
+                names.add(buf, off, len, str);
+            }
+        }
+        buf.position(off + len);
+        return str;
+    }
+
+    private Locale parseNaturalLanguage(String nl) {
+        assert nl != null;
+        String[] loc = nl.split("-", 3);
+        if (loc[0].length() > 0)
+            switch (loc.length) {
+                case 3:
+                    return new Locale(loc[0], loc[1], loc[2]);
+                case 2:
+                    return new Locale(loc[0], loc[1]);
+                case 1:
+                default:    // loc[] will always have at leat one element
+                    return new Locale(loc[0]);
+            }
+        // invalid natural-language value. Try using response's value as default
+        Locale locale = response.getLocale();
+        if (locale == null /* this is attributes-natural-language operational attribute */ ||
+                response.conformity == Conformity.STRICT)
+            throw new IppFailedException(MessageFormat.format(resourceStrings.getString("MALFORMED RESPONSE: NATURAL-LANGUAGE ATTRIBUTE ({0}) IS INVALID. IT MUST SPECIFY A LANGUAGE."), nl),
+                    response);
+        else if (response.conformity == Conformity.LENIENT)
+            logger.log(Level.INFO, "MALFORMED RESPONSE: NATURAL-LANGUAGE ATTRIBUTE ({0}) IS INVALID. USING RESPONSE DEFAULT.", nl);
+        return locale;
+    }
+
+    //<editor-fold defaultstate="collapsed" desc="conformity validation methods">
+    private void checkValue() {
+        if (event != Event.VALUE)
+            throw new IllegalStateException(MessageFormat.format(
+                    resourceStrings.getString("IPP READER IS NOT POSITIONED ON A VALUE (EVENT IS {0})."), event));
+    }
+
+    private void checkValue(ValueTag vt1, ValueTag vt2) {
+        checkValue();
+        if (valueTag != vt1 && valueTag != vt2)
+            throw notApplicable();
+    }
+
+    private IllegalStateException notApplicable() {
+        return new IllegalStateException(MessageFormat.format(
+                resourceStrings.getString("IPP READER: THE CURRENT VALUE OF {0} HAS VALUE-TAG {1}."), name, valueTag));
+    }
+
+    private GroupTag validateGroupTag(int b) {
+        try {
+            return GroupTag.valueOf(b);
+        }
+        catch (IllegalArgumentException e) {
+            if (response.conformity == Conformity.NONE)
+                return GroupTag.RESERVED;
+        }
+        throw new IppFailedException(resourceStrings.getString("MALFORMED RESPONSE: GROUP TAG IS RESERVED."),
+                response);
+    }
+
+    /** check the attribute name length against the Conformity level */
+    private void validateConformity(int len) {
+        assert len >= Short.MIN_VALUE && len <= Short.MAX_VALUE : "len is short";
+        if (response.conformity == Conformity.STRICT &&
+                len > ValueTag.KEYWORD.MAX)
+            throw new IppFailedException(MessageFormat.format(resourceStrings.getString("MALFORMED RESPONSE: NEW ATTRIBUTE NAME LENGTH IS {0}!"), len),
+                    response);
+    }
+
+    /** check the value-tag and value-length against the Conformity level */
+    private ValueTag validateConformity(int b, int len) {
+        assert len >= Short.MIN_VALUE && len <= Short.MAX_VALUE : "len is short";
+        final ValueTag vt;
+        if (len < 0)
+            throw new IppFailedException(MessageFormat.format(resourceStrings.getString("PRINT SERVER BROKEN: ATTRIBUTE HAS NEGATIVE-LENGTH ({0}) VALUE!"), len),
+                    response);
+        try {
+            vt = ValueTag.valueOf(b);
+            validateConformity(vt, len);
+        }
+        catch (IllegalArgumentException ignore) {
+            if (response.conformity != Conformity.STRICT) {
+                if (response.conformity == Conformity.LENIENT)
+                    logger.log(Level.INFO, "MALFORMED RESPONSE: VALUE TAG IS RESERVED.");
+                return ValueTag.RESERVED;
+            }
+            throw new IppFailedException(resourceStrings.getString("MALFORMED RESPONSE: VALUE TAG IS RESERVED."),
+                    response);
+        }
+        return vt;
+    }
+
+    private void validateConformity(ValueTag vt, int len) {
+        switch (vt) {
+            case UNSUPPORTED:
+            case UNKNOWN:
+            case NO_VALUE:
+            case NOT_SETTABLE:
+            case DELETE_ATTRIBUTE:
+            case ADMIN_DEFINE:                      // the above out-of-band values
+                if (len != 0)                       // have zero-length
+                    throw new IppFailedException(MessageFormat.format(
+                            resourceStrings.getString("PRINT SERVER BROKEN: VALUE-TYPE, {0}, MUST HAVE NO VALUE!"),
+                            vt), response);
+                break;
+            case INTEGER:
+            case ENUM:
+                if (len != 4)
+                    throw new IppFailedException(MessageFormat.format(
+                            resourceStrings.getString("PRINT SERVER BROKEN: VALUE-TYPE, {0}, MUST BE {1} BYTES LONG NOT {2}!"),
+                            vt, 4, len), response);
+                break;
+            case BOOLEAN:
+                if (len != 1)
+                    throw new IppFailedException(MessageFormat.format(
+                            resourceStrings.getString("PRINT SERVER BROKEN: VALUE-TYPE, {0}, MUST BE {1} BYTES LONG NOT {2}!"),
+                            vt, 1, len), response);
+                break;
+            case DATE_TIME:
+                if (len != 11)
+                    throw new IppFailedException(MessageFormat.format(
+                            resourceStrings.getString("PRINT SERVER BROKEN: VALUE-TYPE, {0}, MUST BE {1} BYTES LONG NOT {2}!"),
+                            vt, 11, len), response);
+                break;
+            case RESOLUTION:
+                if (len != 9)
+                    throw new IppFailedException(MessageFormat.format(
+                            resourceStrings.getString("PRINT SERVER BROKEN: VALUE-TYPE, {0}, MUST BE {1} BYTES LONG NOT {2}!"),
+                            vt, 9, len), response);
+                break;
+            case RANGE_OF_INTEGER:
+                if (len != 8)
+                    throw new IppFailedException(MessageFormat.format(
+                            resourceStrings.getString("PRINT SERVER BROKEN: VALUE-TYPE, {0}, MUST BE {1} BYTES LONG NOT {2}!"),
+                            vt, 8, len), response);
+                break;
+            case TEXT_WITH_LANGUAGE:
+            case NAME_WITH_LANGUAGE:
+                if (response.conformity == Conformity.STRICT &&
+                        len > vt.MAX + ValueTag.NATURAL_LANGUAGE.MAX + 4) // 4 = 2x length fields
+                    throw new IppFailedException(MessageFormat.format(
+                            resourceStrings.getString("MALFORMED RESPONSE: VALUE-TYPE, {0}, MUST BE AT MOST {1} BYTES LONG (GOT {2})."),
+                            vt, vt.MAX + ValueTag.NATURAL_LANGUAGE.MAX + 4, len), response);
+                break;
+            case OCTET_STRING:
+            case TEXT_WITHOUT_LANGUAGE:
+            case NAME_WITHOUT_LANGUAGE:
+            case KEYWORD:
+            case URI:
+            case URI_SCHEME:
+            case CHARSET:
+            case NATURAL_LANGUAGE:
+            case MIME_MEDIA_TYPE:
+            case MEMBER_ATTR_NAME:
+                if (response.conformity == Conformity.STRICT &&
+                        len > vt.MAX)
+                    throw new IppFailedException(MessageFormat.format(
+                            resourceStrings.getString("MALFORMED RESPONSE: VALUE-TYPE, {0}, MUST BE AT MOST {1} BYTES LONG (GOT {2})."),
+                            vt, vt.MAX, len), response);
+                break;
+            case BEGIN_COLLECTION:
+            case END_COLLECTION:
+            case RESERVED:
+                break;
+            case TEXT:
+            case NAME:  // TEXT, NAME could never be (here for completeness)
+            default:
+                logger.logp(Level.SEVERE, this.getClass().getName(), "validateConformity(int,int)",
+                    "PLEASE REPORT TO THE DEVELOPER: THIS VALUETAG {0} HAS BEEN OVERLOOKED!", vt);
+                assert false : MessageFormat.format(
+                        resourceStrings.getString("PLEASE REPORT TO THE DEVELOPER: THIS VALUETAG {0} HAS BEEN OVERLOOKED!"),
+                        vt);
+        }
+    }
+    //</editor-fold>
+}
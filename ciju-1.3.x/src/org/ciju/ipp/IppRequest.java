@@ -103,7 +103,7 @@ public class IppRequest extends BaseIppObject {
         String rep = doc.getDocFlavor().getRepresentationClassName().intern();
         if (rep == "[C" || rep == "java.io.Reader" || rep == "java.lang.String")
             ddf = DocDataFlavor.READER;
-        else if (rep == "[B" || rep == "java.io.InputStream")
+        else if (rep == "[B" || rep == "java.io.InputStream" || rep == "java.nio.ByteBuffer")
             ddf = DocDataFlavor.STREAM;
         else
             // TODO: Add support for DocFlavor.URI
@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2012-2016 Opher Shachar
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ciju.ipp;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.ciju.ipp.IppEncoding.GroupTag;
+import static org.ciju.ipp.IppTransport.resourceStrings;
+import org.ciju.ipp.attribute.AttributeGroup;
+
+/**
+ * An immutable, pre-encoded prefix of an IPP request: its header and the fixed
+ * part of its operation attributes (e.g. <tt>printer-uri</tt> and
+ * <tt>requesting-user-name</tt>).
+ * <p>
+ * Requests created by a template are encoded by copying the prefix and
+ * patching in their request-id, followed by any attributes added to the
+ * request itself (e.g. <tt>job-id</tt> or <tt>requested-attributes</tt>):
+ * <pre>
+ *  IppRequestTemplate tmpl = new IppRequestTemplate(req);   // once
+ *  ...
+ *  IppRequest ipp = tmpl.newRequest(GroupTag.END);
+ *  GenericAttribute ga = new GenericAttribute("job-id");
+ *  ga.add(ValueTag.INTEGER, jobId);
+ *  ipp.addOperationAttribute(ga);
+ * </pre>
+ * The attributes of the template are not visible on the created requests.
+ *
+ * @author Opher Shachar
+ */
+public final class IppRequestTemplate {
+    private final byte[] prefix;
+    private final short code;
+    private final Locale locale;
+    private final AtomicInteger nextRequestId = new AtomicInteger(1);
+
+    /**
+     * Creates a template from the given request, which may only hold operation
+     * attributes.
+     *
+     * @param request the request to encode as this template.
+     * @throws IllegalArgumentException if the request has a document or
+     *      attributes in other than the operation attributes group.
+     */
+    public IppRequestTemplate(IppRequest request) {
+        if (request.getDoc() != null)
+            throw new IllegalArgumentException(resourceStrings.getString("A REQUEST TEMPLATE CANNOT HAVE A DOCUMENT."));
+        Iterator<AttributeGroup> it = request.getAttributeGroups().iterator();
+        it.next();      // first is operation attributes
+        while (it.hasNext())
+            if (!it.next().isEmpty())
+                throw new IllegalArgumentException(resourceStrings.getString("A REQUEST TEMPLATE CAN ONLY HAVE OPERATION ATTRIBUTES."));
+        ByteBuffer bb = IppTransport.encodeRequest(request, null);
+        // drop the end-of-attributes-tag
+        prefix = new byte[bb.remaining() - 1];
+        bb.get(prefix);
+        code = request.getCode();
+        locale = request.getLocale();
+    }
+
+    /**
+     * Creates a new request from this template with the next request-id of
+     * this template.
+     *
+     * @param firstGroupTag the tag of the first group following the operation
+     *      attributes group, or {@link GroupTag#END END} if none.
+     * @return a new request.
+     */
+    public IppRequest newRequest(GroupTag firstGroupTag) {
+        // request-id must be in the range 1 to 2^31-1
+        int id;
+        do {
+            id = nextRequestId.getAndIncrement() & Integer.MAX_VALUE;
+        } while (id == 0);
+        return newRequest(id, firstGroupTag);
+    }
+
+    /**
+     * Creates a new request from this template.
+     *
+     * @param requestId the request-id of the new request.
+     * @param firstGroupTag the tag of the first group following the operation
+     *      attributes group, or {@link GroupTag#END END} if none.
+     * @return a new request.
+     */
+    public IppRequest newRequest(int requestId, GroupTag firstGroupTag) {
+        return new Request(this, requestId, firstGroupTag);
+    }
+
+    /** A request encoded from its template's prefix */
+    /* package */ static final class Request extends IppRequest {
+        private final IppRequestTemplate template;
+
+        private Request(IppRequestTemplate template, int requestId, GroupTag firstGroupTag) {
+            super(template.code, requestId, template.locale, firstGroupTag);
+            this.template = template;
+        }
+
+        /* package */ byte[] getPrefix() {
+            return template.prefix;
+        }
+    }
+}
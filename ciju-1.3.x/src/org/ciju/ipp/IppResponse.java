@@ -17,11 +17,12 @@
 
 package org.ciju.ipp;
 
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Locale;
 import javax.print.Doc;
 import javax.print.DocFlavor;
@@ -30,6 +31,8 @@ import javax.print.attribute.Attribute;
 import javax.print.attribute.AttributeSet;
 import org.ciju.ipp.IppEncoding.GroupTag;
 import org.ciju.ipp.IppEncoding.StatusCode;
+import org.ciju.ipp.IppEncoding.ValueTag;
+import org.ciju.ipp.attribute.AttributeGroup;
 import org.ciju.ipp.attribute.GenericAttribute;
 
 /**
@@ -52,11 +55,68 @@ public class IppResponse<T extends IppObject> extends BaseIppObject {
         IppResponse.defaultConformity = defaultConformity;
     }
     
+    /* package */ static boolean defaultLazyDecoding = false;
+
+    /**
+     * Sets whether subsequent IPP responses decode their attribute values lazily.
+     * When set the response's bytes are retained and string, URI, date and
+     * resolution values are only decoded on first call to
+     * {@link org.ciju.ipp.attribute.GenericValue#getValue()}. This saves
+     * decoding values that are never looked at, at the cost of keeping the
+     * encoded response in memory.
+     * 
+     * @param lazyDecoding <tt>true</tt> to decode values on first use.
+     */
+    public static void setDefaultLazyDecoding(boolean lazyDecoding) {
+        IppResponse.defaultLazyDecoding = lazyDecoding;
+    }
+    
+    /* package */ static boolean defaultIndexing = false;
+
+    /**
+     * Sets whether subsequent IPP responses are indexed rather than decoded.
+     * When set the response's bytes are retained and only the operation
+     * attributes are decoded. The other attribute groups are recorded by
+     * where they and their attributes are in the response, so that
+     * {@link #getAttribute(String, GroupTag, ValueTag) getAttribute} is a
+     * hash lookup that decodes just the attribute found and a group, e.g. the
+     * Nth job of a Get-Jobs response, is decoded on the first call to
+     * {@link #getAttributeGroup(int)}. Values are decoded lazily as well.
+     * <p>
+     * Responses decoded into an {@link IppObject} are not indexed.
+     * 
+     * @param indexing <tt>true</tt> to index responses.
+     */
+    public static void setDefaultIndexing(boolean indexing) {
+        IppResponse.defaultIndexing = indexing;
+    }
+    
+    /* package */ static int defaultDocMemoryThreshold = 1 << 20;
+
+    /**
+     * Sets the size up to which the document of subsequent IPP responses
+     * (e.g. a PPD file) is kept in memory. Larger documents are spooled to a
+     * temporary file which is then mapped into memory.
+     * 
+     * @param threshold the size in bytes, defaults to 1MiB.
+     */
+    public static void setDefaultDocMemoryThreshold(int threshold) {
+        if (threshold < 0)
+            throw new IllegalArgumentException();
+        IppResponse.defaultDocMemoryThreshold = threshold;
+    }
+    
     final Conformity conformity = defaultConformity;
+    final boolean lazyDecoding = defaultLazyDecoding;
+    final boolean indexing = defaultIndexing;
     private final T obj;
     private boolean addToObj;
     private Locale locale;
     private Doc doc;
+    private SpoolBuffer spool;
+    private IppIndex index;
+    private IppReader reader;       // decodes the indexed groups
+    private AttributeGroup[] groups;    // the indexed groups decoded so far
     
     public IppResponse(short version, short status, int requestId) {
         this(version, status, requestId, null);
@@ -106,6 +166,95 @@ public class IppResponse<T extends IppObject> extends BaseIppObject {
         }
     }
 
+    /* package */ void setIndex(IppIndex index, IppReader reader) {
+        this.index = index;
+        this.reader = reader;
+        groups = new AttributeGroup[index.getGroupCount()];
+    }
+
+    /**
+     * @return the number of attribute groups of this response, including the
+     *      operation attributes group.
+     */
+    public int getAttributeGroupCount() {
+        return index != null ? index.getGroupCount() + 1 : super.getAttributeGroups().size();
+    }
+
+    /**
+     * Returns an attribute group of this response. If the response is indexed
+     * the group is decoded on the first call.
+     * 
+     * @param n the group's number, where <tt>0</tt> is the operation
+     *      attributes group.
+     * @return the group.
+     * @throws IndexOutOfBoundsException if there's no such group.
+     * @throws IppFailedException if the group could not be decoded.
+     * @see #setDefaultIndexing(boolean)
+     */
+    public AttributeGroup getAttributeGroup(int n) {
+        if (index == null || n == 0)
+            return super.getAttributeGroups().get(n);
+        if (n < 0 || n > groups.length)
+            throw new IndexOutOfBoundsException(String.valueOf(n));
+        synchronized (reader) {
+            AttributeGroup ag = groups[n - 1];
+            if (ag == null)
+                try {
+                    ag = groups[n - 1] = reader.decodeGroup(index.getGroupTag(n - 1),
+                            index.getStart(n - 1), index.getEnd(n - 1));
+                }
+                catch (IOException ex) {
+                    throw failed(ex);
+                }
+            return ag;
+        }
+    }
+
+    @Override
+    protected List<AttributeGroup> getAttributeGroups() {
+        if (index == null)
+            return super.getAttributeGroups();
+        List<AttributeGroup> list = new ArrayList<AttributeGroup>(groups.length + 1);
+        for (int n = 0; n <= groups.length; n++)
+            list.add(getAttributeGroup(n));
+        return Collections.unmodifiableList(list);
+    }
+
+    @Override
+    public Attribute getAttribute(String name, GroupTag groupTag, ValueTag valueTag) {
+        if (index == null || groupTag == GroupTag.OPERATION)
+            return super.getAttribute(name, groupTag, valueTag);
+        for (int e = index.find(name, groupTag); e >= 0; e = index.next(e)) {
+            int g = index.getGroup(e);
+            int off = index.getOffset(e);
+            ValueTag vt = reader.getValueTag(off);
+            if (vt == valueTag ||
+                (valueTag == ValueTag.NAME &&
+                    (vt == ValueTag.NAME_WITHOUT_LANGUAGE ||
+                     vt == ValueTag.NAME_WITH_LANGUAGE)) ||
+                (valueTag == ValueTag.TEXT &&
+                    (vt == ValueTag.TEXT_WITHOUT_LANGUAGE ||
+                     vt == ValueTag.TEXT_WITH_LANGUAGE)))
+                synchronized (reader) {
+                    if (groups[g] != null)
+                        return groups[g].get(name);
+                    try {
+                        return reader.decodeAttribute(groupTag, off, index.getEnd(g));
+                    }
+                    catch (IOException ex) {
+                        throw failed(ex);
+                    }
+                }
+        }
+        return null;
+    }
+
+    private IppFailedException failed(IOException ex) {
+        IppFailedException ife = new IppFailedException(this);
+        ife.initCause(ex);
+        return ife;
+    }
+
     public T getObject() {
         return obj;
     }
@@ -123,18 +272,11 @@ public class IppResponse<T extends IppObject> extends BaseIppObject {
     }
 
     OutputStream getDocOutputStream() throws IOException {
-        final File file = File.createTempFile("fil", null);
-        return new FileOutputStream(file) {
+        return spool = new SpoolBuffer(defaultDocMemoryThreshold) {
             @Override
             public void close() throws IOException {
                 super.close();
-                doc = new SimpleDoc(new FileInputStream(file) {
-                    @Override
-                    public void close() throws IOException {
-                        super.close();
-                        file.delete();
-                    }
-                }, DocFlavor.INPUT_STREAM.AUTOSENSE, null);
+                doc = new SimpleDoc(getInputStream(), DocFlavor.INPUT_STREAM.AUTOSENSE, null);
             }
         };
     }
@@ -142,4 +284,15 @@ public class IppResponse<T extends IppObject> extends BaseIppObject {
     public Doc getDoc() {
         return doc;
     }
+
+    /**
+     * Returns a new channel reading the response document from its start.
+     * Unlike the stream of {@link #getDoc()} it may be called any number of
+     * times.
+     * 
+     * @return a channel or <tt>null</tt> if the response has no document.
+     */
+    public ReadableByteChannel getDocChannel() {
+        return doc != null ? spool.getChannel() : null;
+    }
 }
@@ -0,0 +1,341 @@
+/*
+ * Copyright (C) 2012-2016 Opher Shachar
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ciju.ipp;
+
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.text.MessageFormat;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import javax.print.attribute.Attribute;
+import org.ciju.ipp.IppEncoding.GroupTag;
+import org.ciju.ipp.attribute.AttributeGroup;
+import static org.ciju.ipp.IppTransport.resourceStrings;
+
+/**
+ * Writes and reads snapshots of decoded IPP objects, e.g. printer
+ * capabilities or job histories kept across restarts. A snapshot is the IPP
+ * encoding of the object, so it's written and read by the same codec as
+ * requests and responses, behind a small header:
+ * <pre>
+ *  octets  contents
+ *  1-4     magic                   'I' 'P' 'P' 'S'
+ *  5       format version          1
+ *  6       kind                    1 = response, 2 = attribute groups
+ *  7-8     reserved                0
+ *  9-12    length of the message   (network byte order)
+ *  13-     the IPP message
+ * </pre>
+ * The message of a response snapshot has the response's version, status-code
+ * and request-id. That of an attribute groups snapshot has a zero status-code
+ * and request-id. Documents are not part of snapshots.
+ * <p>
+ * Snapshots are read as IPP responses are, so
+ * {@link IppResponse#setDefaultLazyDecoding(boolean) lazy decoding} and
+ * {@link IppResponse#setDefaultIndexing(boolean) indexing} apply to them.
+ *
+ * @author Opher Shachar
+ */
+public final class IppSnapshot {
+
+    /** The length of the snapshot header */
+    public static final int HEADER_LENGTH = 12;
+
+    private static final int MAGIC = 0x49505053;    // "IPPS"
+    private static final byte FORMAT = 1;
+    private static final byte RESPONSE = 1;
+    private static final byte GROUPS = 2;
+
+    private IppSnapshot() {}
+
+    //<editor-fold defaultstate="collapsed" desc="writing snapshots">
+    /**
+     * Encodes a snapshot of the given response's attribute groups. Groups
+     * decoded into the response's {@link IppResponse#getObject() object} are
+     * not part of it.
+     *
+     * @param response the response.
+     * @return a new buffer holding the snapshot, ready to be read.
+     */
+    public static ByteBuffer encode(IppResponse<?> response) {
+        Message m = new Message(response.getResponseCode(), response.getRequestId(), response.getLocale());
+        m.addAll(response.getAttributeGroups());
+        return encode(m, response.getVersion(), RESPONSE);
+    }
+
+    /**
+     * Writes a snapshot of the given response's attribute groups. The stream
+     * is not closed.
+     *
+     * @param response the response.
+     * @param os the stream to write to.
+     * @throws IOException if an I/O error occurs.
+     * @see #encode(IppResponse)
+     */
+    public static void write(IppResponse<?> response, OutputStream os) throws IOException {
+        write(encode(response), os);
+    }
+
+    /**
+     * Encodes a snapshot of the given attribute groups. Operation attribute
+     * groups are not part of it.
+     *
+     * @param groups the groups.
+     * @return a new buffer holding the snapshot, ready to be read.
+     */
+    public static ByteBuffer encodeGroups(Collection<? extends AttributeGroup> groups) {
+        Message m = new Message((short) 0, 0, Locale.ENGLISH);
+        for (AttributeGroup ag : groups)
+            if (ag.groupTag() != GroupTag.OPERATION)
+                m.add(ag);
+        return encode(m, m.getVersion(), GROUPS);
+    }
+
+    /**
+     * Writes a snapshot of the given attribute groups. The stream is not
+     * closed.
+     *
+     * @param groups the groups.
+     * @param os the stream to write to.
+     * @throws IOException if an I/O error occurs.
+     * @see #encodeGroups(Collection)
+     */
+    public static void writeGroups(Collection<? extends AttributeGroup> groups, OutputStream os)
+            throws IOException {
+        write(encodeGroups(groups), os);
+    }
+
+    private static ByteBuffer encode(Message m, short version, byte kind) {
+        IppCodec codec = IppCodec.acquire();
+        try {
+            ByteBuffer msg = codec.encodeRequest(m);
+            ByteBuffer bb = ByteBuffer.allocate(HEADER_LENGTH + msg.remaining());
+            bb.putInt(MAGIC).put(FORMAT).put(kind).putShort((short) 0)
+              .putInt(msg.remaining());
+            bb.put(msg);
+            bb.putShort(HEADER_LENGTH, version);
+            bb.flip();
+            return bb;
+        } finally {
+            IppCodec.release(codec);
+        }
+    }
+
+    private static void write(ByteBuffer bb, OutputStream os) throws IOException {
+        os.write(bb.array(), bb.arrayOffset() + bb.position(), bb.remaining());
+    }
+    //</editor-fold>
+
+    //<editor-fold defaultstate="collapsed" desc="reading snapshots">
+    /**
+     * Reads a response snapshot from its position in the given buffer. The
+     * snapshot is decoded where it is, so the buffer's content must not be
+     * modified while the response, if lazily decoded, is in use. The buffer's
+     * position is advanced past the snapshot.
+     *
+     * @param bb the buffer holding the snapshot.
+     * @return the response.
+     * @throws IOException if the buffer doesn't hold a response snapshot.
+     */
+    public static IppResponse<IppObject> readResponse(ByteBuffer bb) throws IOException {
+        return read(bb, RESPONSE);
+    }
+
+    /**
+     * Reads a response snapshot from the given stream, which is closed once
+     * the snapshot is read. No more than the snapshot's length is read and
+     * the snapshot must be the last of the stream.
+     *
+     * @param is the stream to read from.
+     * @return the response.
+     * @throws IOException if an I/O error occurs, the stream doesn't hold a
+     *      response snapshot or data follows it.
+     */
+    public static IppResponse<IppObject> readResponse(InputStream is) throws IOException {
+        return read(is, RESPONSE);
+    }
+
+    /**
+     * Reads an attribute groups snapshot from its position in the given
+     * buffer. The buffer's position is advanced past the snapshot.
+     *
+     * @param bb the buffer holding the snapshot.
+     * @return the attribute groups.
+     * @throws IOException if the buffer doesn't hold an attribute groups snapshot.
+     * @see #readResponse(ByteBuffer)
+     */
+    public static List<AttributeGroup> readGroups(ByteBuffer bb) throws IOException {
+        List<AttributeGroup> groups = read(bb, GROUPS).getAttributeGroups();
+        return groups.subList(1, groups.size());    // drop the operation attributes
+    }
+
+    /**
+     * Reads an attribute groups snapshot from the given stream, which is
+     * closed once the snapshot is read. No more than the snapshot's length
+     * is read and the snapshot must be the last of the stream.
+     *
+     * @param is the stream to read from.
+     * @return the attribute groups.
+     * @throws IOException if an I/O error occurs, the stream doesn't hold
+     *      an attribute groups snapshot or data follows it.
+     */
+    public static List<AttributeGroup> readGroups(InputStream is) throws IOException {
+        List<AttributeGroup> groups = read(is, GROUPS).getAttributeGroups();
+        return groups.subList(1, groups.size());    // drop the operation attributes
+    }
+
+    private static IppResponse<IppObject> read(ByteBuffer bb, byte kind) throws IOException {
+        if (bb.remaining() < HEADER_LENGTH)
+            throw new EOFException();
+        int len = readHeader(bb.duplicate(), kind);
+        if (bb.remaining() < HEADER_LENGTH + len)
+            throw new EOFException();
+        ByteBuffer msg = bb.duplicate();
+        msg.position(bb.position() + HEADER_LENGTH).limit(bb.position() + HEADER_LENGTH + len);
+        bb.position(msg.limit());
+        return IppTransport.processResponse(msg, (IppObject) null);
+    }
+
+    private static IppResponse<IppObject> read(InputStream is, byte kind) throws IOException {
+        int len;
+        // this would be substituted by Java7 try-with-resources
+        try {
+            byte[] header = new byte[HEADER_LENGTH];
+            for (int n = 0, r; n < header.length; n += r)
+                if ((r = is.read(header, n, header.length - n)) < 0)
+                    throw new EOFException();
+            len = readHeader(ByteBuffer.wrap(header), kind);
+        } catch (IOException ex) {
+            is.close();
+            throw ex;
+        }
+        return IppTransport.processResponse(new MessageInputStream(is, len), len);
+    }
+
+    /**
+     * The message of a snapshot read from a stream, ending at its length. It
+     * fails to close if the stream goes on past the message.
+     */
+    private static final class MessageInputStream extends FilterInputStream {
+        private long left;
+
+        MessageInputStream(InputStream in, long length) {
+            super(in);
+            left = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (left <= 0)
+                return -1;
+            int b = in.read();
+            if (b >= 0)
+                left--;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0)
+                return 0;
+            if (left <= 0)
+                return -1;
+            int n = in.read(b, off, (int) Math.min(len, left));
+            if (n > 0)
+                left -= n;
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long k = in.skip(Math.min(n, left));
+            left -= k;
+            return k;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(in.available(), left);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public void close() throws IOException {
+            // this would be substituted by Java7 try-with-resources
+            try {
+                if (left == 0 && in.read() >= 0)
+                    throw new IOException(resourceStrings.getString("THE IPP SNAPSHOT IS FOLLOWED BY OTHER DATA."));
+            } finally {
+                in.close();
+            }
+        }
+    }
+
+    /** Validate the header at <tt>bb</tt>'s position and return the message length */
+    private static int readHeader(ByteBuffer bb, byte kind) throws IOException {
+        if (bb.getInt() != MAGIC)
+            throw new IOException(resourceStrings.getString("NOT AN IPP SNAPSHOT."));
+        byte format = bb.get();
+        if (format != FORMAT)
+            throw new IOException(MessageFormat.format(
+                    resourceStrings.getString("UNSUPPORTED IPP SNAPSHOT FORMAT VERSION {0}."), format));
+        if (bb.get() != kind)
+            throw new IOException(resourceStrings.getString(kind == RESPONSE ?
+                    "THE IPP SNAPSHOT IS NOT OF A RESPONSE." : "THE IPP SNAPSHOT IS NOT OF ATTRIBUTE GROUPS."));
+        bb.getShort();  // reserved
+        int len = bb.getInt();
+        if (len < 0)
+            throw new IOException(resourceStrings.getString("NOT AN IPP SNAPSHOT."));
+        return len;
+    }
+    //</editor-fold>
+
+    /** The attribute groups of a snapshot, encoded as a request is */
+    private static final class Message extends IppRequest {
+        Message(short code, int requestId, Locale locale) {
+            super(code, requestId, locale, GroupTag.END);
+        }
+
+        void addAll(List<AttributeGroup> groups) {
+            for (AttributeGroup ag : groups)
+                if (ag.groupTag() == GroupTag.OPERATION) {
+                    // the charset and natural language are written by the encoder
+                    for (Attribute a : ag)
+                        if (!a.getName().equals("attributes-charset") &&
+                            !a.getName().equals("attributes-natural-language"))
+                            addOperationAttribute(a);
+                }
+                else
+                    add(ag);
+        }
+
+        void add(AttributeGroup ag) {
+            newAttributeGroup(ag.groupTag());
+            addAllAttributes(ag);
+        }
+    }
+}
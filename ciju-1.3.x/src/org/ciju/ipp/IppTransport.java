@@ -18,21 +18,22 @@
 package org.ciju.ipp;
 
 import java.io.Closeable;
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
 import java.io.Reader;
 import java.net.URI;
-import java.net.URISyntaxException;
 import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.CharacterCodingException;
 import java.nio.charset.Charset;
-import java.nio.charset.CharsetDecoder;
 import java.nio.charset.CharsetEncoder;
 import java.nio.charset.CoderResult;
 import java.nio.charset.CodingErrorAction;
@@ -40,11 +41,10 @@ import java.text.MessageFormat;
 import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Date;
-import java.util.GregorianCalendar;
 import java.util.Iterator;
-import java.util.Locale;
 import java.util.Map;
 import java.util.ResourceBundle;
+import java.util.TimeZone;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.print.attribute.Attribute;
@@ -65,8 +65,6 @@ import org.ciju.ipp.attribute.GenericAttribute;
 import org.ciju.ipp.attribute.GenericValue;
 import static org.ciju.ipp.attribute.GenericValue.deduceValueTag;
 import static org.ciju.ipp.attribute.GenericValue.getNaturalLanguage;
-import org.ciju.ipp.attribute.ResolutionValue;
-import org.ciju.ipp.attribute.TextValue;
 
 /**
  *
@@ -85,35 +83,84 @@ public abstract class IppTransport {
 
     /**
      * Writes an IPP request to the given {@link OutputStream}.
+     * The request header and attribute groups are encoded into a single buffer
+     * which is written with one call, followed by the request's document (if any).
+     * The <tt>OutputStream</tt> is closed once the request is written.
      * 
      * @param os the <tt>OutputStream</tt> to write the request to.
      * @param ipp the IPP request
      * @throws IOException
+     * @see IppCodec#writeRequest(OutputStream, IppRequest)
      */
     public static void writeRequest(OutputStream os, IppRequest ipp) throws IOException {
-        IppTransportEncoder t = new IppTransportEncoder(os, ipp);
-        // this would be substituted by Java7 try-with-resources
-        IOException ioex = null;
+        IppCodec codec = IppCodec.acquire();
         try {
-            t.writeRequest();
-        } catch (IOException ex) {
-            ioex = ex;
+            codec.writeRequest(os, ipp);
         } finally {
-            for (Closeable io : t.ios) {
-                try {
-                    if (io != null)
-                        io.close();
-                } catch (IOException ex) {
-                    if (ioex == null)
-                        ioex = ex;
-                    else
-                        // otherwise supress exception
-                        logger.logp(Level.FINE, io.getClass().getName(), "close()", "SUPPRESSING EXCEPTION", ex);
-                }
+            IppCodec.release(codec);
+        }
+    }
+
+    /**
+     * Writes an IPP request to the given {@link WritableByteChannel}.
+     * The request header and attribute groups are encoded into a single buffer
+     * which, if the channel is a {@link GatheringByteChannel}, is written together
+     * with the first chunk of the request's document (if any) in one gathering write.
+     * <p>Unlike {@link #writeRequest(OutputStream, IppRequest)} the channel is
+     * <em>not</em> closed, so it may be used for subsequent requests.
+     * 
+     * @param ch the <tt>WritableByteChannel</tt> to write the request to.
+     * @param ipp the IPP request
+     * @throws IOException
+     * @see IppCodec#writeRequest(WritableByteChannel, IppRequest)
+     */
+    public static void writeRequest(WritableByteChannel ch, IppRequest ipp) throws IOException {
+        IppCodec codec = IppCodec.acquire();
+        try {
+            codec.writeRequest(ch, ipp);
+        } finally {
+            IppCodec.release(codec);
+        }
+    }
+
+    /**
+     * Encodes the header and attribute groups of an IPP request (i.e. everything
+     * but the document data) into the given {@link ByteBuffer}.
+     * <p>The buffer is cleared before encoding starts. If it is too small a new
+     * buffer, of the same kind (direct or heap), is allocated in its place and
+     * returned. So the caller should keep the returned buffer for reuse.
+     * 
+     * @param ipp the IPP request
+     * @param bb the buffer to encode into. May be <tt>null</tt> in which case a
+     *      heap buffer is allocated.
+     * @return the buffer holding the encoded request, flipped and ready to be read.
+     */
+    public static ByteBuffer encodeRequest(IppRequest ipp, ByteBuffer bb) {
+        if (bb == null)
+            bb = ByteBuffer.allocate(IppTransportEncoder.HEAD_CAPACITY);
+        IppCodec codec = IppCodec.acquire();
+        try {
+            return codec.encodeRequest(ipp, bb);
+        } finally {
+            IppCodec.release(codec);
+        }
+    }
+
+    /** Close the given <tt>Closeable</tt>S returning the first exception encountered */
+    /* package */ static IOException close(Closeable[] ios, IOException ioex) {
+        for (Closeable io : ios) {
+            try {
+                if (io != null)
+                    io.close();
+            } catch (IOException ex) {
+                if (ioex == null)
+                    ioex = ex;
+                else
+                    // otherwise supress exception
+                    logger.logp(Level.FINE, io.getClass().getName(), "close()", "SUPPRESSING EXCEPTION", ex);
             }
-            if (ioex != null)
-                throw ioex;
         }
+        return ioex;
     }
 
     /**
@@ -136,35 +183,105 @@ public abstract class IppTransport {
      * @param <T>
      * @return an {@link IppResponse} object encompassing the given <tt>obj</tt>.
      * @throws IOException
+     * @see IppCodec#processResponse(InputStream, long, IppObject)
      */
     public static <T extends IppObject> IppResponse<T> processResponse(InputStream is, long contentLength, T obj)
             throws IOException {
-        IppTransportDecoder<T> t = new IppTransportDecoder<T>(is, contentLength);
-        IppResponse<T> ir = null;
-        // this would be substituted by Java7 try-with-resources
-        IOException ioex = null;
+        return processResponse(is, contentLength, obj, null);
+    }
+
+    /**
+     *
+     * @param is
+     * @param contentLength
+     * @param obj
+     * @param filter the attributes to decode or <tt>null</tt> to decode all.
+     * @param <T>
+     * @return an {@link IppResponse} object encompassing the given <tt>obj</tt>.
+     * @throws IOException
+     * @see IppCodec#setAttributeFilter(AttributeFilter)
+     */
+    public static <T extends IppObject> IppResponse<T> processResponse(InputStream is, long contentLength, T obj,
+            AttributeFilter filter) throws IOException {
+        IppCodec codec = IppCodec.acquire();
         try {
-            ir = t.processResponse(obj);
-        } catch (IOException ex) {
-            ioex = ex;
+            codec.setAttributeFilter(filter);
+            return codec.processResponse(is, contentLength, obj);
         } finally {
-            for (Closeable io : t.ios) {
-                try {
-                    if (io != null)
-                        io.close();
-                } catch (IOException ex) {
-                    if (ioex == null)
-                        ioex = ex;
-                    else
-                        // otherwise supress exception
-                        logger.logp(Level.FINE, io.getClass().getName(), "close()", "SUPPRESSING EXCEPTION", ex);
-                }
-            }
-            if (ioex != null)
-                throw ioex;
+            IppCodec.release(codec);
+        }
+    }
+
+    /**
+     *
+     * @param ch
+     * @param contentLength
+     * @param obj
+     * @param <T>
+     * @return an {@link IppResponse} object encompassing the given <tt>obj</tt>.
+     * @throws IOException
+     * @see IppCodec#processResponse(ReadableByteChannel, long, IppObject)
+     */
+    public static <T extends IppObject> IppResponse<T> processResponse(ReadableByteChannel ch, long contentLength, T obj)
+            throws IOException {
+        return processResponse(ch, contentLength, obj, null);
+    }
+
+    /**
+     *
+     * @param ch
+     * @param contentLength
+     * @param obj
+     * @param filter the attributes to decode or <tt>null</tt> to decode all.
+     * @param <T>
+     * @return an {@link IppResponse} object encompassing the given <tt>obj</tt>.
+     * @throws IOException
+     * @see IppCodec#setAttributeFilter(AttributeFilter)
+     */
+    public static <T extends IppObject> IppResponse<T> processResponse(ReadableByteChannel ch, long contentLength, T obj,
+            AttributeFilter filter) throws IOException {
+        IppCodec codec = IppCodec.acquire();
+        try {
+            codec.setAttributeFilter(filter);
+            return codec.processResponse(ch, contentLength, obj);
+        } finally {
+            IppCodec.release(codec);
+        }
+    }
+
+    /**
+     *
+     * @param bb
+     * @param obj
+     * @param <T>
+     * @return an {@link IppResponse} object encompassing the given <tt>obj</tt>.
+     * @throws IOException
+     * @see IppCodec#processResponse(ByteBuffer, IppObject)
+     */
+    public static <T extends IppObject> IppResponse<T> processResponse(ByteBuffer bb, T obj)
+            throws IOException {
+        return processResponse(bb, obj, null);
+    }
+
+    /**
+     *
+     * @param bb
+     * @param obj
+     * @param filter the attributes to decode or <tt>null</tt> to decode all.
+     * @param <T>
+     * @return an {@link IppResponse} object encompassing the given <tt>obj</tt>.
+     * @throws IOException
+     * @see IppCodec#setAttributeFilter(AttributeFilter)
+     */
+    public static <T extends IppObject> IppResponse<T> processResponse(ByteBuffer bb, T obj, AttributeFilter filter)
+            throws IOException {
+        IppCodec codec = IppCodec.acquire();
+        try {
+            codec.setAttributeFilter(filter);
+            return codec.processResponse(bb, obj);
+        } finally {
+            IppCodec.release(codec);
         }
-        assert ir != null;  
-        return ir;
     }
 
     // Instance common members
@@ -172,19 +289,42 @@ public abstract class IppTransport {
 
 
     /** IppTransportEncoder - Encodes / sends an IPP request */
-    private static class IppTransportEncoder extends IppTransport {
-        private final DataOutputStream out;
-        private final CharsetEncoder utf8enc;
-        private final IppRequest request;
+    /* package */ static class IppTransportEncoder extends IppTransport {
+        /** Initial capacity of the buffer holding the encoded request header and attribute groups */
+        static final int HEAD_CAPACITY = 1024;
+        /** Size of the chunks the request document is copied in */
+        static final int DOC_CHUNK = 8192;
+
+        private final CharsetEncoder utf8enc = Charset.forName("UTF-8").newEncoder();
+        private       IppRequest request;
+        private       ByteBuffer head = ByteBuffer.allocate(HEAD_CAPACITY);
+        private       ByteBuffer out;
         private       ByteBuffer bb = ByteBuffer.allocate(ValueTag.TEXT_WITHOUT_LANGUAGE.MAX);
+        private       ByteBuffer chunk;     // for copying the request document
+        private       TimeZone tz;          // dateTime values are written in local time
 
-        private IppTransportEncoder(OutputStream out, IppRequest request) {
-            ios[0] = this.out = new DataOutputStream(out);
+        /**
+         * Prepare to encode the given request.
+         * @param out the buffer to encode into or <tt>null</tt> to use this
+         *      encoder's own buffer.
+         */
+        /* package */ IppTransportEncoder reset(IppRequest request, ByteBuffer out) {
             this.request = request;
-            utf8enc = Charset.forName("UTF-8").newEncoder();
-            if (request.conformity != Conformity.STRICT)
-                utf8enc.onMalformedInput(CodingErrorAction.REPLACE)
-                       .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            this.out = out;
+            CodingErrorAction action = request.conformity != Conformity.STRICT ?
+                    CodingErrorAction.REPLACE : CodingErrorAction.REPORT;
+            utf8enc.onMalformedInput(action)
+                   .onUnmappableCharacter(action);
+            ios[0] = ios[1] = null;
+            tz = TimeZone.getDefault();
+            return this;
+        }
+
+        /** Drop the references to the last request once done with it */
+        /* package */ void clear() {
+            request = null;
+            out = null;
+            ios[0] = ios[1] = null;
         }
 
         /**
@@ -205,14 +345,29 @@ public abstract class IppTransport {
          * |                     data                    |   q bytes - optional
          * -----------------------------------------------
          * </pre>
+         * This method encodes all but the <em>data</em> into <tt>out</tt>.
+         * @return <tt>out</tt> flipped.
          */
-        private void writeRequest() throws IOException {
-            // write request header
-            out.writeShort(request.getVersion());
-            out.writeShort(request.getOpCode().getValue());
-            out.writeShort(request.getRequestId());
-            // write operation attributes
-            writeOperationHead();
+        /* package */ ByteBuffer encodeRequest() {
+            boolean own = out == null;
+            if (own)
+                out = head;
+            out.clear();
+            if (request instanceof IppRequestTemplate.Request) {
+                // copy the pre-encoded header and operation attributes ...
+                byte[] prefix = ((IppRequestTemplate.Request) request).getPrefix();
+                write(prefix, 0, prefix.length);
+                // ... and patch in the request-id
+                out.putInt(4, request.getRequestId());
+            }
+            else {
+                // write request header
+                writeShort(request.getVersion());
+                writeShort(request.getCode());  // not getOpCode(), may be a CUPS operation
+                writeInt(request.getRequestId());
+                // write operation attributes
+                writeOperationHead();
+            }
             Iterator<AttributeGroup> it = request.getAttributeGroups().iterator();
             AttributeGroup ag = it.next();      // first is operation attributes
             for (Attribute attr : ag)
@@ -220,53 +375,287 @@ public abstract class IppTransport {
             // write all other attributes
             while (it.hasNext()) {
                 ag = it.next();
-                out.write(ag.groupTag().getValue());
+                write(ag.groupTag().getValue());
                 for (Attribute attr : ag)
                     writeIppAttribute(attr);
             }
             // write end attributes group tag
-            out.write(GroupTag.END.getValue());
-            // write request data if provided
-            int n;
+            write(GroupTag.END.getValue());
+            out.flip();
+            if (own)
+                head = out;     // keep the grown buffer for the next request
+            return out;
+        }
+
+        /** Write the request data, if provided, to the given stream */
+        /* package */ void writeDocument(OutputStream os) throws IOException {
+            if (request.getDoc() == null)
+                return;
             switch (request.getDocDataFlavor()) {
                 case STREAM:
-                    InputStream in = request.getDoc().getStreamForBytes();
-                    ios[1] = in;
-                    while ((n = in.read(bb.array())) > 0)
-                        out.write(bb.array(), 0, n);
+                    Object o = request.getDoc().getPrintData();
+                    if (o instanceof byte[]) {
+                        // no need to copy, write the document as is
+                        os.write((byte[]) o);
+                        break;
+                    }
+                    ByteBuffer data = getChunk();
+                    byte[] ba = data.array();
+                    if (o instanceof ByteBuffer) {
+                        ByteBuffer bb = (ByteBuffer) o;
+                        if (bb.hasArray()) {
+                            os.write(bb.array(), bb.arrayOffset() + bb.position(), bb.remaining());
+                            break;
+                        }
+                        bb = bb.duplicate();
+                        while (bb.hasRemaining()) {
+                            int n = Math.min(ba.length, bb.remaining());
+                            bb.get(ba, 0, n);
+                            os.write(ba, 0, n);
+                        }
+                        break;
+                    }
+                    InputStream is = request.getDoc().getStreamForBytes();
+                    ios[1] = is;
+                    ReadableByteChannel in = is instanceof FileInputStream ?
+                            ((FileInputStream) is).getChannel() : Channels.newChannel(is);
+                    data.clear();
+                    while (in.read(data) >= 0) {
+                        os.write(ba, 0, data.position());
+                        data.clear();
+                    }
                     break;
                 case READER:
-                    Reader rdr = request.getDoc().getReaderForText();
-                    ios[1] = rdr;
-                    char[] ca = new char[1024];
-                    String cstr = request.getDoc().getDocFlavor().getParameter("charset");
-                    if (cstr == null)
-                        cstr = utf8enc.charset().name();
-                    OutputStreamWriter osw = new OutputStreamWriter(out, cstr);
-                    ios[0] = osw;
-                    while ((n = rdr.read(ca)) > 0)
-                        osw.write(ca, 0, n);
+                    writeText(os, null);
                     break;
             }
         }
 
-        private void writeOperationHead() throws IOException {
+        /**
+         * Write <tt>head</tt> followed by the request data, if provided, to the
+         * given channel. If the channel supports it, the head and the first chunk
+         * of data are written in one gathering write.
+         */
+        /* package */ void writeDocument(WritableByteChannel ch, ByteBuffer head) throws IOException {
+            ByteBuffer data = null;
+            ReadableByteChannel in = null;
+            if (request.getDoc() == null) {
+                writeFully(ch, head, null);
+                return;
+            }
+            switch (request.getDocDataFlavor()) {
+                case STREAM:
+                    Object o = request.getDoc().getPrintData();
+                    if (o instanceof byte[])
+                        // no need to copy, just wrap the document
+                        data = ByteBuffer.wrap((byte[]) o);
+                    else if (o instanceof ByteBuffer)
+                        // it may as well be mapped from a file
+                        data = ((ByteBuffer) o).duplicate();
+                    else {
+                        InputStream is = request.getDoc().getStreamForBytes();
+                        ios[1] = is;
+                        if (is instanceof FileInputStream) {
+                            // let the OS copy the file straight to the channel
+                            writeFully(ch, head, null);
+                            FileChannel fc = ((FileInputStream) is).getChannel();
+                            long pos = fc.position();
+                            for (long size = fc.size(); pos < size; ) {
+                                long n = fc.transferTo(pos, size - pos, ch);
+                                if (n == 0) {
+                                    // no progress (the file shrunk?), copy the rest as it's read
+                                    ByteBuffer b = getChunk();
+                                    for (b.clear(); fc.read(b, pos) > 0; b.clear()) {
+                                        b.flip();
+                                        pos += b.remaining();
+                                        writeFully(ch, b, null);
+                                    }
+                                    break;
+                                }
+                                pos += n;
+                            }
+                            fc.position(pos);
+                            return;
+                        }
+                        in = Channels.newChannel(is);
+                        data = getChunk();
+                        data.clear();
+                        if (in.read(data) < 0)
+                            in = null;
+                        data.flip();
+                    }
+                    break;
+                case READER:
+                    // write head and then encode the document
+                    writeFully(ch, head, null);
+                    writeText(null, ch);
+                    return;
+            }
+            writeFully(ch, head, data);
+            // copy the remaining document data
+            while (in != null) {
+                data.clear();
+                if (in.read(data) < 0)
+                    break;
+                data.flip();
+                writeFully(ch, data, null);
+            }
+        }
+
+        /**
+         * @return the length of the request data, 0 if none or -1 if it's not
+         *      known in advance.
+         */
+        /* package */ long getDocLength() throws IOException {
+            if (request.getDoc() == null)
+                return 0;
+            if (request.getDocDataFlavor() == IppRequest.DocDataFlavor.READER)
+                return -1;          // depends on the encoding
+            Object o = request.getDoc().getPrintData();
+            if (o instanceof byte[])
+                return ((byte[]) o).length;
+            if (o instanceof ByteBuffer)
+                return ((ByteBuffer) o).remaining();
+            if (o instanceof FileInputStream) {
+                FileChannel fc = ((FileInputStream) o).getChannel();
+                return Math.max(fc.size() - fc.position(), 0);
+            }
+            return -1;
+        }
+
+        /**
+         * Encode the request's text data in the document's charset and write
+         * it to either <tt>os</tt> or <tt>ch</tt>.
+         */
+        private void writeText(OutputStream os, WritableByteChannel ch) throws IOException {
+            Reader rdr = request.getDoc().getReaderForText();
+            ios[1] = rdr;
+            CharsetEncoder enc = Charset.forName(getDocCharset()).newEncoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            CharBuffer cb = CharBuffer.allocate(DOC_CHUNK / 4);
+            ByteBuffer data = getChunk();
+            data.clear();
+            boolean eof = false;
+            while (!eof) {
+                eof = rdr.read(cb) < 0;
+                cb.flip();
+                while (enc.encode(cb, data, eof).isOverflow())
+                    drain(data, os, ch);
+                cb.compact();
+            }
+            while (enc.flush(data).isOverflow())
+                drain(data, os, ch);
+            drain(data, os, ch);
+        }
+
+        /** Write what was put in <tt>data</tt> to either <tt>os</tt> or <tt>ch</tt> and clear it */
+        private static void drain(ByteBuffer data, OutputStream os, WritableByteChannel ch)
+                throws IOException {
+            data.flip();
+            if (os != null)
+                os.write(data.array(), data.arrayOffset(), data.limit());
+            else
+                writeFully(ch, data, null);
+            data.clear();
+        }
+
+        private ByteBuffer getChunk() {
+            if (chunk == null)
+                chunk = ByteBuffer.allocate(DOC_CHUNK);
+            return chunk;
+        }
+
+        /** Write <tt>b1</tt> and then <tt>b2</tt> (which may be <tt>null</tt>) to the channel */
+        private static void writeFully(WritableByteChannel ch, ByteBuffer b1, ByteBuffer b2)
+                throws IOException {
+            if (b2 != null && ch instanceof GatheringByteChannel) {
+                ByteBuffer[] bbs = new ByteBuffer[] { b1, b2 };
+                while (b2.hasRemaining())
+                    ((GatheringByteChannel) ch).write(bbs);
+                return;
+            }
+            while (b1.hasRemaining())
+                ch.write(b1);
+            if (b2 != null)
+                while (b2.hasRemaining())
+                    ch.write(b2);
+        }
+
+        private String getDocCharset() {
+            String cstr = request.getDoc().getDocFlavor().getParameter("charset");
+            if (cstr == null)
+                cstr = utf8enc.charset().name();
+            return cstr;
+        }
+
+        private void writeOperationHead() {
             // write operational attributes group tag
-            out.write(GroupTag.OPERATION.getValue());
+            write(GroupTag.OPERATION.getValue());
             // write charset attribute. Always utf-8.
-            out.write(ValueTag.CHARSET.getValue());
-            out.writeShort(18);
-            out.writeBytes("attributes-charset");
-            out.writeShort(5);
-            out.writeBytes("utf-8");
+            write(ValueTag.CHARSET.getValue());
+            writeShort(18);
+            writeBytes("attributes-charset");
+            writeShort(5);
+            writeBytes("utf-8");
             // write natural language attribute
             String anl = getNaturalLanguage(request.getLocale());
-            out.write(ValueTag.NATURAL_LANGUAGE.getValue());
-            out.writeShort(27);
-            out.writeBytes("attributes-natural-language");
-            out.writeShort(anl.length());
-            out.writeBytes(anl);
+            write(ValueTag.NATURAL_LANGUAGE.getValue());
+            writeShort(27);
+            writeBytes("attributes-natural-language");
+            writeShort(anl.length());
+            writeBytes(anl);
+        }
+
+//<editor-fold defaultstate="collapsed" desc="buffer write methods">
+        /** Make sure <tt>out</tt> has room for <tt>n</tt> more bytes */
+        private void ensureRemaining(int n) {
+            if (out.remaining() < n) {
+                // Allocate a new buffer and copy over what was encoded so far
+                int cap = Math.max(out.capacity() * 2, out.position() + n);
+                ByteBuffer old = out;
+                out = old.isDirect() ? ByteBuffer.allocateDirect(cap) : ByteBuffer.allocate(cap);
+                old.flip();
+                out.put(old);
+            }
+        }
+
+        private void write(int b) {
+            ensureRemaining(1);
+            out.put((byte) b);
+        }
+
+        private void write(byte[] ba, int off, int len) {
+            ensureRemaining(len);
+            out.put(ba, off, len);
+        }
+
+        private void writeShort(int v) {
+            ensureRemaining(2);
+            out.putShort((short) v);
+        }
+
+        private void writeInt(int v) {
+            ensureRemaining(4);
+            out.putInt(v);
+        }
+
+        /** Writes the string as a sequence of bytes discarding the high eight bits of each char */
+        private void writeBytes(String s) {
+            int len = s.length();
+            ensureRemaining(len);
+            if (out.hasArray()) {
+                byte[] ba = out.array();
+                int pos = out.arrayOffset() + out.position();
+                for (int i = 0; i < len; i++)
+                    ba[pos + i] = (byte) s.charAt(i);
+                out.position(out.position() + len);
+            }
+            else
+                for (int i = 0; i < len; i++)
+                    out.put((byte) s.charAt(i));
         }
+//</editor-fold>
 
         /**
          * The picture of the encoding of an attribute is:
@@ -295,9 +684,18 @@ public abstract class IppTransport {
          * -----------------------------------------
          * </pre>
          */
-        private void writeIppAttribute(Attribute a) throws IOException {
+        private void writeIppAttribute(Attribute a) {
             validateConformity(a);
 
+            // unboxed values need neither boxing nor their value-tag deduced
+            if (a instanceof GenericAttribute) {
+                ValueTag vt = ((GenericAttribute) a).getPackedValueTag();
+                if (vt != null) {
+                    writeIppPackedValues(vt, (GenericAttribute) a);
+                    return;
+                }
+            }
+
             // get the length-limit for the attribute's value(s)
             Integer ll = IppEncoding.LengthLimits.get(a.getClass());
 
@@ -312,9 +710,9 @@ public abstract class IppTransport {
             // get the value-tag
             ValueTag vt = deduceValueTag(o, request.getLocale());
             // write the attribute
-            out.write(vt.getValue());
-            out.writeShort(a.getName().length());
-            out.writeBytes(a.getName());                // the standard mandates Name to be US-ASCII
+            write(vt.getValue());
+            writeShort(a.getName().length());
+            writeBytes(a.getName());                    // the standard mandates Name to be US-ASCII
             if (iter != null)
                 writeIppMultiValue(vt, o, ll, iter);
             else if (a instanceof PrinterStateReasons)
@@ -336,8 +734,7 @@ public abstract class IppTransport {
             }
         }
 
-        private void writeIppMultiValue(ValueTag vt, Object o, Integer ll, Iterator iter)
-                throws IOException {
+        private void writeIppMultiValue(ValueTag vt, Object o, Integer ll, Iterator iter) {
             while (true) {
                 if (o instanceof SetOfIntegerSyntax)
                     writeIppMultiValue(vt, (SetOfIntegerSyntax) o);
@@ -347,14 +744,40 @@ public abstract class IppTransport {
                 if (iter.hasNext()) {
                     o = iter.next();                             // the standard allows for each
                     vt = deduceValueTag(o, request.getLocale()); // value to have a diffrent syntax
-                    out.write(vt.getValue());
-                    out.writeShort(0);                  // nameless attribute indicates a multi-value
+                    write(vt.getValue());
+                    writeShort(0);                      // nameless attribute indicates a multi-value
                 }
                 else break;
             }
         }
 
-        private void writeIppMultiValue(ValueTag vt, PrinterStateReasons psr) throws IOException {
+        private void writeIppPackedValues(ValueTag vt, GenericAttribute ga) {
+            for (int i = 0; i < ga.size(); i++) {
+                write(vt.getValue());
+                if (i == 0) {
+                    writeShort(ga.getName().length());
+                    writeBytes(ga.getName());
+                }
+                else
+                    writeShort(0);                      // nameless attribute indicates a multi-value
+                switch (vt) {
+                    case BOOLEAN:
+                        writeShort(1);
+                        write(ga.getBoolean(i) ? 1 : 0);
+                        break;
+                    case RANGE_OF_INTEGER:
+                        writeShort(8);
+                        writeInt(ga.getLowerBound(i));
+                        writeInt(ga.getUpperBound(i));
+                        break;
+                    default:                            // integer or enum
+                        writeShort(4);
+                        writeInt(ga.getInt(i));
+                }
+            }
+        }
+
+        private void writeIppMultiValue(ValueTag vt, PrinterStateReasons psr) {
             Iterator<Map.Entry<PrinterStateReason, Severity>> iter = psr.entrySet().iterator();
             Map.Entry<PrinterStateReason, Severity> o;
             do {
@@ -362,20 +785,20 @@ public abstract class IppTransport {
                 writeIppValue(vt, o.getKey().toString() + "-" + o.getValue().toString(), null);
                 // Attribute value print loop
                 if (iter.hasNext()) {
-                    out.write(vt.getValue());
-                    out.writeShort(0);                  // nameless attribute indicates a multi-value
+                    write(vt.getValue());
+                    writeShort(0);                      // nameless attribute indicates a multi-value
                 }
             } while (iter.hasNext());
         }
 
-        private void writeIppMultiValue(ValueTag vt, SetOfIntegerSyntax sois) throws IOException {
+        private void writeIppMultiValue(ValueTag vt, SetOfIntegerSyntax sois) {
             Iterator<int[]> iter = Arrays.asList(sois.getMembers()).iterator();
             do {
                 writeIppValue(vt, iter.next(), null);
                 // Attribute value print loop
                 if (iter.hasNext()) {
-                    out.write(vt.getValue());
-                    out.writeShort(0);                  // nameless attribute indicates a multi-value
+                    write(vt.getValue());
+                    writeShort(0);                      // nameless attribute indicates a multi-value
                 }
             } while (iter.hasNext());
         }
@@ -388,12 +811,11 @@ public abstract class IppTransport {
          * |          value    |   v bytes
          * ---------------------
          */
-        private void writeIppValue(ValueTag vt, Object o, Integer ll)
-                throws IOException {
+        private void writeIppValue(ValueTag vt, Object o, Integer ll) {
             int n = -1;                                 // used for TEXT/NAME_WITH*_LANGUAGE
             int i;                                      // used for ENUM
-            Date date;
-            Calendar cal;
+            long date;
+            int offset;
             // the following would not throw ClassCastException as GenericValue allows
             // just those types for those value-tag.
             o = validateAndTransform(vt, o, ll);
@@ -406,94 +828,81 @@ public abstract class IppTransport {
                 case ADMIN_DEFINE:                      // the above out-of-band values
                 case BEGIN_COLLECTION:
                 case END_COLLECTION:                    // and begin/end-collection
-                    out.writeShort(0);                  // have zero-length
+                    writeShort(0);                      // have zero-length
                     break;
                 case INTEGER:
-                    out.writeShort(4);
+                    writeShort(4);
                     if (o instanceof IntegerSyntax)
                         i = ((IntegerSyntax) o).getValue();
                     else
                         i = (Integer) o;
-                    out.writeInt(i);
+                    writeInt(i);
                     break;
                 case BOOLEAN:
-                    out.writeShort(1);
+                    writeShort(1);
                     if (o instanceof EnumSyntax)
                         i = ((EnumSyntax) o).getValue();
                     else
                         i = (Boolean) o ? 1 : 0;
-                    out.write(i);
+                    write(i);
                     break;
                 case ENUM:
-                    out.writeShort(4);
+                    writeShort(4);
                     if (o instanceof EnumSyntax)
                         i = ((EnumSyntax) o).getValue();
                     else
                         i = (Integer) o;
-                    out.writeInt(i);
+                    writeInt(i);
                     break;
                 case OCTET_STRING:
                     // there is no standard attribute using this syntax ...
-                    out.writeShort(((byte[]) o).length);
-                    out.write((byte[]) o);
+                    writeShort(((byte[]) o).length);
+                    write((byte[]) o, 0, ((byte[]) o).length);
                     break;
                 case DATE_TIME:
-                    // DateAndTime 11 octets syntax in RFC1903
-                    if (o instanceof Calendar)
-                        cal = (Calendar) o;
+                    // DateAndTime 11 octets syntax in RFC2579
+                    if (o instanceof Calendar) {
+                        Calendar cal = (Calendar) o;
+                        date = cal.getTimeInMillis();
+                        offset = cal.get(Calendar.ZONE_OFFSET) + cal.get(Calendar.DST_OFFSET);
+                    }
                     else {
                         if (o instanceof DateTimeSyntax)
-                            date = ((DateTimeSyntax) o).getValue();
+                            date = ((DateTimeSyntax) o).getValue().getTime();
                         else
-                            date = (Date) o;
-                        // setup calendar object
-                        cal = new GregorianCalendar();
-                        cal.setTime(date);
+                            date = ((Date) o).getTime();
+                        offset = tz.getOffset(date);
                     }
-                    // write local time
-                    out.writeShort(11);
-                    out.writeShort(cal.get(Calendar.YEAR));
-                    out.write(cal.get(Calendar.MONTH));
-                    out.write(cal.get(Calendar.DAY_OF_MONTH));
-                    out.write(cal.get(Calendar.HOUR_OF_DAY));
-                    out.write(cal.get(Calendar.MINUTE));
-                    out.write(cal.get(Calendar.SECOND));
-                    out.write(cal.get(Calendar.MILLISECOND) / 100);
-                    // ... and timezone offset
-                    int minoff = cal.get(Calendar.ZONE_OFFSET) / 60000;
-                    if (minoff < 0) {
-                        out.write('-');
-                        minoff = -minoff;
-                    } else
-                        out.write('+');
-                    out.write(minoff / 60);
-                    out.write(minoff % 60);
+                    // write local time and timezone offset
+                    writeShort(IppDateTime.LENGTH);
+                    ensureRemaining(IppDateTime.LENGTH);
+                    IppDateTime.encode(out, date, offset);
                     break;
                 case RESOLUTION:
-                    out.writeShort(9);
-                    out.writeInt(((ResolutionSyntax) o).getCrossFeedResolution(ResolutionSyntax.DPI));
-                    out.writeInt(((ResolutionSyntax) o).getFeedResolution(ResolutionSyntax.DPI));
-                    out.write(3);                       // 3 == dpi
+                    writeShort(9);
+                    writeInt(((ResolutionSyntax) o).getCrossFeedResolution(ResolutionSyntax.DPI));
+                    writeInt(((ResolutionSyntax) o).getFeedResolution(ResolutionSyntax.DPI));
+                    write(3);                           // 3 == dpi
                     break;
                 case RANGE_OF_INTEGER:
-                    out.writeShort(8);
-                    out.writeInt(((int[]) o)[0]);
-                    out.writeInt(((int[]) o)[1]);
+                    writeShort(8);
+                    writeInt(((int[]) o)[0]);
+                    writeInt(((int[]) o)[1]);
                     break;
                 case TEXT_WITH_LANGUAGE:
                 case NAME_WITH_LANGUAGE:
                     String nl = getNaturalLanguage(((TextSyntax) o).getLocale());
                     n = bb.limit();     // bb was set by validateAndTransform()
-                    out.writeShort(4 + nl.length() + n);
-                    out.writeShort(nl.length());
-                    out.writeBytes(nl);                 // natural-language is always US-ASCII
+                    writeShort(4 + nl.length() + n);
+                    writeShort(nl.length());
+                    writeBytes(nl);                     // natural-language is always US-ASCII
                     // fall through to the string cases
                 case TEXT_WITHOUT_LANGUAGE:
                 case NAME_WITHOUT_LANGUAGE:
                     if (n < 0)
                         n = bb.limit();
-                    out.writeShort(n);
-                    out.write(bb.array(), 0, n);
+                    writeShort(n);
+                    write(bb.array(), 0, n);
                     break;
                 case KEYWORD:
                 case URI:
@@ -503,8 +912,8 @@ public abstract class IppTransport {
                 case MIME_MEDIA_TYPE:
                 case MEMBER_ATTR_NAME:
                     String str = o.toString();
-                    out.writeShort(str.length());
-                    out.writeBytes(str);                // these syntaxes are always US-ASCII
+                    writeShort(str.length());
+                    writeBytes(str);                    // these syntaxes are always US-ASCII
                     break;
                 case RESERVED:
                 case TEXT:
@@ -519,6 +928,10 @@ public abstract class IppTransport {
         }
 
         private Object validateAndTransform(ValueTag vt, Object o, Integer ll) {
+            // unwrap a CIJU generic value, its value-tag was already deduced
+            if (o instanceof GenericValue)
+                o = ((GenericValue) o).getValue();
+
             // decide limit for string length
             int limit;
             if (request.conformity == IppObject.Conformity.NONE)
@@ -577,6 +990,22 @@ public abstract class IppTransport {
         /** Encodes string into this.bb */
         private ByteBuffer encodeStringUTF8(String str, int max)
                 throws CharacterCodingException {
+            // fast path: an US-ASCII string is its own UTF-8 encoding
+            int len = str.length();
+            if (len <= max) {
+                if (bb.capacity() < len)
+                    bb = ByteBuffer.allocate(len);
+                byte[] ba = bb.array();
+                int i = 0;
+                for (char c; i < len && (c = str.charAt(i)) < 0x80; i++)
+                    ba[i] = (byte) c;
+                if (i == len) {
+                    bb.clear();
+                    bb.limit(len);
+                    return bb;
+                }
+            }
+
             // setup in, out and encoder
             CharBuffer in = CharBuffer.wrap(str);
             bb.clear();
@@ -613,436 +1042,100 @@ public abstract class IppTransport {
 
 
     /** IppTransportDecoder - Decodes / reads an IPP response */
-    private static class IppTransportDecoder<T extends IppObject> extends IppTransport {
-        private final DataInputStream in;
-        /* contentLength is not used, we assume the InputStream is sized correctly */
+    /* package */ static class IppTransportDecoder<T extends IppObject> extends IppTransport {
+        /* the response is read from one of these */
+        private final InputStream in;
+        private final ReadableByteChannel ch;
+        private final ByteBuffer bb;
+        /* if known, the response is read at once */
         private final long contentLength;
-        private final CharsetDecoder usa;
-        private CharsetDecoder csd;
-        private final ByteBuffer bb = ByteBuffer.allocate(ValueTag.TEXT_WITHOUT_LANGUAGE.MAX);
-        private CharBuffer cb = CharBuffer.allocate(ValueTag.TEXT_WITHOUT_LANGUAGE.MAX);
-        private IppResponse<T> response;
+        private final IppReader rdr;
+        private final boolean lazy;
+        private final byte[] chunk;
 
-        private GroupTag lastTag;
-        private GenericAttribute curr;
-
-        private IppTransportDecoder(InputStream in, long contentLength) throws IOException {
-            ios[0] = this.in = new DataInputStream(in);
+        /* package */ IppTransportDecoder(InputStream in, ReadableByteChannel ch, ByteBuffer bb,
+                long contentLength, IppReader rdr, boolean lazy, byte[] chunk) {
+            this.in = in;
+            this.ch = ch;
+            this.bb = bb;
+            ios[0] = in != null ? in : ch;
             this.contentLength = contentLength;
-            usa = Charset.forName("US-ASCII").newDecoder();
+            this.rdr = rdr;
+            this.lazy = lazy;
+            this.chunk = chunk;
         }
         
-        private IppResponse<T> processResponse(T obj) throws IOException {
-            // read response header
-            response = new IppResponse<T>(in.readShort() /* version */,
-                                          in.readShort() /* status */, 
-                                          in.readInt() /* request id */, obj);
-            if (response.conformity != Conformity.STRICT)
-                usa.onMalformedInput(CodingErrorAction.REPLACE)
-                   .onUnmappableCharacter(CodingErrorAction.REPLACE);
-            // read operational attribures
-            readOperationHead();
+        @SuppressWarnings("unchecked")
+        /* package */ IppResponse<T> processResponse(T obj) throws IOException {
+            // read response header and operational attributes
+            rdr.init(in, ch, bb, obj, lazy, contentLength);
+            IppResponse<T> response = (IppResponse<T>) (IppResponse<?>) rdr.getResponse();
             
+            // index the groups past the operation attributes, if asked to
+            IppIndex index = obj == null && response.indexing && rdr.isRetaining() ?
+                    new IppIndex() : null;
+
             // parse the remainder of the response attributes
-            int b,
-                len;
-            String str;
-            Object value;
-            curr = null;
-            lastTag = GroupTag.OPERATION;
-            while (lastTag != GroupTag.END) {
-                // On each iteration read either a group-tag or an attribute (name+value)
-                b = in.read();
-                if (b < ValueTag.UNSUPPORTED.getValue()) {
-                    // seen a group tag
-                    if (curr != null) {
-                        // add current attribute
-                        response.addAttribute(curr);
-                        curr = null;
+            GenericAttribute curr = null;
+            IppReader.Event ev;
+            do {
+                ev = rdr.next();
+                if (index != null && rdr.getGroupTag() != GroupTag.OPERATION) {
+                    switch (ev) {
+                        case GROUP:
+                        case END:
+                            if (curr != null) {
+                                // add last operation attribute
+                                response.addAttribute(curr);
+                                curr = null;
+                            }
+                            index.endGroup(rdr.getEventOffset());
+                            if (ev == IppReader.Event.GROUP)
+                                index.beginGroup(rdr.getGroupTag(), rdr.getEventOffset());
+                            break;
+                        case ATTRIBUTE:
+                            index.addAttribute(rdr.getName(), rdr.getEventOffset());
+                            break;
                     }
-                    // record new group-tag
-                    lastTag = validateGroupTag(b);
-                    response.newAttributeGroup(lastTag);
+                    continue;
                 }
-                else { // attribute up ahead
-                    len = in.readShort();
-                    if (len > 0) {
-                        // new attibute ahead
+                switch (ev) {
+                    case GROUP:
+                    case END:
+                        if (curr != null) {
+                            // add current attribute
+                            response.addAttribute(curr);
+                            curr = null;
+                        }
+                        // record new group-tag
+                        response.newAttributeGroup(rdr.getGroupTag());
+                        break;
+                    case ATTRIBUTE:
                         if (curr != null)
-                            // so add current
+                            // new attibute ahead so add current
                             response.addAttribute(curr);
-                        // read new attribute's name and create it
-                        validateConformity(len);
-                        str = readString(len, usa);
-                        curr = new GenericAttribute(str);
-                    }
-                    else if (len < 0)
-                        throw new IppFailedException(MessageFormat.format(resourceStrings.getString("PRINT SERVER BROKEN: NEW ATTRIBUTE HAS NEGATIVE-LENGTH ({0}) NAME!"), len),
-                                response);
-                    else /* len == 0 */ if (curr == null)
-                        throw new IppFailedException(resourceStrings.getString("PRINT SERVER BROKEN: NEW ATTRIBUTE HAS ZERO-LENGTH NAME!"),
-                                response);
-                    
-                    // read attribute's value length
-                    len = in.readShort();
-                    ValueTag vt = validateConformity(b, len);
-                    value = readIppValue(vt, len);
-                    curr.add(new GenericValue(vt, value));
-                }                
-            }
+                        curr = new GenericAttribute(rdr.getName());
+                        break;
+                    case VALUE:
+                        rdr.addValue(curr);
+                        break;
+                }
+            } while (ev != IppReader.Event.END);
+            if (index != null)
+                response.setIndex(index, rdr);
             
             // get the response document if available
-            len = in.read(bb.array());
+            InputStream doc = rdr.getDocumentStream();
+            int len = doc.read(chunk);
             if (len > 0) {
                 OutputStream out = response.getDocOutputStream();
                 ios[1] = out;
                 do {
-                    out.write(bb.array(), 0, len);
-                } while ((len = in.read(bb.array())) > 0);
+                    out.write(chunk, 0, len);
+                } while ((len = doc.read(chunk)) > 0);
             }
             
             return response;
         }
-
-        private void readOperationHead() throws IOException {
-            int b, len;
-            String str;
-            
-            // Read operational attributes group tag
-            b = in.read();
-            if (GroupTag.valueOf(b) != GroupTag.OPERATION)
-                throw new IppFailedException(resourceStrings.getString("PRINT SERVER BROKEN: RESPONSE DOES NOT BEGIN WITH OPERATION GROUP TAG!"),
-                        response);
-            
-            // Read charset attribute
-            b = in.read();  //CHARSET
-            len = in.readShort();   //18
-            if (ValueTag.valueOf(b) != ValueTag.CHARSET || len != 18 ||
-                    !readString(len, usa).equals("attributes-charset"))
-                throw new IppFailedException(resourceStrings.getString("PRINT SERVER BROKEN: FIRST ATTRIBUTE IS NOT CHARSET!"),
-                        response);
-            len = in.readShort();
-            str = readString(len, usa);
-            response.addOperationAttribute(new GenericAttribute("attributes-charset", str, ValueTag.CHARSET));
-            // Initialize the charset decoder
-            csd = Charset.forName(str).newDecoder();
-            if (response.conformity != Conformity.STRICT)
-                csd.onMalformedInput(CodingErrorAction.REPLACE)
-                   .onUnmappableCharacter(CodingErrorAction.REPLACE);
-            
-            // Read natural language attribute
-            b = in.read();  //NATURAL_LANGUAGE
-            len = in.readShort();   //27
-            if (ValueTag.valueOf(b) != ValueTag.NATURAL_LANGUAGE || len != 27 ||
-                    !readString(len, usa).equals("attributes-natural-language"))
-                throw new IppFailedException(resourceStrings.getString("PRINT SERVER BROKEN: SECOND ATTRIBUTE IS NOT LANGUAGE!"),
-                        response);
-            len = in.readShort();
-            str = readString(len, usa);
-            response.addOperationAttribute(new GenericAttribute("attributes-natural-language", str, ValueTag.NATURAL_LANGUAGE));
-            response.setLocale(parseNaturalLanguage(str));
-        }
-        
-        // Read string from a DataInputStream using readFully()
-        private String readString (int len, CharsetDecoder csd) throws IOException {
-            csd.reset();
-            cb.clear();
-            bb.limit(0);    // + next loop calls compact() := clear()
-            
-            // do read input and decode loop
-            while (len > 0) {
-                bb.compact();
-                if (len < bb.remaining()) {
-                    bb.limit(bb.position() + len);
-                    in.readFully(bb.array(), bb.position(), len);
-                    len = 0;
-                }
-                else {
-                    in.readFully(bb.array(), bb.position(), bb.remaining());
-                    len -= bb.remaining();
-                }
-                bb.rewind();    // not flip() as readFully doesn't advance position
-                estimateCapacity(0, csd);
-                CoderResult cr = csd.decode(bb, cb, len == 0);
-                if (cr.isError())
-                    cr.throwException();
-            }
-            
-            // do final part decoding loop
-            if (bb.hasRemaining())
-                estimateCapacity(0, csd);
-            while (true) {
-                CoderResult cr = bb.hasRemaining() ?
-                        csd.decode(bb, cb, true) : CoderResult.UNDERFLOW;
-                if (cr.isUnderflow())
-                    cr = csd.flush(cb);
-                if (cr.isUnderflow())
-                    // we're done
-                    break;
-                if (cr.isError())
-                    cr.throwException();
-                estimateCapacity(1, csd);
-            }
-            cb.flip();
-            return cb.toString();
-        }
-
-        /** Estimate cb's capacity to be large enough to hold the input string */
-        private void estimateCapacity(int min, CharsetDecoder csd) {
-            int n = (int)(bb.remaining() * csd.averageCharsPerByte() + 1) - cb.remaining();
-            n = Math.max(n, min);   // ensure minimum growth
-            if (n > 0) {
-                // Allocate a new buffer and copy over last decoding run
-                CharBuffer old = cb;
-                cb = CharBuffer.allocate(old.limit() + n);
-                System.arraycopy(old.array(), old.arrayOffset(), cb.array(), 0, old.position());
-                cb.position(old.position());
-            }
-        }
-
-        private Locale parseNaturalLanguage(String nl) {
-            assert nl != null;
-            String[] loc = nl.split("-", 3);
-            if (loc[0].length() > 0)
-                switch (loc.length) {
-                    case 3:
-                        return new Locale(loc[0], loc[1], loc[2]);
-                    case 2:
-                        return new Locale(loc[0], loc[1]);
-                    case 1:
-                    default:    // loc[] will always have at leat one element
-                        return new Locale(loc[0]);
-                }
-            // invalid natural-language value. Try using response's value as default
-            Locale locale = response.getLocale();
-            if (locale == null /* this is attributes-natural-language operational attribute */ ||
-                    response.conformity == Conformity.STRICT)
-                throw new IppFailedException(MessageFormat.format(resourceStrings.getString("MALFORMED RESPONSE: NATURAL-LANGUAGE ATTRIBUTE ({0}) IS INVALID. IT MUST SPECIFY A LANGUAGE."), nl),
-                        response);
-            else if (response.conformity == Conformity.LENIENT)
-                logger.log(Level.INFO, "MALFORMED RESPONSE: NATURAL-LANGUAGE ATTRIBUTE ({0}) IS INVALID. USING RESPONSE DEFAULT.", nl);
-            return locale;
-        }
-
-        private GroupTag validateGroupTag(int b) {
-            try {
-                return GroupTag.valueOf(b);
-            }
-            catch (IllegalArgumentException e) {
-                if (response.conformity == Conformity.NONE)
-                    return GroupTag.RESERVED;
-            }
-            throw new IppFailedException(resourceStrings.getString("MALFORMED RESPONSE: GROUP TAG IS RESERVED."),
-                    response);
-        }
-
-        /** check the attribute name length against the Conformity level */
-        private void validateConformity(int len) {
-            assert len >= Short.MIN_VALUE && len <= Short.MAX_VALUE : "len is short";
-            if (response.conformity == Conformity.STRICT &&
-                    len > ValueTag.KEYWORD.MAX)
-                throw new IppFailedException(MessageFormat.format(resourceStrings.getString("MALFORMED RESPONSE: NEW ATTRIBUTE NAME LENGTH IS {0}!"), len),
-                        response);
-        }
-
-        /** check the value-tag and value-length against the Conformity level */
-        private ValueTag validateConformity(int b, int len) {
-            assert len >= Short.MIN_VALUE && len <= Short.MAX_VALUE : "len is short";
-            final ValueTag vt;
-            if (len < 0)
-                throw new IppFailedException(MessageFormat.format(resourceStrings.getString("PRINT SERVER BROKEN: ATTRIBUTE HAS NEGATIVE-LENGTH ({0}) VALUE!"), len),
-                        response);
-            try {
-                vt = ValueTag.valueOf(b);
-                validateConformity(vt, len);
-            }
-            catch (IllegalArgumentException ignore) {
-                if (response.conformity != Conformity.STRICT) {
-                    if (response.conformity == Conformity.LENIENT)
-                        logger.log(Level.INFO, "MALFORMED RESPONSE: VALUE TAG IS RESERVED.");
-                    return ValueTag.RESERVED;
-                }
-                throw new IppFailedException(resourceStrings.getString("MALFORMED RESPONSE: VALUE TAG IS RESERVED."),
-                        response);
-            }
-            return vt;
-        }
-
-        private void validateConformity(ValueTag vt, int len) {
-            switch (vt) {
-                case UNSUPPORTED:
-                case UNKNOWN:
-                case NO_VALUE:
-                case NOT_SETTABLE:
-                case DELETE_ATTRIBUTE:
-                case ADMIN_DEFINE:                      // the above out-of-band values
-                    if (len != 0)                       // have zero-length
-                        throw new IppFailedException(MessageFormat.format(
-                                resourceStrings.getString("PRINT SERVER BROKEN: VALUE-TYPE, {0}, MUST HAVE NO VALUE!"),
-                                vt), response);
-                    break;
-                case INTEGER:
-                case ENUM:
-                    if (len != 4)
-                        throw new IppFailedException(MessageFormat.format(
-                                resourceStrings.getString("PRINT SERVER BROKEN: VALUE-TYPE, {0}, MUST BE {1} BYTES LONG NOT {2}!"),
-                                vt, 4, len), response);
-                    break;
-                case BOOLEAN:
-                    if (len != 1)
-                        throw new IppFailedException(MessageFormat.format(
-                                resourceStrings.getString("PRINT SERVER BROKEN: VALUE-TYPE, {0}, MUST BE {1} BYTES LONG NOT {2}!"),
-                                vt, 1, len), response);
-                    break;
-                case DATE_TIME:
-                    if (len != 11)
-                        throw new IppFailedException(MessageFormat.format(
-                                resourceStrings.getString("PRINT SERVER BROKEN: VALUE-TYPE, {0}, MUST BE {1} BYTES LONG NOT {2}!"),
-                                vt, 11, len), response);
-                    break;
-                case RESOLUTION:
-                    if (len != 9)
-                        throw new IppFailedException(MessageFormat.format(
-                                resourceStrings.getString("PRINT SERVER BROKEN: VALUE-TYPE, {0}, MUST BE {1} BYTES LONG NOT {2}!"),
-                                vt, 9, len), response);
-                    break;
-                case RANGE_OF_INTEGER:
-                    if (len != 8)
-                        throw new IppFailedException(MessageFormat.format(
-                                resourceStrings.getString("PRINT SERVER BROKEN: VALUE-TYPE, {0}, MUST BE {1} BYTES LONG NOT {2}!"),
-                                vt, 8, len), response);
-                    break;
-                case TEXT_WITH_LANGUAGE:
-                case NAME_WITH_LANGUAGE:
-                    if (response.conformity == Conformity.STRICT &&
-                            len > vt.MAX + ValueTag.NATURAL_LANGUAGE.MAX + 4) // 4 = 2x length fields
-                        throw new IppFailedException(MessageFormat.format(
-                                resourceStrings.getString("MALFORMED RESPONSE: VALUE-TYPE, {0}, MUST BE AT MOST {1} BYTES LONG (GOT {2})."),
-                                vt, vt.MAX + ValueTag.NATURAL_LANGUAGE.MAX + 4, len), response);
-                    break;
-                case OCTET_STRING:
-                case TEXT_WITHOUT_LANGUAGE:
-                case NAME_WITHOUT_LANGUAGE:
-                case KEYWORD:
-                case URI:
-                case URI_SCHEME:
-                case CHARSET:
-                case NATURAL_LANGUAGE:
-                case MIME_MEDIA_TYPE:
-                case MEMBER_ATTR_NAME:
-                    if (response.conformity == Conformity.STRICT &&
-                            len > vt.MAX)
-                        throw new IppFailedException(MessageFormat.format(
-                                resourceStrings.getString("MALFORMED RESPONSE: VALUE-TYPE, {0}, MUST BE AT MOST {1} BYTES LONG (GOT {2})."),
-                                vt, vt.MAX, len), response);
-                    break;
-                case BEGIN_COLLECTION:
-                case END_COLLECTION:
-                case RESERVED:
-                    break;
-                case TEXT:
-                case NAME:  // TEXT, NAME could never be (here for completeness)
-                default:
-                    logger.logp(Level.SEVERE, this.getClass().getName(), "validateConformity(int,int)",
-                        "PLEASE REPORT TO THE DEVELOPER: THIS VALUETAG {0} HAS BEEN OVERLOOKED!", vt);
-                    assert false : MessageFormat.format(
-                            resourceStrings.getString("PLEASE REPORT TO THE DEVELOPER: THIS VALUETAG {0} HAS BEEN OVERLOOKED!"),
-                            vt);
-            }
-        }
-
-        /**
-         * The picture of the encoding of a value is:
-         * ---------------------
-         * |   value-length    |   2 bytes
-         * ---------------------
-         * |          value    |   v bytes
-         * ---------------------
-         */
-        private Object readIppValue(ValueTag vt, int len) throws IOException {
-            assert true : "validateConformity(int,int) must be called prior to this.";
-            Locale loc = response.getLocale();  // to be used for NAME/TEXT_WITH_LANGUAGE
-            switch (vt) {
-                case UNSUPPORTED:
-                case UNKNOWN:
-                case NO_VALUE:
-                case NOT_SETTABLE:
-                case DELETE_ATTRIBUTE:
-                case ADMIN_DEFINE:          // the above out-of-band values
-                    break;                  // have zero-length
-                case INTEGER:
-                case ENUM:
-                    return in.readInt();
-                case BOOLEAN:
-                    return in.readBoolean();
-                case OCTET_STRING:
-                case RESERVED:              // treat value as opaque data
-                    byte[] ba = new byte[len];
-                    in.readFully(ba);
-                    return ba;
-                case DATE_TIME:
-                    Calendar cal = new GregorianCalendar(response.getLocale());
-                    cal.set(Calendar.YEAR, in.readShort());
-                    cal.set(Calendar.MONTH, in.read());
-                    cal.set(Calendar.DAY_OF_MONTH, in.read());
-                    cal.set(Calendar.HOUR_OF_DAY, in.read());
-                    cal.set(Calendar.MINUTE, in.read());
-                    cal.set(Calendar.SECOND, in.read());
-                    cal.set(Calendar.MILLISECOND, in.read() * 100);
-                    int offset = (char) in.read() == '-' ? -60000 : 60000;
-                    offset *= in.read() * 60 + in.read();
-                    cal.set(Calendar.ZONE_OFFSET, offset);
-                    return cal.getTime();
-                case RESOLUTION:
-                    return new ResolutionValue(in.readInt(), in.readInt(),
-                            in.read() == 3 ? ResolutionSyntax.DPI : ResolutionSyntax.DPCM);
-                case RANGE_OF_INTEGER:
-                    return new int[] { in.readInt(), in.readInt() };
-                case TEXT_WITH_LANGUAGE:
-                case NAME_WITH_LANGUAGE:
-                    int len1 = in.readShort();
-                    validateConformity(ValueTag.NATURAL_LANGUAGE, len1);
-                    loc = parseNaturalLanguage(readString(len1, usa));
-                    int len2 = in.readShort();
-                    if (len != len1 + len2 + 4) // 4 == 2x length fields
-                        throw new IppFailedException(MessageFormat.format(
-                                resourceStrings.getString("PRINT SERVER BROKEN: VALUE-TYPE, {0}, HAS LENGTH, {1}, THAT DOESN'T CORRESPOND TO THE SUM OF IT'S PARTS, {2}!"),
-                                vt, len, len1 + len2 + 4), response);
-                    validateConformity(vt == ValueTag.NAME_WITH_LANGUAGE?
-                            ValueTag.NAME_WITHOUT_LANGUAGE : ValueTag.TEXT_WITHOUT_LANGUAGE,
-                            len2);
-                    len = len2;
-                case TEXT_WITHOUT_LANGUAGE:
-                case NAME_WITHOUT_LANGUAGE:
-                    return new TextValue(readString(len, csd), loc);
-                case BEGIN_COLLECTION:
-                case END_COLLECTION:
-                    if (len == 0)
-                        break;
-                case KEYWORD:
-                case URI_SCHEME:
-                case CHARSET:
-                case NATURAL_LANGUAGE:
-                case MIME_MEDIA_TYPE:
-                case MEMBER_ATTR_NAME:
-                    return readString(len, usa);
-                case URI:
-                    try {
-                        return new URI(readString(len, usa));
-                    }
-                    catch (URISyntaxException ex) {
-                        IppFailedException ife = new IppFailedException(response);
-                        ife.initCause(ex);
-                        throw ife;
-                    }
-                case TEXT:
-                case NAME:  // TEXT, NAME could never be (here for completeness)
-                default:
-                    throw new AssertionError(MessageFormat.format(
-                            resourceStrings.getString("PLEASE REPORT TO THE DEVELOPER: THIS VALUETAG {0} HAS BEEN OVERLOOKED!"), vt));
-            }
-            return null;
-        }
-
     }
 }
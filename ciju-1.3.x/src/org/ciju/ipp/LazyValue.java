@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2012-2016 Opher Shachar
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ciju.ipp;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import org.ciju.ipp.IppEncoding.ValueTag;
+import org.ciju.ipp.attribute.GenericValue;
+
+/**
+ * A {@link GenericValue} that refers to its encoded bytes in a retained
+ * response buffer and decodes them on first call to {@link #getValue()}.
+ * 
+ * @author Opher Shachar
+ */
+/* package */ final class LazyValue extends GenericValue {
+    private final IppReader rdr;
+    private ByteBuffer buf;
+    private final int off, len;
+    private final int langOff, langLen;     // for TEXT/NAME_WITH_LANGUAGE
+    private Object value;
+
+    LazyValue(IppReader rdr, ValueTag vt, ByteBuffer buf, int off, int len,
+            int langOff, int langLen) {
+        super(vt);
+        this.rdr = rdr;
+        this.buf = buf;
+        this.off = off;
+        this.len = len;
+        this.langOff = langOff;
+        this.langLen = langLen;
+    }
+
+    /**
+     * Decodes the value on first call, subsequent calls return the same object.
+     * 
+     * @throws IppFailedException if the value could not be decoded.
+     */
+    @Override
+    public Object getValue() {
+        // the reader's decoders are shared by all of the response's values
+        synchronized (rdr) {
+            if (buf != null) {
+                try {
+                    value = rdr.decodeValue(buf, getValueTag(), off, len, langOff, langLen);
+                }
+                catch (CharacterCodingException ex) {
+                    IppFailedException ife = new IppFailedException(rdr.getResponse());
+                    ife.initCause(ex);
+                    throw ife;
+                }
+                buf = null;
+            }
+            return value;
+        }
+    }
+}
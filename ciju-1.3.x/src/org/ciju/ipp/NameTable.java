@@ -0,0 +1,275 @@
+/*
+ * Copyright (C) 2012-2016 Opher Shachar
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ciju.ipp;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * An open-addressing table of attribute names keyed by their encoded bytes.
+ * A name is looked up straight from the wire bytes, with no charset decoding,
+ * and known names resolve to a single canonical <tt>String</tt> instance.
+ * <p>
+ * The {@link #STANDARD} table holds the names defined by RFC 8011 (and its
+ * predecessor RFC 2911), its common extensions and CUPS. It is never modified
+ * after its creation and is safe for concurrent use; other tables are not.
+ *
+ * @author Opher Shachar
+ */
+/* package */ final class NameTable {
+
+    private static final String[] STANDARD_NAMES = {
+        // Operation attributes
+        "attributes-charset", "attributes-natural-language", "printer-uri",
+        "job-uri", "job-id", "document-uri", "requesting-user-name",
+        "status-message", "detailed-status-message", "document-access-error",
+        "limit", "requested-attributes", "which-jobs", "my-jobs",
+        "document-name", "document-format", "document-natural-language",
+        "compression", "job-k-octets", "job-impressions", "job-media-sheets",
+        "ipp-attribute-fidelity", "last-document", "message",
+        "first-index", "job-ids", "requesting-user-uri", "document-number",
+        "printer-message-from-operator", "job-message-from-operator",
+        "notify-subscription-id", "notify-subscription-ids",
+        "notify-sequence-numbers", "notify-wait", "purge-jobs",
+        "first-job-id", "exclude-schemes",
+        // Job template attributes
+        "job-priority", "job-hold-until", "job-sheets", "multiple-document-handling",
+        "copies", "finishings", "page-ranges", "sides", "number-up",
+        "orientation-requested", "media", "media-col", "printer-resolution",
+        "print-quality", "output-bin", "print-color-mode", "print-scaling",
+        "page-delivery", "job-account-id", "job-accounting-user-id",
+        "output-mode", "number-up-layout", "page-border", "fit-to-page",
+        "mirror", "job-cancel-after", "print-content-optimize",
+        "print-rendering-intent", "media-source", "media-type",
+        "media-size", "x-dimension", "y-dimension", "media-top-margin",
+        "media-bottom-margin", "media-left-margin", "media-right-margin",
+        "media-key", "media-color", "media-size-name",
+        // Job description attributes
+        "job-more-info", "job-name", "job-originating-user-name",
+        "job-originating-user-uri", "job-originating-host-name",
+        "job-state", "job-state-reasons", "job-state-message",
+        "job-detailed-status-messages", "job-document-access-errors",
+        "number-of-documents", "output-device-assigned",
+        "time-at-creation", "time-at-processing", "time-at-completed",
+        "job-printer-up-time", "job-printer-uri", "date-time-at-creation",
+        "date-time-at-processing", "date-time-at-completed",
+        "number-of-intervening-jobs", "job-k-octets-processed",
+        "job-impressions-completed", "job-media-sheets-completed",
+        "job-pages", "job-pages-completed", "job-uuid", "job-name-default",
+        "job-printer-state-message", "job-printer-state-reasons",
+        "job-media-progress", "job-originating-user-name-default",
+        // Printer description attributes
+        "printer-uri-supported", "uri-security-supported",
+        "uri-authentication-supported", "printer-name", "printer-location",
+        "printer-info", "printer-more-info", "printer-driver-installer",
+        "printer-make-and-model", "printer-more-info-manufacturer",
+        "printer-state", "printer-state-reasons", "printer-state-message",
+        "ipp-versions-supported", "operations-supported",
+        "multiple-document-jobs-supported", "charset-configured",
+        "charset-supported", "natural-language-configured",
+        "generated-natural-language-supported", "document-format-default",
+        "document-format-supported", "printer-is-accepting-jobs",
+        "queued-job-count", "color-supported", "reference-uri-schemes-supported",
+        "pdl-override-supported", "printer-up-time", "printer-current-time",
+        "multiple-operation-time-out", "compression-supported",
+        "job-k-octets-supported", "job-impressions-supported",
+        "job-media-sheets-supported", "pages-per-minute",
+        "pages-per-minute-color", "printer-uuid", "printer-state-change-time",
+        "printer-state-change-date-time", "printer-config-change-time",
+        "printer-config-change-date-time", "printer-device-id",
+        "printer-geo-location", "printer-icons", "printer-organization",
+        "printer-organizational-unit", "printer-dns-sd-name",
+        "printer-alert", "printer-alert-description", "printer-supply",
+        "printer-supply-description", "printer-supply-info-uri",
+        "printer-firmware-name", "printer-firmware-string-version",
+        "printer-input-tray", "printer-output-tray", "printer-kind",
+        "printer-settable-attributes-supported", "printer-strings-languages-supported",
+        "printer-strings-uri", "printer-resolution-default",
+        "printer-resolution-supported", "print-quality-default",
+        "print-quality-supported", "print-color-mode-default",
+        "print-color-mode-supported", "print-scaling-default",
+        "print-scaling-supported", "print-content-optimize-default",
+        "print-content-optimize-supported", "print-rendering-intent-default",
+        "print-rendering-intent-supported", "job-priority-default",
+        "job-priority-supported", "job-hold-until-default",
+        "job-hold-until-supported", "job-sheets-default", "job-sheets-supported",
+        "multiple-document-handling-default", "multiple-document-handling-supported",
+        "copies-default", "copies-supported", "finishings-default",
+        "finishings-supported", "finishings-col-default", "finishings-col-supported",
+        "page-ranges-supported", "sides-default", "sides-supported",
+        "number-up-default", "number-up-supported", "orientation-requested-default",
+        "orientation-requested-supported", "media-default", "media-supported",
+        "media-ready", "media-col-default", "media-col-ready",
+        "media-col-supported", "media-col-database", "media-size-supported",
+        "media-source-supported", "media-type-supported",
+        "media-top-margin-supported", "media-bottom-margin-supported",
+        "media-left-margin-supported", "media-right-margin-supported",
+        "output-bin-default", "output-bin-supported", "page-delivery-default",
+        "page-delivery-supported", "number-up-layout-supported",
+        "job-account-id-supported", "job-accounting-user-id-supported",
+        "job-creation-attributes-supported", "job-ids-supported",
+        "which-jobs-supported", "job-settable-attributes-supported",
+        "jpeg-k-octets-supported", "pdf-k-octets-supported",
+        "pdf-versions-supported", "identify-actions-default",
+        "identify-actions-supported", "ipp-features-supported",
+        "landscape-orientation-requested-preferred", "mopria-certified",
+        "overrides-supported", "pwg-raster-document-resolution-supported",
+        "pwg-raster-document-sheet-back", "pwg-raster-document-type-supported",
+        "urf-supported", "epcl-version-supported", "marker-colors",
+        "marker-high-levels", "marker-levels", "marker-low-levels",
+        "marker-message", "marker-names", "marker-types",
+        "marker-change-time", "device-service-count", "device-uuid",
+        "notify-events-default", "notify-events-supported",
+        "notify-lease-duration-default", "notify-lease-duration-supported",
+        "notify-max-events-supported", "notify-pull-method-supported",
+        "notify-schemes-supported",
+        // Subscription and event notification attributes
+        "notify-events", "notify-lease-duration", "notify-pull-method",
+        "notify-recipient-uri", "notify-time-interval", "notify-user-data",
+        "notify-charset", "notify-natural-language", "notify-job-id",
+        "notify-printer-uri", "notify-sequence-number", "notify-subscribed-event",
+        "notify-text", "notify-subscriber-user-name", "notify-status-code",
+        "notify-get-interval", "notify-lease-expiration-time",
+        "job-impressions-col",
+        // CUPS attributes
+        "auth-info", "auth-info-required", "auth-info-default",
+        "device-uri", "device-class", "device-id", "device-info",
+        "device-location", "device-make-and-model", "member-names",
+        "member-uris", "ppd-name", "ppd-make", "ppd-make-and-model",
+        "ppd-model-number", "ppd-natural-language", "ppd-device-id",
+        "ppd-product", "ppd-psversion", "ppd-type", "printer-type",
+        "printer-type-mask", "printer-is-shared", "printer-is-temporary",
+        "printer-commands", "printer-error-policy", "printer-error-policy-supported",
+        "printer-op-policy", "printer-op-policy-supported",
+        "requesting-user-name-allowed", "requesting-user-name-denied",
+        "job-quota-period", "job-k-limit", "job-page-limit",
+        "cups-version", "job-cancel-after-default", "job-cancel-after-supported",
+        "port-monitor", "port-monitor-supported", "server-is-sharing-printers",
+        "notify-recipient-uri-supported", "document-format-preferred",
+    };
+
+    /** The table of standard attribute names */
+    static final NameTable STANDARD = new NameTable(STANDARD_NAMES.length * 2);
+    static {
+        for (String name : STANDARD_NAMES)
+            STANDARD.add(name);
+    }
+
+    private final int mask;
+    private final int max;          // keep the table at most half full
+    private final int[] hashes;
+    private final byte[][] keys;
+    private final String[] names;
+    private int size;
+
+    /**
+     * @param capacity the number of names this table is expected to hold.
+     */
+    NameTable(int capacity) {
+        int n = Integer.highestOneBit(Math.max(capacity, 8) * 2 - 1);
+        mask = n - 1;
+        max = n / 2;
+        hashes = new int[n];
+        keys = new byte[n][];
+        names = new String[n];
+    }
+
+    /**
+     * Looks up the name encoded at <tt>b</tt>'s <tt>off</tt>.
+     *
+     * @return the canonical name or <tt>null</tt> if not in this table.
+     */
+    String lookup(ByteBuffer b, int off, int len) {
+        int h = hash(b, off, len);
+        for (int i = h & mask; names[i] != null; i = (i + 1) & mask)
+            if (hashes[i] == h && matches(keys[i], b, off, len))
+                return names[i];
+        return null;
+    }
+
+    /**
+     * Adds the name encoded at <tt>b</tt>'s <tt>off</tt> as <tt>name</tt>.
+     * The name is not added if the table is full.
+     *
+     * @return <tt>true</tt> if the name was added.
+     */
+    boolean add(ByteBuffer b, int off, int len, String name) {
+        if (size >= max)
+            return false;   // don't copy the key
+        byte[] key = new byte[len];
+        for (int i = 0; i < len; i++)
+            key[i] = b.get(off + i);
+        return add(key, name);
+    }
+
+    /**
+     * Adds the given name, which must be US-ASCII.
+     * The name is not added if the table is full.
+     *
+     * @return <tt>true</tt> if the name was added.
+     */
+    boolean add(String name) {
+        // attribute names are US-ASCII
+        byte[] key = new byte[name.length()];
+        for (int i = 0; i < key.length; i++)
+            key[i] = (byte) name.charAt(i);
+        return add(key, name);
+    }
+
+    private boolean add(byte[] key, String name) {
+        if (size >= max)
+            return false;
+        ByteBuffer b = ByteBuffer.wrap(key);
+        int h = hash(b, 0, key.length);
+        int i = h & mask;
+        for (; names[i] != null; i = (i + 1) & mask)
+            if (hashes[i] == h && matches(keys[i], b, 0, key.length))
+                return false;
+        hashes[i] = h;
+        keys[i] = key;
+        names[i] = name;
+        size++;
+        return true;
+    }
+
+    /** Removes all names from this table */
+    void clear() {
+        if (size == 0)
+            return;
+        Arrays.fill(hashes, 0);
+        Arrays.fill(keys, null);
+        Arrays.fill(names, null);
+        size = 0;
+    }
+
+    private static int hash(ByteBuffer b, int off, int len) {
+        int h = len;
+        for (int i = off, end = off + len; i < end; i++)
+            h = 31 * h + b.get(i);
+        return h ^ (h >>> 16);
+    }
+
+    private static boolean matches(byte[] key, ByteBuffer b, int off, int len) {
+        if (key.length != len)
+            return false;
+        for (int i = 0; i < len; i++)
+            if (key[i] != b.get(off + i))
+                return false;
+        return true;
+    }
+}
@@ -0,0 +1,260 @@
+/*
+ * Copyright (C) 2012-2016 Opher Shachar
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ciju.ipp;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * An <tt>OutputStream</tt> that keeps what is written to it in memory up to
+ * a threshold and spills to a temporary file above it. Once closed, its
+ * content can be read any number of times, from memory or from the file
+ * mapped into memory in windows of up to 1GB, with {@link #getInputStream()}
+ * or {@link #getChannel()}.
+ * <p>
+ * The temporary file is deleted as soon as it is mapped, or on exit if the
+ * platform doesn't allow deleting a mapped file. It is also deleted if a
+ * write to it fails, the spool then being of no further use.
+ *
+ * @author Opher Shachar
+ */
+/* package */ class SpoolBuffer extends OutputStream {
+    // the most of the temporary file mapped by a single buffer
+    private static final long WINDOW = 1 << 30;
+
+    private final int threshold;
+    private byte[] buf;             // null once spilled or discarded
+    private int count;
+    private File file;
+    private RandomAccessFile raf;
+    private ByteBuffer[] content;   // set once closed
+
+    /**
+     * @param threshold the number of bytes kept in memory before spilling to
+     *      a temporary file.
+     */
+    SpoolBuffer(int threshold) {
+        this.threshold = threshold;
+        this.buf = new byte[Math.min(threshold, 8192)];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[] { (byte) b }, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (content != null)
+            throw new ClosedChannelException();
+        if (buf == null && raf == null)
+            throw new ClosedChannelException();     // discarded
+        if (raf == null && count + len > threshold)
+            spill();
+        if (raf != null) {
+            try {
+                raf.write(b, off, len);
+            } catch (IOException ex) {
+                discard();
+                throw ex;
+            }
+            return;
+        }
+        if (count + len > buf.length) {
+            byte[] b2 = new byte[Math.min(Math.max(buf.length * 2, count + len), threshold)];
+            System.arraycopy(buf, 0, b2, 0, count);
+            buf = b2;
+        }
+        System.arraycopy(b, off, buf, count, len);
+        count += len;
+    }
+
+    /** Move the content written so far to a temporary file */
+    private void spill() throws IOException {
+        file = File.createTempFile("ipp", null);
+        try {
+            raf = new RandomAccessFile(file, "rw");
+            raf.write(buf, 0, count);
+        } catch (IOException ex) {
+            discard();
+            throw ex;
+        }
+        buf = null;
+    }
+
+    /** Drop the content after a failed write, deleting the temporary file */
+    private void discard() {
+        buf = null;
+        if (raf != null)
+            try {
+                raf.close();
+            } catch (IOException ex) { /* irrelevant */ }
+        raf = null;
+        if (!file.delete())
+            file.deleteOnExit();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (content != null)
+            return;
+        if (raf == null) {
+            if (buf == null)
+                throw new ClosedChannelException();     // discarded
+            content = new ByteBuffer[] { ByteBuffer.wrap(buf, 0, count).slice() };
+            return;
+        }
+        // this would be substituted by Java7 try-with-resources
+        try {
+            FileChannel fc = raf.getChannel();
+            long size = fc.size();
+            ByteBuffer[] windows = new ByteBuffer[(int) ((size + WINDOW - 1) / WINDOW)];
+            for (int i = 0; i < windows.length; i++)
+                windows[i] = fc.map(FileChannel.MapMode.READ_ONLY, i * WINDOW,
+                        Math.min(WINDOW, size - i * WINDOW));
+            content = windows;
+        } finally {
+            raf.close();
+            raf = null;
+            if (!file.delete())
+                file.deleteOnExit();
+        }
+    }
+
+    /**
+     * @return a new stream reading the content from its start.
+     * @throws IllegalStateException if not yet closed.
+     */
+    InputStream getInputStream() {
+        return new BufferInputStream(getContent());
+    }
+
+    /**
+     * @return a new channel reading the content from its start.
+     * @throws IllegalStateException if not yet closed.
+     */
+    ReadableByteChannel getChannel() {
+        return new BufferChannel(getContent());
+    }
+
+    private ByteBuffer[] getContent() {
+        if (content == null)
+            throw new IllegalStateException();
+        ByteBuffer[] bbs = new ByteBuffer[content.length];
+        for (int i = 0; i < bbs.length; i++)
+            bbs[i] = content[i].duplicate();
+        return bbs;
+    }
+
+    /** Returns the buffer of <tt>bbs</tt> to read from at <tt>i</tt> or after */
+    private static int next(ByteBuffer[] bbs, int i) {
+        while (i < bbs.length && !bbs[i].hasRemaining())
+            i++;
+        return i;
+    }
+
+    /**
+     * An <tt>InputStream</tt> reading <tt>ByteBuffer</tt>S one after the
+     * other, each from its position
+     */
+    /* package */ static class BufferInputStream extends InputStream {
+        private final ByteBuffer[] bbs;
+        private int i;      // the buffer being read
+
+        BufferInputStream(ByteBuffer... bbs) {
+            this.bbs = bbs;
+        }
+
+        @Override
+        public int read() {
+            i = next(bbs, i);
+            return i < bbs.length ? bbs[i].get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0)
+                return 0;
+            i = next(bbs, i);
+            if (i == bbs.length)
+                return -1;
+            len = Math.min(len, bbs[i].remaining());
+            bbs[i].get(b, off, len);
+            return len;
+        }
+
+        @Override
+        public long skip(long n) {
+            long k = 0;
+            while (k < n && (i = next(bbs, i)) < bbs.length) {
+                int m = (int) Math.min(n - k, bbs[i].remaining());
+                bbs[i].position(bbs[i].position() + m);
+                k += m;
+            }
+            return k;
+        }
+
+        @Override
+        public int available() {
+            long r = 0;
+            for (int j = i; j < bbs.length; j++)
+                r += bbs[j].remaining();
+            return (int) Math.min(r, Integer.MAX_VALUE);
+        }
+    }
+
+    private static class BufferChannel implements ReadableByteChannel {
+        private final ByteBuffer[] bbs;
+        private int i;      // the buffer being read
+        private boolean open = true;
+
+        BufferChannel(ByteBuffer[] bbs) {
+            this.bbs = bbs;
+        }
+
+        public int read(ByteBuffer dst) throws IOException {
+            if (!open)
+                throw new ClosedChannelException();
+            i = next(bbs, i);
+            if (i == bbs.length)
+                return -1;
+            ByteBuffer bb = bbs[i];
+            int n = Math.min(dst.remaining(), bb.remaining());
+            ByteBuffer src = bb.duplicate();
+            src.limit(src.position() + n);
+            dst.put(src);
+            bb.position(bb.position() + n);
+            return n;
+        }
+
+        public boolean isOpen() {
+            return open;
+        }
+
+        public void close() {
+            open = false;
+        }
+    }
+}
@@ -17,7 +17,10 @@
 
 package org.ciju.ipp.attribute;
 
+import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.net.URI;
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -25,7 +28,10 @@ import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
 import java.util.ListIterator;
+import java.util.Locale;
 import java.util.ResourceBundle;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.print.attribute.Attribute;
@@ -100,6 +106,17 @@ public class GenericAttribute implements Attribute, List<Object> {
     private final ArrayList<Object> list;
     private final List<Object> unmodList;
 
+    // As long as all values are integers, enums or booleans of the one value
+    // tag, or all are ranges, they're kept unboxed in ints or ranges (packed
+    // as lower-bound << 32 | upper-bound) and list stays empty. A null
+    // packedTag stands for plain Integer or int[] values as added by add(int)
+    // or add(int, int).
+    private transient ValueTag packedTag;
+    private transient int[] ints;
+    private transient long[] ranges;
+    private transient int packed;
+    private transient List<Object> view;
+
     public GenericAttribute(String name) {
         this(name, GenericAttribute.class, 1);
     }
@@ -220,6 +237,7 @@ public class GenericAttribute implements Attribute, List<Object> {
     public boolean add(DateTimeSyntax o) {
         if (o == null)
             throw new NullPointerException("element");
+        inflate();
         return list.add(o);
     }
 
@@ -232,6 +250,7 @@ public class GenericAttribute implements Attribute, List<Object> {
     public boolean add(EnumSyntax o) {
         if (o == null)
             throw new NullPointerException("element");
+        inflate();
         return list.add(o);
     }
     
@@ -244,6 +263,7 @@ public class GenericAttribute implements Attribute, List<Object> {
     public boolean add(IntegerSyntax o) {
         if (o == null)
             throw new NullPointerException("element");
+        inflate();
         return list.add(o);
     }
     
@@ -256,6 +276,7 @@ public class GenericAttribute implements Attribute, List<Object> {
     public boolean add(ResolutionSyntax o) {
         if (o == null)
             throw new NullPointerException("element");
+        inflate();
         return list.add(o);
     }
     
@@ -268,6 +289,7 @@ public class GenericAttribute implements Attribute, List<Object> {
     public boolean add(SetOfIntegerSyntax o) {
         if (o == null)
             throw new NullPointerException("element");
+        inflate();
         return list.add(o);
     }
     
@@ -280,6 +302,7 @@ public class GenericAttribute implements Attribute, List<Object> {
     public boolean add(Size2DSyntax o) {
         if (o == null)
             throw new NullPointerException("element");
+        inflate();
         return list.add(o);
     }
     
@@ -292,6 +315,7 @@ public class GenericAttribute implements Attribute, List<Object> {
     public boolean add(TextSyntax o) {
         if (o == null)
             throw new NullPointerException("element");
+        inflate();
         return list.add(o);
     }
     
@@ -304,6 +328,7 @@ public class GenericAttribute implements Attribute, List<Object> {
     public boolean add(URISyntax o) {
         if (o == null)
             throw new NullPointerException("element");
+        inflate();
         return list.add(o);
     }
     
@@ -318,6 +343,7 @@ public class GenericAttribute implements Attribute, List<Object> {
             throw new NullPointerException("element");
         else if (o.length != 2)
             throw new IllegalArgumentException(resourceStrings.getString("ARRAY MUST HOLD EXACTLY TWO ELEMENTS."));
+        inflate();
         return list.add(o);
     }
     
@@ -329,7 +355,8 @@ public class GenericAttribute implements Attribute, List<Object> {
      *            <tt>Collection.add</tt> method).
      */
     public boolean add(int lb, int ub) {
-        return add(new int[] {lb, ub});
+        addRange(null, lb, ub);
+        return true;
     }
     
     /**
@@ -339,7 +366,284 @@ public class GenericAttribute implements Attribute, List<Object> {
      *            <tt>Collection.add</tt> method).
      */
     public boolean add(int o) {
-        return list.add(o);
+        addInt(null, o);
+        return true;
+    }
+
+    /**
+     * Appends an <tt>integer</tt> or <tt>enum</tt> value without boxing it.
+     * 
+     * @param vt either {@link ValueTag#INTEGER} or {@link ValueTag#ENUM}.
+     * @param value the value to be appended to this list.
+     * @return <tt>true</tt> (as per the general contract of the
+     *            <tt>Collection.add</tt> method).
+     * @throws IllegalArgumentException if <tt>vt</tt> is of another syntax.
+     */
+    public boolean add(ValueTag vt, int value) {
+        if (vt != ValueTag.INTEGER && vt != ValueTag.ENUM)
+            throw new IllegalArgumentException(resourceStrings.getString("INCOMPATIBLE VALUE FOR THE GIVEN VALUE-TAG."));
+        addInt(vt, value);
+        return true;
+    }
+
+    /**
+     * Appends a <tt>boolean</tt> value without boxing it.
+     * 
+     * @param vt {@link ValueTag#BOOLEAN}.
+     * @param value the value to be appended to this list.
+     * @return <tt>true</tt> (as per the general contract of the
+     *            <tt>Collection.add</tt> method).
+     * @throws IllegalArgumentException if <tt>vt</tt> is of another syntax.
+     */
+    public boolean add(ValueTag vt, boolean value) {
+        if (vt != ValueTag.BOOLEAN)
+            throw new IllegalArgumentException(resourceStrings.getString("INCOMPATIBLE VALUE FOR THE GIVEN VALUE-TAG."));
+        addInt(vt, value ? 1 : 0);
+        return true;
+    }
+
+    /**
+     * Appends a <tt>rangeOfInteger</tt> value without boxing it.
+     * 
+     * @param vt {@link ValueTag#RANGE_OF_INTEGER}.
+     * @param lb the lower bound of the integer range
+     * @param ub the upper bound of the integer range
+     * @return <tt>true</tt> (as per the general contract of the
+     *            <tt>Collection.add</tt> method).
+     * @throws IllegalArgumentException if <tt>vt</tt> is of another syntax.
+     */
+    public boolean add(ValueTag vt, int lb, int ub) {
+        if (vt != ValueTag.RANGE_OF_INTEGER)
+            throw new IllegalArgumentException(resourceStrings.getString("INCOMPATIBLE VALUE FOR THE GIVEN VALUE-TAG."));
+        addRange(vt, lb, ub);
+        return true;
+    }
+
+    private void addInt(ValueTag vt, int value) {
+        if (packed == 0 && list.isEmpty()) {
+            packedTag = vt;
+            ints = new int[1];
+        }
+        else if (packed == 0 || ints == null || packedTag != vt) {
+            inflate();
+            list.add(packedValue(vt, value));
+            return;
+        }
+        else if (packed == ints.length) {
+            int[] a = new int[packed * 2];
+            System.arraycopy(ints, 0, a, 0, packed);
+            ints = a;
+        }
+        ints[packed++] = value;
+    }
+
+    private void addRange(ValueTag vt, int lb, int ub) {
+        if (packed == 0 && list.isEmpty()) {
+            packedTag = vt;
+            ranges = new long[1];
+        }
+        else if (packed == 0 || ranges == null || packedTag != vt) {
+            inflate();
+            list.add(packedValue(vt, lb, ub));
+            return;
+        }
+        else if (packed == ranges.length) {
+            long[] a = new long[packed * 2];
+            System.arraycopy(ranges, 0, a, 0, packed);
+            ranges = a;
+        }
+        ranges[packed++] = (long) lb << 32 | ub & 0xffffffffL;
+    }
+
+    private static Object packedValue(ValueTag vt, int value) {
+        if (vt == null)
+            return value;
+        return new GenericValue(vt, vt == ValueTag.BOOLEAN ? (Object) (value != 0) : (Object) value);
+    }
+
+    private static Object packedValue(ValueTag vt, int lb, int ub) {
+        int[] range = {lb, ub};
+        return vt == null ? range : new GenericValue(vt, range);
+    }
+
+    /** Returns the packed value at <tt>index</tt> as it would be in the list */
+    private Object packedValue(int index) {
+        if (index < 0 || index >= packed)
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + packed);
+        if (ints != null)
+            return packedValue(packedTag, ints[index]);
+        long r = ranges[index];
+        return packedValue(packedTag, (int) (r >> 32), (int) r);
+    }
+
+    /** Moves the packed values, if any, to the list before it's modified */
+    private void inflate() {
+        if (packed == 0)
+            return;
+        list.ensureCapacity(packed);
+        for (int i = 0; i < packed; i++)
+            list.add(packedValue(i));
+        packed = 0;
+        packedTag = null;
+        ints = null;
+        ranges = null;
+    }
+
+    /** Returns the values, packed or not, as a list */
+    private List<Object> values() {
+        if (packed == 0)
+            return list;
+        if (view == null)
+            view = new PackedView();
+        return view;
+    }
+
+    /* A list over the packed values, inflating them on the first modification */
+    private class PackedView extends AbstractList<Object> {
+        @Override
+        public Object get(int index) {
+            return packed > 0 ? packedValue(index) : list.get(index);
+        }
+
+        @Override
+        public int size() {
+            return packed > 0 ? packed : list.size();
+        }
+
+        @Override
+        public Object set(int index, Object element) {
+            return GenericAttribute.this.set(index, element);
+        }
+
+        @Override
+        public void add(int index, Object element) {
+            GenericAttribute.this.add(index, element);
+        }
+
+        @Override
+        public Object remove(int index) {
+            return GenericAttribute.this.remove(index);
+        }
+    }
+
+    /**
+     * Tells if the values are kept unboxed, which happens as long as they're
+     * all integers, enums or booleans of the one value tag, or are all ranges.
+     * They're then best read with {@link #getInt(int)},
+     * {@link #getBoolean(int)}, {@link #getLowerBound(int)} and
+     * {@link #getUpperBound(int)}.
+     * 
+     * @return the value tag of all the values or <tt>null</tt> if they aren't
+     *      kept unboxed.
+     */
+    public ValueTag getPackedValueTag() {
+        if (packed == 0)
+            return null;
+        if (packedTag != null)
+            return packedTag;
+        return ints != null ? ValueTag.INTEGER : ValueTag.RANGE_OF_INTEGER;
+    }
+
+    /**
+     * Returns the <tt>integer</tt> or <tt>enum</tt> value at <tt>index</tt>,
+     * without boxing it if the values are kept unboxed.
+     * 
+     * @param index index of the value to return.
+     * @return the value.
+     * @throws ClassCastException if the value is of another syntax.
+     * @throws IndexOutOfBoundsException if the index is out of range.
+     */
+    public int getInt(int index) {
+        if (packed > 0 && ints != null && packedTag != ValueTag.BOOLEAN) {
+            if (index < 0 || index >= packed)
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + packed);
+            return ints[index];
+        }
+        Object o = unwrap(get(index));
+        if (o instanceof Integer)
+            return (Integer) o;
+        if (o instanceof IntegerSyntax)
+            return ((IntegerSyntax) o).getValue();
+        if (o instanceof EnumSyntax)
+            return ((EnumSyntax) o).getValue();
+        throw new ClassCastException(String.valueOf(o));
+    }
+
+    /**
+     * Returns the <tt>boolean</tt> value at <tt>index</tt>, without boxing
+     * it if the values are kept unboxed.
+     * 
+     * @param index index of the value to return.
+     * @return the value.
+     * @throws ClassCastException if the value is of another syntax.
+     * @throws IndexOutOfBoundsException if the index is out of range.
+     */
+    public boolean getBoolean(int index) {
+        if (packed > 0 && packedTag == ValueTag.BOOLEAN) {
+            if (index < 0 || index >= packed)
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + packed);
+            return ints[index] != 0;
+        }
+        Object o = unwrap(get(index));
+        if (o instanceof Boolean)
+            return (Boolean) o;
+        if (o instanceof EnumSyntax)    // e.g. ColorSupported
+            return ((EnumSyntax) o).getValue() != 0;
+        throw new ClassCastException(String.valueOf(o));
+    }
+
+    /**
+     * Returns the lower bound of the <tt>rangeOfInteger</tt> value at
+     * <tt>index</tt>.
+     * 
+     * @param index index of the value.
+     * @return the lower bound.
+     * @throws ClassCastException if the value is of another syntax.
+     * @throws IndexOutOfBoundsException if the index is out of range.
+     */
+    public int getLowerBound(int index) {
+        return (int) (getRange(index) >> 32);
+    }
+
+    /**
+     * Returns the upper bound of the <tt>rangeOfInteger</tt> value at
+     * <tt>index</tt>.
+     * 
+     * @param index index of the value.
+     * @return the upper bound.
+     * @throws ClassCastException if the value is of another syntax.
+     * @throws IndexOutOfBoundsException if the index is out of range.
+     */
+    public int getUpperBound(int index) {
+        return (int) getRange(index);
+    }
+
+    private long getRange(int index) {
+        if (packed > 0 && ranges != null) {
+            if (index < 0 || index >= packed)
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + packed);
+            return ranges[index];
+        }
+        Object o = unwrap(get(index));
+        int lb, ub;
+        if (o instanceof int[]) {
+            lb = ((int[]) o)[0];
+            ub = ((int[]) o)[1];
+        }
+        else if (o instanceof SetOfIntegerSyntax) {
+            int[][] members = ((SetOfIntegerSyntax) o).getMembers();
+            if (members.length != 1)
+                throw new ClassCastException(String.valueOf(o));
+            lb = members[0][0];
+            ub = members[0][1];
+        }
+        else
+            throw new ClassCastException(String.valueOf(o));
+        return (long) lb << 32 | ub & 0xffffffffL;
+    }
+
+    private static Object unwrap(Object o) {
+        return o instanceof GenericValue ? ((GenericValue) o).getValue() : o;
     }
     
     /**
@@ -353,6 +657,7 @@ public class GenericAttribute implements Attribute, List<Object> {
      */
     public boolean add(Object o) {
         validateSyntax(o);
+        inflate();
         return list.add(o);
     }
     
@@ -369,6 +674,7 @@ public class GenericAttribute implements Attribute, List<Object> {
     public boolean addAll(Collection<? extends Object> c) {
         for (Object o : c)
             validateSyntax(o);
+        inflate();
         return list.addAll(c);
     }
     
@@ -382,6 +688,7 @@ public class GenericAttribute implements Attribute, List<Object> {
      */
     public void add(int index, Object element) {
         validateSyntax(element);
+        inflate();
         list.add(index, element);
     }
     
@@ -399,6 +706,7 @@ public class GenericAttribute implements Attribute, List<Object> {
     public boolean addAll(int index, Collection<? extends Object> c) {
         for (Object o : c)
             validateSyntax(o);
+        inflate();
         return list.addAll(index, c);
     }
     
@@ -412,187 +720,215 @@ public class GenericAttribute implements Attribute, List<Object> {
      */
     public Object set(int index, Object element) {
         validateSyntax(element);
+        inflate();
         return list.set(index, element);
     }
     
     /**
+     * Creates the <tt>javax.print</tt> attribute substituting a
+     * {@link GenericAttribute} of a given name.
+     *
+     * @see GenericAttribute#registerSubstitute(String, Substitute)
+     */
+    public interface Substitute {
+        /**
+         * @param attr the attribute to substitute.
+         * @param value the actual object of the attribute's first value.
+         * @return the substituting attribute or <tt>null</tt> if <tt>attr</tt>
+         *      should not be substituted.
+         */
+        Attribute create(GenericAttribute attr, Object value);
+    }
+
+    /* Substitutes by attribute name, looked up for every attribute of a response */
+    private static final ConcurrentMap<String, Substitute> substitutes =
+            new ConcurrentHashMap<String, Substitute>(64);
+    static {
+        for (StandardSubstitute ss : StandardSubstitute.values())
+            substitutes.put(ss.name().toLowerCase(Locale.ENGLISH).replace('_', '-'), ss);
+        substitutes.put("printer-uri-supported", StandardSubstitute.PRINTER_URI);
+    }
+
+    /**
+     * Registers the substitute of attributes named <tt>name</tt>, replacing
+     * any previous one (e.g. for attributes specific to CUPS).
      *
-     * @return
+     * @param name the attribute name.
+     * @param substitute the substitute or <tt>null</tt> to remove it.
+     * @return the previous substitute or <tt>null</tt> if there was none.
+     */
+    public static Substitute registerSubstitute(String name, Substitute substitute) {
+        if (substitute == null)
+            return substitutes.remove(name);
+        return substitutes.put(name, substitute);
+    }
+
+    /**
+     * Returns the <tt>javax.print</tt> attribute registered for this
+     * attribute's name, constructed from this attribute's value.
+     *
+     * @return the substituting attribute or <tt>this</tt> if none.
+     * @see #registerSubstitute(String, Substitute)
      */
     public Attribute subst() {
         assert get(0) instanceof GenericValue :
                 "This method should only be called on self constructed instances.";
         
+        Substitute ss = substitutes.get(name);
+        if (ss == null)
+            return this;
         // extract actual object of attribute's value
-        Object o = ((GenericValue) get(0)).getValue();
-        
-        /* Printer Description Attributes, https://tools.ietf.org/html/rfc2911#section-4.4 */
-        if (name.equals("printer-uri") || name.equals("printer-uri-supported")) {
-            return new PrinterURI((URI) o);
-        }
-        else if (name.equals("printer-name")) {
-            TextSyntax ts = (TextSyntax) o;
-            return new PrinterName(ts.getValue(), ts.getLocale());
-        }
-        else if (name.equals("printer-location")) {
-            TextSyntax ts = (TextSyntax) o;
-            return new PrinterLocation(ts.getValue(), ts.getLocale());
-        }
-        else if (name.equals("printer-info")) {
-            TextSyntax ts = (TextSyntax) o;
-            return new PrinterInfo(ts.getValue(), ts.getLocale());
-        }
-        else if (name.equals("printer-more-info")) {
-            return new PrinterMoreInfo((URI) o);
-        }
-        else if (name.equals("printer-make-and-model")) {
-            TextSyntax ts = (TextSyntax) o;
-            return new PrinterMakeAndModel(ts.getValue(), ts.getLocale());
-        }
-        else if (name.equals("printer-more-info-manufacturer")) {
-            return new PrinterMoreInfoManufacturer((URI) o);
-        }
-        else if (name.equals("printer-state")) {
-            switch ((Integer) o) {
-                case 3:
-                    return PrinterState.IDLE;
-                case 4:
-                    return PrinterState.PROCESSING;
-                case 5:
-                    return PrinterState.STOPPED;
-                default:
-                    return PrinterState.UNKNOWN;
-            }
-        }
-        else if (name.equals("printer-state-reasons")) {
-            // This is a multivalued type of attribute
-            return substPrinterStateReasons();
-        }
-        else if (name.equals("printer-is-accepting-jobs")) {
-            return (Boolean) o ? PrinterIsAcceptingJobs.ACCEPTING_JOBS
-                    : PrinterIsAcceptingJobs.NOT_ACCEPTING_JOBS;
-        }
-        else if (name.equals("queued-job-count")) {
-            return new QueuedJobCount((Integer) o);
-        }
-        else if (name.equals("printer-message-from-operator")) {
-            TextSyntax ts = (TextSyntax) o;
-            return new PrinterMessageFromOperator(ts.getValue(), ts.getLocale());
-        }
-        else if (name.equals("color-supported")) {
-            return (Boolean) o ? ColorSupported.SUPPORTED
-                    : ColorSupported.NOT_SUPPORTED;
-        }
-        else if (name.equals("reference-uri-schemes-supported")) {
-            // FIXME: not quite sure how to handle this ...
-        }
-        else if (name.equals("pdl-override-supported")) {
-            if ("attempted".equals(o))
-                return PDLOverrideSupported.ATTEMPTED;
-            else if ("not-attempted".equals(o))
-                return PDLOverrideSupported.NOT_ATTEMPTED;
-        }
-        else if (name.equals("job-k-octets-supported")) {
-            return new JobKOctetsSupported(((int[]) o)[0], ((int[]) o)[1]);
-        }
-        else if (name.equals("job-impressions-supported")) {
-            return new JobImpressionsSupported(((int[]) o)[0], ((int[]) o)[1]);
-        }
-        else if (name.equals("job-media-sheets-supported")) {
-            return new JobMediaSheetsSupported(((int[]) o)[0], ((int[]) o)[1]);
-        }
-        else if (name.equals("pages-per-minute")) {
-            return new PagesPerMinute((Integer) o);
-        }
-        else if (name.equals("pages-per-minute-color")) {
-            return new PagesPerMinuteColor((Integer) o);
-        }
+        Attribute a = ss.create(this, unwrap(get(0)));
+        // if nothing matched return self
+        return a != null ? a : this;
+    }
 
+    /* The substitutes of standard attributes, named after them */
+    private enum StandardSubstitute implements Substitute {
+        /* Printer Description Attributes, https://tools.ietf.org/html/rfc2911#section-4.4 */
+        PRINTER_URI, PRINTER_NAME, PRINTER_LOCATION, PRINTER_INFO,
+        PRINTER_MORE_INFO, PRINTER_MAKE_AND_MODEL, PRINTER_MORE_INFO_MANUFACTURER,
+        PRINTER_STATE, PRINTER_STATE_REASONS, PRINTER_IS_ACCEPTING_JOBS,
+        QUEUED_JOB_COUNT, PRINTER_MESSAGE_FROM_OPERATOR, COLOR_SUPPORTED,
+        PDL_OVERRIDE_SUPPORTED, JOB_K_OCTETS_SUPPORTED, JOB_IMPRESSIONS_SUPPORTED,
+        JOB_MEDIA_SHEETS_SUPPORTED, PAGES_PER_MINUTE, PAGES_PER_MINUTE_COLOR,
         /* Job Description Attributes, https://tools.ietf.org/html/rfc2911#section-4.3 */
-        else if (name.equals("job-name")) {
-            TextSyntax ts = (TextSyntax) o;
-            return new JobName(ts.getValue(), ts.getLocale());
-        }
-        else if (name.equals("job-originating-user-name")) {
-            TextSyntax ts = (TextSyntax) o;
-            return new JobOriginatingUserName(ts.getValue(), ts.getLocale());
-        }
-        else if (name.equals("job-state")) {
-            switch ((Integer) o) {
-                case 3:
-                    return JobState.PENDING;
-                case 4:
-                    return JobState.PENDING_HELD;
-                case 5:
-                    return JobState.PROCESSING;
-                case 6:
-                    return JobState.PROCESSING_STOPPED;
-                case 7:
-                    return JobState.CANCELED;
-                case 8:
-                    return JobState.ABORTED;
-                case 9:
-                    return JobState.COMPLETED;
+        JOB_NAME, JOB_ORIGINATING_USER_NAME, JOB_STATE, JOB_STATE_REASONS,
+        NUMBER_OF_DOCUMENTS, OUTPUT_DEVICE_ASSIGNED, TIME_AT_CREATION,
+        TIME_AT_PROCESSING, TIME_AT_COMPLETED, DATE_TIME_AT_CREATION,
+        DATE_TIME_AT_PROCESSING, DATE_TIME_AT_COMPLETED, NUMBER_OF_INTERVENING_JOBS,
+        JOB_MESSAGE_FROM_OPERATOR, JOB_K_OCTETS, JOB_IMPRESSIONS, JOB_MEDIA_SHEETS,
+        JOB_K_OCTETS_PROCESSED, JOB_IMPRESSIONS_COMPLETED, JOB_MEDIA_SHEETS_COMPLETED;
+        // FIXME: reference-uri-schemes-supported, not quite sure how to handle this ...
+
+        public Attribute create(GenericAttribute attr, Object o) {
+            TextSyntax ts;
+            switch (this) {
+                case PRINTER_URI:
+                    return new PrinterURI((URI) o);
+                case PRINTER_NAME:
+                    ts = (TextSyntax) o;
+                    return new PrinterName(ts.getValue(), ts.getLocale());
+                case PRINTER_LOCATION:
+                    ts = (TextSyntax) o;
+                    return new PrinterLocation(ts.getValue(), ts.getLocale());
+                case PRINTER_INFO:
+                    ts = (TextSyntax) o;
+                    return new PrinterInfo(ts.getValue(), ts.getLocale());
+                case PRINTER_MORE_INFO:
+                    return new PrinterMoreInfo((URI) o);
+                case PRINTER_MAKE_AND_MODEL:
+                    ts = (TextSyntax) o;
+                    return new PrinterMakeAndModel(ts.getValue(), ts.getLocale());
+                case PRINTER_MORE_INFO_MANUFACTURER:
+                    return new PrinterMoreInfoManufacturer((URI) o);
+                case PRINTER_STATE:
+                    switch ((Integer) o) {
+                        case 3:
+                            return PrinterState.IDLE;
+                        case 4:
+                            return PrinterState.PROCESSING;
+                        case 5:
+                            return PrinterState.STOPPED;
+                        default:
+                            return PrinterState.UNKNOWN;
+                    }
+                case PRINTER_STATE_REASONS:
+                    // This is a multivalued type of attribute
+                    return attr.substPrinterStateReasons();
+                case PRINTER_IS_ACCEPTING_JOBS:
+                    return (Boolean) o ? PrinterIsAcceptingJobs.ACCEPTING_JOBS
+                            : PrinterIsAcceptingJobs.NOT_ACCEPTING_JOBS;
+                case QUEUED_JOB_COUNT:
+                    return new QueuedJobCount((Integer) o);
+                case PRINTER_MESSAGE_FROM_OPERATOR:
+                    ts = (TextSyntax) o;
+                    return new PrinterMessageFromOperator(ts.getValue(), ts.getLocale());
+                case COLOR_SUPPORTED:
+                    return (Boolean) o ? ColorSupported.SUPPORTED
+                            : ColorSupported.NOT_SUPPORTED;
+                case PDL_OVERRIDE_SUPPORTED:
+                    if ("attempted".equals(o))
+                        return PDLOverrideSupported.ATTEMPTED;
+                    else if ("not-attempted".equals(o))
+                        return PDLOverrideSupported.NOT_ATTEMPTED;
+                    return null;
+                case JOB_K_OCTETS_SUPPORTED:
+                    return new JobKOctetsSupported(((int[]) o)[0], ((int[]) o)[1]);
+                case JOB_IMPRESSIONS_SUPPORTED:
+                    return new JobImpressionsSupported(((int[]) o)[0], ((int[]) o)[1]);
+                case JOB_MEDIA_SHEETS_SUPPORTED:
+                    return new JobMediaSheetsSupported(((int[]) o)[0], ((int[]) o)[1]);
+                case PAGES_PER_MINUTE:
+                    return new PagesPerMinute((Integer) o);
+                case PAGES_PER_MINUTE_COLOR:
+                    return new PagesPerMinuteColor((Integer) o);
+
+                case JOB_NAME:
+                    ts = (TextSyntax) o;
+                    return new JobName(ts.getValue(), ts.getLocale());
+                case JOB_ORIGINATING_USER_NAME:
+                    ts = (TextSyntax) o;
+                    return new JobOriginatingUserName(ts.getValue(), ts.getLocale());
+                case JOB_STATE:
+                    switch ((Integer) o) {
+                        case 3:
+                            return JobState.PENDING;
+                        case 4:
+                            return JobState.PENDING_HELD;
+                        case 5:
+                            return JobState.PROCESSING;
+                        case 6:
+                            return JobState.PROCESSING_STOPPED;
+                        case 7:
+                            return JobState.CANCELED;
+                        case 8:
+                            return JobState.ABORTED;
+                        case 9:
+                            return JobState.COMPLETED;
+                        default:
+                            return JobState.UNKNOWN;
+                    }
+                case JOB_STATE_REASONS:
+                    return attr.substJobStateReasons();
+                case NUMBER_OF_DOCUMENTS:
+                    return new NumberOfDocuments((Integer) o);
+                case OUTPUT_DEVICE_ASSIGNED:
+                    ts = (TextSyntax) o;
+                    return new OutputDeviceAssigned(ts.getValue(), ts.getLocale());
+                case TIME_AT_CREATION:
+                    return new DateTimeAtCreation(new Date(((Integer) o) * 1000L));
+                case TIME_AT_PROCESSING:
+                    return new DateTimeAtProcessing(new Date(((Integer) o) * 1000L));
+                case TIME_AT_COMPLETED:
+                    return new DateTimeAtCompleted(new Date(((Integer) o) * 1000L));
+                case DATE_TIME_AT_CREATION:
+                    return new DateTimeAtCreation((Date) o);
+                case DATE_TIME_AT_PROCESSING:
+                    return new DateTimeAtProcessing((Date) o);
+                case DATE_TIME_AT_COMPLETED:
+                    return new DateTimeAtCompleted((Date) o);
+                case NUMBER_OF_INTERVENING_JOBS:
+                    return new NumberOfInterveningJobs((Integer) o);
+                case JOB_MESSAGE_FROM_OPERATOR:
+                    ts = (TextSyntax) o;
+                    return new JobMessageFromOperator(ts.getValue(), ts.getLocale());
+                case JOB_K_OCTETS:
+                    return new JobKOctets((Integer) o);
+                case JOB_IMPRESSIONS:
+                    return new JobImpressions((Integer) o);
+                case JOB_MEDIA_SHEETS:
+                    return new JobMediaSheets((Integer) o);
+                case JOB_K_OCTETS_PROCESSED:
+                    return new JobKOctetsProcessed((Integer) o);
+                case JOB_IMPRESSIONS_COMPLETED:
+                    return new JobImpressionsCompleted((Integer) o);
+                case JOB_MEDIA_SHEETS_COMPLETED:
+                    return new JobMediaSheetsCompleted((Integer) o);
                 default:
-                    return JobState.UNKNOWN;
+                    return null;
             }
         }
-        else if (name.equals("job-state-reasons")) {
-            return substJobStateReasons();
-        }
-        else if (name.equals("number-of-documents")) {
-            return new NumberOfDocuments((Integer) o);
-        }
-        else if (name.equals("output-device-assigned")) {
-            TextSyntax ts = (TextSyntax) o;
-            return new OutputDeviceAssigned(ts.getValue(), ts.getLocale());
-        }
-        else if (name.equals("time-at-creation")) {
-            return new DateTimeAtCreation(new Date(((Integer) o) * 1000));
-        }
-        else if (name.equals("time-at-processing")) {
-            return new DateTimeAtProcessing(new Date(((Integer) o) * 1000));
-        }
-        else if (name.equals("time-at-completed")) {
-            return new DateTimeAtCompleted(new Date(((Integer) o) * 1000));
-        }
-        else if (name.equals("date-time-at-creation")) {
-            return new DateTimeAtCreation((Date) o);
-        }
-        else if (name.equals("date-time-at-processing")) {
-            return new DateTimeAtProcessing((Date) o);
-        }
-        else if (name.equals("date-time-at-completed")) {
-            return new DateTimeAtCompleted((Date) o);
-        }
-        else if (name.equals("number-of-intervening-jobs")) {
-            return new NumberOfInterveningJobs((Integer) o);
-        }
-        else if (name.equals("job-message-from-operator")) {
-            TextSyntax ts = (TextSyntax) o;
-            return new JobMessageFromOperator(ts.getValue(), ts.getLocale());
-        }
-        else if (name.equals("job-k-octets")) {
-            return new JobKOctets((Integer) o);
-        }
-        else if (name.equals("job-impressions")) {
-            return new JobImpressions((Integer) o);
-        }
-        else if (name.equals("job-media-sheets")) {
-            return new JobMediaSheets((Integer) o);
-        }
-        else if (name.equals("job-k-octets-processed")) {
-            return new JobKOctetsProcessed((Integer) o);
-        }
-        else if (name.equals("job-impressions-completed")) {
-            return new JobImpressionsCompleted((Integer) o);
-        }
-        else if (name.equals("job-media-sheets-completed")) {
-            return new JobMediaSheetsCompleted((Integer) o);
-        }
-
-        // if nothing matched return self
-        return this;
     }
 
     private Attribute substPrinterStateReasons() {
@@ -652,10 +988,10 @@ public class GenericAttribute implements Attribute, List<Object> {
 
     @Override
     public String toString() {
-        if (list.isEmpty())
+        if (isEmpty())
             return "";
         
-        Iterator<Object> it = list.iterator();
+        Iterator<Object> it = iterator();
         StringBuilder sb = new StringBuilder(it.next().toString());
         while (it.hasNext()) {
             sb.append(", ").append(it.next().toString());
@@ -665,28 +1001,57 @@ public class GenericAttribute implements Attribute, List<Object> {
     
     @Override
     public boolean equals(Object o) {
+        if (o == this)
+            return true;
         if (o == null || !(o instanceof GenericAttribute))
             return false;
         GenericAttribute other = (GenericAttribute) o;
-        return name.equals(other.name) &&
-                list.equals(other.list);
+        if (!name.equals(other.name))
+            return false;
+        if (packed > 0 && packed == other.packed && packedTag == other.packedTag
+                && ints != null && other.ints != null) {
+            for (int i = 0; i < packed; i++)
+                if (ints[i] != other.ints[i])
+                    return false;
+            return true;
+        }
+        return values().equals(other.values());
     }
     
     @Override
     public int hashCode() {
         int hash = 7;
         hash = 19 * hash + name.hashCode();
-        hash = 19 * hash + list.hashCode();
+        hash = 19 * hash + values().hashCode();
         return hash;
     }
 
+    /*
+     * The serialized form holds the values in the list, packed or not. The
+     * packed values are written from a copy, leaving this attribute as is.
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        ArrayList<Object> l = list;
+        List<Object> ul = unmodList;
+        if (packed > 0) {
+            l = new ArrayList<Object>(values());
+            ul = Collections.unmodifiableList(l);
+        }
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("name", name);
+        fields.put("category", category);
+        fields.put("list", l);
+        fields.put("unmodList", ul);
+        out.writeFields();
+    }
+
 //<editor-fold defaultstate="collapsed" desc="unmodList delegated methods">
     /**
      * {@inheritDoc}
      * <p><b><u>Note</u>:</b> The iterator returned does not allow mutating operations.
      */
     public ListIterator<Object> listIterator() {
-        return unmodList.listIterator();
+        return listIterator(0);
     }
     
     /**
@@ -694,73 +1059,83 @@ public class GenericAttribute implements Attribute, List<Object> {
      * <p><b><u>Note</u>:</b> The iterator returned does not allow mutating operations.
      */
     public ListIterator<Object> listIterator(int index) {
+        if (packed > 0)
+            return Collections.unmodifiableList(values()).listIterator(index);
         return unmodList.listIterator(index);
     }
 //</editor-fold>
     
 //<editor-fold defaultstate="collapsed" desc="List delegated methods">
     public int size() {
-        return list.size();
+        return packed > 0 ? packed : list.size();
     }
     
     public boolean isEmpty() {
-        return list.isEmpty();
+        return packed == 0 && list.isEmpty();
     }
     
     public boolean contains(Object o) {
-        return list.contains(o);
+        return values().contains(o);
     }
     
     public Iterator<Object> iterator() {
-        return list.iterator();
+        return values().iterator();
     }
     
     public Object[] toArray() {
-        return list.toArray();
+        return values().toArray();
     }
     
     public <T> T[] toArray(T[] a) {
-        return list.toArray(a);
+        return values().toArray(a);
     }
     
     public boolean remove(Object o) {
+        inflate();
         return list.remove(o);
     }
     
     public boolean containsAll(Collection<?> c) {
-        return list.containsAll(c);
+        return values().containsAll(c);
     }
     
     public boolean removeAll(Collection<?> c) {
+        inflate();
         return list.removeAll(c);
     }
     
     public boolean retainAll(Collection<?> c) {
+        inflate();
         return list.retainAll(c);
     }
     
     public void clear() {
+        packed = 0;
+        packedTag = null;
+        ints = null;
+        ranges = null;
         list.clear();
     }
     
     public Object get(int index) {
-        return list.get(index);
+        return packed > 0 ? packedValue(index) : list.get(index);
     }
     
     public Object remove(int index) {
+        inflate();
         return list.remove(index);
     }
     
     public int indexOf(Object o) {
-        return list.indexOf(o);
+        return values().indexOf(o);
     }
     
     public int lastIndexOf(Object o) {
-        return list.lastIndexOf(o);
+        return values().lastIndexOf(o);
     }
     
     public List<Object> subList(int fromIndex, int toIndex) {
-        return list.subList(fromIndex, toIndex);
+        return values().subList(fromIndex, toIndex);
     }
 //</editor-fold>
 }
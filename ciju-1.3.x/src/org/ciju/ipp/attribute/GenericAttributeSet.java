@@ -19,24 +19,43 @@ package org.ciju.ipp.attribute;
 
 import java.io.Serializable;
 import java.util.AbstractSet;
-import java.util.HashMap;
+import java.util.ConcurrentModificationException;
 import java.util.Iterator;
+import java.util.NoSuchElementException;
 import javax.print.attribute.Attribute;
 import javax.print.attribute.AttributeSet;
 
 /**
+ * A set of attributes keyed by their name.
+ * <p>
+ * The attributes are held in an array in the order they were added, with no
+ * entry object per attribute. Up to eight attributes are looked up by a
+ * linear search; larger sets add an open-addressing table of indices into the
+ * array. Names are compared by identity first, as the names of decoded
+ * attributes are the canonical instances, before falling back to
+ * <tt>equals</tt>. The set is meant for read-mostly use: removing an
+ * attribute takes time linear to the size of the set.
  *
  * @author Opher Shachar
  */
 public class GenericAttributeSet extends AbstractSet<Attribute> implements AttributeSet, Serializable {
     private static final long serialVersionUID = -5744845131975323409L;
     
+    private static final Attribute[] EMPTY = {};
+
+    // sets up to this size are searched linearly
+    private static final int LINEAR_MAX = 8;
+
     /**
-     * A HashMap used by the implementation.
-     * The serialized form doesn't include this instance variable. We'll instead
-     * serialize this object more efficiently than HashMap.
+     * The attributes in the order they were added, followed by free slots.
+     * The serialized form doesn't include these instance variables. We'll
+     * instead serialize this object more efficiently.
      */
-    private transient HashMap<String, Attribute> map;
+    private transient Attribute[] attrs;
+    private transient int size;
+    // indices into attrs plus one, zero for a free slot; null for small sets
+    private transient int[] index;
+    private transient int modCount;
 
     /**
      * Save the state of this <tt>GenericAttributeSetSet</tt> instance to a stream
@@ -52,11 +71,11 @@ public class GenericAttributeSet extends AbstractSet<Attribute> implements Attri
 	s.defaultWriteObject();
 
         // Write out size
-        s.writeInt(map.size());
+        s.writeInt(size);
 
 	// Write out all Attributes.
-	for (Attribute a : map.values())
-            s.writeObject(a);
+	for (int i = 0; i < size; i++)
+            s.writeObject(attrs[i]);
     }
 
     /**
@@ -68,56 +87,173 @@ public class GenericAttributeSet extends AbstractSet<Attribute> implements Attri
 	// Read in any hidden serialization magic
 	s.defaultReadObject();
 
-        // Read in HashMap size and create backing HashMap
-        int size = s.readInt();
-        map = new HashMap<String, Attribute>((int) (size/.75f) + 1);
+        // Read in size and create backing array
+        int n = s.readInt();
+        attrs = n > 0 ? new Attribute[n] : EMPTY;
 
 	// Read in all Attributes.
-	for (int i = 0; i < size; i++) {
-            Attribute a = (Attribute) s.readObject();
-            map.put(a.getName(), a);
-        }
+	for (int i = 0; i < n; i++)
+            put((Attribute) s.readObject());
     }
 
     public GenericAttributeSet() {
-        map = new HashMap<String, Attribute>();
+        attrs = EMPTY;
     }
 
     public GenericAttributeSet(AttributeSet as) {
-        map = new HashMap<String, Attribute>((int) (as.size()/.75f) + 1);
+        attrs = as.size() > 0 ? new Attribute[as.size()] : EMPTY;
         for (Attribute attr : as.toArray())
-            map.put(attr.getName(), attr);
+            put(attr);
+    }
+
+    //<editor-fold defaultstate="collapsed" desc="array and index maintenance">
+    private static int hash(String name) {
+        int h = name.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    /** Returns the position of the attribute named <tt>name</tt> or -1 */
+    private int indexOf(String name) {
+        if (name == null)
+            return -1;
+        if (index == null) {
+            for (int i = 0; i < size; i++) {
+                String n = attrs[i].getName();
+                if (n == name || n.equals(name))
+                    return i;
+            }
+            return -1;
+        }
+        int mask = index.length - 1;
+        for (int i = hash(name) & mask, k; (k = index[i]) != 0; i = (i + 1) & mask) {
+            String n = attrs[k - 1].getName();
+            if (n == name || n.equals(name))
+                return k - 1;
+        }
+        return -1;
+    }
+
+    private Attribute get0(String name) {
+        int i = indexOf(name);
+        return i >= 0 ? attrs[i] : null;
+    }
+
+    /** Adds or replaces the attribute of <tt>attr</tt>'s name */
+    private Attribute put(Attribute attr) {
+        int i = indexOf(attr.getName());
+        if (i >= 0) {
+            Attribute old = attrs[i];
+            attrs[i] = attr;
+            return old;
+        }
+        if (size == attrs.length) {
+            Attribute[] a = new Attribute[size < 4 ? 4 : size + (size >> 1)];
+            System.arraycopy(attrs, 0, a, 0, size);
+            attrs = a;
+        }
+        attrs[size++] = attr;
+        if (index != null && size * 2 <= index.length)
+            insert(size - 1);
+        else if (size > LINEAR_MAX)
+            rebuildIndex();
+        modCount++;
+        return null;
     }
+
+    private Attribute removeAt(int pos) {
+        Attribute old = attrs[pos];
+        System.arraycopy(attrs, pos + 1, attrs, pos, size - pos - 1);
+        attrs[--size] = null;
+        if (index != null)
+            rebuildIndex();
+        modCount++;
+        return old;
+    }
+
+    private Attribute remove0(String name) {
+        int i = indexOf(name);
+        return i >= 0 ? removeAt(i) : null;
+    }
+
+    private void rebuildIndex() {
+        if (size <= LINEAR_MAX) {
+            index = null;
+            return;
+        }
+        index = new int[Integer.highestOneBit(size * 4 - 1)];  // at most half full
+        for (int i = 0; i < size; i++)
+            insert(i);
+    }
+
+    private void insert(int pos) {
+        int mask = index.length - 1;
+        int i = hash(attrs[pos].getName()) & mask;
+        while (index[i] != 0)
+            i = (i + 1) & mask;
+        index[i] = pos + 1;
+    }
+    //</editor-fold>
     
+    /**
+     * {@inheritDoc}
+     * <p>The attributes are returned in the order they were added.
+     */
     @Override
     public Iterator<Attribute> iterator() {
-        return map.values().iterator();
+        return new Iterator<Attribute>() {
+            private int next;
+            private int last = -1;
+            private int expectedModCount = modCount;
+
+            public boolean hasNext() {
+                return next < size;
+            }
+
+            public Attribute next() {
+                if (modCount != expectedModCount)
+                    throw new ConcurrentModificationException();
+                if (next >= size)
+                    throw new NoSuchElementException();
+                return attrs[last = next++];
+            }
+
+            public void remove() {
+                if (last < 0)
+                    throw new IllegalStateException();
+                if (modCount != expectedModCount)
+                    throw new ConcurrentModificationException();
+                removeAt(last);
+                next = last;
+                last = -1;
+                expectedModCount = modCount;
+            }
+        };
     }
 
     @Override
     public int size() {
-        return map.size();
+        return size;
     }
 
     public Attribute get(String attrName) {
-        return map.get(attrName);
+        return get0(attrName);
     }
 
     public boolean remove(String attrName) {
-        return map.remove(attrName) != null;
+        return remove0(attrName) != null;
     }
 
     public boolean remove(Attribute attribute) {
         return attribute != null &&
-               map.remove(attribute.getName()) != null;
+               remove0(attribute.getName()) != null;
     }
 
     public boolean containsKey(String attrName) {
-        return map.get(attrName) != null;
+        return indexOf(attrName) >= 0;
     }
 
     public boolean containsValue(Attribute attribute) {
-        return attribute != null && attribute.equals(map.get(attribute.getName()));
+        return attribute != null && attribute.equals(get0(attribute.getName()));
     }
 
     public boolean addAll(AttributeSet attributes) {
@@ -129,32 +265,38 @@ public class GenericAttributeSet extends AbstractSet<Attribute> implements Attri
 
     @Override
     public Attribute[] toArray() {
-        return super.toArray(new Attribute[0]);
+        Attribute[] a = new Attribute[size];
+        System.arraycopy(attrs, 0, a, 0, size);
+        return a;
     }
 
     @Override
     public boolean add(Attribute attr) {
-        Attribute old = map.put(attr.getName(), attr);
+        Attribute old = put(attr);
         return !attr.equals(old);
     }
 
     @Override
     public void clear() {
-        map.clear();
+        for (int i = 0; i < size; i++)
+            attrs[i] = null;
+        size = 0;
+        index = null;
+        modCount++;
     }
 
     @Override
     public boolean contains(Object o) {
         return o != null &&
                o instanceof Attribute &&
-               o.equals(map.get(((Attribute) o).getName()));
+               o.equals(get0(((Attribute) o).getName()));
     }
 
     @Override
     public boolean remove(Object o) {
         return o != null &&
                o instanceof Attribute &&
-               map.remove(((Attribute) o).getName()) != null;
+               remove0(((Attribute) o).getName()) != null;
     }
 
 //<editor-fold defaultstate="collapsed" desc="Methods from AttributeSet that should not be used">
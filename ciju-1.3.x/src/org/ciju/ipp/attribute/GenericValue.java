@@ -17,6 +17,8 @@
 
 package org.ciju.ipp.attribute;
 
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
 import java.net.URI;
 import java.nio.charset.Charset;
 import java.text.MessageFormat;
@@ -24,8 +26,9 @@ import java.util.Calendar;
 import java.util.Date;
 import java.util.Locale;
 import java.util.ResourceBundle;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import javax.print.attribute.Attribute;
-import javax.print.attribute.CijuAttributeUtils;
 import javax.print.attribute.DateTimeSyntax;
 import javax.print.attribute.EnumSyntax;
 import javax.print.attribute.IntegerSyntax;
@@ -33,6 +36,7 @@ import javax.print.attribute.ResolutionSyntax;
 import javax.print.attribute.SetOfIntegerSyntax;
 import javax.print.attribute.TextSyntax;
 import javax.print.attribute.URISyntax;
+import javax.print.attribute.standard.PDLOverrideSupported;
 import javax.print.attribute.standard.PrinterStateReasons;
 import org.ciju.ipp.IppEncoding;
 import org.ciju.ipp.IppEncoding.ValueTag;
@@ -54,6 +58,20 @@ public class GenericValue {
         this.value = value;
     }
 
+    /**
+     * For subclasses that supply the value by overriding {@link #getValue()},
+     * e.g. decoding it on demand.
+     * 
+     * @param vt the value-tag of the value.
+     * @throws NullPointerException if vt is <tt>null</tt>.
+     */
+    protected GenericValue(ValueTag vt) {
+        if (vt == null)
+            throw new NullPointerException("value-tag");
+        this.vt = vt;
+        this.value = null;
+    }
+
     public ValueTag getValueTag() {
         return vt;
     }
@@ -171,7 +189,7 @@ public class GenericValue {
         else if (o instanceof DateTimeSyntax)
             return ValueTag.DATE_TIME;
         else if (o instanceof EnumSyntax)
-            return CijuAttributeUtils.deduceEnumIPPSyntax((EnumSyntax) o);
+            return deduceEnumIPPSyntax((EnumSyntax) o);
         else if (o instanceof IntegerSyntax)
             return ValueTag.INTEGER;
         else if (o instanceof ResolutionSyntax)
@@ -201,6 +219,46 @@ public class GenericValue {
         throw new IllegalArgumentException(resourceStrings.getString("ATTRIBUTE DOES NOT IMPLEMENT A KNOWN SYNTAX."));
     }
 
+    /* The value-tag of EnumSyntax attributes by their class */
+    private static final ConcurrentMap<Class<?>, ValueTag> enumTags =
+            new ConcurrentHashMap<Class<?>, ValueTag>();
+
+    /**
+     * An enumeration whose values don't start at zero is an IPP <tt>enum</tt>,
+     * one of two values is a <tt>boolean</tt> and any other a <tt>keyword</tt>.
+     * <p>
+     * The values of an <tt>EnumSyntax</tt> are only known through its public
+     * constants, as <tt>getOffset()</tt> and <tt>getEnumValueTable()</tt> are
+     * protected, and can't be called from outside <tt>java.desktop</tt>.
+     */
+    private static ValueTag deduceEnumIPPSyntax(EnumSyntax o) {
+        Class<?> c = o.getClass();
+        ValueTag vt = enumTags.get(c);
+        if (vt != null)
+            return vt;
+        int min = o.getValue(), max = o.getValue();
+        for (Field f : c.getFields()) {
+            if (!Modifier.isStatic(f.getModifiers()) || !c.isAssignableFrom(f.getType()))
+                continue;
+            try {
+                Object v = f.get(null);
+                if (v != null) {
+                    min = Math.min(min, ((EnumSyntax) v).getValue());
+                    max = Math.max(max, ((EnumSyntax) v).getValue());
+                }
+            } catch (IllegalAccessException ex) { /* irrelevant */ }
+        }
+        if (min > 0)
+            vt = ValueTag.ENUM;
+        else if (max - min + 1 == 2 &&
+                !(o instanceof PDLOverrideSupported))
+            vt = ValueTag.BOOLEAN;
+        else
+            vt = ValueTag.KEYWORD;
+        enumTags.putIfAbsent(c, vt);
+        return vt;
+    }
+
     private static ValueTag deduceTextIPPSyntax(TextSyntax o, Locale loc) {
         boolean wol = o.getLocale().equals(loc);
         if (o instanceof Attribute) {
@@ -252,16 +310,19 @@ public class GenericValue {
     public int hashCode() {
         int hash = 7;
         hash = 97 * hash + vt.hashCode();
+        Object value = getValue();
         hash = 97 * hash + (value != null ? value.hashCode() : 0);
         return hash;
     }
 
     @Override
     public boolean equals(Object obj) {
-        if (obj == null || getClass() != obj.getClass())
+        if (!(obj instanceof GenericValue))
             return false;
         final GenericValue other = (GenericValue) obj;
-        return this.vt == other.vt &&
-               (this.value == other.value || (this.value != null && this.value.equals(other.value)));
+        if (this.vt != other.vt)
+            return false;
+        Object value = getValue(), otherValue = other.getValue();
+        return value == otherValue || (value != null && value.equals(otherValue));
     }
 }
@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2012-2016 Opher Shachar
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ciju.client;
+
+import java.io.IOException;
+import java.net.Proxy;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import javax.print.attribute.standard.PrinterURI;
+import org.ciju.ipp.CupsEncoding;
+import org.ciju.ipp.IppEncoding.OpCode;
+import org.ciju.ipp.IppException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Checks the asynchronous calls of {@link CupsServer} and {@link IppPrinter}
+ * complete, or fail with what their blocking counterparts would throw,
+ * against a {@link StandInServer} on a loopback port.
+ *
+ * @author Opher Shachar
+ */
+public class AsyncCallsTest {
+
+    private StandInServer server;
+    private CupsServer ps;
+    private CupsPrinter printer;
+
+    public AsyncCallsTest() {
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        server = new StandInServer();
+        ps = (CupsServer) PrintServer.create(server.getUri("/"), Proxy.NO_PROXY);
+        printer = new CupsPrinter(ps, server.getUri("/printers/lobby"));
+        printer.addAttribute(new PrinterURI(server.getUri("/printers/lobby")));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.close();
+    }
+
+    private static Throwable failure(CompletableFuture<?> f) throws Exception {
+        try {
+            f.get(30, TimeUnit.SECONDS);
+            fail("completed normally");
+            return null;
+        } catch (ExecutionException ex) {
+            return ex.getCause();
+        }
+    }
+
+    @Test
+    public void testCompletion() throws Exception {
+        assertNotNull(ps.getDefaultPrintServiceAsync().get(30, TimeUnit.SECONDS));
+        assertEquals(CupsEncoding.OpCode.CUPS_GET_DEFAULT.getValue(), server.requests().get(0).operationId());
+        printer.disableAsync().get(30, TimeUnit.SECONDS);
+        assertEquals(OpCode.DISABLE_PRINTER.getValue(), server.requests().get(1).operationId());
+        assertEquals("POST /printers/lobby HTTP/1.1", server.requests().get(1).line);
+    }
+
+    @Test
+    public void testHttpFailure() throws Exception {
+        server.setResponder(new StandInServer.Responder() {
+            public byte[] reply(StandInServer.Request r) {
+                return StandInServer.http(500, null, null);
+            }
+        });
+        assertTrue(failure(ps.getDefaultPrintServiceAsync()) instanceof IOException);
+        assertTrue(failure(printer.disableAsync()) instanceof IOException);
+    }
+
+    @Test
+    public void testIppFailure() throws Exception {
+        server.setResponder(new StandInServer.Responder() {
+            public byte[] reply(StandInServer.Request r) throws IOException {
+                // client-error-not-possible
+                return StandInServer.http(200, "application/ipp", StandInServer.ipp(r.requestId(), 0x0404));
+            }
+        });
+        assertTrue(failure(printer.disableAsync()) instanceof IppException);
+        assertTrue(failure(ps.getDefaultPrintServiceAsync()) instanceof IppException);
+    }
+
+    @Test
+    public void testConnectionFailure() throws Exception {
+        server.close();
+        assertTrue(failure(printer.disableAsync()) instanceof IOException);
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2012-2016 Opher Shachar
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ciju.client;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import org.ciju.client.ipp.IppConnection;
+import org.ciju.ipp.IppEncoding.GroupTag;
+import org.ciju.ipp.IppEncoding.OpCode;
+import org.ciju.ipp.IppEncoding.ValueTag;
+import org.ciju.ipp.IppException;
+import org.ciju.ipp.IppObject;
+import org.ciju.ipp.IppRequest;
+import org.ciju.ipp.IppResponse;
+import org.ciju.ipp.attribute.GenericAttribute;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Connects a {@link PrintServer} to a {@link StandInServer} listening on a
+ * Unix domain socket in a temporary directory. The stand-in answers every
+ * request with a <tt>successful-ok</tt> response of the request's request-id.
+ *
+ * @author Opher Shachar
+ */
+public class PrintServerUnixSocketTest {
+
+    private Path dir;
+    private Path socket;
+    private StandInServer server;
+
+    public PrintServerUnixSocketTest() {
+    }
+    
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("ciju");
+        socket = dir.resolve("cups.sock");
+        server = new StandInServer(socket);
+    }
+    
+    @After
+    public void tearDown() throws IOException {
+        server.close();
+        Files.deleteIfExists(dir);
+    }
+
+    private static IppRequest newRequest(PrintServer ps) {
+        IppRequest req = new IppRequest(OpCode.GET_PRINTER_ATTRIBUTES, 1, Locale.US, GroupTag.END);
+        req.addOperationAttribute(new GenericAttribute("printer-uri", ps.getRequestUri(), ValueTag.URI));
+        return req;
+    }
+
+    @Test
+    public void testCreateWithSocketPath() throws Exception {
+        PrintServer ps = PrintServer.create(socket, null);
+        assertEquals(socket.toAbsolutePath().toString(), ps.getUri().getAuthority());
+        assertEquals(URI.create("ipp://localhost/"), ps.getRequestUri());
+        IppConnection conn = ps.getConnection().setIppRequest(newRequest(ps));
+        IppResponse<IppObject> resp = conn.getContent((IppObject) null);
+        assertEquals(0, resp.getResponseCode());
+        assertEquals("POST / HTTP/1.1", server.requests().get(0).line);
+        assertEquals("localhost", server.requests().get(0).headers.get("host"));
+    }
+
+    @Test
+    public void testCreateWithUri() throws Exception {
+        PrintServer ps = PrintServer.create(server.getUri("/"), null);
+        CompletableFuture<IppResponse<IppObject>> f1 = ps.getConnection(URI.create("/printers/lobby"))
+                .setIppRequest(newRequest(ps)).getContentAsync((IppObject) null);
+        CompletableFuture<IppResponse<IppObject>> f2 = ps.getConnection()
+                .setIppRequest(newRequest(ps)).getContentAsync((IppObject) null);
+        IppResponse<IppObject> r1 = f1.get(), r2 = f2.get();
+        assertEquals(0, r1.getResponseCode());
+        assertEquals(0, r2.getResponseCode());
+        // both requests were sent on one connection, with distinct request-ids
+        assertTrue(r1.getRequestId() != r2.getRequestId());
+        assertEquals(1, server.connections());
+        assertEquals("POST /printers/lobby HTTP/1.1", server.requests().get(0).line);
+    }
+
+    @Test
+    public void testBlockingCallInCallback() throws Exception {
+        final PrintServer ps = PrintServer.create(socket, null);
+        CompletableFuture<IppResponse<IppObject>> f = ps.getConnection().setIppRequest(newRequest(ps))
+                .getContentAsync((IppObject) null).thenApply(r -> {
+                    try {
+                        // answered on the same connection, read by the same thread
+                        return ps.getConnection().setIppRequest(newRequest(ps)).getContent((IppObject) null);
+                    } catch (IOException | IppException ex) {
+                        throw new CompletionException(ex);
+                    }
+                });
+        assertEquals(0, f.get(30, TimeUnit.SECONDS).getResponseCode());
+        assertEquals(2, server.requests().size());
+    }
+
+    @Test
+    public void testResponseTooLarge() throws Exception {
+        server.setResponder(new StandInServer.Responder() {
+            public byte[] reply(StandInServer.Request r) {
+                return ("HTTP/1.1 200 OK\r\nContent-Type: application/ipp\r\n"
+                        + "Content-Length: 1000000000000\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1);
+            }
+        });
+        PrintServer ps = PrintServer.create(socket, null);
+        try {
+            ps.getConnection().setIppRequest(newRequest(ps)).getContent((IppObject) null);
+            fail("a Content-Length past the maximum");
+        } catch (IOException ex) { /* expected */ }
+    }
+}
@@ -0,0 +1,275 @@
+/*
+ * Copyright (C) 2012-2016 Opher Shachar
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ciju.client;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.URI;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.ciju.ipp.IppEncoding.GroupTag;
+import org.ciju.ipp.IppEncoding.ValueTag;
+
+/**
+ * A stand-in IPP server for the tests of the client's connections,
+ * listening on a Unix domain socket or on a loopback TCP port. It records
+ * the requests it receives and answers each with what its {@link Responder}
+ * replies, by default a <tt>successful-ok</tt> response of the request's
+ * request-id.
+ *
+ * @author Opher Shachar
+ */
+public class StandInServer implements Closeable {
+
+    /** A request as received by the server */
+    public static final class Request {
+        public final String line;
+        public final Map<String, String> headers;   // by lower-case name
+        public final boolean chunked;
+        public final byte[] body;
+        public final int connection;                // 1 for the first accepted
+
+        private Request(String line, Map<String, String> headers, boolean chunked, byte[] body, int connection) {
+            this.line = line;
+            this.headers = headers;
+            this.chunked = chunked;
+            this.body = body;
+            this.connection = connection;
+        }
+
+        public int operationId() {
+            return ByteBuffer.wrap(body).getShort(2);
+        }
+
+        public int requestId() {
+            return ByteBuffer.wrap(body).getInt(4);
+        }
+    }
+
+    /** Replies to a request with a complete HTTP response */
+    public interface Responder {
+        byte[] reply(Request request) throws IOException;
+    }
+
+    private static final Responder OK = new Responder() {
+        public byte[] reply(Request request) throws IOException {
+            return http(200, "application/ipp", ipp(request.requestId(), 0));
+        }
+    };
+
+    private final ServerSocketChannel server;
+    private final Path socket;              // null if over TCP
+    private final AtomicInteger connections = new AtomicInteger();
+    private final List<Request> requests = new CopyOnWriteArrayList<Request>();
+    private volatile Responder responder = OK;
+
+    /**
+     * Listens on a loopback TCP port.
+     */
+    public StandInServer() throws IOException {
+        server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        socket = null;
+        start();
+    }
+
+    /**
+     * Listens on a Unix domain socket, deleted when closed.
+     * @param socket the path of the socket.
+     */
+    public StandInServer(Path socket) throws IOException {
+        server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        server.bind(UnixDomainSocketAddress.of(socket));
+        this.socket = socket;
+        start();
+    }
+
+    private void start() {
+        Thread t = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    while (true) {
+                        final SocketChannel ch = server.accept();
+                        final int n = connections.incrementAndGet();
+                        Thread c = new Thread(new Runnable() {
+                            public void run() {
+                                serve(ch, n);
+                            }
+                        });
+                        c.setDaemon(true);
+                        c.start();
+                    }
+                } catch (IOException ex) {
+                    // closed
+                }
+            }
+        });
+        t.setDaemon(true);
+        t.start();
+    }
+
+    /** Returns the <tt>ipp</tt> URI of the server, with the given path */
+    public URI getUri(String path) {
+        if (socket != null)
+            return URI.create("ipp://" + socket.toAbsolutePath().toString().replace("/", "%2F") + path);
+        InetSocketAddress a = (InetSocketAddress) localAddress();
+        return URI.create("ipp://" + a.getAddress().getHostAddress() + ":" + a.getPort() + path);
+    }
+
+    private Object localAddress() {
+        try {
+            return server.getLocalAddress();
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    public void setResponder(Responder responder) {
+        this.responder = responder;
+    }
+
+    /** Returns the requests received so far, in order */
+    public List<Request> requests() {
+        return requests;
+    }
+
+    /** Returns the number of connections accepted so far */
+    public int connections() {
+        return connections.get();
+    }
+
+    public void close() throws IOException {
+        server.close();
+        if (socket != null)
+            Files.deleteIfExists(socket);
+    }
+
+    /** Answer the requests on the connection until the client closes it */
+    private void serve(SocketChannel ch, int connection) {
+        try {
+            InputStream in = new BufferedInputStream(Channels.newInputStream(ch));
+            OutputStream out = Channels.newOutputStream(ch);
+            for (String line = readLine(in); line != null; line = readLine(in)) {
+                Map<String, String> headers = new HashMap<String, String>();
+                for (String h = readLine(in); h.length() > 0; h = readLine(in))
+                    headers.put(h.substring(0, h.indexOf(':')).toLowerCase(Locale.ENGLISH),
+                            h.substring(h.indexOf(':') + 1).trim());
+                boolean chunked = "chunked".equalsIgnoreCase(headers.get("transfer-encoding"));
+                byte[] body = chunked ? readChunked(in) :
+                        readFully(in, Integer.parseInt(headers.getOrDefault("content-length", "0")));
+                Request r = new Request(line, headers, chunked, body, connection);
+                requests.add(r);
+                out.write(responder.reply(r));
+                out.flush();
+            }
+        } catch (IOException ex) {
+            // closed by the client
+        } finally {
+            try {
+                ch.close();
+            } catch (IOException ex) {
+                // ignore
+            }
+        }
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        int c;
+        while ((c = in.read()) >= 0 && c != '\n')
+            if (c != '\r')
+                sb.append((char) c);
+        return c < 0 && sb.length() == 0 ? null : sb.toString();
+    }
+
+    private static byte[] readFully(InputStream in, int length) throws IOException {
+        byte[] b = new byte[length];
+        new DataInputStream(in).readFully(b);
+        return b;
+    }
+
+    private static byte[] readChunked(InputStream in) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        for (int size; (size = Integer.parseInt(readLine(in).split(";")[0].trim(), 16)) > 0; readLine(in))
+            bos.write(readFully(in, size));
+        while (readLine(in).length() > 0)
+            ;       // trailers
+        return bos.toByteArray();
+    }
+
+    /**
+     * Returns an HTTP response of the given status, and of the given body if
+     * a content type is given.
+     */
+    public static byte[] http(int status, String contentType, byte[] body) {
+        StringBuilder sb = new StringBuilder("HTTP/1.1 ").append(status).append(" Stand-In\r\n");
+        if (contentType != null)
+            sb.append("Content-Type: ").append(contentType).append("\r\n");
+        else
+            body = new byte[0];
+        sb.append("Content-Length: ").append(body.length).append("\r\n\r\n");
+        byte[] head = sb.toString().getBytes(StandardCharsets.ISO_8859_1);
+        byte[] b = new byte[head.length + body.length];
+        System.arraycopy(head, 0, b, 0, head.length);
+        System.arraycopy(body, 0, b, head.length, body.length);
+        return b;
+    }
+
+    /** An IPP response with only the required operation attributes */
+    public static byte[] ipp(int requestId, int statusCode) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bos);
+        out.writeShort(0x0101);
+        out.writeShort(statusCode);
+        out.writeInt(requestId);
+        out.writeByte(GroupTag.OPERATION.getValue());
+        writeAttribute(out, ValueTag.CHARSET.getValue(), "attributes-charset", "utf-8");
+        writeAttribute(out, ValueTag.NATURAL_LANGUAGE.getValue(), "attributes-natural-language", "en-us");
+        out.writeByte(GroupTag.END.getValue());
+        return bos.toByteArray();
+    }
+
+    private static void writeAttribute(DataOutputStream out, int tag, String name, String value) throws IOException {
+        out.writeByte(tag);
+        out.writeShort(name.length());
+        out.writeBytes(name);
+        out.writeShort(value.length());
+        out.writeBytes(value);
+    }
+}
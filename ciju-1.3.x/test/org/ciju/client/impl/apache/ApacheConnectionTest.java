@@ -0,0 +1,171 @@
+/*
+ * Copyright (C) 2012-2016 Opher Shachar
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ciju.client.impl.apache;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.Proxy;
+import java.net.UnknownServiceException;
+import java.util.Arrays;
+import java.util.Locale;
+import javax.print.DocFlavor;
+import javax.print.SimpleDoc;
+import javax.print.attribute.HashDocAttributeSet;
+import org.apache.http.client.HttpResponseException;
+import org.ciju.client.StandInServer;
+import org.ciju.client.ipp.IppConnection;
+import org.ciju.ipp.IppEncoding.GroupTag;
+import org.ciju.ipp.IppEncoding.OpCode;
+import org.ciju.ipp.IppEncoding.ValueTag;
+import org.ciju.ipp.IppException;
+import org.ciju.ipp.IppObject;
+import org.ciju.ipp.IppRequest;
+import org.ciju.ipp.IppResponse;
+import org.ciju.ipp.attribute.GenericAttribute;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Sends requests with {@link ApacheConnection}S, and so decodes the
+ * responses with {@link IppResponseHandler}, to a {@link StandInServer} on
+ * a loopback port.
+ *
+ * @author Opher Shachar
+ */
+public class ApacheConnectionTest {
+
+    private StandInServer server;
+    private ApacheConnection.Pool pool;
+
+    public ApacheConnectionTest() {
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        server = new StandInServer();
+        pool = new ApacheConnection.Pool();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        pool.close();
+        server.close();
+    }
+
+    private IppConnection connect(IppRequest req) throws IOException {
+        return new ApacheConnection(pool, server.getUri("/printers/lobby"), Proxy.NO_PROXY).setIppRequest(req);
+    }
+
+    private IppRequest newRequest() {
+        IppRequest req = new IppRequest(OpCode.GET_PRINTER_ATTRIBUTES, 1, Locale.US, GroupTag.END);
+        req.addOperationAttribute(new GenericAttribute("printer-uri", server.getUri("/printers/lobby"), ValueTag.URI));
+        return req;
+    }
+
+    private static byte[] tail(byte[] b, int length) {
+        return Arrays.copyOfRange(b, b.length - length, b.length);
+    }
+
+    @Test
+    public void testConnectionReuse() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            IppResponse<IppObject> resp = connect(newRequest()).getContent((IppObject) null);
+            assertEquals(0, resp.getResponseCode());
+        }
+        assertEquals(3, server.requests().size());
+        assertEquals("POST /printers/lobby HTTP/1.1", server.requests().get(0).line);
+        assertEquals(1, server.connections());
+    }
+
+    @Test
+    public void testHttpError() throws Exception {
+        server.setResponder(new StandInServer.Responder() {
+            public byte[] reply(StandInServer.Request r) {
+                return StandInServer.http(500, "text/plain", "oops".getBytes());
+            }
+        });
+        try {
+            connect(newRequest()).getContent((IppObject) null);
+            fail("HTTP status 500");
+        } catch (HttpResponseException ex) {
+            assertEquals(500, ex.getStatusCode());
+        }
+        // the body was consumed, so the connection is reused
+        server.setResponder(new StandInServer.Responder() {
+            public byte[] reply(StandInServer.Request r) throws IOException {
+                return StandInServer.http(200, "application/ipp", StandInServer.ipp(r.requestId(), 0));
+            }
+        });
+        assertEquals(0, connect(newRequest()).getContent((IppObject) null).getResponseCode());
+        assertEquals(1, server.connections());
+    }
+
+    @Test
+    public void testWrongContentType() throws Exception {
+        server.setResponder(new StandInServer.Responder() {
+            public byte[] reply(StandInServer.Request r) {
+                return StandInServer.http(200, "text/html", "<html></html>".getBytes());
+            }
+        });
+        try {
+            connect(newRequest()).getContent((IppObject) null);
+            fail("text/html");
+        } catch (UnknownServiceException ex) { /* expected */ }
+    }
+
+    @Test
+    public void testIppError() throws Exception {
+        server.setResponder(new StandInServer.Responder() {
+            public byte[] reply(StandInServer.Request r) throws IOException {
+                return StandInServer.http(200, "application/ipp", StandInServer.ipp(r.requestId(), 0x0406));
+            }
+        });
+        try {
+            connect(newRequest()).getContent((IppObject) null);
+            fail("client-error-not-found");
+        } catch (IppException ex) { /* expected */ }
+    }
+
+    @Test
+    public void testFixedLength() throws Exception {
+        byte[] data = new byte[10000];
+        Arrays.fill(data, (byte) 'x');
+        IppRequest req = newRequest();
+        req.setDoc(new SimpleDoc(data, DocFlavor.BYTE_ARRAY.AUTOSENSE, new HashDocAttributeSet()));
+        connect(req).getContent((IppObject) null);
+        StandInServer.Request r = server.requests().get(0);
+        assertFalse(r.chunked);
+        assertEquals(String.valueOf(r.body.length), r.headers.get("content-length"));
+        assertArrayEquals(data, tail(r.body, data.length));
+    }
+
+    @Test
+    public void testChunked() throws Exception {
+        byte[] data = new byte[10000];
+        Arrays.fill(data, (byte) 'y');
+        IppRequest req = newRequest();
+        req.setDoc(new SimpleDoc(new ByteArrayInputStream(data), DocFlavor.INPUT_STREAM.AUTOSENSE, new HashDocAttributeSet()));
+        connect(req).getContent((IppObject) null);
+        StandInServer.Request r = server.requests().get(0);
+        assertTrue("a document of unknown length", r.chunked);
+        assertNull(r.headers.get("content-length"));
+        assertArrayEquals(data, tail(r.body, data.length));
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2012-2016 Opher Shachar
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ciju.ipp;
+
+import java.nio.ByteBuffer;
+import java.util.Set;
+import org.ciju.ipp.IppEncoding.GroupTag;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Opher Shachar
+ */
+public class AttributeFilterTest {
+
+    public AttributeFilterTest() {
+    }
+
+    private static String lookup(NameTable table, String name) {
+        return table.lookup(ByteBuffer.wrap(name.getBytes()), 0, name.length());
+    }
+
+    @Test
+    public void testInclude() {
+        AttributeFilter filter = new AttributeFilter()
+                .include(GroupTag.JOB, "job-id", "job-state")
+                .include(GroupTag.JOB, "job-name", "job-id");
+        Set<String> included = filter.getIncluded(GroupTag.JOB);
+        assertEquals("[job-id, job-state, job-name]", included.toString());
+        try {
+            included.add("job-uri");
+            fail("modified the included names");
+        } catch (UnsupportedOperationException ex) { /* expected */ }
+        assertNull(filter.getIncluded(GroupTag.PRINTER));
+
+        NameTable table = filter.getTable(GroupTag.JOB);
+        for (String name : included)
+            assertEquals(name, lookup(table, name));
+        assertNull(lookup(table, "job-uri"));
+        assertNull(filter.getTable(GroupTag.PRINTER));
+    }
+
+    @Test
+    public void testManyNames() {
+        AttributeFilter filter = new AttributeFilter();
+        for (int i = 0; i < 100; i++)
+            filter.include(GroupTag.PRINTER, "name-" + i);
+        NameTable table = filter.getTable(GroupTag.PRINTER);
+        for (int i = 0; i < 100; i++)
+            assertEquals("name-" + i, lookup(table, "name-" + i));
+    }
+
+    @Test
+    public void testInvalid() {
+        for (GroupTag gt : new GroupTag[] { GroupTag.END, GroupTag.RESERVED })
+            try {
+                new AttributeFilter().include(gt, "job-id");
+                fail(gt.toString());
+            } catch (IllegalArgumentException ex) { /* expected */ }
+        try {
+            new AttributeFilter().include(GroupTag.JOB, "job-id", null);
+            fail("a null name");
+        } catch (NullPointerException ex) { /* expected */ }
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2012-2016 Opher Shachar
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ciju.ipp;
+
+import java.nio.ByteBuffer;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.Random;
+import java.util.SimpleTimeZone;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Checks {@link IppDateTime} against the RFC 2579 <tt>DateAndTime</tt>
+ * fields of a <tt>GregorianCalendar</tt>.
+ *
+ * @author Opher Shachar
+ */
+public class IppDateTimeTest {
+    private static final int HOUR = 3600000;
+
+    public IppDateTimeTest() {
+    }
+
+    private static byte[] encode(long millis, int offset) {
+        ByteBuffer bb = ByteBuffer.allocate(IppDateTime.LENGTH);
+        IppDateTime.encode(bb, millis, offset);
+        assertEquals(IppDateTime.LENGTH, bb.position());
+        return bb.array();
+    }
+
+    /** @return the value the way it was encoded before, with a calendar */
+    private static byte[] expected(long millis, int offset) {
+        GregorianCalendar cal = new GregorianCalendar(new SimpleTimeZone(offset, "X"));
+        // proleptic Gregorian, as is IppDateTime
+        cal.setGregorianChange(new java.util.Date(Long.MIN_VALUE));
+        cal.setTimeInMillis(millis);
+        int minoff = Math.abs(offset) / 60000;
+        return new byte[] {
+            (byte) (cal.get(Calendar.YEAR) >> 8), (byte) cal.get(Calendar.YEAR),
+            (byte) (cal.get(Calendar.MONTH) + 1), (byte) cal.get(Calendar.DAY_OF_MONTH),
+            (byte) cal.get(Calendar.HOUR_OF_DAY), (byte) cal.get(Calendar.MINUTE),
+            (byte) cal.get(Calendar.SECOND), (byte) (cal.get(Calendar.MILLISECOND) / 100),
+            (byte) (offset < 0 ? '-' : '+'), (byte) (minoff / 60), (byte) (minoff % 60)
+        };
+    }
+
+    private static void assertRoundTrip(long millis, int offset) {
+        byte[] b = encode(millis, offset);
+        assertArrayEquals(expected(millis, offset), b);
+        assertEquals(millis - Math.floorMod(millis, 100L), IppDateTime.decode(ByteBuffer.wrap(b), 0));
+    }
+
+    @Test
+    public void testKnownEncoding() {
+        // 2009-02-13T23:31:30.1Z
+        long millis = 1234567890100L;
+        assertArrayEquals(new byte[] { 0x07, (byte) 0xD9, 2, 13, 23, 31, 30, 1, '+', 0, 0 },
+                encode(millis, 0));
+        assertArrayEquals(new byte[] { 0x07, (byte) 0xD9, 2, 14, 1, 31, 30, 1, '+', 2, 0 },
+                encode(millis, 2 * HOUR));
+        assertArrayEquals(new byte[] { 0x07, (byte) 0xD9, 2, 13, 18, 1, 30, 1, '-', 5, 30 },
+                encode(millis, -(5 * HOUR + HOUR / 2)));
+    }
+
+    @Test
+    public void testDecodeAtOffset() {
+        ByteBuffer bb = ByteBuffer.allocate(3 + IppDateTime.LENGTH);
+        bb.position(3);
+        IppDateTime.encode(bb, 1234567890100L, -8 * HOUR);
+        assertEquals(1234567890100L, IppDateTime.decode(bb, 3));
+    }
+
+    @Test
+    public void testEdges() {
+        int[] offsets = { 0, HOUR, -HOUR, 14 * HOUR, -12 * HOUR, 5 * HOUR + 45 * 60000, -(9 * HOUR + 30 * 60000) };
+        long[] dates = {
+            0L,                 // the epoch
+            -100L,              // 1969-12-31T23:59:59.9Z
+            -1L,
+            951782400000L,      // 2000-02-29, a leap day of a leap century
+            951868800000L,      // 2000-03-01
+            -2203891200000L,    // 1900-03-01, 1900 is not a leap year
+            -2208988800000L,    // 1900-01-01
+            13574563200000L,    // 2400-02-29
+            -62135553600000L,   // 0001-01-01T12:00Z, in year 1 at any offset
+            253402300799999L,   // 9999-12-31T23:59:59.999Z
+        };
+        for (long millis : dates)
+            for (int offset : offsets)
+                assertRoundTrip(millis, offset);
+    }
+
+    @Test
+    public void testRandom() {
+        Random rnd = new Random(8011);
+        for (int i = 0; i < 10000; i++) {
+            long millis = (long) (rnd.nextDouble() * 8000L * 365 * 24 * HOUR) - 1960L * 365 * 24 * HOUR;
+            int offset = (rnd.nextInt(26 * 4 + 1) - 12 * 4) * 15 * 60000;
+            assertRoundTrip(millis, offset);
+        }
+    }
+
+    @Test
+    public void testOffsetRoundedToMinutes() {
+        byte[] b = encode(0L, HOUR + 59999);
+        assertEquals('+', b[8]);
+        assertEquals(1, b[9]);
+        assertEquals(0, b[10]);
+        assertEquals(0L, IppDateTime.decode(ByteBuffer.wrap(b), 0));
+    }
+}
@@ -0,0 +1,266 @@
+/*
+ * Copyright (C) 2012-2016 Opher Shachar
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ciju.ipp;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.NoSuchElementException;
+import javax.print.attribute.ResolutionSyntax;
+import org.ciju.ipp.IppEncoding.GroupTag;
+import org.ciju.ipp.IppEncoding.StatusCode;
+import org.ciju.ipp.IppEncoding.ValueTag;
+import org.ciju.ipp.IppReader.Event;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Reads the response of {@link TestMessages#response()} with an
+ * {@link IppReader} from each of the sources it reads from.
+ *
+ * @author Opher Shachar
+ */
+public class IppReaderTest {
+    private byte[] encoded;
+
+    public IppReaderTest() {
+    }
+
+    @Before
+    public void setUp() {
+        encoded = TestMessages.encode(TestMessages.response());
+    }
+
+    /** The number of kinds of source a reader reads from */
+    private static final int SOURCES = 6;
+
+    /** @return a reader of <tt>b</tt> from the given kind of source */
+    private static IppReader reader(byte[] b, int source) throws IOException {
+        switch (source) {
+            case 0: return new IppReader(new ByteArrayInputStream(b), b.length);
+            case 1: return new IppReader(new ByteArrayInputStream(b), -1);
+            case 2: return new IppReader(Channels.newChannel(new ByteArrayInputStream(b)), b.length);
+            case 3: return new IppReader(Channels.newChannel(new ByteArrayInputStream(b)), -1);
+            case 4: return new IppReader(ByteBuffer.wrap(b));
+            default:
+                ByteBuffer direct = ByteBuffer.allocateDirect(b.length);
+                direct.put(b).flip();
+                return new IppReader(direct);
+        }
+    }
+
+    /** @return the readers of <tt>b</tt> from each kind of source */
+    private static List<IppReader> readers(byte[] b) throws IOException {
+        List<IppReader> list = new ArrayList<IppReader>(SOURCES);
+        for (int source = 0; source < SOURCES; source++)
+            list.add(reader(b, source));
+        return list;
+    }
+
+    @Test
+    public void testHeader() throws IOException {
+        for (IppReader r : readers(encoded)) {
+            assertNull(r.getEvent());
+            assertEquals(0x0101, r.getVersion());
+            assertEquals(StatusCode.SUCCESSFUL_OK, r.getStatusCode());
+            assertEquals(TestMessages.REQUEST_ID, r.getRequestId());
+            assertEquals("UTF-8", r.getCharset().name());
+            assertEquals(Locale.US, r.getResponseLocale());
+            r.close();
+        }
+    }
+
+    @Test
+    public void testEvents() throws IOException {
+        for (IppReader r : readers(encoded)) {
+            StringBuilder sb = new StringBuilder();
+            Event e;
+            do {
+                e = r.next();
+                switch (e) {
+                    case GROUP:
+                        sb.append('[').append(r.getGroupTag()).append(']');
+                        break;
+                    case ATTRIBUTE:
+                        if (r.getGroupTag() == GroupTag.JOB)
+                            sb.append(' ').append(r.getName());
+                        break;
+                    case VALUE:
+                        if (r.getGroupTag() == GroupTag.JOB)
+                            sb.append('=').append(r.getValue());
+                        break;
+                }
+            } while (e != Event.END);
+            assertEquals("[PRINTER][JOB] job-id=1 job-name=report.pdf job-state=9 x-vendor-option=draft"
+                    + "[JOB] job-id=2 job-name=letter.txt job-state=5 x-vendor-option=42",
+                    sb.toString());
+            assertEquals(Event.END, r.getEvent());
+            assertEquals(GroupTag.END, r.getGroupTag());
+            try {
+                r.next();
+                fail("read past the end");
+            } catch (NoSuchElementException ex) { /* expected */ }
+            r.close();
+        }
+    }
+
+    @Test
+    public void testTypedGetters() throws IOException {
+        for (IppReader r : readers(encoded)) {
+            List<Object> keywords = new ArrayList<Object>();
+            List<Object> resolutions = new ArrayList<Object>();
+            while (r.next() != Event.END) {
+                if (r.getEvent() != Event.VALUE || r.getGroupTag() != GroupTag.PRINTER)
+                    continue;
+                String name = r.getName();
+                if (name.equals("printer-uri-supported") && r.getURI().getScheme().equals("ipp"))
+                    assertEquals(URI.create("ipp://localhost:631/printers/lobby"), r.getURI());
+                else if (name.equals("printer-name")) {
+                    assertEquals(ValueTag.NAME_WITHOUT_LANGUAGE, r.getValueTag());
+                    assertEquals("lobby", r.getString());
+                    assertEquals(Locale.US, r.getLocale());
+                }
+                else if (name.equals("printer-info")) {
+                    assertEquals("Imprimante du hall", r.getString());
+                    assertEquals(Locale.FRANCE, r.getLocale());
+                }
+                else if (name.equals("printer-state"))
+                    assertEquals(3, r.getInt());
+                else if (name.equals("printer-is-accepting-jobs"))
+                    assertTrue(r.getBoolean());
+                else if (name.equals("printer-current-time")) {
+                    assertEquals(1234567890100L, r.getDateTime());
+                    assertEquals(new Date(1234567890100L), r.getDate());
+                    assertEquals(IppDateTime.LENGTH, r.getValueLength());
+                }
+                else if (name.equals("copies-supported"))
+                    assertArrayEquals(new int[] { 1, 99 }, r.getRange());
+                else if (name.equals("printer-resolution-supported"))
+                    resolutions.add(r.getResolution().toString(ResolutionSyntax.DPI, "dpi"));
+                else if (name.equals("x-vendor-features"))
+                    keywords.add(r.getString());
+                else if (name.equals("printer-state-reasons"))
+                    assertArrayEquals("none".getBytes("US-ASCII"), r.getBytes());
+            }
+            assertEquals("[staple, punch, fold]", keywords.toString());
+            assertEquals("[300x300 dpi, 600x1200 dpi]", resolutions.toString());
+            r.close();
+        }
+    }
+
+    @Test
+    public void testGetterOfAnotherSyntax() throws IOException {
+        IppReader r = new IppReader(ByteBuffer.wrap(encoded));
+        assertEquals(Event.GROUP, r.next());
+        try {
+            r.getValueTag();
+            fail("not positioned on a value");
+        } catch (IllegalStateException ex) { /* expected */ }
+        assertEquals(Event.ATTRIBUTE, r.next());
+        assertEquals(Event.VALUE, r.next());
+        assertEquals(ValueTag.URI, r.getValueTag());
+        try {
+            r.getInt();
+            fail("a uri is not an integer");
+        } catch (IllegalStateException ex) { /* expected */ }
+    }
+
+    @Test
+    public void testFilter() throws IOException {
+        for (IppReader r : readers(encoded)) {
+            r.setAttributeFilter(new AttributeFilter()
+                    .include(GroupTag.PRINTER, "printer-name")
+                    .include(GroupTag.JOB, "job-id", "x-vendor-option"));
+            List<String> names = new ArrayList<String>();
+            while (r.next() != Event.END)
+                if (r.getEvent() == Event.VALUE)
+                    names.add(r.getName() + "=" + r.getValue());
+            assertEquals("[printer-name=lobby, job-id=1, x-vendor-option=draft, job-id=2, x-vendor-option=42]",
+                    names.toString());
+            r.close();
+        }
+    }
+
+    @Test
+    public void testDocumentStream() throws IOException {
+        byte[] doc = new byte[20000];
+        for (int i = 0; i < doc.length; i++)
+            doc[i] = (byte) i;
+        byte[] b = new byte[encoded.length + doc.length];
+        System.arraycopy(encoded, 0, b, 0, encoded.length);
+        System.arraycopy(doc, 0, b, encoded.length, doc.length);
+        for (IppReader r : readers(b)) {
+            try {
+                r.getDocumentStream();
+                fail("the attributes were not read");
+            } catch (IllegalStateException ex) { /* expected */ }
+            while (r.next() != Event.END)
+                ;
+            assertArrayEquals(doc, readAll(r.getDocumentStream()));
+            r.close();
+        }
+    }
+
+    @Test
+    public void testMalformed() throws IOException {
+        // the first attribute name of the printer group
+        int off = TestMessages.indexOf(encoded, "printer-uri-supported") - 2;
+        for (short len : new short[] { -1, 0 }) {
+            byte[] b = encoded.clone();
+            ByteBuffer.wrap(b).putShort(off, len);
+            IppReader r = new IppReader(ByteBuffer.wrap(b));
+            assertEquals(Event.GROUP, r.next());
+            try {
+                r.next();
+                fail("name length " + len);
+            } catch (IppFailedException ex) { /* expected */ }
+        }
+    }
+
+    @Test
+    public void testTruncated() throws IOException {
+        for (int len : new int[] { 0, 5, 8, 20, encoded.length / 2, encoded.length - 1 }) {
+            byte[] b = new byte[len];
+            System.arraycopy(encoded, 0, b, 0, len);
+            for (int source = 0; source < SOURCES; source++)
+                try {
+                    IppReader r = reader(b, source);
+                    while (r.next() != Event.END)
+                        ;
+                    fail("truncated to " + len + ", source " + source);
+                } catch (EOFException ex) { /* expected */ }
+        }
+    }
+
+    private static byte[] readAll(InputStream is) throws IOException {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        byte[] b = new byte[1000];
+        for (int n; (n = is.read(b)) != -1; )
+            os.write(b, 0, n);
+        return os.toByteArray();
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2012-2016 Opher Shachar
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ciju.ipp;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.Locale;
+import javax.print.DocFlavor;
+import javax.print.PrintException;
+import javax.print.SimpleDoc;
+import javax.print.attribute.HashDocAttributeSet;
+import org.ciju.ipp.IppEncoding.GroupTag;
+import org.ciju.ipp.IppEncoding.OpCode;
+import org.ciju.ipp.IppEncoding.ValueTag;
+import org.ciju.ipp.attribute.GenericAttribute;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Compares requests created from an {@link IppRequestTemplate} with the same
+ * requests built directly.
+ *
+ * @author Opher Shachar
+ */
+public class IppRequestTemplateTest {
+    private IppRequestTemplate template;
+
+    public IppRequestTemplateTest() {
+    }
+
+    @Before
+    public void setUp() {
+        template = new IppRequestTemplate(request(1, GroupTag.END));
+    }
+
+    /** @return a Get-Jobs request with the template's operation attributes */
+    private static IppRequest request(int requestId, GroupTag firstGroupTag) {
+        IppRequest ipp = new IppRequest(OpCode.GET_JOBS, requestId, Locale.US, firstGroupTag);
+        ipp.addOperationAttribute(new GenericAttribute("printer-uri",
+                URI.create("ipp://localhost:631/printers/lobby"), ValueTag.URI));
+        ipp.addOperationAttribute(new GenericAttribute("requesting-user-name",
+                "alice", ValueTag.NAME_WITHOUT_LANGUAGE));
+        return ipp;
+    }
+
+    /** Adds the same attributes to a request created either way */
+    private static IppRequest addAttributes(IppRequest ipp) {
+        ipp.addOperationAttribute(new GenericAttribute("which-jobs", "completed", ValueTag.KEYWORD));
+        GenericAttribute limit = new GenericAttribute("limit");
+        limit.add(ValueTag.INTEGER, 10);
+        ipp.addOperationAttribute(limit);
+        ipp.addAttribute(new GenericAttribute("job-name", "report.pdf", ValueTag.NAME_WITHOUT_LANGUAGE));
+        return ipp;
+    }
+
+    @Test
+    public void testNewRequest() {
+        assertArrayEquals(TestMessages.encode(request(5, GroupTag.END)),
+                TestMessages.encode(template.newRequest(5, GroupTag.END)));
+        assertArrayEquals(TestMessages.encode(request(0x7fffffff, GroupTag.END)),
+                TestMessages.encode(template.newRequest(0x7fffffff, GroupTag.END)));
+    }
+
+    @Test
+    public void testAddedAttributes() throws IOException {
+        byte[] expected = TestMessages.encode(addAttributes(request(9, GroupTag.JOB)));
+        IppRequest ipp = addAttributes(template.newRequest(9, GroupTag.JOB));
+        assertArrayEquals(expected, TestMessages.encode(ipp));
+
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        IppTransport.writeRequest(os, ipp);
+        assertArrayEquals(expected, os.toByteArray());
+        os.reset();
+        IppTransport.writeRequest(Channels.newChannel(os), ipp);
+        assertArrayEquals(expected, os.toByteArray());
+    }
+
+    @Test
+    public void testTemplateAttributesNotVisible() {
+        IppRequest ipp = template.newRequest(GroupTag.END);
+        assertEquals(OpCode.GET_JOBS, ipp.getOpCode());
+        assertEquals(Locale.US, ipp.getLocale());
+        assertNull(ipp.getAttributeGroups().get(0).get("printer-uri"));
+    }
+
+    @Test
+    public void testRequestIds() {
+        for (int id = 1; id <= 3; id++) {
+            IppRequest ipp = template.newRequest(GroupTag.END);
+            assertEquals(id, ipp.getRequestId());
+            ByteBuffer bb = ByteBuffer.wrap(TestMessages.encode(ipp));
+            assertEquals("the encoded request-id", id, bb.getInt(4));
+        }
+    }
+
+    @Test
+    public void testRejectsDocument() throws PrintException, IOException {
+        IppRequest ipp = request(1, GroupTag.END);
+        ipp.setDoc(new SimpleDoc(new byte[1], DocFlavor.BYTE_ARRAY.AUTOSENSE,
+                new HashDocAttributeSet()));
+        try {
+            new IppRequestTemplate(ipp);
+            fail("a template with a document");
+        } catch (IllegalArgumentException ex) { /* expected */ }
+    }
+
+    @Test
+    public void testRejectsOtherGroups() {
+        IppRequest ipp = request(1, GroupTag.JOB);
+        ipp.addAttribute(new GenericAttribute("job-name", "report.pdf", ValueTag.NAME_WITHOUT_LANGUAGE));
+        try {
+            new IppRequestTemplate(ipp);
+            fail("a template with job attributes");
+        } catch (IllegalArgumentException ex) { /* expected */ }
+        // an empty group is not rejected
+        new IppRequestTemplate(request(1, GroupTag.JOB));
+    }
+}
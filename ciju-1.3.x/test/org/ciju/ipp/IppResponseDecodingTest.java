@@ -0,0 +1,327 @@
+/*
+ * Copyright (C) 2012-2016 Opher Shachar
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ciju.ipp;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import javax.print.attribute.Attribute;
+import org.ciju.ipp.IppEncoding.GroupTag;
+import org.ciju.ipp.IppEncoding.StatusCode;
+import org.ciju.ipp.IppEncoding.ValueTag;
+import org.ciju.ipp.attribute.AttributeGroup;
+import org.ciju.ipp.attribute.GenericAttribute;
+import org.ciju.ipp.attribute.GenericValue;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Decodes the response of {@link TestMessages#response()} from each of the
+ * sources a response is decoded from, in each decoding mode, and compares
+ * the result with the attributes the response was encoded from.
+ *
+ * @author Opher Shachar
+ */
+public class IppResponseDecodingTest {
+    /** The number of kinds of source a response is decoded from */
+    private static final int SOURCES = 5;
+
+    private TestMessages.Message message;
+    private byte[] encoded;
+
+    public IppResponseDecodingTest() {
+    }
+
+    @Before
+    public void setUp() {
+        message = TestMessages.response();
+        encoded = TestMessages.encode(message);
+    }
+
+    @After
+    public void tearDown() {
+        IppResponse.setDefaultLazyDecoding(false);
+        IppResponse.setDefaultIndexing(false);
+    }
+
+    /** @return the response decoded from <tt>b</tt> read from the given kind of source */
+    private static IppResponse<IppObject> decode(byte[] b, int source) throws IOException {
+        return decode(b, source, null);
+    }
+
+    /**
+     * @return the response decoded from <tt>b</tt> read from the given kind
+     *      of source, with the given filter.
+     */
+    private static IppResponse<IppObject> decode(byte[] b, int source, AttributeFilter filter)
+            throws IOException {
+        switch (source) {
+            case 0: return IppTransport.processResponse(new ByteArrayInputStream(b), b.length,
+                    (IppObject) null, filter);
+            case 1: return IppTransport.processResponse(new ByteArrayInputStream(b), -1,
+                    (IppObject) null, filter);
+            case 2: return IppTransport.processResponse(Channels.newChannel(new ByteArrayInputStream(b)),
+                    b.length, (IppObject) null, filter);
+            case 3: return IppTransport.processResponse(Channels.newChannel(new ByteArrayInputStream(b)),
+                    -1, (IppObject) null, filter);
+            default: return IppTransport.processResponse(ByteBuffer.wrap(b), (IppObject) null, filter);
+        }
+    }
+
+    private void assertRoundTrip() throws IOException {
+        for (int source = 0; source < SOURCES; source++) {
+            IppResponse<IppObject> response = decode(encoded, source);
+            assertEquals(StatusCode.SUCCESSFUL_OK, response.getStatusCode());
+            assertEquals(TestMessages.REQUEST_ID, response.getRequestId());
+            assertEquals(Locale.US, response.getLocale());
+            TestMessages.assertGroupsEqual(message.getGroups(), TestMessages.groups(response));
+        }
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        assertRoundTrip();
+    }
+
+    @Test
+    public void testLazyRoundTrip() throws IOException {
+        IppResponse.setDefaultLazyDecoding(true);
+        assertRoundTrip();
+        IppResponse<IppObject> response = decode(encoded, SOURCES - 1);
+        GenericAttribute ga = (GenericAttribute) TestMessages.groups(response).get(0).get("printer-name");
+        assertTrue("decoded on first use", ga.get(0) instanceof LazyValue);
+    }
+
+    @Test
+    public void testIndexedRoundTrip() throws IOException {
+        IppResponse.setDefaultIndexing(true);
+        assertRoundTrip();
+    }
+
+    /** Asserts the lookups find the same in an indexed and a decoded response */
+    private static void assertLookups(IppResponse<IppObject> expected, IppResponse<IppObject> indexed) {
+        Object[][] lookups = {
+            { "x-vendor-option", GroupTag.JOB, ValueTag.KEYWORD },
+            { "x-vendor-option", GroupTag.JOB, ValueTag.INTEGER },
+            { "x-vendor-option", GroupTag.JOB, ValueTag.ENUM },
+            { "job-name", GroupTag.JOB, ValueTag.NAME },
+            { "job-name", GroupTag.JOB, ValueTag.NAME_WITHOUT_LANGUAGE },
+            { "job-name", GroupTag.JOB, ValueTag.TEXT },
+            { "printer-name", GroupTag.PRINTER, ValueTag.NAME },
+            { "printer-info", GroupTag.PRINTER, ValueTag.TEXT },
+            { "printer-name", GroupTag.JOB, ValueTag.NAME },
+            { "no-such-attribute", GroupTag.JOB, ValueTag.KEYWORD },
+            { "attributes-charset", GroupTag.OPERATION, ValueTag.CHARSET },
+        };
+        for (Object[] lookup : lookups) {
+            Attribute a = expected.getAttribute((String) lookup[0], (GroupTag) lookup[1], (ValueTag) lookup[2]);
+            Attribute b = indexed.getAttribute((String) lookup[0], (GroupTag) lookup[1], (ValueTag) lookup[2]);
+            if (a == null)
+                assertNull(Arrays.toString(lookup), b);
+            else
+                TestMessages.assertAttributeEquals((GenericAttribute) a, b);
+        }
+    }
+
+    @Test
+    public void testIndexLookup() throws IOException {
+        IppResponse<IppObject> expected = decode(encoded, 0);
+        IppResponse.setDefaultIndexing(true);
+        for (int source = 0; source < SOURCES; source++) {
+            IppResponse<IppObject> indexed = decode(encoded, source);
+            assertEquals(4, indexed.getAttributeGroupCount());
+            // the same name in either job group, with a different value tag
+            assertEquals("draft", ((GenericValue) ((GenericAttribute) indexed.getAttribute(
+                    "x-vendor-option", GroupTag.JOB, ValueTag.KEYWORD)).get(0)).getValue());
+            assertEquals(42, ((GenericAttribute) indexed.getAttribute(
+                    "x-vendor-option", GroupTag.JOB, ValueTag.INTEGER)).getInt(0));
+            assertLookups(expected, indexed);
+            // once a group is decoded its attributes are looked up there
+            AttributeGroup job = indexed.getAttributeGroup(3);
+            assertEquals(GroupTag.JOB, job.groupTag());
+            assertSame(job.get("x-vendor-option"),
+                    indexed.getAttribute("x-vendor-option", GroupTag.JOB, ValueTag.INTEGER));
+            assertSame(job, indexed.getAttributeGroup(3));
+            assertLookups(expected, indexed);
+            for (int n : new int[] { -1, 4 })
+                try {
+                    indexed.getAttributeGroup(n);
+                    fail("group " + n);
+                } catch (IndexOutOfBoundsException ex) { /* expected */ }
+        }
+    }
+
+    @Test
+    public void testIndexedFilter() throws IOException {
+        IppResponse.setDefaultIndexing(true);
+        IppResponse<IppObject> indexed = decode(encoded, SOURCES - 1,
+                new AttributeFilter().include(GroupTag.JOB, "job-id"));
+        assertNull(indexed.getAttribute("job-name", GroupTag.JOB, ValueTag.NAME));
+        assertEquals(1, ((GenericAttribute) indexed.getAttribute(
+                "job-id", GroupTag.JOB, ValueTag.INTEGER)).getInt(0));
+        assertEquals(1, indexed.getAttributeGroup(2).size());
+        assertEquals(message.getGroups().get(0).size(), indexed.getAttributeGroup(1).size());
+    }
+
+    private void assertPacked() throws IOException {
+        for (int source = 0; source < SOURCES; source++) {
+            AttributeGroup printer = TestMessages.groups(decode(encoded, source)).get(0);
+            assertEquals(ValueTag.ENUM, ((GenericAttribute) printer.get("printer-state")).getPackedValueTag());
+            assertEquals(ValueTag.BOOLEAN,
+                    ((GenericAttribute) printer.get("printer-is-accepting-jobs")).getPackedValueTag());
+            GenericAttribute copies = (GenericAttribute) printer.get("copies-supported");
+            assertEquals(ValueTag.RANGE_OF_INTEGER, copies.getPackedValueTag());
+            assertEquals(99, copies.getUpperBound(0));
+            assertNull(((GenericAttribute) printer.get("printer-name")).getPackedValueTag());
+        }
+    }
+
+    @Test
+    public void testPackedValues() throws IOException {
+        assertPacked();
+        IppResponse.setDefaultLazyDecoding(true);
+        assertPacked();
+        IppResponse.setDefaultIndexing(true);
+        assertPacked();
+    }
+
+    private void assertInterned() throws IOException {
+        for (int source = 0; source < SOURCES; source++) {
+            List<AttributeGroup> groups = TestMessages.groups(decode(encoded, source));
+            String jobId = groups.get(1).get("job-id").getName();
+            assertSame("a standard name", NameTable.STANDARD.lookup(
+                    ByteBuffer.wrap(jobId.getBytes("US-ASCII")), 0, jobId.length()), jobId);
+            assertSame("a standard name", jobId, groups.get(2).get("job-id").getName());
+            assertSame("a non-standard name", groups.get(1).get("x-vendor-option").getName(),
+                    groups.get(2).get("x-vendor-option").getName());
+        }
+    }
+
+    @Test
+    public void testInterning() throws IOException {
+        assertInterned();
+        IppResponse.setDefaultLazyDecoding(true);
+        assertInterned();
+        IppResponse.setDefaultIndexing(true);
+        assertInterned();
+    }
+
+    private void assertFiltered(AttributeFilter filter) throws IOException {
+        for (int source = 0; source < SOURCES; source++) {
+            IppResponse<IppObject> response = decode(encoded, source, filter);
+            assertNotNull(response.getAttributeGroup(0).get("attributes-charset"));
+            List<AttributeGroup> groups = TestMessages.groups(response);
+            assertEquals(3, groups.size());
+            AttributeGroup printer = groups.get(0);
+            assertEquals(2, printer.size());
+            TestMessages.assertAttributeEquals((GenericAttribute) message.getGroups().get(0).get("printer-name"),
+                    printer.get("printer-name"));
+            assertNotNull(printer.get("printer-state"));
+            for (int n = 1; n <= 2; n++) {
+                AttributeGroup job = groups.get(n);
+                assertEquals("job group " + n, 2, job.size());
+                TestMessages.assertAttributeEquals((GenericAttribute) message.getGroups().get(n).get("job-id"),
+                        job.get("job-id"));
+                TestMessages.assertAttributeEquals((GenericAttribute) message.getGroups().get(n).get("x-vendor-option"),
+                        job.get("x-vendor-option"));
+            }
+        }
+    }
+
+    @Test
+    public void testFilter() throws IOException {
+        AttributeFilter filter = new AttributeFilter()
+                .include(GroupTag.PRINTER, "printer-name", "printer-state", "no-such-attribute")
+                .include(GroupTag.JOB, "job-id", "x-vendor-option");
+        assertFiltered(filter);
+        IppResponse.setDefaultLazyDecoding(true);
+        assertFiltered(filter);
+    }
+
+    @Test
+    public void testFilterOfOtherGroup() throws IOException {
+        // the groups not filtered are decoded whole
+        AttributeFilter filter = new AttributeFilter().include(GroupTag.SUBSCRIPTION, "notify-events");
+        for (int source = 0; source < SOURCES; source++)
+            TestMessages.assertGroupsEqual(message.getGroups(), TestMessages.groups(decode(encoded, source, filter)));
+    }
+
+    @Test
+    public void testCodecFilter() throws IOException {
+        IppCodec codec = IppCodec.acquire();
+        try {
+            codec.setAttributeFilter(new AttributeFilter().include(GroupTag.JOB, "job-id"));
+            List<AttributeGroup> groups = TestMessages.groups(codec.processResponse(ByteBuffer.wrap(encoded), (IppObject) null));
+            assertEquals(message.getGroups().get(0).size(), groups.get(0).size());
+            assertEquals(1, groups.get(1).size());
+            assertEquals(1, groups.get(2).size());
+        } finally {
+            IppCodec.release(codec);
+        }
+    }
+
+    private void assertMalformed() throws IOException {
+        // the first attribute name of the printer group
+        int off = TestMessages.indexOf(encoded, "printer-uri-supported") - 2;
+        for (short len : new short[] { -1, 0 }) {
+            byte[] b = encoded.clone();
+            ByteBuffer.wrap(b).putShort(off, len);
+            for (int source = 0; source < SOURCES; source++)
+                try {
+                    decode(b, source);
+                    fail("name length " + len + ", source " + source);
+                } catch (IppFailedException ex) { /* expected */ }
+        }
+    }
+
+    @Test
+    public void testMalformed() throws IOException {
+        assertMalformed();
+        IppResponse.setDefaultLazyDecoding(true);
+        assertMalformed();
+        IppResponse.setDefaultIndexing(true);
+        assertMalformed();
+    }
+
+    private void assertTruncated() throws IOException {
+        for (int len : new int[] { 0, 5, 8, 20, encoded.length / 2, encoded.length - 1 }) {
+            byte[] b = new byte[len];
+            System.arraycopy(encoded, 0, b, 0, len);
+            for (int source = 0; source < SOURCES; source++)
+                try {
+                    decode(b, source);
+                    fail("truncated to " + len + ", source " + source);
+                } catch (EOFException ex) { /* expected */ }
+        }
+    }
+
+    @Test
+    public void testTruncated() throws IOException {
+        assertTruncated();
+        IppResponse.setDefaultLazyDecoding(true);
+        assertTruncated();
+        IppResponse.setDefaultIndexing(true);
+        assertTruncated();
+    }
+}
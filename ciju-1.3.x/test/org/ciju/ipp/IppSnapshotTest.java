@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2012-2016 Opher Shachar
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ciju.ipp;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Locale;
+import org.ciju.ipp.IppEncoding.StatusCode;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Takes snapshots of the response of {@link TestMessages#response()},
+ * decoded in each decoding mode, and reads them back.
+ *
+ * @author Opher Shachar
+ */
+public class IppSnapshotTest {
+    private TestMessages.Message message;
+    private byte[] encoded;
+
+    public IppSnapshotTest() {
+    }
+
+    @Before
+    public void setUp() {
+        message = TestMessages.response();
+        encoded = TestMessages.encode(message);
+    }
+
+    @After
+    public void tearDown() {
+        IppResponse.setDefaultLazyDecoding(false);
+        IppResponse.setDefaultIndexing(false);
+    }
+
+    private static byte[] toArray(ByteBuffer bb) {
+        byte[] b = new byte[bb.remaining()];
+        bb.duplicate().get(b);
+        return b;
+    }
+
+    private void assertResponse(IppResponse<IppObject> response) {
+        assertEquals(0x0101, response.getVersion());
+        assertEquals(StatusCode.SUCCESSFUL_OK, response.getStatusCode());
+        assertEquals(TestMessages.REQUEST_ID, response.getRequestId());
+        assertEquals(Locale.US, response.getLocale());
+        TestMessages.assertGroupsEqual(message.getGroups(), TestMessages.groups(response));
+    }
+
+    private void assertResponseRoundTrip() throws IOException {
+        IppResponse<IppObject> response = IppTransport.processResponse(ByteBuffer.wrap(encoded), (IppObject) null);
+        ByteBuffer bb = IppSnapshot.encode(response);
+        assertResponse(IppSnapshot.readResponse(bb));
+        assertFalse(bb.hasRemaining());
+
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        IppSnapshot.write(response, os);
+        assertArrayEquals(toArray(IppSnapshot.encode(response)), os.toByteArray());
+        assertResponse(IppSnapshot.readResponse(new ByteArrayInputStream(os.toByteArray())));
+    }
+
+    @Test
+    public void testResponse() throws IOException {
+        assertResponseRoundTrip();
+        IppResponse.setDefaultLazyDecoding(true);
+        assertResponseRoundTrip();
+        IppResponse.setDefaultIndexing(true);
+        assertResponseRoundTrip();
+    }
+
+    @Test
+    public void testGroups() throws IOException {
+        ByteBuffer bb = IppSnapshot.encodeGroups(message.getGroups());
+        TestMessages.assertGroupsEqual(message.getGroups(), IppSnapshot.readGroups(bb));
+
+        // the operation attributes are not part of the snapshot
+        IppResponse<IppObject> response = IppTransport.processResponse(ByteBuffer.wrap(encoded), (IppObject) null);
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        IppSnapshot.writeGroups(response.getAttributeGroups(), os);
+        TestMessages.assertGroupsEqual(message.getGroups(),
+                IppSnapshot.readGroups(new ByteArrayInputStream(os.toByteArray())));
+    }
+
+    @Test
+    public void testConsecutive() throws IOException {
+        IppResponse<IppObject> response = IppTransport.processResponse(ByteBuffer.wrap(encoded), (IppObject) null);
+        byte[] one = toArray(IppSnapshot.encode(response));
+        ByteBuffer bb = ByteBuffer.allocate(2 * one.length + 1);
+        bb.put(one).put(one).put((byte) 0).flip();
+        assertResponse(IppSnapshot.readResponse(bb));
+        assertEquals(one.length, bb.position());
+        assertResponse(IppSnapshot.readResponse(bb));
+        assertEquals(1, bb.remaining());
+    }
+
+    @Test
+    public void testTrailingData() throws IOException {
+        IppResponse<IppObject> response = IppTransport.processResponse(ByteBuffer.wrap(encoded), (IppObject) null);
+        byte[] one = toArray(IppSnapshot.encode(response));
+        byte[] b = new byte[one.length + 1];
+        System.arraycopy(one, 0, b, 0, one.length);
+        try {
+            IppSnapshot.readResponse(new ByteArrayInputStream(b));
+            fail("data follows the snapshot");
+        } catch (EOFException ex) {
+            fail("not truncated");
+        } catch (IOException ex) { /* expected */ }
+    }
+
+    @Test
+    public void testTruncated() throws IOException {
+        IppResponse<IppObject> response = IppTransport.processResponse(ByteBuffer.wrap(encoded), (IppObject) null);
+        byte[] one = toArray(IppSnapshot.encode(response));
+        for (int len : new int[] { 0, 4, IppSnapshot.HEADER_LENGTH, IppSnapshot.HEADER_LENGTH + 9, one.length - 1 }) {
+            try {
+                IppSnapshot.readResponse(ByteBuffer.wrap(one, 0, len));
+                fail("truncated to " + len);
+            } catch (EOFException ex) { /* expected */ }
+            try {
+                IppSnapshot.readResponse(new ByteArrayInputStream(one, 0, len));
+                fail("truncated to " + len);
+            } catch (EOFException ex) { /* expected */ }
+        }
+    }
+
+    @Test
+    public void testNotASnapshot() throws IOException {
+        try {
+            IppSnapshot.readResponse(ByteBuffer.wrap(encoded));
+            fail("an IPP response");
+        } catch (IOException ex) { /* expected */ }
+        try {
+            IppSnapshot.readResponse(new ByteArrayInputStream(encoded));
+            fail("an IPP response");
+        } catch (IOException ex) { /* expected */ }
+        // a snapshot of groups is not one of a response, and vice versa
+        try {
+            IppSnapshot.readResponse(IppSnapshot.encodeGroups(message.getGroups()));
+            fail("a snapshot of groups");
+        } catch (IOException ex) { /* expected */ }
+        IppResponse<IppObject> response = IppTransport.processResponse(ByteBuffer.wrap(encoded), (IppObject) null);
+        try {
+            IppSnapshot.readGroups(IppSnapshot.encode(response));
+            fail("a snapshot of a response");
+        } catch (IOException ex) { /* expected */ }
+    }
+}
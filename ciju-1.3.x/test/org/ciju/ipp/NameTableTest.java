@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2012-2016 Opher Shachar
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ciju.ipp;
+
+import java.nio.ByteBuffer;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Opher Shachar
+ */
+public class NameTableTest {
+
+    public NameTableTest() {
+    }
+
+    /** @return <tt>name</tt> encoded in a buffer after <tt>pad</tt> bytes */
+    private static ByteBuffer encode(String name, int pad, boolean direct) {
+        ByteBuffer bb = direct ? ByteBuffer.allocateDirect(pad + name.length())
+                : ByteBuffer.allocate(pad + name.length());
+        for (int i = 0; i < pad; i++)
+            bb.put((byte) '?');
+        for (int i = 0; i < name.length(); i++)
+            bb.put((byte) name.charAt(i));
+        return bb;
+    }
+
+    private static String lookup(NameTable table, String name) {
+        return table.lookup(encode(name, 3, false), 3, name.length());
+    }
+
+    @Test
+    public void testStandard() {
+        String s = lookup(NameTable.STANDARD, "job-id");
+        assertEquals("job-id", s);
+        assertSame(s, lookup(NameTable.STANDARD, "job-id"));
+        assertSame(s, NameTable.STANDARD.lookup(encode("job-id", 0, true), 0, 6));
+        assertEquals("attributes-charset", lookup(NameTable.STANDARD, "attributes-charset"));
+        assertEquals("document-format-preferred", lookup(NameTable.STANDARD, "document-format-preferred"));
+        assertNull(lookup(NameTable.STANDARD, "x-vendor-option"));
+        assertNull(lookup(NameTable.STANDARD, "job-i"));
+        assertNull(lookup(NameTable.STANDARD, "job-idx"));
+        assertNull(lookup(NameTable.STANDARD, ""));
+    }
+
+    @Test
+    public void testAdd() {
+        NameTable table = new NameTable(8);
+        String name = new String("x-vendor-option");
+        assertNull(lookup(table, name));
+        assertTrue(table.add(encode(name, 3, true), 3, name.length(), name));
+        assertSame(name, lookup(table, "x-vendor-option"));
+        assertFalse("already added", table.add(encode(name, 0, false), 0, name.length(), "other"));
+        assertFalse("already added", table.add("x-vendor-option"));
+        assertSame(name, lookup(table, "x-vendor-option"));
+        assertNull(lookup(table, "x-vendor-options"));
+    }
+
+    @Test
+    public void testFull() {
+        // the table is kept at most half full
+        NameTable table = new NameTable(8);
+        for (int i = 0; i < 4; i++)
+            assertTrue(table.add("name-" + i));
+        assertFalse("full", table.add("name-4"));
+        ByteBuffer bb = encode("name-5", 0, false);
+        assertFalse("full", table.add(bb, 0, 6, "name-5"));
+        for (int i = 0; i < 4; i++)
+            assertEquals("name-" + i, lookup(table, "name-" + i));
+        assertNull(lookup(table, "name-4"));
+        assertNull(lookup(table, "name-5"));
+    }
+
+    @Test
+    public void testClear() {
+        NameTable table = new NameTable(8);
+        for (int i = 0; i < 4; i++)
+            table.add("name-" + i);
+        table.clear();
+        for (int i = 0; i < 4; i++)
+            assertNull(lookup(table, "name-" + i));
+        for (int i = 4; i < 8; i++)
+            assertTrue(table.add("name-" + i));
+        assertEquals("name-7", lookup(table, "name-7"));
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) 2012-2016 Opher Shachar
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ciju.ipp;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+import org.junit.After;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Writes content to {@link SpoolBuffer}S that keep it in memory and that
+ * spill it to a temporary file, and reads it back.
+ *
+ * @author Opher Shachar
+ */
+public class SpoolBufferTest {
+
+    public SpoolBufferTest() {
+    }
+
+    @After
+    public void tearDown() {
+        IppResponse.setDefaultDocMemoryThreshold(1 << 20);
+    }
+
+    private static byte[] content(int len) {
+        byte[] b = new byte[len];
+        for (int i = 0; i < len; i++)
+            b[i] = (byte) (i * 31);
+        return b;
+    }
+
+    /** Writes <tt>b</tt> a byte at a time, then in growing chunks */
+    private static SpoolBuffer spool(int threshold, byte[] b) throws IOException {
+        SpoolBuffer sb = new SpoolBuffer(threshold);
+        int off = 0;
+        for (; off < Math.min(10, b.length); off++)
+            sb.write(b[off]);
+        for (int n = 1; off < b.length; n *= 2) {
+            int len = Math.min(n, b.length - off);
+            sb.write(b, off, len);
+            off += len;
+        }
+        sb.close();
+        return sb;
+    }
+
+    private static byte[] readAll(InputStream is) throws IOException {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        byte[] b = new byte[777];
+        for (int n; (n = is.read(b)) != -1; )
+            os.write(b, 0, n);
+        return os.toByteArray();
+    }
+
+    private static byte[] readAll(ReadableByteChannel ch) throws IOException {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        ByteBuffer bb = ByteBuffer.allocate(777);
+        while (ch.read(bb) != -1) {
+            os.write(bb.array(), 0, bb.position());
+            bb.clear();
+        }
+        return os.toByteArray();
+    }
+
+    private static void assertContent(byte[] expected, SpoolBuffer sb) throws IOException {
+        // the content may be read any number of times
+        for (int i = 0; i < 2; i++) {
+            assertArrayEquals(expected, readAll(sb.getInputStream()));
+            assertArrayEquals(expected, readAll(sb.getChannel()));
+        }
+    }
+
+    @Test
+    public void testInMemory() throws IOException {
+        byte[] b = content(5000);
+        assertContent(b, spool(5000, b));
+        assertContent(new byte[0], spool(100, new byte[0]));
+    }
+
+    @Test
+    public void testSpilled() throws IOException {
+        byte[] b = content(100000);
+        assertContent(b, spool(4999, b));
+        assertContent(b, spool(0, b));
+    }
+
+    @Test
+    public void testClosed() throws IOException {
+        SpoolBuffer sb = new SpoolBuffer(10);
+        try {
+            sb.getInputStream();
+            fail("not closed yet");
+        } catch (IllegalStateException ex) { /* expected */ }
+        sb.write(1);
+        sb.close();
+        sb.close();
+        try {
+            sb.write(2);
+            fail("written after closed");
+        } catch (ClosedChannelException ex) { /* expected */ }
+
+        ReadableByteChannel ch = sb.getChannel();
+        ch.close();
+        assertFalse(ch.isOpen());
+        try {
+            ch.read(ByteBuffer.allocate(1));
+            fail("read a closed channel");
+        } catch (ClosedChannelException ex) { /* expected */ }
+    }
+
+    @Test
+    public void testBufferInputStream() throws IOException {
+        byte[] b = content(300);
+        ByteBuffer first = ByteBuffer.wrap(b, 0, 100);
+        ByteBuffer empty = ByteBuffer.allocate(0);
+        ByteBuffer second = ByteBuffer.wrap(b, 100, 200).slice();
+        InputStream is = new SpoolBuffer.BufferInputStream(first, empty, second);
+        assertEquals(300, is.available());
+        assertEquals(b[0] & 0xff, is.read());
+        assertEquals(97, is.skip(97));
+        byte[] two = new byte[10];
+        // a read doesn't cross buffers
+        assertEquals(2, is.read(two, 0, 10));
+        assertEquals(b[98], two[0]);
+        assertEquals(b[99], two[1]);
+        assertEquals(b[100] & 0xff, is.read());
+        assertEquals(199, is.available());
+        assertEquals(0, is.read(two, 0, 0));
+        assertEquals(199, is.skip(1000));
+        assertEquals(0, is.available());
+        assertEquals(-1, is.read());
+        assertEquals(-1, is.read(two, 0, 10));
+        assertEquals(0, is.skip(10));
+    }
+
+    @Test
+    public void testResponseDocument() throws IOException {
+        byte[] encoded = TestMessages.encode(TestMessages.response());
+        byte[] doc = content(50000);
+        byte[] b = new byte[encoded.length + doc.length];
+        System.arraycopy(encoded, 0, b, 0, encoded.length);
+        System.arraycopy(doc, 0, b, encoded.length, doc.length);
+        for (int threshold : new int[] { 1 << 20, 1000 }) {
+            IppResponse.setDefaultDocMemoryThreshold(threshold);
+            IppResponse<IppObject> response = IppTransport.processResponse(new ByteArrayInputStream(b), -1);
+            assertArrayEquals(doc, readAll((InputStream) response.getDoc().getPrintData()));
+            assertArrayEquals(doc, readAll(response.getDocChannel()));
+            assertArrayEquals(doc, readAll(response.getDocChannel()));
+        }
+
+        IppResponse<IppObject> response = IppTransport.processResponse(new ByteArrayInputStream(encoded), -1);
+        assertNull(response.getDoc());
+        assertNull(response.getDocChannel());
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) 2012-2016 Opher Shachar
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ciju.ipp;
+
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import javax.print.attribute.Attribute;
+import javax.print.attribute.ResolutionSyntax;
+import javax.print.attribute.TextSyntax;
+import org.ciju.ipp.IppEncoding.GroupTag;
+import org.ciju.ipp.IppEncoding.ValueTag;
+import org.ciju.ipp.attribute.AttributeGroup;
+import org.ciju.ipp.attribute.GenericAttribute;
+import org.ciju.ipp.attribute.GenericValue;
+import org.ciju.ipp.attribute.ResolutionValue;
+import org.ciju.ipp.attribute.TextValue;
+import static org.junit.Assert.*;
+
+/**
+ * Builds the IPP messages the tests decode. Responses share the wire format
+ * of requests, so they are built as requests whose operation-id is the
+ * <tt>successful-ok</tt> status-code.
+ *
+ * @author Opher Shachar
+ */
+final class TestMessages {
+
+    /** The request-id of the messages built here */
+    static final int REQUEST_ID = 7;
+
+    private TestMessages() {}
+
+    /** An IPP message with any number of attribute groups */
+    static final class Message extends IppRequest {
+        Message() {
+            super((short) 0, REQUEST_ID, Locale.US, GroupTag.END);
+        }
+
+        Message group(GroupTag gt) {
+            newAttributeGroup(gt);
+            return this;
+        }
+
+        Message add(String name, ValueTag vt, Object... values) {
+            GenericAttribute ga = new GenericAttribute(name, values.length);
+            for (Object value : values)
+                ga.add(new GenericValue(vt, value));
+            addAttribute(ga);
+            return this;
+        }
+
+        /** @return the attribute groups following the operation attributes */
+        List<AttributeGroup> getGroups() {
+            List<AttributeGroup> groups = getAttributeGroups();
+            return groups.subList(1, groups.size());
+        }
+    }
+
+    /** @return the attribute groups following the operation attributes */
+    static List<AttributeGroup> groups(IppResponse<?> response) {
+        List<AttributeGroup> groups = response.getAttributeGroups();
+        return groups.subList(1, groups.size());
+    }
+
+    /** Returns the encoded message in an array of its own */
+    static byte[] encode(IppRequest msg) {
+        ByteBuffer bb = IppTransport.encodeRequest(msg, null);
+        byte[] b = new byte[bb.remaining()];
+        bb.get(b);
+        return b;
+    }
+
+    /**
+     * A response of a printer and two jobs, with values of every syntax the
+     * decoder handles. The jobs have attributes of the same names, and a
+     * non-standard attribute of a different value tag in each.
+     */
+    static Message response() {
+        Message m = new Message();
+        m.group(GroupTag.PRINTER);
+        m.add("printer-uri-supported", ValueTag.URI,
+                URI.create("ipp://localhost:631/printers/lobby"),
+                URI.create("ipps://localhost:631/printers/lobby"));
+        m.add("printer-name", ValueTag.NAME_WITHOUT_LANGUAGE, "lobby");
+        m.add("printer-info", ValueTag.TEXT_WITH_LANGUAGE,
+                new TextValue("Imprimante du hall", Locale.FRANCE));
+        m.add("printer-state", ValueTag.ENUM, 3);
+        m.add("printer-is-accepting-jobs", ValueTag.BOOLEAN, Boolean.TRUE);
+        m.add("queued-job-count", ValueTag.INTEGER, 2);
+        m.add("printer-current-time", ValueTag.DATE_TIME, new Date(1234567890100L));
+        m.add("charset-supported", ValueTag.CHARSET, "utf-8", "us-ascii");
+        m.add("copies-supported", ValueTag.RANGE_OF_INTEGER, new int[] { 1, 99 });
+        m.add("printer-resolution-supported", ValueTag.RESOLUTION,
+                new ResolutionValue(300, 300, ResolutionSyntax.DPI),
+                new ResolutionValue(600, 1200, ResolutionSyntax.DPI));
+        m.add("printer-state-reasons", ValueTag.KEYWORD, "none");
+        m.add("x-vendor-features", ValueTag.KEYWORD, "staple", "punch", "fold");
+        m.group(GroupTag.JOB);
+        m.add("job-id", ValueTag.INTEGER, 1);
+        m.add("job-name", ValueTag.NAME_WITHOUT_LANGUAGE, "report.pdf");
+        m.add("job-state", ValueTag.ENUM, 9);
+        m.add("x-vendor-option", ValueTag.KEYWORD, "draft");
+        m.group(GroupTag.JOB);
+        m.add("job-id", ValueTag.INTEGER, 2);
+        m.add("job-name", ValueTag.NAME_WITHOUT_LANGUAGE, "letter.txt");
+        m.add("job-state", ValueTag.ENUM, 5);
+        m.add("x-vendor-option", ValueTag.INTEGER, 42);
+        return m;
+    }
+
+    /** @return the offset of the given US-ASCII string in <tt>b</tt> */
+    static int indexOf(byte[] b, String s) {
+        next:
+        for (int i = 0; i <= b.length - s.length(); i++) {
+            for (int j = 0; j < s.length(); j++)
+                if (b[i + j] != s.charAt(j))
+                    continue next;
+            return i;
+        }
+        throw new AssertionError(s);
+    }
+
+    /** Asserts the groups hold the same attributes and values, in order */
+    static void assertGroupsEqual(List<AttributeGroup> expected, List<AttributeGroup> actual) {
+        assertEquals("group count", expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            AttributeGroup eg = expected.get(i), ag = actual.get(i);
+            assertEquals(eg.groupTag(), ag.groupTag());
+            assertEquals("attribute count of group " + i, eg.size(), ag.size());
+            for (Attribute a : eg)
+                assertAttributeEquals((GenericAttribute) a, ag.get(a.getName()));
+        }
+    }
+
+    /** Asserts the attributes have the same name and values */
+    static void assertAttributeEquals(GenericAttribute expected, Attribute actual) {
+        assertNotNull(expected.getName(), actual);
+        assertEquals(expected.getName(), actual.getName());
+        GenericAttribute ga = (GenericAttribute) actual;
+        assertEquals(expected.getName(), expected.size(), ga.size());
+        for (int i = 0; i < expected.size(); i++) {
+            GenericValue ev = (GenericValue) expected.get(i);
+            GenericValue av = (GenericValue) ga.get(i);
+            assertEquals(expected.getName(), ev.getValueTag(), av.getValueTag());
+            Object e = ev.getValue(), a = av.getValue();
+            if (e instanceof int[])
+                assertArrayEquals((int[]) e, (int[]) a);
+            else if (e instanceof String && a instanceof TextSyntax)
+                // text and name values are decoded with the response's language
+                assertEquals(expected.getName(), e, ((TextSyntax) a).getValue());
+            else
+                assertEquals(expected.getName(), e, a);
+        }
+    }
+}
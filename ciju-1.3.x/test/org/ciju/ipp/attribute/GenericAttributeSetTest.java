@@ -0,0 +1,198 @@
+/*
+ * Copyright (C) 2012-2016 Opher Shachar
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ciju.ipp.attribute;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import javax.print.attribute.Attribute;
+import javax.print.attribute.HashAttributeSet;
+import javax.print.attribute.standard.Copies;
+import javax.print.attribute.standard.JobName;
+import org.ciju.ipp.IppEncoding.GroupTag;
+import org.ciju.ipp.IppEncoding.ValueTag;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Checks {@link GenericAttributeSet}S small enough to be searched linearly
+ * and large enough to be indexed.
+ *
+ * @author Opher Shachar
+ */
+public class GenericAttributeSetTest {
+    /** Sizes on either side of where a set is indexed */
+    private static final int[] SIZES = { 0, 1, 8, 9, 100 };
+
+    public GenericAttributeSetTest() {
+    }
+
+    private static Attribute attribute(int i) {
+        return new GenericAttribute("x-attribute-" + i, "value-" + i, ValueTag.KEYWORD);
+    }
+
+    private static GenericAttributeSet set(int size) {
+        GenericAttributeSet set = new GenericAttributeSet();
+        for (int i = 0; i < size; i++)
+            assertTrue(set.add(attribute(i)));
+        return set;
+    }
+
+    private static List<String> names(GenericAttributeSet set) {
+        List<String> names = new ArrayList<String>(set.size());
+        for (Attribute a : set)
+            names.add(a.getName());
+        return names;
+    }
+
+    @Test
+    public void testGet() {
+        for (int size : SIZES) {
+            GenericAttributeSet set = set(size);
+            assertEquals(size, set.size());
+            for (int i = 0; i < size; i++) {
+                String name = "x-attribute-" + i;
+                assertEquals(attribute(i), set.get(name));
+                assertTrue(set.containsKey(name));
+                assertTrue(set.contains(attribute(i)));
+                assertTrue(set.containsValue(attribute(i)));
+                assertEquals("in the order added", name, names(set).get(i));
+            }
+            assertNull(set.get("x-attribute-" + size));
+            assertFalse(set.containsKey("x-attribute-" + size));
+            assertNull(set.get((String) null));
+        }
+    }
+
+    @Test
+    public void testReplace() {
+        for (int size : SIZES) {
+            if (size == 0)
+                continue;
+            GenericAttributeSet set = set(size);
+            List<String> names = names(set);
+            assertFalse("an equal attribute", set.add(attribute(size / 2)));
+            Attribute other = new GenericAttribute("x-attribute-" + size / 2, "other", ValueTag.KEYWORD);
+            assertTrue(set.add(other));
+            assertEquals(size, set.size());
+            assertSame(other, set.get("x-attribute-" + size / 2));
+            assertFalse(set.contains(attribute(size / 2)));
+            assertEquals("replaced in place", names, names(set));
+        }
+    }
+
+    @Test
+    public void testRemove() {
+        for (int size : SIZES) {
+            GenericAttributeSet set = set(size);
+            List<String> names = names(set);
+            // down to below where the set is indexed
+            for (int i = 0; i < size; i += 2) {
+                assertTrue(set.remove("x-attribute-" + i));
+                assertFalse(set.remove("x-attribute-" + i));
+                names.remove("x-attribute-" + i);
+            }
+            assertEquals(names, names(set));
+            for (int i = 0; i < size; i++)
+                assertEquals(i % 2 != 0, set.containsKey("x-attribute-" + i));
+            for (int i = 1; i < size; i += 2)
+                assertTrue(set.remove(attribute(i)));
+            assertTrue(set.isEmpty());
+            assertTrue(set.add(attribute(0)));
+            assertEquals(attribute(0), set.get("x-attribute-0"));
+        }
+    }
+
+    @Test
+    public void testIterator() {
+        GenericAttributeSet set = set(20);
+        Iterator<Attribute> it = set.iterator();
+        try {
+            it.remove();
+            fail("removed before next()");
+        } catch (IllegalStateException ex) { /* expected */ }
+        while (it.hasNext())
+            if (it.next().getName().length() > "x-attribute-9".length())
+                it.remove();
+        assertEquals(10, set.size());
+        for (int i = 0; i < 10; i++)
+            assertEquals(attribute(i), set.get("x-attribute-" + i));
+
+        it = set.iterator();
+        it.next();
+        set.add(attribute(20));
+        try {
+            it.next();
+            fail("modified while iterating");
+        } catch (ConcurrentModificationException ex) { /* expected */ }
+    }
+
+    @Test
+    public void testClear() {
+        for (int size : SIZES) {
+            GenericAttributeSet set = set(size);
+            set.clear();
+            assertEquals(0, set.size());
+            assertNull(set.get("x-attribute-0"));
+            assertFalse(set.iterator().hasNext());
+            for (int i = 0; i < size; i++)
+                assertTrue(set.add(attribute(i)));
+            assertEquals(size, set.size());
+        }
+    }
+
+    @Test
+    public void testCopyAndCategories() {
+        HashAttributeSet hs = new HashAttributeSet();
+        hs.add(new Copies(2));
+        hs.add(new JobName("report.pdf", Locale.US));
+        AttributeGroup group = new AttributeGroup(GroupTag.JOB, hs);
+        assertEquals(GroupTag.JOB, group.groupTag());
+        assertEquals(2, group.size());
+        assertEquals(new Copies(2), group.get("copies"));
+        assertEquals(new Copies(2), group.get(Copies.class));
+        assertTrue(group.containsKey(JobName.class));
+        assertTrue(group.remove(Copies.class));
+        assertFalse(group.containsKey("copies"));
+        assertEquals(1, group.size());
+    }
+
+    @Test
+    public void testSerialization() throws IOException, ClassNotFoundException {
+        AttributeGroup group = new AttributeGroup(GroupTag.JOB);
+        for (int i = 1; i <= 20; i++)
+            group.add(new GenericAttribute("x-copies-" + i, new Copies(i)));
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        ObjectOutputStream oos = new ObjectOutputStream(os);
+        oos.writeObject(group);
+        oos.close();
+        AttributeGroup copy = (AttributeGroup) new ObjectInputStream(
+                new ByteArrayInputStream(os.toByteArray())).readObject();
+        assertEquals(GroupTag.JOB, copy.groupTag());
+        assertEquals(20, copy.size());
+        for (int i = 1; i <= 20; i++)
+            assertEquals(i, ((GenericAttribute) copy.get("x-copies-" + i)).getInt(0));
+        assertEquals("x-copies-1", copy.iterator().next().getName());
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright (C) 2012-2016 Opher Shachar
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ciju.ipp.attribute;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import javax.print.attribute.standard.Copies;
+import javax.print.attribute.standard.CopiesSupported;
+import org.ciju.ipp.IppEncoding.ValueTag;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Checks the values of a {@link GenericAttribute} are the same whether they
+ * are kept unboxed or not.
+ *
+ * @author Opher Shachar
+ */
+public class GenericAttributeTest {
+
+    public GenericAttributeTest() {
+    }
+
+    private static GenericAttribute ints(String name, ValueTag vt, int... values) {
+        GenericAttribute ga = new GenericAttribute(name);
+        for (int value : values)
+            ga.add(vt, value);
+        return ga;
+    }
+
+    @Test
+    public void testPackedIntegers() {
+        GenericAttribute ga = ints("job-id", ValueTag.INTEGER, 3, -1, 1 << 30);
+        assertEquals(ValueTag.INTEGER, ga.getPackedValueTag());
+        assertEquals(3, ga.size());
+        assertEquals(-1, ga.getInt(1));
+        assertEquals(1 << 30, ga.getInt(2));
+        assertEquals(new GenericValue(ValueTag.INTEGER, 3), ga.get(0));
+        assertEquals("[" + ga.get(0) + ", " + ga.get(1) + ", " + ga.get(2) + "]",
+                Arrays.toString(ga.toArray()));
+
+        ga = ints("printer-state", ValueTag.ENUM, 3, 4, 5);
+        assertEquals(ValueTag.ENUM, ga.getPackedValueTag());
+        assertEquals(new GenericValue(ValueTag.ENUM, 5), ga.get(2));
+        assertEquals(2, ga.indexOf(new GenericValue(ValueTag.ENUM, 5)));
+        assertTrue(ga.contains(new GenericValue(ValueTag.ENUM, 4)));
+        assertFalse(ga.contains(new GenericValue(ValueTag.INTEGER, 4)));
+    }
+
+    @Test
+    public void testPackedBooleans() {
+        GenericAttribute ga = new GenericAttribute("printer-is-accepting-jobs");
+        ga.add(ValueTag.BOOLEAN, true);
+        ga.add(ValueTag.BOOLEAN, false);
+        assertEquals(ValueTag.BOOLEAN, ga.getPackedValueTag());
+        assertTrue(ga.getBoolean(0));
+        assertFalse(ga.getBoolean(1));
+        assertEquals(new GenericValue(ValueTag.BOOLEAN, Boolean.FALSE), ga.get(1));
+        try {
+            ga.getInt(0);
+            fail("a boolean is not an integer");
+        } catch (ClassCastException ex) { /* expected */ }
+    }
+
+    @Test
+    public void testPackedRanges() {
+        GenericAttribute ga = new GenericAttribute("copies-supported");
+        ga.add(ValueTag.RANGE_OF_INTEGER, 1, 99);
+        ga.add(ValueTag.RANGE_OF_INTEGER, -5, Integer.MAX_VALUE);
+        assertEquals(ValueTag.RANGE_OF_INTEGER, ga.getPackedValueTag());
+        assertEquals(1, ga.getLowerBound(0));
+        assertEquals(99, ga.getUpperBound(0));
+        assertEquals(-5, ga.getLowerBound(1));
+        assertEquals(Integer.MAX_VALUE, ga.getUpperBound(1));
+        GenericValue gv = (GenericValue) ga.get(1);
+        assertEquals(ValueTag.RANGE_OF_INTEGER, gv.getValueTag());
+        assertArrayEquals(new int[] { -5, Integer.MAX_VALUE }, (int[]) gv.getValue());
+
+        // added without a value tag
+        ga = new GenericAttribute("copies-supported");
+        ga.add(2, 7);
+        assertEquals(ValueTag.RANGE_OF_INTEGER, ga.getPackedValueTag());
+        assertArrayEquals(new int[] { 2, 7 }, (int[]) ga.get(0));
+    }
+
+    @Test
+    public void testInflate() {
+        // a value of another tag moves the values to the list
+        GenericAttribute ga = ints("x-values", ValueTag.INTEGER, 1, 2);
+        ga.add(ValueTag.ENUM, 3);
+        assertNull(ga.getPackedValueTag());
+        assertEquals(3, ga.size());
+        assertEquals(new GenericValue(ValueTag.INTEGER, 2), ga.get(1));
+        assertEquals(new GenericValue(ValueTag.ENUM, 3), ga.get(2));
+        assertEquals(2, ga.getInt(1));
+
+        ga = ints("x-values", ValueTag.INTEGER, 1, 2);
+        ga.add(new GenericValue(ValueTag.KEYWORD, "three"));
+        assertNull(ga.getPackedValueTag());
+        assertEquals("three", ((GenericValue) ga.get(2)).getValue());
+        try {
+            ga.getInt(2);
+            fail("a keyword is not an integer");
+        } catch (ClassCastException ex) { /* expected */ }
+
+        ga = ints("x-values", ValueTag.INTEGER, 1, 2, 3);
+        ga.set(1, new GenericValue(ValueTag.INTEGER, 20));
+        ga.remove(0);
+        assertNull(ga.getPackedValueTag());
+        assertEquals(2, ga.size());
+        assertEquals(20, ga.getInt(0));
+        assertEquals(3, ga.getInt(1));
+
+        ga.clear();
+        assertTrue(ga.isEmpty());
+        ga.add(ValueTag.INTEGER, 4);
+        assertEquals(ValueTag.INTEGER, ga.getPackedValueTag());
+    }
+
+    @Test
+    public void testEquals() {
+        GenericAttribute packed = ints("job-id", ValueTag.INTEGER, 1, 2, 3);
+        GenericAttribute boxed = new GenericAttribute("job-id");
+        for (int i = 1; i <= 3; i++)
+            boxed.add(new GenericValue(ValueTag.INTEGER, i));
+        assertNull(boxed.getPackedValueTag());
+        assertEquals(packed, boxed);
+        assertEquals(boxed, packed);
+        assertEquals(packed.hashCode(), boxed.hashCode());
+        assertEquals(packed, ints("job-id", ValueTag.INTEGER, 1, 2, 3));
+        assertFalse(packed.equals(ints("job-id", ValueTag.INTEGER, 1, 2, 4)));
+        assertFalse(packed.equals(ints("job-id", ValueTag.ENUM, 1, 2, 3)));
+        assertFalse(packed.equals(ints("job-ids", ValueTag.INTEGER, 1, 2, 3)));
+    }
+
+    @Test
+    public void testSerialization() throws IOException, ClassNotFoundException {
+        // values added without a value tag, as of serializable attributes
+        GenericAttribute ga = new GenericAttribute("x-copies");
+        for (int i = 1; i <= 3; i++)
+            ga.add(i);
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        ObjectOutputStream oos = new ObjectOutputStream(os);
+        oos.writeObject(ga);
+        oos.close();
+        assertEquals("left packed", ValueTag.INTEGER, ga.getPackedValueTag());
+        GenericAttribute copy = (GenericAttribute) new ObjectInputStream(
+                new ByteArrayInputStream(os.toByteArray())).readObject();
+        assertEquals(ga, copy);
+        assertEquals(3, copy.getInt(2));
+        try {
+            copy.listIterator().remove();
+            fail("the values are not modifiable through the iterator");
+        } catch (UnsupportedOperationException ex) { /* expected */ }
+        catch (IllegalStateException ex) { /* expected */ }
+    }
+
+    @Test
+    public void testUnpackedGetters() {
+        GenericAttribute ga = new GenericAttribute("copies", new Copies(2));
+        assertNull(ga.getPackedValueTag());
+        assertEquals(2, ga.getInt(0));
+        ga = new GenericAttribute("copies-supported", new CopiesSupported(1, 10));
+        assertEquals(1, ga.getLowerBound(0));
+        assertEquals(10, ga.getUpperBound(0));
+    }
+
+    @Test
+    public void testInvalid() {
+        GenericAttribute ga = ints("job-id", ValueTag.INTEGER, 1);
+        for (int index : new int[] { -1, 1 })
+            try {
+                ga.getInt(index);
+                fail("index " + index);
+            } catch (IndexOutOfBoundsException ex) { /* expected */ }
+        try {
+            ga.add(ValueTag.KEYWORD, 1);
+            fail("a keyword is not an integer");
+        } catch (IllegalArgumentException ex) { /* expected */ }
+        try {
+            ga.add(ValueTag.INTEGER, true);
+            fail("an integer is not a boolean");
+        } catch (IllegalArgumentException ex) { /* expected */ }
+        try {
+            ga.add(ValueTag.INTEGER, 1, 2);
+            fail("an integer is not a range");
+        } catch (IllegalArgumentException ex) { /* expected */ }
+        assertEquals(1, ga.size());
+    }
+}